@@ -0,0 +1,282 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of a {@link Graph}, laid out in compressed sparse
+ * row (CSR) form.  Get one from {@link Graph#freeze()}.
+ *
+ * The nodes are renumbered to dense indices 0..n-1 (in order of their
+ * Graph ids), and all the neighbors live in one big array:  the neighbors
+ * of node i are the targets at positions offset(i) up to (not including)
+ * offset(i + 1).  This is much kinder to the cache than walking HashMaps
+ * and edge lists, so analysis code (connectivity, genus, solvers) should
+ * read from here.
+ *
+ * For undirected graphs, each edge appears twice: once for each of its
+ * nodes.  For directed graphs, the rows hold the edges that START at a
+ * node, and a second set of rows holds the edges that END there.
+ *
+ *	USAGE:
+ *		CsrGraph csr = graph.freeze();
+ *		for (int i = 0; i < csr.numNodes(); i++) {
+ *		    for (int k = csr.offset(i); k < csr.offset(i + 1); k++) {
+ *		        int neighborIndex = csr.target(k);
+ *		        ...
+ *		    }
+ *		}
+ *		int graphId = csr.getNodeId(i);     // back to the Graph's id
+ *
+ * Nothing in here can change, so a snapshot may be shared freely
+ * between threads.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CsrGraph {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    private static final int CONNECTED_UNKNOWN = 0;
+    private static final int CONNECTED_YES = 1;
+    private static final int CONNECTED_NO = 2;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    // These are package-private so that the engines in this package can
+    // loop over them directly.  NEVER modify them!
+
+    /** Whether the Graph that this came from is directed */
+    final boolean mDirected;
+
+    /** The Graph ids of the nodes, in ascending order. Index i is dense node i. */
+    final int[] mIds;
+
+    /** Where each node's neighbors begin in {@link #mTargets}. Has numNodes + 1 items. */
+    final int[] mOffsets;
+
+    /** The dense indices of the neighbors of all the nodes, one row after another. */
+    final int[] mTargets;
+
+    /** The weight of the edge to each of the neighbors in {@link #mTargets}. */
+    final int[] mWeights;
+
+    /** Like {@link #mOffsets}, but for edges coming INTO each node. Only used for directed graphs. */
+    final int[] mInOffsets;
+
+    /** The dense indices of the nodes at the start of the edges into each node. Directed graphs only. */
+    final int[] mInSources;
+
+    /** The number of edges in the Graph when this was made */
+    final int mNumEdges;
+
+    /** Saved {@link #fingerprint()}, or 0 if it hasn't been figured out yet */
+    private volatile long mFingerprint;
+
+    /** Saved {@link #isConnected()}: one of the CONNECTED_* constants */
+    private volatile int mConnected = CONNECTED_UNKNOWN;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Only {@link Graph} makes these.  The arrays are used as-is (not copied).
+     */
+    CsrGraph(boolean directed, int[] ids, int[] offsets, int[] targets, int[] weights,
+             int[] inOffsets, int[] inSources, int numEdges) {
+        mDirected = directed;
+        mIds = ids;
+        mOffsets = offsets;
+        mTargets = targets;
+        mWeights = weights;
+        mInOffsets = inOffsets;
+        mInSources = inSources;
+        mNumEdges = numEdges;
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    public boolean isDirected() {
+        return mDirected;
+    }
+
+    /** The number of nodes (and thus the number of dense indices). */
+    public int numNodes() {
+        return mIds.length;
+    }
+
+    /** The number of edges of the original Graph. */
+    public int numEdges() {
+        return mNumEdges;
+    }
+
+    /**
+     * Converts a dense index back into the id used by the Graph.
+     */
+    public int getNodeId(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * Finds the dense index for a Graph node id.<br>
+     * <br>
+     * O(log n)
+     *
+     * @return  The index, or -1 if no node has that id.
+     */
+    public int indexOf(int nodeId) {
+        int index = Arrays.binarySearch(mIds, nodeId);
+        return (index < 0) ? -1 : index;
+    }
+
+    /**
+     * Where the neighbors of the given node start in the target array.
+     * Use offset(index + 1) to find where they stop.
+     */
+    public int offset(int index) {
+        return mOffsets[index];
+    }
+
+    /** The dense index of the neighbor at the given position. */
+    public int target(int position) {
+        return mTargets[position];
+    }
+
+    /** The weight of the edge at the given position. */
+    public int weight(int position) {
+        return mWeights[position];
+    }
+
+    /**
+     * Number of neighbors of the given node.  For directed graphs,
+     * this only counts the edges that start with this node.
+     */
+    public int degree(int index) {
+        return mOffsets[index + 1] - mOffsets[index];
+    }
+
+    /**
+     * Number of edges that end at the given node.  For undirected
+     * graphs this is the same as {@link #degree(int)}.
+     */
+    public int inDegree(int index) {
+        if (!mDirected) {
+            return degree(index);
+        }
+        return mInOffsets[index + 1] - mInOffsets[index];
+    }
+
+    /**
+     * Figures out if the snapshot is connected.  Uses the same rules as
+     * {@link Graph#isConnected()}: directed graphs only need to be
+     * "weakly connected", and a graph with no nodes or no edges is
+     * NOT connected.<br>
+     * <br>
+     * The snapshot can't change, so the answer is saved: O(n + e) the
+     * first time, then O(1).  Snapshots from {@link Graph#freeze()}
+     * usually come with the answer already filled in.
+     */
+    public boolean isConnected() {
+        int connected = mConnected;
+        if (connected == CONNECTED_UNKNOWN) {
+            return isConnected(new GraphTraversal());
+        }
+        return connected == CONNECTED_YES;
+    }
+
+    /**
+     * Like {@link #isConnected()}, but uses the given traversal engine
+     * instead of making a new one (only needed if the answer hasn't
+     * been saved yet).
+     */
+    public boolean isConnected(GraphTraversal traversal) {
+        int connected = mConnected;
+        if (connected != CONNECTED_UNKNOWN) {
+            return connected == CONNECTED_YES;
+        }
+
+        boolean answer = false;
+        if ((numNodes() > 0) && (mNumEdges > 0)) {
+            traversal.reset(this);
+            traversal.setIgnoreDirection(true);
+            answer = traversal.bfs(0, null) == numNodes();
+        }
+        rememberConnected(answer);
+        return answer;
+    }
+
+    /**
+     * Saves the answer for {@link #isConnected()}.  The Graph already
+     * knows it when it makes a snapshot, so it hands it over here.
+     */
+    void rememberConnected(boolean connected) {
+        mConnected = connected ? CONNECTED_YES : CONNECTED_NO;
+    }
+
+    /**
+     * Returns the genus of the snapshot.  Same as {@link Graph#getGenus()}.
+     */
+    public int getGenus() throws GraphNotConnectedException {
+        if (!isConnected()) {
+            throw new GraphNotConnectedException();
+        }
+        return mNumEdges - numNodes() + 1;
+    }
+
+    /**
+     * A 64-bit hash of the structure: the node ids, the edges (with weights)
+     * and whether it's directed.  The same graph always gets the same
+     * fingerprint, no matter what order the edges were added in, so it's
+     * good for things like seeding puzzles ({@link SplitMixRandom#forPuzzle}).
+     * Different graphs almost never share one.
+     *
+     * O(n + e) the first time, then O(1).
+     */
+    public long fingerprint() {
+        long fingerprint = mFingerprint;
+        if (fingerprint != 0) {
+            return fingerprint;
+        }
+
+        fingerprint = SplitMixRandom.mix64(mDirected ? 1 : 2);
+        for (int i = 0; i < mIds.length; i++) {
+            // adding up the neighbors means their order doesn't matter
+            long row = 0;
+            for (int k = mOffsets[i]; k < mOffsets[i + 1]; k++) {
+                row += SplitMixRandom.mix64(((long) mIds[mTargets[k]] << 32) + mWeights[k]);
+            }
+            fingerprint = SplitMixRandom.mix64(fingerprint + mIds[i]) ^ row;
+        }
+        if (fingerprint == 0) {
+            fingerprint = 1;        // 0 means "not done yet"
+        }
+        mFingerprint = fingerprint;
+        return fingerprint;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("CsrGraph[").append(numNodes()).append(" nodes, ")
+                .append(mNumEdges).append(" edges]:");
+        for (int i = 0; i < numNodes(); i++) {
+            builder.append(" ").append(mIds[i]).append("->(");
+            for (int k = mOffsets[i]; k < mOffsets[i + 1]; k++) {
+                if (k > mOffsets[i]) {
+                    builder.append(", ");
+                }
+                builder.append(mIds[mTargets[k]]);
+            }
+            builder.append(")");
+        }
+        return builder.toString();
+    }
+}
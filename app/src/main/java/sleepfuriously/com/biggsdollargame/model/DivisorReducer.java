@@ -0,0 +1,484 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Arrays;
+
+/**
+ * Figures out if a Dollar Game can still be won, exactly.
+ *
+ * Every distribution of money (a "divisor") can be turned, by legal moves,
+ * into exactly one "q-reduced" divisor: every node except q is out of debt,
+ * and no group of nodes without q could fire together without somebody
+ * going into debt.  The game is winnable iff q isn't in debt in that
+ * reduced divisor.  (See Baker and Norine, or Matt Baker's notes on the
+ * dollar game.)
+ *
+ * The reduction is done in three steps:
+ *	0.	Even things out.  Solve the Laplacian system L x = D - deg (with
+ *		x = 0 at q) approximately and fire each node floor(x) times.
+ *		Afterwards every node but q has between 0 and twice its degree.
+ *		This step is only about speed--any script at all gives an
+ *		equivalent divisor.
+ *	1.	Get everybody but q out of debt (if step 0 didn't quite manage).
+ *		The nodes furthest from q borrow (all together) from the ones a
+ *		step closer, level by level, pushing the debt towards q.
+ *	2.	Dhar's burning algorithm: start a fire at q.  A node catches when
+ *		more of its edges are burning than it has dollars.  If everything
+ *		burns we're done; otherwise the unburnt nodes fire together (as
+ *		many times as they legally can) and we burn again.
+ *
+ * Without step 0, step 1 can leave the outer nodes with piles of money and
+ * step 2 takes thousands of rounds to bring it back.  With it, a 1,000
+ * node graph with 2,500 edges takes a few hundred burns (each O(n + e)),
+ * around 10ms.  The graphs in the game are far smaller than that, so
+ * this is fine to run after every move.
+ *
+ * Only for connected, undirected graphs.  Loops are ignored (firing along
+ * a loop doesn't change anything anyway).
+ *
+ *	USAGE:
+ *		DivisorReducer reducer = new DivisorReducer();
+ *		boolean canWin = reducer.isWinnable(game);
+ *
+ * Keep one around: the work arrays are reused as long as the graphs don't
+ * get bigger.  Not thread-safe.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class DivisorReducer {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** The divisor being reduced */
+    private long[] mDivisor = new long[0];
+
+    /**
+     * How many times each node has fired to get from the original divisor
+     * to {@link #mDivisor} (negative for borrowing).
+     */
+    private long[] mScript = new long[0];
+
+    /** Distance of each node from q */
+    private int[] mDistances = new int[0];
+
+    /** Nodes sorted by their distance from q (a BFS order) */
+    private int[] mOrder = new int[0];
+
+    /** Dhar: number of burning edges into each node */
+    private int[] mBurntEdges = new int[0];
+
+    /** Dhar: set for the nodes that are burning */
+    private boolean[] mBurnt = new boolean[0];
+
+    /** Dhar: the nodes that are burning, in the order they caught */
+    private int[] mQueue = new int[0];
+
+    private final GraphTraversal mTraversal = new GraphTraversal();
+
+    /** The number of times the unburnt set had to fire in the last reduce() */
+    private int mNumRounds;
+
+    // Work arrays for the conjugate gradient solve of step 0
+    private double[] mX = new double[0];
+    private double[] mResidual = new double[0];
+    private double[] mDirection = new double[0];
+    private double[] mProduct = new double[0];
+    private long[] mSteps = new long[0];
+
+    /** Each node's degree without loops, worked out once per step 0 */
+    private int[] mDegrees = new int[0];
+
+    /** Step 0 stops when no node is off by more than this */
+    private static final double TOLERANCE = 0.25;
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Can the given game be won?
+     *
+     * @throws GraphNotConnectedException   The question doesn't make sense for
+     *                                      disconnected graphs.
+     */
+    public boolean isWinnable(DollarGame game) throws GraphNotConnectedException {
+        int[] divisor = new int[game.numNodes()];
+        return isWinnable(game.getGraph(), game.getDivisor(divisor));
+    }
+
+    /**
+     * Can the game with the given money in each node (by dense index of the
+     * graph) be won?
+     *
+     * @throws GraphNotConnectedException   The question doesn't make sense for
+     *                                      disconnected graphs.
+     */
+    public boolean isWinnable(CsrGraph graph, int[] divisor) throws GraphNotConnectedException {
+        checkGraph(graph);
+
+        long degree = 0;
+        for (int amount : divisor) {
+            degree += amount;
+        }
+
+        // some quick answers
+        if (degree < 0) {
+            return false;   // moves can't make money
+        }
+        if (graph.numNodes() <= 1) {
+            return true;    // nobody to trade with, but nobody's in debt either
+        }
+        if (degree >= graph.getGenus()) {
+            return true;    // Baker-Norine: always winnable
+        }
+
+        reduce(graph, divisor, 0);
+        return mDivisor[0] >= 0;
+    }
+
+    /**
+     * Finds the q-reduced divisor that's equivalent to the given one.
+     *
+     * @param divisor   The money in each node (by dense index).  Not changed.
+     *
+     * @param q         The node that is allowed to stay in debt.
+     *
+     * @return  The reduced divisor.  This is the reducer's own array (use it
+     *          before calling anything else here), and it may be longer than
+     *          the number of nodes.
+     *
+     * @throws GraphNotConnectedException   If the graph isn't connected.
+     */
+    public long[] reduce(CsrGraph graph, int[] divisor, int q) throws GraphNotConnectedException {
+        checkGraph(graph);
+        int numNodes = graph.numNodes();
+        ensureCapacity(numNodes);
+
+        for (int i = 0; i < numNodes; i++) {
+            mDivisor[i] = divisor[i];
+        }
+        Arrays.fill(mScript, 0, numNodes, 0);
+        mNumRounds = 0;
+
+        evenOut(graph, q);
+        clearDebts(graph, q);
+        while (!burn(graph, q)) {
+            fireUnburnt(graph);
+            mNumRounds++;
+        }
+        return mDivisor;
+    }
+
+    /**
+     * After {@link #reduce(CsrGraph, int[], int)}: how many times each node
+     * fired (negative means borrowed) to get to the reduced divisor.  The
+     * reducer's own array, so don't change it.
+     */
+    public long[] getScript() {
+        return mScript;
+    }
+
+    /** Number of times the unburnt nodes had to fire in the last reduction. */
+    public int getNumRounds() {
+        return mNumRounds;
+    }
+
+    /**
+     * Step 0: fire every node floor(x) times, where x is the (real-valued)
+     * solution of L x = D - deg.  L is the Laplacian of the graph with q's
+     * row and column taken out, and deg is the degree of each node.<br>
+     * <br>
+     * Why that works: what's left over is deg + L f, where f = x - floor(x)
+     * is between 0 and 1.  A node's part of L f is more than minus its
+     * degree, so every node but q ends up with more than 0 (and less than
+     * twice its degree).<br>
+     * <br>
+     * Uses the conjugate gradient method with the degrees as a
+     * preconditioner.  The solution only has to be good to within a
+     * fraction of a dollar, and it gives up after a while on really badly
+     * shaped graphs (long paths, say)--step 1 takes care of the rest.
+     */
+    private void evenOut(CsrGraph graph, int q) {
+        int numNodes = graph.numNodes();
+        if (numNodes < 3) {
+            return;
+        }
+
+        // r = D - L x with x = 0;  z = r / degree;  p = z
+        double residualDotZ = 0;
+        double maxResidual = 0;
+        for (int i = 0; i < numNodes; i++) {
+            mDegrees[i] = loopFreeDegree(graph, i);     // (the loops below need it a lot)
+            mX[i] = 0;
+            mResidual[i] = (i == q) ? 0 : mDivisor[i] - mDegrees[i];
+            mDirection[i] = mResidual[i] / Math.max(1, mDegrees[i]);
+            residualDotZ += mResidual[i] * mDirection[i];
+            maxResidual = Math.max(maxResidual, Math.abs(mResidual[i]));
+        }
+
+        int maxIterations = 50 + 20 * (int) Math.sqrt(numNodes);
+        for (int iteration = 0; (iteration < maxIterations) && (maxResidual > TOLERANCE); iteration++) {
+            laplacian(graph, q, mDirection, mProduct);
+            double directionDotProduct = 0;
+            for (int i = 0; i < numNodes; i++) {
+                directionDotProduct += mDirection[i] * mProduct[i];
+            }
+            if (directionDotProduct <= 0) {
+                break;      // shouldn't happen, but don't divide by 0
+            }
+
+            double alpha = residualDotZ / directionDotProduct;
+            double newResidualDotZ = 0;
+            maxResidual = 0;
+            for (int i = 0; i < numNodes; i++) {
+                mX[i] += alpha * mDirection[i];
+                mResidual[i] -= alpha * mProduct[i];
+                maxResidual = Math.max(maxResidual, Math.abs(mResidual[i]));
+                newResidualDotZ += mResidual[i] * mResidual[i] / Math.max(1, mDegrees[i]);
+            }
+
+            double beta = newResidualDotZ / residualDotZ;
+            residualDotZ = newResidualDotZ;
+            for (int i = 0; i < numNodes; i++) {
+                mDirection[i] = mResidual[i] / Math.max(1, mDegrees[i]) + beta * mDirection[i];
+            }
+        }
+
+        // now actually fire everybody floor(x) times
+        for (int i = 0; i < numNodes; i++) {
+            mSteps[i] = (i == q) ? 0 : (long) Math.floor(mX[i]);
+        }
+        for (int i = 0; i < numNodes; i++) {
+            long steps = mSteps[i];
+            if (steps == 0) {
+                continue;
+            }
+            mScript[i] += steps;
+            for (int j = graph.mOffsets[i]; j < graph.mOffsets[i + 1]; j++) {
+                int neighbor = graph.mTargets[j];
+                if (neighbor != i) {
+                    mDivisor[i] -= steps;
+                    mDivisor[neighbor] += steps;
+                }
+            }
+        }
+    }
+
+    /**
+     * out = L in, with q's row and column of the Laplacian left out (so
+     * in[q] is treated as 0, and out[q] is set to 0).
+     */
+    private static void laplacian(CsrGraph graph, int q, double[] in, double[] out) {
+        for (int i = 0; i < graph.numNodes(); i++) {
+            if (i == q) {
+                out[i] = 0;
+                continue;
+            }
+            double sum = 0;
+            for (int j = graph.mOffsets[i]; j < graph.mOffsets[i + 1]; j++) {
+                int neighbor = graph.mTargets[j];
+                if (neighbor != i) {
+                    sum += in[i] - ((neighbor == q) ? 0 : in[neighbor]);
+                }
+            }
+            out[i] = sum;
+        }
+    }
+
+    /** The number of edges of the node, not counting loops. */
+    private static int loopFreeDegree(CsrGraph graph, int node) {
+        int degree = 0;
+        for (int j = graph.mOffsets[node]; j < graph.mOffsets[node + 1]; j++) {
+            if (graph.mTargets[j] != node) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /**
+     * Step 1: get every node except q out of debt.
+     *
+     * Level by level, starting with the nodes furthest from q, all the
+     * nodes at that distance or further borrow together.  That only moves
+     * money across the edges between this level and the one closer in, so
+     * it makes every node on this level richer (they all have a neighbor
+     * one step closer) without changing anything further out.
+     */
+    private void clearDebts(CsrGraph graph, int q) {
+        int numNodes = graph.numNodes();
+        int[] offsets = graph.mOffsets;
+        int[] targets = graph.mTargets;
+
+        mTraversal.reset(graph);
+        mTraversal.distances(q, mDistances);
+
+        // sort the nodes by distance (counting sort)
+        int maxDistance = 0;
+        for (int i = 0; i < numNodes; i++) {
+            maxDistance = Math.max(maxDistance, mDistances[i]);
+        }
+        int[] levelStart = new int[maxDistance + 2];
+        for (int i = 0; i < numNodes; i++) {
+            levelStart[mDistances[i] + 1]++;
+        }
+        for (int level = 0; level <= maxDistance; level++) {
+            levelStart[level + 1] += levelStart[level];
+        }
+        int[] fill = levelStart.clone();
+        for (int i = 0; i < numNodes; i++) {
+            mOrder[fill[mDistances[i]]++] = i;
+        }
+
+        // borrowCounts[level] = times everything at this level or further borrowed
+        long[] borrowCounts = new long[maxDistance + 1];
+
+        for (int level = maxDistance; level >= 1; level--) {
+            // how many borrows does the neediest node on this level need?
+            long times = 0;
+            for (int k = levelStart[level]; k < levelStart[level + 1]; k++) {
+                int node = mOrder[k];
+                if (mDivisor[node] < 0) {
+                    int gain = countNeighborsAt(graph, node, level - 1);
+                    times = Math.max(times, (-mDivisor[node] + gain - 1) / gain);
+                }
+            }
+            if (times == 0) {
+                continue;
+            }
+            borrowCounts[level] = times;
+
+            // move the money across the edges between the two levels
+            for (int k = levelStart[level]; k < levelStart[level + 1]; k++) {
+                int node = mOrder[k];
+                for (int j = offsets[node]; j < offsets[node + 1]; j++) {
+                    int neighbor = targets[j];
+                    if (mDistances[neighbor] == level - 1) {
+                        mDivisor[node] += times;
+                        mDivisor[neighbor] -= times;
+                    }
+                }
+            }
+        }
+
+        // everybody at distance d borrowed the total of levels 1..d
+        long[] total = new long[maxDistance + 1];
+        for (int level = 1; level <= maxDistance; level++) {
+            total[level] = total[level - 1] + borrowCounts[level];
+        }
+        for (int i = 0; i < numNodes; i++) {
+            mScript[i] -= total[mDistances[i]];
+        }
+    }
+
+    private int countNeighborsAt(CsrGraph graph, int node, int distance) {
+        int count = 0;
+        for (int j = graph.mOffsets[node]; j < graph.mOffsets[node + 1]; j++) {
+            if (mDistances[graph.mTargets[j]] == distance) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Step 2a: Dhar's burning algorithm.  Starts a fire at q and lets it
+     * spread.  Afterwards {@link #mBurnt} tells which nodes burnt and
+     * {@link #mBurntEdges} how many burning edges each unburnt node has.
+     *
+     * @return  TRUE if everything burnt (the divisor is q-reduced).
+     */
+    private boolean burn(CsrGraph graph, int q) {
+        int numNodes = graph.numNodes();
+        int[] offsets = graph.mOffsets;
+        int[] targets = graph.mTargets;
+
+        Arrays.fill(mBurnt, 0, numNodes, false);
+        Arrays.fill(mBurntEdges, 0, numNodes, 0);
+
+        int head = 0;
+        int tail = 0;
+        mBurnt[q] = true;
+        mQueue[tail++] = q;
+
+        while (head < tail) {
+            int node = mQueue[head++];
+            for (int j = offsets[node]; j < offsets[node + 1]; j++) {
+                int neighbor = targets[j];
+                if (mBurnt[neighbor]) {
+                    continue;   // includes loops
+                }
+                mBurntEdges[neighbor]++;
+                if (mBurntEdges[neighbor] > mDivisor[neighbor]) {
+                    // not enough money to fight off the fire
+                    mBurnt[neighbor] = true;
+                    mQueue[tail++] = neighbor;
+                }
+            }
+        }
+        return tail == numNodes;
+    }
+
+    /**
+     * Step 2b: the unburnt nodes fire together.  Each of them has at least
+     * as many dollars as burning edges, so this is legal.  They fire as
+     * many times as they can in one go (otherwise big amounts would take
+     * forever).
+     */
+    private void fireUnburnt(CsrGraph graph) {
+        int numNodes = graph.numNodes();
+        int[] offsets = graph.mOffsets;
+        int[] targets = graph.mTargets;
+
+        long times = Long.MAX_VALUE;
+        for (int i = 0; i < numNodes; i++) {
+            if (!mBurnt[i] && (mBurntEdges[i] > 0)) {
+                times = Math.min(times, mDivisor[i] / mBurntEdges[i]);
+            }
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            if (mBurnt[i]) {
+                continue;
+            }
+            mScript[i] += times;
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                int neighbor = targets[j];
+                if (mBurnt[neighbor]) {
+                    mDivisor[i] -= times;
+                    mDivisor[neighbor] += times;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure this graph can be reduced.
+     */
+    private void checkGraph(CsrGraph graph) throws GraphNotConnectedException {
+        if (graph.isDirected()) {
+            throw new IllegalArgumentException("Only undirected graphs can be reduced");
+        }
+        if ((graph.numNodes() > 1) && !graph.isConnected(mTraversal)) {
+            throw new GraphNotConnectedException();
+        }
+    }
+
+    private void ensureCapacity(int numNodes) {
+        if (mDivisor.length < numNodes) {
+            mDivisor = new long[numNodes];
+            mScript = new long[numNodes];
+            mDistances = new int[numNodes];
+            mOrder = new int[numNodes];
+            mBurntEdges = new int[numNodes];
+            mBurnt = new boolean[numNodes];
+            mQueue = new int[numNodes];
+            mX = new double[numNodes];
+            mResidual = new double[numNodes];
+            mDirection = new double[numNodes];
+            mProduct = new double[numNodes];
+            mSteps = new long[numNodes];
+            mDegrees = new int[numNodes];
+        }
+    }
+}
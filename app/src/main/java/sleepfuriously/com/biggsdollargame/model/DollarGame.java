@@ -0,0 +1,325 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The rules of the Dollar Game, with no UI attached.  In math-speak this
+ * is chip-firing: the money in each node is a "divisor" on the graph (an
+ * int for every node), and a move fires (gives) or borrows (takes) along
+ * every edge of one node.
+ *
+ * The game works on a frozen {@link CsrGraph}, so the nodes are the dense
+ * indices 0..n-1 of that snapshot--NOT the ids of the Graph.  Use
+ * {@link CsrGraph#indexOf(int)} and {@link CsrGraph#getNodeId(int)} to
+ * go back and forth.
+ *
+ * Pure Java with no Android in it, and nothing is allocated when making
+ * moves, so bots and analysis code can run millions of moves a second.
+ * The UI just listens (see {@link Listener}) and draws what it's told.
+ *
+ *	USAGE:
+ *		DollarGame game = new DollarGame(graph.freeze(), amounts);
+ *		game.fire(3);           // node 3 gives a dollar to each neighbor
+ *		game.borrow(5);         // node 5 takes a dollar from each neighbor
+ *		if (game.isWinning()) ...
+ *
+ * Edge weights are ignored: every edge moves one dollar.  For directed
+ * graphs money only moves along the direction of the edges.
+ *
+ * Not thread-safe.  Copy it (see {@link #DollarGame(DollarGame)}) to hand
+ * a game to another thread.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class DollarGame {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final CsrGraph mGraph;
+
+    /** The amount of money in each node, by dense index */
+    private final int[] mDivisor;
+
+    /** The sum of all of {@link #mDivisor} (the "degree" of the divisor) */
+    private long mDegree;
+
+    /** The number of nodes that have less than 0.  Zero means we've won. */
+    private int mNumInDebt;
+
+    /** How much all the nodes in debt owe, together (as a positive number) */
+    private long mTotalDebt;
+
+    /** The nodes that have less than 0, by dense index */
+    private final BitSet mInDebt;
+
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Starts a game with no money anywhere.
+     */
+    public DollarGame(CsrGraph graph) {
+        this(graph, new int[graph.numNodes()]);
+    }
+
+    /**
+     * Starts a game with the given amounts.
+     *
+     * @param divisor   The money in each node, by the dense index of the
+     *                  graph.  It's copied.
+     */
+    public DollarGame(CsrGraph graph, int[] divisor) {
+        if (divisor.length != graph.numNodes()) {
+            throw new IllegalArgumentException("Need " + graph.numNodes()
+                    + " amounts, but got " + divisor.length);
+        }
+        mGraph = graph;
+        mDivisor = new int[divisor.length];
+        mInDebt = new BitSet(divisor.length);
+        setDivisor(divisor);
+    }
+
+    /**
+     * Makes a copy of the given game (without its listeners).
+     */
+    public DollarGame(DollarGame game) {
+        mGraph = game.mGraph;
+        mDivisor = game.mDivisor.clone();
+        mDegree = game.mDegree;
+        mNumInDebt = game.mNumInDebt;
+        mTotalDebt = game.mTotalDebt;
+        mInDebt = (BitSet) game.mInDebt.clone();
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    public CsrGraph getGraph() {
+        return mGraph;
+    }
+
+    public int numNodes() {
+        return mDivisor.length;
+    }
+
+    /** The amount of money in the given node */
+    public int getAmount(int node) {
+        return mDivisor[node];
+    }
+
+    /**
+     * Changes the money in one node.  Listeners are told that everything
+     * changed.
+     */
+    public void setAmount(int node, int amount) {
+        change(node, amount - mDivisor[node]);
+        notifyReset();
+    }
+
+    /**
+     * Copies all the amounts into the given array (which must hold
+     * numNodes items).
+     *
+     * @return  The array.
+     */
+    public int[] getDivisor(int[] out) {
+        System.arraycopy(mDivisor, 0, out, 0, mDivisor.length);
+        return out;
+    }
+
+    /** Returns a copy of all the amounts. */
+    public int[] getDivisor() {
+        return mDivisor.clone();
+    }
+
+    /** Sets all the amounts at once (they're copied). */
+    public void setDivisor(int[] divisor) {
+        System.arraycopy(divisor, 0, mDivisor, 0, mDivisor.length);
+        mDegree = 0;
+        mNumInDebt = 0;
+        mTotalDebt = 0;
+        mInDebt.clear();
+        for (int i = 0; i < mDivisor.length; i++) {
+            int amount = mDivisor[i];
+            mDegree += amount;
+            if (amount < 0) {
+                mNumInDebt++;
+                mTotalDebt -= amount;
+                mInDebt.set(i);
+            }
+        }
+        notifyReset();
+    }
+
+    /**
+     * The total amount of money in the game.  Moves never change this.
+     */
+    public long degree() {
+        return mDegree;
+    }
+
+    /** TRUE when nobody is in debt. */
+    public boolean isWinning() {
+        return mNumInDebt == 0;
+    }
+
+    /** The number of nodes that are in debt. */
+    public int numInDebt() {
+        return mNumInDebt;
+    }
+
+    /**
+     * How much is owed by all the nodes in debt put together (a positive
+     * number, or 0 when winning).
+     */
+    public long totalDebt() {
+        return mTotalDebt;
+    }
+
+    /** Returns a copy of the set of nodes (dense indices) that are in debt. */
+    public BitSet getInDebt() {
+        return (BitSet) mInDebt.clone();
+    }
+
+    /**
+     * The Graph ids of the nodes that are in debt.<br>
+     * <br>
+     * O(number in debt)
+     */
+    public int[] getInDebtIds() {
+        int[] ids = new int[mNumInDebt];
+        int i = 0;
+        for (int node = mInDebt.nextSetBit(0); node >= 0; node = mInDebt.nextSetBit(node + 1)) {
+            ids[i++] = mGraph.getNodeId(node);
+        }
+        return ids;
+    }
+
+    /**
+     * The given node gives a dollar to each of its neighbors.<br>
+     * <br>
+     * O(degree of the node)
+     */
+    public void fire(int node) {
+        fire(node, 1);
+    }
+
+    /**
+     * The given node takes a dollar from each of its neighbors.<br>
+     * <br>
+     * O(degree of the node)
+     */
+    public void borrow(int node) {
+        fire(node, -1);
+    }
+
+    /**
+     * Fires the given node over and over (or borrows, if times is negative).
+     * Same as calling {@link #fire(int)} that many times, but quicker.
+     */
+    public void fire(int node, int times) {
+        if (times == 0) {
+            return;
+        }
+        int[] targets = mGraph.mTargets;
+        int end = mGraph.mOffsets[node + 1];
+        for (int k = mGraph.mOffsets[node]; k < end; k++) {
+            change(targets[k], times);
+        }
+        change(node, -times * (end - mGraph.mOffsets[node]));
+
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onFire(this, node, times);
+        }
+    }
+
+    /**
+     * Fires every node in the set at the same time.  Money that would go
+     * between two nodes of the set cancels out, so only the edges that
+     * leave the set matter.<br>
+     * <br>
+     * O(sum of the degrees of the set)
+     *
+     * @param nodes     The dense indices of the nodes to fire.
+     */
+    public void setFire(BitSet nodes) {
+        int[] offsets = mGraph.mOffsets;
+        int[] targets = mGraph.mTargets;
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            int given = 0;
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                if (!nodes.get(targets[k])) {
+                    change(targets[k], 1);
+                    given++;
+                }
+            }
+            change(node, -given);
+        }
+        notifyReset();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Adds to the money of one node, keeping the counts up to date.
+     */
+    private void change(int node, int amount) {
+        int before = mDivisor[node];
+        int after = before + amount;
+        mDivisor[node] = after;
+        mDegree += amount;
+        mTotalDebt += Math.max(0, -after) - Math.max(0, -before);
+        if ((before < 0) != (after < 0)) {
+            mNumInDebt += (after < 0) ? 1 : -1;
+            mInDebt.set(node, after < 0);
+        }
+    }
+
+    private void notifyReset() {
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onReset(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DollarGame" + Arrays.toString(mDivisor);
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Hears about everything that happens to a game.
+     */
+    public interface Listener {
+
+        /**
+         * A node fired (or borrowed, if times is negative).  Only that
+         * node and its neighbors changed.
+         */
+        void onFire(DollarGame game, int node, int times);
+
+        /**
+         * Any number of nodes may have changed (the amounts were set, or
+         * a whole set fired).
+         */
+        void onReset(DollarGame game);
+    }
+}
@@ -0,0 +1,1001 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps track of the connected components of an undirected graph while
+ * vertices and edges are added AND removed.  Every question (are these
+ * two connected?  how many components?  how big is this one?) gets an
+ * exact answer.
+ *
+ * This is the algorithm of Holm, de Lichtenberg and Thorup:
+ *
+ *		- Every edge has a level, starting at 0.  For each level i there is
+ *		  a spanning forest F(i) made of the tree edges with level >= i, so
+ *		  F(0) is a spanning forest of the whole graph.  The trees of F(i)
+ *		  never have more than n / 2^i vertices.
+ *
+ *		- Each forest is stored as Euler tours in splay trees, which can be
+ *		  linked, cut and compared in O(log n).
+ *
+ *		- When a tree edge is removed, we look for a replacement among the
+ *		  non-tree edges of the smaller half, starting at the edge's level
+ *		  and working down.  Edges that are looked at but don't work out
+ *		  move up a level, and since levels are limited to log n, that work
+ *		  is paid for ahead of time.
+ *
+ * Adding and removing edges takes O(log^2 n) amortized time; the
+ * questions take O(log n).  Lots of edges at once can go in with
+ * {@link #addEdges(int[], int[], int)}, which leaves the forests to be
+ * built in one go when they're next needed.
+ *
+ * Vertices are identified by any int (Graph uses its node ids).  Loops
+ * (an edge from a vertex to itself) are ignored, and adding the same
+ * edge twice is fine--it'll have to be removed twice too.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class DynamicConnectivity {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    private static final String TAG = "DynamicConnectivity";
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** All the vertices, by id */
+    @SuppressLint("UseSparseArrays")
+    private HashMap<Integer, Vertex> mVertices = new HashMap<>();
+
+    /**
+     * All the edges, keyed by {@link #pairKey(int, int)}.  If the same
+     * edge is added more than once, the copies hang off the first one
+     * (see {@link EdgeRec#mNextCopy}).
+     */
+    @SuppressLint("UseSparseArrays")
+    private HashMap<Long, EdgeRec> mEdges = new HashMap<>();
+
+    /** Current number of connected components */
+    private int mNumComponents = 0;
+
+    /** Total number of edges (not counting loops) */
+    private int mNumEdges = 0;
+
+    /**
+     * TRUE when {@link #addEdges(int[], int[], int)} has put in edges that
+     * the forests don't know about yet.  They're built the next time
+     * they're needed (see {@link #ensureForests()}).
+     */
+    private boolean mStale = false;
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Adds a vertex with no edges.  Does nothing if it's already here.
+     *
+     * @return  TRUE if it was added.
+     */
+    public boolean addVertex(int id) {
+        if (mVertices.containsKey(id)) {
+            return false;
+        }
+        mVertices.put(id, new Vertex(id));
+        mNumComponents++;
+        return true;
+    }
+
+    /**
+     * Removes a vertex.  All of its edges need to be removed first!
+     *
+     * @return  TRUE if it was removed.
+     */
+    public boolean removeVertex(int id) {
+        Vertex vertex = mVertices.get(id);
+        if (vertex == null) {
+            return false;
+        }
+        if (vertex.mNumEdges > 0) {
+            Log.e(TAG, "Tried to remove vertex " + id + " while it still has edges!");
+            return false;
+        }
+        mVertices.remove(id);
+        mNumComponents--;
+        return true;
+    }
+
+    public boolean containsVertex(int id) {
+        return mVertices.containsKey(id);
+    }
+
+    /**
+     * Connects two vertices (which need to have been added already).<br>
+     * <br>
+     * O(log^2 n) amortized
+     *
+     * @return  TRUE if the edge was added (FALSE if it's a loop or a
+     *          vertex is missing).
+     */
+    public boolean addEdge(int id1, int id2) {
+        Vertex u = mVertices.get(id1);
+        Vertex v = mVertices.get(id2);
+        if ((u == null) || (v == null) || (u == v)) {
+            return false;
+        }
+
+        EdgeRec edge = new EdgeRec(u, v);
+        edge.mNextCopy = mEdges.put(pairKey(id1, id2), edge);
+        u.mNumEdges++;
+        v.mNumEdges++;
+        mNumEdges++;
+        if (mStale) {
+            return true;    // it'll be in the rebuild
+        }
+
+        if (connected(u.node(0), v.node(0))) {
+            addNonTree(edge, 0);
+        }
+        else {
+            edge.mTree = true;
+            link(edge, 0);
+            mNumComponents--;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a whole bunch of edges at once: ids1[i] to ids2[i] for i up to
+     * count.  Loops and edges with a missing vertex are skipped, same as
+     * {@link #addEdge(int, int)}.<br>
+     * <br>
+     * Instead of linking the edges in one at a time, this just records
+     * them.  The forests are thrown away and the level 0 one is built over
+     * from scratch (see {@link #rebuild()}) the next time a question is
+     * asked.  Until then adding and removing single edges is O(1) too.
+     * So a bunch of calls in a row cost O(e) for the new edges plus one
+     * O(n + e) rebuild at the end: great for making a big graph, silly
+     * for adding a couple of edges to one.
+     *
+     * @return  The number of edges that were added.
+     */
+    public int addEdges(int[] ids1, int[] ids2, int count) {
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            Vertex u = mVertices.get(ids1[i]);
+            Vertex v = mVertices.get(ids2[i]);
+            if ((u == null) || (v == null) || (u == v)) {
+                continue;
+            }
+
+            EdgeRec edge = new EdgeRec(u, v);
+            edge.mNextCopy = mEdges.put(pairKey(ids1[i], ids2[i]), edge);
+            u.mNumEdges++;
+            v.mNumEdges++;
+            mNumEdges++;
+            added++;
+        }
+
+        if (added > 0) {
+            mStale = true;
+        }
+        return added;
+    }
+
+    /**
+     * Removes one edge between the two vertices.<br>
+     * <br>
+     * O(log^2 n) amortized
+     *
+     * @return  TRUE if there was such an edge.
+     */
+    public boolean removeEdge(int id1, int id2) {
+        long key = pairKey(id1, id2);
+        EdgeRec first = mEdges.get(key);
+        if (first == null) {
+            return false;
+        }
+
+        // If there are copies, take out a non-tree one (much less work).
+        EdgeRec edge = first;
+        EdgeRec before = null;
+        for (EdgeRec copy = first, previous = null; copy != null; previous = copy, copy = copy.mNextCopy) {
+            if (!copy.mTree) {
+                edge = copy;
+                before = previous;
+                break;
+            }
+        }
+        if (before != null) {
+            before.mNextCopy = edge.mNextCopy;
+        }
+        else if (edge.mNextCopy != null) {
+            mEdges.put(key, edge.mNextCopy);
+        }
+        else {
+            mEdges.remove(key);
+        }
+        edge.mU.mNumEdges--;
+        edge.mV.mNumEdges--;
+        mNumEdges--;
+        if (mStale) {
+            return true;    // the rebuild won't see it
+        }
+
+        if (!edge.mTree) {
+            removeNonTree(edge, edge.mLevel);
+            return true;
+        }
+
+        // It's a tree edge: cut it from every forest it's in, then look for
+        // a replacement, starting at its own level.
+        for (int i = 0; i <= edge.mLevel; i++) {
+            cut(edge, i);
+        }
+        for (int i = edge.mLevel; i >= 0; i--) {
+            if (replace(edge.mU, edge.mV, i)) {
+                return true;
+            }
+        }
+
+        // nothing could take its place: the component has split
+        mNumComponents++;
+        return true;
+    }
+
+    /**
+     * Tells if there's a path between the two vertices.  A vertex is
+     * always connected to itself.<br>
+     * <br>
+     * O(log n) amortized (plus a rebuild after {@link #addEdges})
+     */
+    public boolean isConnected(int id1, int id2) {
+        ensureForests();
+        Vertex u = mVertices.get(id1);
+        Vertex v = mVertices.get(id2);
+        if ((u == null) || (v == null)) {
+            return false;
+        }
+        return (u == v) || connected(u.node(0), v.node(0));
+    }
+
+    /**
+     * Returns the number of vertices in the component that holds the
+     * given vertex (including itself), or 0 if there's no such vertex.<br>
+     * <br>
+     * O(log n) amortized (plus a rebuild after {@link #addEdges})
+     */
+    public int componentSize(int id) {
+        ensureForests();
+        Vertex vertex = mVertices.get(id);
+        if (vertex == null) {
+            return 0;
+        }
+        EulerNode node = vertex.node(0);
+        splay(node);
+        return node.mVertexCount;
+    }
+
+    /** Number of connected components.  O(1) (plus a rebuild after {@link #addEdges}) */
+    public int numComponents() {
+        ensureForests();
+        return mNumComponents;
+    }
+
+    /**
+     * TRUE if the forests are built, so the questions are quick.  FALSE
+     * after {@link #addEdges(int[], int[], int)}, until the next question.
+     */
+    public boolean isUpToDate() {
+        return !mStale;
+    }
+
+    public int numVertices() {
+        return mVertices.size();
+    }
+
+    /** Number of edges, not counting loops. */
+    public int numEdges() {
+        return mNumEdges;
+    }
+
+    /** Removes all the vertices and edges. */
+    public void clear() {
+        mVertices.clear();
+        mEdges.clear();
+        mNumComponents = 0;
+        mNumEdges = 0;
+        mStale = false;
+    }
+
+    /**
+     * Makes a key for {@link #mEdges} that's the same no matter which
+     * order the vertices are in.  The bits are mixed up (multiplying by
+     * an odd number, so no two pairs collide): a Long's hash is just its
+     * two halves xor'd, and for edges like i to i + 1 that's nearly
+     * always the same handful of numbers.
+     */
+    private static long pairKey(int id1, int id2) {
+        int low = Math.min(id1, id2);
+        int high = Math.max(id1, id2);
+        return (((long) low << 32) | (high & 0xffffffffL)) * 0x9E3779B97F4A7C15L;
+    }
+
+
+    //-----------------------
+    //	edge levels
+    //-----------------------
+
+    /**
+     * After a tree edge between u and v at the given level has been cut,
+     * tries to find a non-tree edge at that level to reconnect them.
+     *
+     * @return  TRUE if a replacement was found (and is now a tree edge).
+     */
+    private boolean replace(Vertex u, Vertex v, int level) {
+        EulerNode uNode = u.node(level);
+        EulerNode vNode = v.node(level);
+        splay(uNode);
+        int uSize = uNode.mVertexCount;
+        splay(vNode);
+        int vSize = vNode.mVertexCount;
+
+        // Only ever search the smaller side; that's what makes this fast.
+        EulerNode small = (uSize <= vSize) ? uNode : vNode;
+
+        // Push all of the small side's tree edges at this level up one.  The
+        // small side has at most half the vertices, so it'll fit up there.
+        while (true) {
+            splay(small);
+            EulerNode arc = findTreeEdgeArc(small);
+            if (arc == null) {
+                break;
+            }
+            EdgeRec edge = arc.mEdge;
+            edge.mLevel = level + 1;
+            splay(arc);
+            arc.mTreeEdgeHere = false;
+            update(arc);
+            link(edge, level + 1);
+        }
+
+        // Now go through the non-tree edges of the small side.
+        while (true) {
+            splay(small);
+            EulerNode vertexNode = findNonTreeVertex(small);
+            if (vertexNode == null) {
+                return false;
+            }
+
+            Vertex vertex = vertexNode.mVertex;
+            HashSet<EdgeRec> nonTree = vertex.nonTree(level);
+            Iterator<EdgeRec> iterator = nonTree.iterator();
+            while (iterator.hasNext()) {
+                EdgeRec edge = iterator.next();
+                Vertex other = edge.other(vertex);
+                iterator.remove();
+                other.nonTree(level).remove(edge);
+                refreshNonTreeFlag(other, level);
+
+                if (connected(other.node(level), small)) {
+                    // Both ends are on the small side, so it's no help.  Move
+                    // it up a level so that we don't look at it here again.
+                    addNonTree(edge, level + 1);
+                }
+                else {
+                    // Found one!
+                    refreshNonTreeFlag(vertex, level);
+                    edge.mTree = true;
+                    for (int i = 0; i <= level; i++) {
+                        link(edge, i);
+                    }
+                    return true;
+                }
+            }
+            refreshNonTreeFlag(vertex, level);
+        }
+    }
+
+    /**
+     * Records a non-tree edge at the given level.
+     */
+    private void addNonTree(EdgeRec edge, int level) {
+        edge.mLevel = level;
+        edge.mU.nonTree(level).add(edge);
+        edge.mV.nonTree(level).add(edge);
+        refreshNonTreeFlag(edge.mU, level);
+        refreshNonTreeFlag(edge.mV, level);
+    }
+
+    /**
+     * Forgets a non-tree edge at the given level.
+     */
+    private void removeNonTree(EdgeRec edge, int level) {
+        edge.mU.nonTree(level).remove(edge);
+        edge.mV.nonTree(level).remove(edge);
+        refreshNonTreeFlag(edge.mU, level);
+        refreshNonTreeFlag(edge.mV, level);
+    }
+
+    /**
+     * Makes sure that the vertex's node in the given level's forest knows
+     * whether the vertex has any non-tree edges at that level.
+     */
+    private void refreshNonTreeFlag(Vertex vertex, int level) {
+        EulerNode node = vertex.node(level);
+        boolean hasNonTree = vertex.hasNonTree(level);
+        if (node.mNonTreeHere != hasNonTree) {
+            splay(node);
+            node.mNonTreeHere = hasNonTree;
+            update(node);
+        }
+    }
+
+
+    /** Builds the forests if {@link #addEdges} has left them behind. */
+    private void ensureForests() {
+        if (mStale) {
+            mStale = false;
+            rebuild();
+        }
+    }
+
+    /**
+     * Starts the forests over: every edge goes back to level 0, a spanning
+     * forest is picked with a union-find, and each tree's Euler tour is
+     * written out and made into a perfectly balanced splay tree.  Putting
+     * every edge at level 0 is always allowed (the levels are only there to
+     * pay for future searches), so all the invariants still hold.<br>
+     * <br>
+     * O(n + e)
+     */
+    private void rebuild() {
+        // number the vertices and forget all the old forests
+        Vertex[] vertices = mVertices.values().toArray(new Vertex[0]);
+        for (int i = 0; i < vertices.length; i++) {
+            Vertex vertex = vertices[i];
+            vertex.mIndex = i;
+            vertex.mNodes = null;
+            vertex.mNonTree = null;
+        }
+
+        // pick the tree edges; the rest are non-tree edges at level 0
+        UnionFind components = new UnionFind(vertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            components.add();
+        }
+        int[] treeDegrees = new int[vertices.length + 1];
+        List<EdgeRec> treeEdges = new ArrayList<>(vertices.length);
+        for (EdgeRec first : mEdges.values()) {
+            for (EdgeRec edge = first; edge != null; edge = edge.mNextCopy) {
+                edge.mLevel = 0;
+                edge.mArcs = null;
+                if (components.union(edge.mU.mIndex, edge.mV.mIndex)) {
+                    edge.mTree = true;
+                    treeEdges.add(edge);
+                    treeDegrees[edge.mU.mIndex]++;
+                    treeDegrees[edge.mV.mIndex]++;
+                }
+                else {
+                    edge.mTree = false;
+                    edge.mU.nonTree(0).add(edge);
+                    edge.mV.nonTree(0).add(edge);
+                }
+            }
+        }
+        mNumComponents = vertices.length - treeEdges.size();
+
+        // the tree edges of each vertex, CSR style
+        int[] offsets = new int[vertices.length + 1];
+        for (int i = 0; i < vertices.length; i++) {
+            offsets[i + 1] = offsets[i] + treeDegrees[i];
+        }
+        EdgeRec[] incident = new EdgeRec[offsets[vertices.length]];
+        int[] fill = Arrays.copyOf(offsets, vertices.length);
+        for (EdgeRec edge : treeEdges) {
+            incident[fill[edge.mU.mIndex]++] = edge;
+            incident[fill[edge.mV.mIndex]++] = edge;
+        }
+
+        for (Vertex vertex : vertices) {
+            EulerNode node = vertex.node(0);
+            node.mNonTreeHere = vertex.hasNonTree(0);
+            update(node);
+        }
+
+        // Write out each tree's tour (like link() makes them: the vertex,
+        // then for each child: down arc, child's tour, up arc) with an
+        // explicit stack, then balance it.
+        boolean[] done = new boolean[vertices.length];
+        int[] stackVertex = new int[vertices.length];
+        int[] stackNext = new int[vertices.length];
+        EdgeRec[] stackEdge = new EdgeRec[vertices.length];
+        EulerNode[] tour = new EulerNode[3 * vertices.length];
+
+        for (int root = 0; root < vertices.length; root++) {
+            if (done[root] || (treeDegrees[root] == 0)) {
+                continue;
+            }
+            int length = 0;
+            int depth = 0;
+            done[root] = true;
+            tour[length++] = vertices[root].node(0);
+            stackVertex[0] = root;
+            stackNext[0] = offsets[root];
+            stackEdge[0] = null;
+
+            while (depth >= 0) {
+                int at = stackVertex[depth];
+                if (stackNext[depth] == offsets[at + 1]) {
+                    // done with this one: back up the edge we came down
+                    EdgeRec up = stackEdge[depth];
+                    if (up != null) {
+                        tour[length++] = (vertices[at] == up.mU) ? up.arcUV(0) : up.arcVU(0);
+                    }
+                    depth--;
+                    continue;
+                }
+                EdgeRec edge = incident[stackNext[depth]++];
+                Vertex child = edge.other(vertices[at]);
+                if (done[child.mIndex]) {
+                    continue;       // the edge back to the parent
+                }
+                done[child.mIndex] = true;
+
+                EulerNode uv = new EulerNode(null, edge);
+                EulerNode vu = new EulerNode(null, edge);
+                uv.mTreeEdgeHere = true;
+                update(uv);
+                update(vu);
+                edge.setArcs(0, uv, vu);
+
+                tour[length++] = (vertices[at] == edge.mU) ? uv : vu;
+                tour[length++] = child.node(0);
+                depth++;
+                stackVertex[depth] = child.mIndex;
+                stackNext[depth] = offsets[child.mIndex];
+                stackEdge[depth] = edge;
+            }
+
+            buildBalanced(tour, 0, length - 1).mParent = null;
+        }
+    }
+
+    /**
+     * Makes a perfectly balanced splay tree out of part of a tour.
+     *
+     * @return  Its root.  The caller sets the root's parent.
+     */
+    private static EulerNode buildBalanced(EulerNode[] tour, int first, int last) {
+        int middle = (first + last) >>> 1;
+        EulerNode root = tour[middle];
+        root.mLeft = null;
+        root.mRight = null;
+        if (first < middle) {
+            root.mLeft = buildBalanced(tour, first, middle - 1);
+            root.mLeft.mParent = root;
+        }
+        if (middle < last) {
+            root.mRight = buildBalanced(tour, middle + 1, last);
+            root.mRight.mParent = root;
+        }
+        update(root);
+        return root;
+    }
+
+
+    //-----------------------
+    //	euler tour trees
+    //-----------------------
+
+    /**
+     * Tells if two nodes are in the same tree of the same forest.
+     */
+    private static boolean connected(EulerNode a, EulerNode b) {
+        if (a == b) {
+            return true;
+        }
+        splay(a);
+        splay(b);
+        // If they share a tree, b is now the root and a is below it.
+        return a.mParent != null;
+    }
+
+    /**
+     * Joins the trees of the edge's two vertices in the given level's
+     * forest, using the edge.
+     */
+    private static void link(EdgeRec edge, int level) {
+        EulerNode uNode = edge.mU.node(level);
+        EulerNode vNode = edge.mV.node(level);
+
+        EulerNode uv = new EulerNode(null, edge);
+        EulerNode vu = new EulerNode(null, edge);
+        uv.mTreeEdgeHere = (edge.mLevel == level);   // only one arc per edge gets flagged
+        edge.setArcs(level, uv, vu);
+
+        // tour(u) + (u->v) + tour(v) + (v->u)
+        EulerNode tour = join(reroot(uNode), uv);
+        tour = join(tour, reroot(vNode));
+        join(tour, vu);
+    }
+
+    /**
+     * Splits the edge's tree in the given level's forest into two by
+     * removing the edge.
+     */
+    private static void cut(EdgeRec edge, int level) {
+        EulerNode uv = edge.arcUV(level);
+        EulerNode vu = edge.arcVU(level);
+
+        // With the tour starting at u, it looks like:  A (u->v) B (v->u) C
+        // where B is all of v's side.
+        reroot(edge.mU.node(level));
+
+        EulerNode a = splitBefore(uv);
+        detachRight(uv);            // uv is alone now
+
+        splay(vu);
+        detachLeft(vu);             // B, which stays a tour of its own
+        EulerNode c = detachRight(vu);
+
+        join(a, c);
+        edge.setArcs(level, null, null);
+    }
+
+    /**
+     * Rotates the tour that holds the given vertex node so that it starts
+     * with that node.
+     *
+     * @return  The root of the tour's splay tree.
+     */
+    private static EulerNode reroot(EulerNode node) {
+        EulerNode before = splitBefore(node);
+        return join(node, before);
+    }
+
+    /**
+     * Cuts the tour just before the given node.
+     *
+     * @return  The root of the part before the node (may be null).  The node
+     *          is left as the root of the rest.
+     */
+    private static EulerNode splitBefore(EulerNode node) {
+        splay(node);
+        return detachLeft(node);
+    }
+
+    /** Removes and returns the left subtree of a root node. */
+    private static EulerNode detachLeft(EulerNode root) {
+        EulerNode left = root.mLeft;
+        if (left != null) {
+            root.mLeft = null;
+            left.mParent = null;
+            update(root);
+        }
+        return left;
+    }
+
+    /** Removes and returns the right subtree of a root node. */
+    private static EulerNode detachRight(EulerNode root) {
+        EulerNode right = root.mRight;
+        if (right != null) {
+            root.mRight = null;
+            right.mParent = null;
+            update(root);
+        }
+        return right;
+    }
+
+    /**
+     * Puts one tour after another.  Either may be null.
+     *
+     * @param left      Any node in the first tour.
+     *
+     * @param right     Any node in the second tour.
+     *
+     * @return  The root of the combined tour.
+     */
+    private static EulerNode join(EulerNode left, EulerNode right) {
+        if (left == null) {
+            if (right != null) {
+                splay(right);
+            }
+            return right;
+        }
+        if (right == null) {
+            splay(left);
+            return left;
+        }
+
+        // splay the last node of the left tour to its root
+        splay(left);
+        EulerNode last = left;
+        while (last.mRight != null) {
+            last = last.mRight;
+        }
+        splay(last);
+
+        splay(right);
+        last.mRight = right;
+        right.mParent = last;
+        update(last);
+        return last;
+    }
+
+    /**
+     * Looks under the given root for an arc of a tree edge whose level is
+     * the forest's level.
+     *
+     * @return  The arc, or null if there aren't any.
+     */
+    private static EulerNode findTreeEdgeArc(EulerNode root) {
+        if (!root.mAnyTreeEdge) {
+            return null;
+        }
+        EulerNode node = root;
+        while (!node.mTreeEdgeHere) {
+            if ((node.mLeft != null) && node.mLeft.mAnyTreeEdge) {
+                node = node.mLeft;
+            }
+            else {
+                node = node.mRight;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Looks under the given root for a vertex with non-tree edges at the
+     * forest's level.
+     *
+     * @return  The vertex's node, or null if there aren't any.
+     */
+    private static EulerNode findNonTreeVertex(EulerNode root) {
+        if (!root.mAnyNonTree) {
+            return null;
+        }
+        EulerNode node = root;
+        while (!node.mNonTreeHere) {
+            if ((node.mLeft != null) && node.mLeft.mAnyNonTree) {
+                node = node.mLeft;
+            }
+            else {
+                node = node.mRight;
+            }
+        }
+        return node;
+    }
+
+
+    //-----------------------
+    //	splay trees
+    //-----------------------
+
+    /**
+     * Recomputes the summary info of a node from its children.
+     */
+    private static void update(EulerNode node) {
+        int count = (node.mVertex != null) ? 1 : 0;
+        boolean anyTreeEdge = node.mTreeEdgeHere;
+        boolean anyNonTree = node.mNonTreeHere;
+
+        EulerNode left = node.mLeft;
+        if (left != null) {
+            count += left.mVertexCount;
+            anyTreeEdge |= left.mAnyTreeEdge;
+            anyNonTree |= left.mAnyNonTree;
+        }
+        EulerNode right = node.mRight;
+        if (right != null) {
+            count += right.mVertexCount;
+            anyTreeEdge |= right.mAnyTreeEdge;
+            anyNonTree |= right.mAnyNonTree;
+        }
+
+        node.mVertexCount = count;
+        node.mAnyTreeEdge = anyTreeEdge;
+        node.mAnyNonTree = anyNonTree;
+    }
+
+    /**
+     * Moves the node up one spot, keeping the order of the tour.
+     */
+    private static void rotate(EulerNode node) {
+        EulerNode parent = node.mParent;
+        EulerNode grandparent = parent.mParent;
+
+        if (parent.mLeft == node) {
+            parent.mLeft = node.mRight;
+            if (node.mRight != null) {
+                node.mRight.mParent = parent;
+            }
+            node.mRight = parent;
+        }
+        else {
+            parent.mRight = node.mLeft;
+            if (node.mLeft != null) {
+                node.mLeft.mParent = parent;
+            }
+            node.mLeft = parent;
+        }
+        parent.mParent = node;
+        node.mParent = grandparent;
+
+        if (grandparent != null) {
+            if (grandparent.mLeft == parent) {
+                grandparent.mLeft = node;
+            }
+            else {
+                grandparent.mRight = node;
+            }
+        }
+        update(parent);
+        update(node);
+    }
+
+    /**
+     * Moves the node to the root of its splay tree.
+     */
+    private static void splay(EulerNode node) {
+        while (node.mParent != null) {
+            EulerNode parent = node.mParent;
+            EulerNode grandparent = parent.mParent;
+            if (grandparent != null) {
+                boolean zigZig = (grandparent.mLeft == parent) == (parent.mLeft == node);
+                rotate(zigZig ? parent : node);
+            }
+            rotate(node);
+        }
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * One item of an Euler tour: either a vertex (each vertex appears once
+     * per forest) or one direction of a tree edge.  Also a splay tree node.
+     */
+    private static class EulerNode {
+        EulerNode mLeft, mRight, mParent;
+
+        /** The vertex, if this is a vertex node. Null for arcs. */
+        final Vertex mVertex;
+
+        /** The edge, if this is an arc.  Null for vertices. */
+        final EdgeRec mEdge;
+
+        /** Arcs: TRUE if this is the flagged arc of an edge at this forest's level */
+        boolean mTreeEdgeHere = false;
+
+        /** Vertices: TRUE if the vertex has non-tree edges at this forest's level */
+        boolean mNonTreeHere = false;
+
+        /** Number of vertex nodes in this subtree */
+        int mVertexCount;
+
+        /** TRUE if anything in this subtree has {@link #mTreeEdgeHere} set */
+        boolean mAnyTreeEdge = false;
+
+        /** TRUE if anything in this subtree has {@link #mNonTreeHere} set */
+        boolean mAnyNonTree = false;
+
+        EulerNode(Vertex vertex, EdgeRec edge) {
+            mVertex = vertex;
+            mEdge = edge;
+            mVertexCount = (vertex != null) ? 1 : 0;
+        }
+    }
+
+    /**
+     * A vertex, with its node and its non-tree edges for each level.
+     */
+    private static class Vertex {
+        final int mId;
+
+        /** Scratch space for {@link #rebuild()} */
+        int mIndex;
+
+        /** Number of edges that use this vertex */
+        int mNumEdges = 0;
+
+        /**
+         * This vertex's node in each forest. Made when first needed (plain
+         * arrays, since a big graph has a LOT of these).
+         */
+        private EulerNode[] mNodes;
+
+        /** This vertex's non-tree edges at each level. Made when first needed. */
+        private ArrayList<HashSet<EdgeRec>> mNonTree;
+
+        Vertex(int id) {
+            mId = id;
+        }
+
+        EulerNode node(int level) {
+            if ((mNodes == null) || (mNodes.length <= level)) {
+                int old = (mNodes == null) ? 0 : mNodes.length;
+                mNodes = (mNodes == null) ? new EulerNode[level + 1] : Arrays.copyOf(mNodes, level + 1);
+                for (int i = old; i <= level; i++) {
+                    mNodes[i] = new EulerNode(this, null);
+                }
+            }
+            return mNodes[level];
+        }
+
+        /** Same as !nonTree(level).isEmpty(), without making an empty set. */
+        boolean hasNonTree(int level) {
+            return (mNonTree != null) && (level < mNonTree.size()) && !mNonTree.get(level).isEmpty();
+        }
+
+        HashSet<EdgeRec> nonTree(int level) {
+            if (mNonTree == null) {
+                mNonTree = new ArrayList<>(2);
+            }
+            while (mNonTree.size() <= level) {
+                mNonTree.add(new HashSet<EdgeRec>(4));
+            }
+            return mNonTree.get(level);
+        }
+    }
+
+    /**
+     * An edge between two vertices.
+     */
+    private static class EdgeRec {
+        final Vertex mU, mV;
+
+        /** Tree edges are in the forests of levels 0..mLevel. */
+        int mLevel = 0;
+
+        /** TRUE if this edge is part of the spanning forests */
+        boolean mTree = false;
+
+        /** Another edge between the same two vertices, or null */
+        EdgeRec mNextCopy;
+
+        /**
+         * The arcs (u->v, v->u) for each level, while this is a tree edge.
+         * Null for the rest.
+         */
+        private EulerNode[] mArcs;
+
+        EdgeRec(Vertex u, Vertex v) {
+            mU = u;
+            mV = v;
+        }
+
+        Vertex other(Vertex vertex) {
+            return (vertex == mU) ? mV : mU;
+        }
+
+        void setArcs(int level, EulerNode uv, EulerNode vu) {
+            if ((mArcs == null) || (mArcs.length <= level * 2 + 1)) {
+                mArcs = (mArcs == null) ? new EulerNode[level * 2 + 2] : Arrays.copyOf(mArcs, level * 2 + 2);
+            }
+            mArcs[level * 2] = uv;
+            mArcs[level * 2 + 1] = vu;
+        }
+
+        EulerNode arcUV(int level) {
+            return mArcs[level * 2];
+        }
+
+        EulerNode arcVU(int level) {
+            return mArcs[level * 2 + 1];
+        }
+    }
+}
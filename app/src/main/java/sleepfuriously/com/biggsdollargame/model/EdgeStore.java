@@ -0,0 +1,257 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Arrays;
+
+/**
+ * Holds the edges of a {@link Graph} as three parallel int arrays (start,
+ * end, weight) instead of an object per edge.  An edge is known by its
+ * slot: 0..size-1.
+ *
+ * A small open-addressing hash table maps each (start, end) pair to its
+ * slot, so finding an edge is O(1).  Removing is O(1) too: the last edge
+ * is moved into the hole.  That means removing an edge changes the slot
+ * of ONE other edge (the one that was last), so don't hang onto slots
+ * across removals.
+ *
+ * Direction always matters here; it's up to the Graph to check the
+ * other direction for undirected graphs.  Duplicates are NOT checked.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class EdgeStore {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /** Marks an empty spot in the hash table */
+    private static final int EMPTY = -1;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private int[] mStarts;
+    private int[] mEnds;
+    private int[] mWeights;
+
+    /** Number of edges */
+    private int mSize = 0;
+
+    /** The hash table's keys: start and end packed by {@link #key(int, int)} */
+    private long[] mKeys;
+
+    /** The slot of the edge for each key, or {@link #EMPTY} */
+    private int[] mKeySlots;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    public EdgeStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity   Number of edges to make room for.
+     */
+    public EdgeStore(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        mStarts = new int[initialCapacity];
+        mEnds = new int[initialCapacity];
+        mWeights = new int[initialCapacity];
+
+        // keep the table at most half full
+        int tableSize = Integer.highestOneBit(initialCapacity) * 4;
+        mKeys = new long[tableSize];
+        mKeySlots = new int[tableSize];
+        Arrays.fill(mKeySlots, EMPTY);
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int start(int slot) {
+        return mStarts[slot];
+    }
+
+    public int end(int slot) {
+        return mEnds[slot];
+    }
+
+    public int weight(int slot) {
+        return mWeights[slot];
+    }
+
+    /**
+     * Adds an edge.  Does NOT check for duplicates!<br>
+     * <br>
+     * O(1) amortized
+     *
+     * @return  The slot of the new edge (always the last one).
+     */
+    public int add(int start, int end, int weight) {
+        if (mSize == mStarts.length) {
+            int newCapacity = mStarts.length * 2;
+            mStarts = Arrays.copyOf(mStarts, newCapacity);
+            mEnds = Arrays.copyOf(mEnds, newCapacity);
+            mWeights = Arrays.copyOf(mWeights, newCapacity);
+        }
+        if ((mSize + 1) * 2 > mKeys.length) {
+            rehash(mKeys.length * 2);
+        }
+
+        int slot = mSize++;
+        mStarts[slot] = start;
+        mEnds[slot] = end;
+        mWeights[slot] = weight;
+        put(key(start, end), slot);
+        return slot;
+    }
+
+    /**
+     * Makes room for this many edges all at once, so adding a big batch
+     * doesn't keep growing and rehashing.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > mStarts.length) {
+            mStarts = Arrays.copyOf(mStarts, capacity);
+            mEnds = Arrays.copyOf(mEnds, capacity);
+            mWeights = Arrays.copyOf(mWeights, capacity);
+        }
+        int tableSize = mKeys.length;
+        while (capacity * 2 > tableSize) {
+            tableSize *= 2;
+        }
+        if (tableSize > mKeys.length) {
+            rehash(tableSize);
+        }
+    }
+
+    /**
+     * Finds the edge that goes from start to end.<br>
+     * <br>
+     * O(1)
+     *
+     * @return  Its slot, or -1 if there's no such edge.
+     */
+    public int indexOf(int start, int end) {
+        long key = key(start, end);
+        int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; mKeySlots[i] != EMPTY; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                return mKeySlots[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the edge in the given slot by moving the last edge into
+     * its place.<br>
+     * <br>
+     * O(1)
+     */
+    public void removeAt(int slot) {
+        removeKey(key(mStarts[slot], mEnds[slot]));
+
+        int last = --mSize;
+        if (slot != last) {
+            mStarts[slot] = mStarts[last];
+            mEnds[slot] = mEnds[last];
+            mWeights[slot] = mWeights[last];
+            put(key(mStarts[slot], mEnds[slot]), slot);    // it moved
+        }
+    }
+
+    /** Removes all the edges, keeping the memory. */
+    public void clear() {
+        mSize = 0;
+        Arrays.fill(mKeySlots, EMPTY);
+    }
+
+    /**
+     * Packs a start and end node id into one number.  Order matters!
+     */
+    static long key(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    /** Mixes up the bits of a key so that nearby ids spread out. */
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /** Sets the slot for the key, adding it if it's not there. */
+    private void put(long key, int slot) {
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mKeySlots[i] != EMPTY) {
+            if (mKeys[i] == key) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mKeySlots[i] = slot;
+    }
+
+    /**
+     * Takes the key out of the hash table.  The entries after it are
+     * shifted back so that no "deleted" markers are needed.
+     */
+    private void removeKey(long key) {
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mKeys[i] != key) {
+            if (mKeySlots[i] == EMPTY) {
+                return;     // not here
+            }
+            i = (i + 1) & mask;
+        }
+        if (mKeySlots[i] == EMPTY) {
+            return;
+        }
+
+        // Walk the rest of the run and move back anything that
+        // would no longer be found with a hole at i.
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (mKeySlots[j] == EMPTY) {
+                break;
+            }
+            int home = hash(mKeys[j]) & mask;
+            // can j's entry live at the hole? (its home is not between hole and j)
+            boolean movable = (hole <= j) ? ((home <= hole) || (home > j))
+                                          : ((home <= hole) && (home > j));
+            if (movable) {
+                mKeys[hole] = mKeys[j];
+                mKeySlots[hole] = mKeySlots[j];
+                hole = j;
+            }
+        }
+        mKeySlots[hole] = EMPTY;
+    }
+
+    private void rehash(int newTableSize) {
+        mKeys = new long[newTableSize];
+        mKeySlots = new int[newTableSize];
+        Arrays.fill(mKeySlots, EMPTY);
+        for (int slot = 0; slot < mSize; slot++) {
+            put(key(mStarts[slot], mEnds[slot]), slot);
+        }
+    }
+}
@@ -9,16 +9,25 @@ import android.util.Log;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Library for directed and undirected graphs.
- * Note that this uses lists for its data, so it may
- * not be as fast as it could be.
+ * The edges are kept in an {@link EdgeStore}: parallel int
+ * arrays (start, end, weight) with an open-addressed hash
+ * index on (start, end), so finding an edge is O(1).  Removing
+ * one is O(1) too: the last edge is moved into its slot (so
+ * edge indices can change when an edge is removed).  Each node
+ * also keeps an index of its neighbors so that adjacency
+ * questions don't have to look through every edge.
  *
  *	USAGE:
  *		- When instantiating, provide a Node type to fill
@@ -45,6 +54,17 @@ public class Graph<T>
 
     private static final String TAG = "Graph";
 
+    /**
+     * How {@link #getNodeId(Object)} decides that two pieces of node data
+     * are the same.
+     */
+    public enum DataLookup {
+        /** Uses equals() and hashCode(), like a HashMap (the default) */
+        EQUALS,
+        /** Only the very same object counts (==), like an IdentityHashMap */
+        IDENTITY
+    }
+
     //-----------------------
     //	data
     //-----------------------
@@ -65,16 +85,82 @@ public class Graph<T>
     private List<Integer> mVisited = new ArrayList<>();
 
     /**
-     * Holds all the edges.
+     * Holds all the edges, as plain int arrays with a lookup table
+     * (no Edge objects).  The index of an edge is its slot in here.
      *
      * Note that for a undirected graph, there will be just one
      * edge--startNode and endNode are the same things for them.
      */
-    private List<Edge> mEdges = new ArrayList<>();
+    private EdgeStore mEdges = new EdgeStore();
+
+    /** What {@link #getAllEdges()} returns.  It reads {@link #mEdges} directly. */
+    private final List<Edge> mEdgeView = new AbstractList<Edge>() {
+        @Override
+        public Edge get(int index) {
+            return getEdge(index);
+        }
+
+        @Override
+        public int size() {
+            return mEdges.size();
+        }
+    };
+
+    /**
+     * For each node id, the ids of the nodes at the END of the edges
+     * that START with this node.
+     */
+    @SuppressLint("UseSparseArrays")
+    private HashMap<Integer, IntArrayList> mOutNeighbors = new HashMap<>();
+
+    /**
+     * For each node id, the ids of the nodes at the START of the edges
+     * that END with this node.  Together with {@link #mOutNeighbors},
+     * this gives every edge that touches a node.
+     */
+    @SuppressLint("UseSparseArrays")
+    private HashMap<Integer, IntArrayList> mInNeighbors = new HashMap<>();
 
     /** Tells whether this is a directed graph or undirected (default) */
     private boolean mDirected = false;
 
+    /**
+     * The most recent snapshot made by {@link #freeze()}.  Set to null
+     * whenever the Graph changes so that the next freeze() will make
+     * a fresh one.
+     */
+    @Nullable
+    private CsrGraph mFrozen = null;
+
+    /**
+     * Keeps track of which nodes are connected to each other.  It's kept
+     * up to date as nodes and edges are added and removed, so it never
+     * has to be rebuilt.  Edges are treated as undirected here.
+     */
+    private DynamicConnectivity mConnectivity = new DynamicConnectivity();
+
+    /** Knows which node ids are taken, for {@link #getUniqueNodeId()} */
+    private NodeIdAllocator mIdAllocator = new NodeIdAllocator();
+
+    /**
+     * The reverse of {@link #mNodes}: finds the ids of the nodes that
+     * hold a piece of data.  There's a list because nothing stops two
+     * nodes from holding equal data.
+     */
+    private Map<T, IntArrayList> mDataIds;
+
+    /** How {@link #mDataIds} compares data */
+    private DataLookup mDataLookup;
+
+    /**
+     * An immutable copy of this Graph, made the first time that
+     * {@link #snapshot()} is called and then kept up to date with every
+     * change (which is only O(log n) for each change).  Null until then,
+     * so Graphs that never need snapshots don't pay for them.
+     */
+    @Nullable
+    private PersistentGraph<T> mSnapshot = null;
+
     //-----------------------
     //	constructors
     //-----------------------
@@ -83,6 +169,7 @@ public class Graph<T>
      * Basic constructor. Graph will be undirected (default)!
      */
     public Graph() {
+        this(false);
     }
 
     /**
@@ -90,7 +177,24 @@ public class Graph<T>
      * Undirected is the default.
      */
     public Graph(boolean directed) {
+        this(directed, DataLookup.EQUALS);
+    }
+
+    /**
+     * Also lets you pick how {@link #getNodeId(Object)} matches data.
+     * IDENTITY is a good choice when the data are objects like Views
+     * that are unique anyway, or whose hashCode() can change while
+     * they're in the Graph.
+     */
+    public Graph(boolean directed, DataLookup dataLookup) {
         mDirected = directed;
+        mDataLookup = dataLookup;
+        if (dataLookup == DataLookup.IDENTITY) {
+            mDataIds = new IdentityHashMap<>();
+        }
+        else {
+            mDataIds = new HashMap<>();
+        }
     }
 
 
@@ -98,18 +202,20 @@ public class Graph<T>
     //	methods
     //-----------------------
 
+    public boolean isDirected() {
+        return mDirected;
+    }
+
     /**
      * Returns an id that is guaranteed to be unique from any node already
-     * in the Graph.
-     *
-     * O(n)
+     * in the Graph.  It's always the LOWEST unused id, so a Graph whose
+     * nodes were all added this way (and none removed) has the ids
+     * 0..n-1.  Ids freed by {@link #removeNode(int)} get used again.<br>
+     * <br>
+     * O(1) amortized
      */
     public int getUniqueNodeId() {
-        int id = 0;
-        while (mNodes.get(id) != null) {
-            id++;
-        }
-        return id;
+        return mIdAllocator.lowestFree();
     }
 
     /**
@@ -130,6 +236,21 @@ public class Graph<T>
         }
 
         mNodes.put(id, nodeData);
+        mIdAllocator.markUsed(id);
+
+        IntArrayList dataIds = mDataIds.get(nodeData);
+        if (dataIds == null) {
+            dataIds = new IntArrayList(1);
+            mDataIds.put(nodeData, dataIds);
+        }
+        dataIds.add(id);
+
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withNode(id, nodeData);
+        }
+
+        modified();
+        addToConnectivity(id);
     }
 
     /**
@@ -162,18 +283,12 @@ public class Graph<T>
      *          -1 if this is a duplicate edge.
      */
     public int addEdge(int startNodeId, int endNodeId, int weight) {
-        if (getEdgeIndex(startNodeId, endNodeId) != -1) {
+        if (findEdge(startNodeId, endNodeId) != -1) {
             Log.e(TAG, "Tried to add duplicate edge!");
             return -1;
         }
 
-        Edge edge = new Edge();
-        edge.startNodeId = startNodeId;
-        edge.endNodeId = endNodeId;
-        edge.weight = weight;
-
-        mEdges.add(edge);
-        return mEdges.size();
+        return addEdgeUnchecked(startNodeId, endNodeId, weight);
     }
 
     /**
@@ -185,23 +300,44 @@ public class Graph<T>
      * Relies on {@link #mDirected} to determine if direction
      * matters.<br>
      * <br>
-     * O(n)
+     * Removing an edge moves the LAST edge into its index, so indices
+     * are only good until the next removal.<br>
+     * <br>
+     * O(1)
      */
     public int getEdgeIndex(int startNodeId, int endNodeId) {
-        for (int i = 0; i < mEdges.size(); i++) {
-            Edge edge = mEdges.get(i);
-            if ((startNodeId == edge.startNodeId) &&
-                (endNodeId == edge.endNodeId)) {
-                return i;
-            }
-            if (!mDirected) {
-                if ((startNodeId == edge.endNodeId) &&
-                        (endNodeId == edge.startNodeId)) {
-                    return i;
-                }
-            }
+        return findEdge(startNodeId, endNodeId);
+    }
+
+    /**
+     * Finds the slot of the edge with the given start and end nodes in
+     * {@link #mEdges}.  Like {@link #getEdgeIndex(int, int)}, this uses
+     * {@link #mDirected} to decide if the reverse direction counts too.<br>
+     * <br>
+     * O(1)
+     *
+     * @return  The slot or -1 if not found.
+     */
+    private int findEdge(int startNodeId, int endNodeId) {
+        int slot = mEdges.indexOf(startNodeId, endNodeId);
+        if ((slot == -1) && !mDirected) {
+            slot = mEdges.indexOf(endNodeId, startNodeId);
         }
-        return -1;
+        return slot;
+    }
+
+    /**
+     * Returns the neighbor list for the given node from one of the
+     * neighbor maps, creating it if it's not there yet.
+     */
+    private static IntArrayList getOrCreateNeighbors(HashMap<Integer, IntArrayList> neighbors,
+                                                     int nodeId) {
+        IntArrayList list = neighbors.get(nodeId);
+        if (list == null) {
+            list = new IntArrayList();
+            neighbors.put(nodeId, list);
+        }
+        return list;
     }
 
 
@@ -213,13 +349,91 @@ public class Graph<T>
     }
 
     /**
-     * private util method to simplify a few things
+     * Adds lots of edges at once (no weights): starts[i] to ends[i] for i
+     * up to count.  This is the fast way to build a big graph, like the
+     * ones from {@link GraphGenerator}.<br>
+     * <br>
+     * It does NOT check for duplicates--that's the caller's job.  And the
+     * connectivity isn't worked out edge by edge: it's built in one go,
+     * O(n + e), the first time it's asked about (see
+     * {@link DynamicConnectivity#addEdges(int[], int[], int)}).  So this is
+     * O(count), and several calls in a row are fine.  Use
+     * {@link #addEdge(int, int)} to add just a few to a graph that's
+     * being asked about.
+     *
+     * @return  The number of edges now.
      */
-    private int addEdge(Edge edge) {
-        mEdges.add(edge);
+    public int addEdges(int[] starts, int[] ends, int count) {
+        mEdges.ensureCapacity(mEdges.size() + count);
+        for (int i = 0; i < count; i++) {
+            storeEdge(starts[i], ends[i], 0);
+        }
+        mConnectivity.addEdges(starts, ends, count);    // skips nodes that aren't here
         return mEdges.size();
     }
 
+    /**
+     * private util method to simplify a few things.  Does NOT check
+     * for duplicates, but it does keep all the indices up to date.
+     *
+     * @return  The number of edges now.
+     */
+    private int addEdgeUnchecked(int startNodeId, int endNodeId, int weight) {
+        if (mNodes.containsKey(startNodeId) && mNodes.containsKey(endNodeId)) {
+            mConnectivity.addEdge(startNodeId, endNodeId);
+        }
+        storeEdge(startNodeId, endNodeId, weight);
+        return mEdges.size();
+    }
+
+    /**
+     * Puts an edge in {@link #mEdges}, the neighbor lists and the
+     * snapshot--everything but {@link #mConnectivity}, which the callers
+     * do their own ways.
+     */
+    private void storeEdge(int startNodeId, int endNodeId, int weight) {
+        modified();
+        mEdges.add(startNodeId, endNodeId, weight);
+
+        getOrCreateNeighbors(mOutNeighbors, startNodeId).add(endNodeId);
+        if (startNodeId != endNodeId) {
+            // a loop to itself only needs to be listed once
+            getOrCreateNeighbors(mInNeighbors, endNodeId).add(startNodeId);
+        }
+
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withEdge(startNodeId, endNodeId, weight);
+        }
+    }
+
+    /**
+     * Removes the edge in the given slot of {@link #mEdges}, along with
+     * everything that refers to it.  The last edge moves into its slot.
+     */
+    private void removeEdgeAt(int slot) {
+        int startNodeId = mEdges.start(slot);
+        int endNodeId = mEdges.end(slot);
+
+        modified();
+        mConnectivity.removeEdge(startNodeId, endNodeId);
+        mEdges.removeAt(slot);
+
+        IntArrayList outList = mOutNeighbors.get(startNodeId);
+        if (outList != null) {
+            outList.removeValue(endNodeId);
+        }
+        if (startNodeId != endNodeId) {
+            IntArrayList inList = mInNeighbors.get(endNodeId);
+            if (inList != null) {
+                inList.removeValue(startNodeId);
+            }
+        }
+
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withoutEdgeExactly(startNodeId, endNodeId);
+        }
+    }
+
 
     /**
      * Creates an exact duplicate of this graph.
@@ -231,7 +445,7 @@ public class Graph<T>
     @SuppressWarnings({"MethodDoesntCallSuperMethod", "NullableProblems"})
     @Nullable
     public Graph clone() {
-        Graph<T> newGraph = new Graph<>(mDirected);
+        Graph<T> newGraph = new Graph<>(mDirected, mDataLookup);
 
         // Copying the nodes is a little tricky as it's base
         // is a HashMap.
@@ -255,8 +469,7 @@ public class Graph<T>
 
         // The edges are much easier
         for (int i =0; i < mEdges.size(); i++) {
-            Edge edge = mEdges.get(i);
-            newGraph.addEdge(edge);
+            newGraph.addEdgeUnchecked(mEdges.start(i), mEdges.end(i), mEdges.weight(i));
         }
 
         return newGraph;
@@ -267,7 +480,7 @@ public class Graph<T>
      * Returns a list of all the node IDs adjacent to the given node.
      * If none, this returns an empty list.<br>
      *<br>
-     *	O(n)<br>
+     *	O(degree)<br>
      *
      * @param	nodeId		The ID of the node in question.
      *
@@ -276,24 +489,21 @@ public class Graph<T>
     public List<Integer> getAllAdjacentTo(int nodeId, boolean directed) {
 
         List<Integer> adjacentList = new ArrayList<>();
-        List<Edge> edgeList = getEdges(nodeId);
-
-        for (int i = 0; i < edgeList.size(); i++) {
-            Edge edge = edgeList.get(i);
-            if (directed) {
-                if (edge.startNodeId == nodeId) {
-                    // This is an edge that stars with our node.
-                    // Add the end node to our list.
-                    adjacentList.add(edge.endNodeId);
-                }
+
+        // Edges that start with our node: the end node is adjacent.
+        IntArrayList outList = mOutNeighbors.get(nodeId);
+        if (outList != null) {
+            for (int i = 0; i < outList.size(); i++) {
+                adjacentList.add(outList.get(i));
             }
-            else {
-                // undirected--just include the other node.
-                if (edge.startNodeId == nodeId) {
-                    adjacentList.add(edge.endNodeId);
-                }
-                else {
-                    adjacentList.add(edge.startNodeId);
+        }
+
+        if (!directed) {
+            // undirected--the start of edges that end here count too.
+            IntArrayList inList = mInNeighbors.get(nodeId);
+            if (inList != null) {
+                for (int i = 0; i < inList.size(); i++) {
+                    adjacentList.add(inList.get(i));
                 }
             }
         }
@@ -305,7 +515,7 @@ public class Graph<T>
      * Returns a list of all the node IDs adjacent to the given node.
      * If none, this returns an empty list.<br>
      *<br>
-     *	O(n)<br>
+     *	O(degree)<br>
      *<br>
      * Like {@link #getAllAdjacentTo(int, boolean)}, but this uses the current
      * directedness of the Graph.
@@ -317,6 +527,90 @@ public class Graph<T>
     }
 
 
+    /**
+     * Calls the consumer once for every node adjacent to the given node.
+     * Nothing is allocated or boxed, so this is the way to go for code
+     * that runs a lot.<br>
+     * <br>
+     * O(degree)
+     *
+     * @param	nodeId		The ID of the node in question.
+     *
+     * @param	directed	True to only use edges that start with this node.
+     *
+     * @param   consumer    Receives the id of each neighbor.
+     */
+    public void forEachNeighbor(int nodeId, boolean directed, IntConsumer consumer) {
+        IntArrayList outList = mOutNeighbors.get(nodeId);
+        if (outList != null) {
+            for (int i = 0; i < outList.size(); i++) {
+                consumer.accept(outList.get(i));
+            }
+        }
+
+        if (!directed) {
+            IntArrayList inList = mInNeighbors.get(nodeId);
+            if (inList != null) {
+                for (int i = 0; i < inList.size(); i++) {
+                    consumer.accept(inList.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Like {@link #forEachNeighbor(int, boolean, IntConsumer)}, but this uses
+     * the current directedness of the Graph.
+     */
+    public void forEachNeighbor(int nodeId, IntConsumer consumer) {
+        forEachNeighbor(nodeId, mDirected, consumer);
+    }
+
+    /**
+     * Sets up a cursor to walk through all the nodes adjacent to the given
+     * node (using the current directedness of the Graph).  Pass in the cursor
+     * from last time to avoid making a new one.<br>
+     * <br>
+     * O(1)
+     *
+     * @param	nodeId		The ID of the node in question.
+     *
+     * @param   cursor      A cursor to reuse.  If null, a new one is made.
+     *
+     * @return  The cursor, ready to go.
+     */
+    public IntCursor neighbors(int nodeId, @Nullable IntCursor cursor) {
+        if (cursor == null) {
+            cursor = new IntCursor();
+        }
+        cursor.reset(mOutNeighbors.get(nodeId),
+                     mDirected ? null : mInNeighbors.get(nodeId));
+        return cursor;
+    }
+
+    /**
+     * Returns the number of nodes adjacent to the given node.  For directed
+     * graphs this is only the edges that start with this node.<br>
+     * <br>
+     * O(1)
+     */
+    public int degree(int nodeId) {
+        int degree = 0;
+
+        IntArrayList outList = mOutNeighbors.get(nodeId);
+        if (outList != null) {
+            degree += outList.size();
+        }
+
+        if (!mDirected) {
+            IntArrayList inList = mInNeighbors.get(nodeId);
+            if (inList != null) {
+                degree += inList.size();
+            }
+        }
+        return degree;
+    }
+
     /**
      * Returns a list of all the node ids for this graph.
      */
@@ -344,54 +638,40 @@ public class Graph<T>
     }
 
     /**
-     * Returns the id of the first node to match the given
-     * data.<br>
+     * Returns the id of the node that holds the given data.  If more
+     * than one does, the lowest id is returned.  Whether data "matches"
+     * depends on the {@link DataLookup} that this Graph was made with.<br>
      * <br>
-     * O(n)
+     * O(1) (unless lots of nodes hold the same data)
      *
      *	@return		The key or null if not found.
      */
     public Integer getNodeId(T data) {
-        // Note: the id is also the key
-        Set<Integer> keys = mNodes.keySet();
-
-        for (int key : keys) {
-            // Now get the associated data with this key and
-            // test it against the input param
-            T tmpData = mNodes.get(key);
-            assert tmpData != null;
-            if (tmpData.equals(data)) {
-                return key;
-            }
+        IntArrayList ids = mDataIds.get(data);
+        if ((ids == null) || ids.isEmpty()) {
+            return null;
+        }
+
+        int lowest = ids.get(0);
+        for (int i = 1; i < ids.size(); i++) {
+            lowest = Math.min(lowest, ids.get(i));
         }
-        return null;
+        return lowest;
+    }
+
+    /** Tells how {@link #getNodeId(Object)} matches data. */
+    public DataLookup getDataLookup() {
+        return mDataLookup;
     }
 
     /**
      * Curious if two nodes are adjacent?  Use this to find out!
-     * For undirected graphs, the order doesn't matter.
+     * For undirected graphs, the order doesn't matter.<br>
+     * <br>
+     * O(1)
      */
     public boolean isAdjacent(int startNodeId, int endNodeId) {
-        boolean found = false;
-
-        // simply go through our adjacency list and see if there's a match.
-        for (Edge edge : mEdges) {
-            if ((edge.startNodeId == startNodeId) &&
-                    (edge.endNodeId == endNodeId)) {
-                found = true;
-                break;
-            }
-            else if (mDirected == false) {
-                // special case for undirected graphs
-                if ((edge.startNodeId == endNodeId) &&
-                        (edge.endNodeId == startNodeId)) {
-                    found = true;
-                    break;
-                }
-            }
-
-        }
-        return found;
+        return findEdge(startNodeId, endNodeId) != -1;
     }
 
 
@@ -423,6 +703,13 @@ public class Graph<T>
      * And a graph with a just 1 node is connected ONLY if
      * it connects to itself.
      *
+     * This asks {@link #mConnectivity}, which is kept up to date on every
+     * edit, instead of going through {@link #freeze()}:  freezing after
+     * every edit would be O(n log n + e) each time, and the answer is
+     * handed to the snapshot anyway ({@link CsrGraph#isConnected()}).
+     *
+     * O(1), except O(n + e) the first time after {@link #addEdges}
+     *
      * todo: write a Strongly Connected graph routine, that
      * tells if in a directed graph any node can get to any node.
      */
@@ -433,53 +720,218 @@ public class Graph<T>
             return false;
         }
 
-        // create a list of visited vertices
-        List<Integer> visited = new ArrayList<>();
+        return numComponents() == 1;
+    }
 
-        // start with any old key/ID (since HashMaps are not really ordered).
-        int anId = mNodes.keySet().iterator().next();	// finds the "first" key
-        isConnectedHelper(anId, visited);
+    /**
+     * Returns the number of connected components of this Graph (using
+     * weak connectivity for directed graphs).  A graph with no nodes
+     * has 0 components; each node without any edges is a component
+     * of its own.<br>
+     * <br>
+     * O(1), except O(n + e) the first time after {@link #addEdges}
+     */
+    public int numComponents() {
+        return mConnectivity.numComponents();
+    }
 
-        // if the size of the visited list is the same as our number of
-        // nodes, then we'll know that all were visited. This can only
-        // happen if the graph is connected!
-        return (visited.size() == mNodes.size());
+    /**
+     * Returns the number of nodes in the same connected component as the
+     * given node (counting itself), or 0 if there is no such node.<br>
+     * <br>
+     * O(log n)
+     */
+    public int componentSize(int nodeId) {
+        return mConnectivity.componentSize(nodeId);
     }
 
     /**
-     * Does a recursive depth-first search of the Graph's edges
-     * (assumes that it is undirected!).
-     *
-     *	@param	nodeId		An unvisited node in the Graph. This method
-     *						will find all the edges that it connects to
-     *						and so one.
+     * Tells if there's a path between two nodes (ignoring direction).<br>
+     * <br>
+     * O(log n)
+     */
+    public boolean isConnected(int nodeId1, int nodeId2) {
+        return mConnectivity.isConnected(nodeId1, nodeId2);
+    }
+
+    /**
+     * Puts a new node into {@link #mConnectivity}.  Usually it's all by
+     * itself, but edges may have been added to this id before the
+     * node was.
+     */
+    private void addToConnectivity(int nodeId) {
+        mConnectivity.addVertex(nodeId);
+
+        IntArrayList outList = mOutNeighbors.get(nodeId);
+        if (outList != null) {
+            for (int i = 0; i < outList.size(); i++) {
+                if (mNodes.containsKey(outList.get(i))) {
+                    mConnectivity.addEdge(nodeId, outList.get(i));
+                }
+            }
+        }
+        IntArrayList inList = mInNeighbors.get(nodeId);
+        if (inList != null) {
+            for (int i = 0; i < inList.size(); i++) {
+                if (mNodes.containsKey(inList.get(i))) {
+                    mConnectivity.addEdge(nodeId, inList.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an immutable compressed sparse row snapshot of this Graph.
+     * Analysis code should use it instead of walking the Graph itself.
      *
-     *	@param	visited		A list of visited nodes. These will be
-     *						added to as the nodes are visited.  Yes,
-     *						this data structure WILL BE MODIFIED.
+     * The snapshot is only rebuilt after the Graph has changed, so calling
+     * this over and over is cheap.<br>
+     * <br>
+     * O(n log n + e) to rebuild, O(1) otherwise.
      */
-    private void isConnectedHelper(int nodeId, List<Integer> visited) {
-//		System.out.println("entering isConnectedHelper(" + nodeId + ", " + visited + ")");
+    public CsrGraph freeze() {
+        if (mFrozen == null) {
+            mFrozen = buildCsr();
+            if (mConnectivity.isUpToDate()) {
+                // otherwise the snapshot's own search is quicker than a rebuild
+                mFrozen.rememberConnected(isConnected());
+            }
+        }
+        return mFrozen;
+    }
+
+    /**
+     * Returns an immutable copy of the Graph as it is right now.  Unlike
+     * {@link #clone()}, this is cheap: the first call copies the Graph, but
+     * after that the copy is kept up to date as the Graph changes, and
+     * each call just hands out the current version.  The versions handed
+     * out never change, so they're safe to give to a background thread
+     * while this Graph keeps getting edited.<br>
+     * <br>
+     * O(1) (except the first time)
+     */
+    public PersistentGraph<T> snapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = PersistentGraph.from(this);
+        }
+        return mSnapshot;
+    }
 
-        // Start by adding this node to the visited list.
-        visited.add(nodeId);
+    /**
+     * Does the work of {@link #freeze()}.
+     */
+    private CsrGraph buildCsr() {
+        // dense indices are assigned in order of the node ids
+        int numNodes = mNodes.size();
+        int[] ids = new int[numNodes];
+        int i = 0;
+        for (int id : mNodes.keySet()) {
+            ids[i++] = id;
+        }
+        Arrays.sort(ids);
 
-        // For considering connectivity, we always use an undirected graph
-        List<Integer> adjacentNodeIds = getAllAdjacentTo(nodeId, false);
+        int[] offsets = new int[numNodes + 1];
+        for (i = 0; i < numNodes; i++) {
+            offsets[i + 1] = offsets[i] + countNeighborsInGraph(ids, ids[i], mOutNeighbors)
+                    + (mDirected ? 0 : countNeighborsInGraph(ids, ids[i], mInNeighbors));
+        }
 
-        for (Integer adjacentNodeId : adjacentNodeIds) {
-            if (visited.contains(adjacentNodeId) == false) {
-                // not found in the visited list, do it!
-                isConnectedHelper(adjacentNodeId, visited);
+        int[] targets = new int[offsets[numNodes]];
+        int[] weights = new int[offsets[numNodes]];
+        for (i = 0; i < numNodes; i++) {
+            int position = offsets[i];
+
+            // edges that start with this node
+            IntArrayList outList = mOutNeighbors.get(ids[i]);
+            if (outList != null) {
+                for (int k = 0; k < outList.size(); k++) {
+                    int target = Arrays.binarySearch(ids, outList.get(k));
+                    if (target >= 0) {
+                        targets[position] = target;
+                        weights[position] = mEdges.weight(mEdges.indexOf(ids[i], outList.get(k)));
+                        position++;
+                    }
+                }
+            }
+
+            if (!mDirected) {
+                // edges that end with this node
+                IntArrayList inList = mInNeighbors.get(ids[i]);
+                if (inList != null) {
+                    for (int k = 0; k < inList.size(); k++) {
+                        int target = Arrays.binarySearch(ids, inList.get(k));
+                        if (target >= 0) {
+                            targets[position] = target;
+                            weights[position] = mEdges.weight(mEdges.indexOf(inList.get(k), ids[i]));
+                            position++;
+                        }
+                    }
+                }
             }
         }
+
+        int[] inOffsets = null;
+        int[] inSources = null;
+        if (mDirected) {
+            // directed graphs get a second set of rows for the incoming edges
+            inOffsets = new int[numNodes + 1];
+            for (i = 0; i < numNodes; i++) {
+                inOffsets[i + 1] = inOffsets[i] + countNeighborsInGraph(ids, ids[i], mInNeighbors);
+            }
+            inSources = new int[inOffsets[numNodes]];
+            for (i = 0; i < numNodes; i++) {
+                int position = inOffsets[i];
+                IntArrayList inList = mInNeighbors.get(ids[i]);
+                if (inList != null) {
+                    for (int k = 0; k < inList.size(); k++) {
+                        int source = Arrays.binarySearch(ids, inList.get(k));
+                        if (source >= 0) {
+                            inSources[position++] = source;
+                        }
+                    }
+                }
+            }
+        }
+
+        return new CsrGraph(mDirected, ids, offsets, targets, weights,
+                            inOffsets, inSources, mEdges.size());
+    }
+
+    /**
+     * Helper for {@link #buildCsr()}.  Counts the neighbors of a node from the
+     * given neighbor map, skipping any edges that lead to ids that aren't
+     * actually nodes (addEdge() doesn't check).
+     *
+     * @param sortedIds     All the node ids, sorted.
+     */
+    private static int countNeighborsInGraph(int[] sortedIds, int nodeId,
+                                             HashMap<Integer, IntArrayList> neighbors) {
+        IntArrayList list = neighbors.get(nodeId);
+        if (list == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int k = 0; k < list.size(); k++) {
+            if (Arrays.binarySearch(sortedIds, list.get(k)) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Call this whenever the nodes or edges change.  Throws away
+     * anything that was figured out from the old Graph.
+     */
+    private void modified() {
+        mFrozen = null;
     }
 
     /**
      * Find all the edges that use the given node.
      * If none are found, the returned list will be empty.
      *
-     *	O(n)
+     *	O(degree)
      *
      * @param	nodeId		The ID of the node in question.
      *
@@ -490,10 +942,17 @@ public class Graph<T>
 
         List<Edge> edgeList = new ArrayList<>();
 
-        for (int i = 0; i < mEdges.size(); i++) {
-            Edge edge = mEdges.get(i);
-            if ((edge.startNodeId == nodeId) || (edge.endNodeId == nodeId)) {
-                edgeList.add(edge);
+        IntArrayList outList = mOutNeighbors.get(nodeId);
+        if (outList != null) {
+            for (int i = 0; i < outList.size(); i++) {
+                edgeList.add(getEdge(mEdges.indexOf(nodeId, outList.get(i))));
+            }
+        }
+
+        IntArrayList inList = mInNeighbors.get(nodeId);
+        if (inList != null) {
+            for (int i = 0; i < inList.size(); i++) {
+                edgeList.add(getEdge(mEdges.indexOf(inList.get(i), nodeId)));
             }
         }
 
@@ -534,10 +993,29 @@ public class Graph<T>
     public boolean removeNode(int id) {
 
         removeEdgesWithNode(id);
+        mOutNeighbors.remove(id);
+        mInNeighbors.remove(id);
 
-        if (mNodes.remove(id) == null) {
+        if (!mNodes.containsKey(id)) {
             return false;
         }
+        T data = mNodes.remove(id);
+        mIdAllocator.free(id);
+
+        IntArrayList dataIds = mDataIds.get(data);
+        if (dataIds != null) {
+            dataIds.removeValue(id);
+            if (dataIds.isEmpty()) {
+                mDataIds.remove(data);
+            }
+        }
+
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withoutNode(id);
+        }
+
+        modified();
+        mConnectivity.removeVertex(id);
         return true;
     }
 
@@ -548,6 +1026,13 @@ public class Graph<T>
     public void removeAllNodes() {
         removeAllEdges();
         mNodes.clear();
+        mIdAllocator.clear();
+        mDataIds.clear();
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withoutAllNodes();
+        }
+        modified();
+        mConnectivity.clear();
     }
 
 
@@ -558,12 +1043,19 @@ public class Graph<T>
      */
     public int removeEdgesWithNode(int nodeId) {
         int count = 0;
-        for (int i = mEdges.size() - 1; i >= 0; i--) {  // have to go backwards as this is a destructive loop!
-            Edge edge = mEdges.get(i);
-            if ((edge.startNodeId == nodeId) || (edge.endNodeId == nodeId)) {
-                count++;
-                mEdges.remove(i);
-            }
+
+        // Each removal takes the neighbor out of the list, so just keep
+        // taking the last one until they're gone.  O(degree)
+        IntArrayList outList = mOutNeighbors.get(nodeId);
+        while ((outList != null) && !outList.isEmpty()) {
+            removeEdgeAt(mEdges.indexOf(nodeId, outList.get(outList.size() - 1)));
+            count++;
+        }
+
+        IntArrayList inList = mInNeighbors.get(nodeId);
+        while ((inList != null) && !inList.isEmpty()) {
+            removeEdgeAt(mEdges.indexOf(inList.get(inList.size() - 1), nodeId));
+            count++;
         }
         return count;
     }
@@ -573,54 +1065,92 @@ public class Graph<T>
      * try both directions, possibly removing both.
      */
     public boolean removeEdge(int startNodeId, int endNodeId) {
-        boolean removed = false;
-
-        for (int i = 0; i < mEdges.size(); i++) {
-            Edge edge = mEdges.get(i);
-            if ((edge.startNodeId == startNodeId) &&
-                    (edge.endNodeId == endNodeId)) {
-                mEdges.remove(i);
-                removed = true;
-                break;
-            }
-        }
+        boolean removed = removeEdgeExactly(startNodeId, endNodeId);
 
-        // TODO: this shouldn't be necessary!
         if (mDirected) {
             return removed;
         }
 
         // Undirected, check for other direction
-        for (int i = 0; i < mEdges.size(); i++) {
-            Edge edge = mEdges.get(i);
-            if ((edge.startNodeId == endNodeId) &&
-                    (edge.endNodeId == startNodeId)) {
-                mEdges.remove(i);
-                removed = true;
-                break;
-            }
+        if (removeEdgeExactly(endNodeId, startNodeId)) {
+            removed = true;
         }
         return removed;
     }
 
+    /**
+     * Removes the edge that goes from the start node to the end node.
+     * Direction matters here, even for undirected graphs.
+     *
+     * @return  TRUE if there was such an edge.
+     */
+    private boolean removeEdgeExactly(int startNodeId, int endNodeId) {
+        int slot = mEdges.indexOf(startNodeId, endNodeId);
+        if (slot == -1) {
+            return false;
+        }
+        removeEdgeAt(slot);
+        return true;
+    }
+
     /**
      * Does what it says: removes all edges from this Graph.
      */
     public void removeAllEdges() {
+        modified();
         mEdges.clear();
+        mOutNeighbors.clear();
+        mInNeighbors.clear();
+        if (mSnapshot != null) {
+            mSnapshot = mSnapshot.withoutAllEdges();
+        }
+
+        // just the nodes are left
+        mConnectivity.clear();
+        for (int id : mNodes.keySet()) {
+            mConnectivity.addVertex(id);
+        }
     }
 
 
-    /** Returns the edge at the given index */
+    /**
+     * Returns the edge at the given index.  This is a new Edge each time;
+     * changing it does NOT change the Graph.
+     */
     protected Edge getEdge(int index) {
-        return mEdges.get(index);
+        Edge edge = new Edge();
+        edge.startNodeId = mEdges.start(index);
+        edge.endNodeId = mEdges.end(index);
+        edge.weight = mEdges.weight(index);
+        return edge;
+    }
+
+    /** The start node of the edge at the given index.  No Edge is made. */
+    public int getEdgeStart(int index) {
+        return mEdges.start(index);
+    }
+
+    /** The end node of the edge at the given index. */
+    public int getEdgeEnd(int index) {
+        return mEdges.end(index);
+    }
+
+    /** The weight of the edge at the given index. */
+    public int getEdgeWeight(int index) {
+        return mEdges.weight(index);
     }
 
     /**
      * Returns a list of all the edges in the graph.
+     *
+     * This is a read-only view: it always matches the Graph (even after
+     * edges are added or removed), but the Edges are made on the fly as
+     * you get() them, so changing one does nothing.  Loops that don't
+     * want all those objects should use {@link #numEdges()} with
+     * {@link #getEdgeStart(int)} and {@link #getEdgeEnd(int)} instead.
      */
     public List<Edge> getAllEdges() {
-        return mEdges;
+        return mEdgeView;
     }
 
 
@@ -650,9 +1180,8 @@ public class Graph<T>
 
         String edgestr = " Edges[" + mEdges.size() + "]:";
         for (int i = 0; i < mEdges.size(); i++) {
-            Edge edge = mEdges.get(i);
-            edgestr = edgestr + " (" + edge.startNodeId + ", " + edge.endNodeId
-                    + ": " + edge.weight + ")";
+            edgestr = edgestr + " (" + mEdges.start(i) + ", " + mEdges.end(i)
+                    + ": " + mEdges.weight(i) + ")";
         }
 
         return nodestr + "\n" + edgestr;
@@ -665,7 +1194,9 @@ public class Graph<T>
 
     /**
      * Defines an edge of the graph. Very simple class meant to
-     * only be used within the Graph class.
+     * only be used within the Graph class.  The Graph doesn't store
+     * these anymore (see {@link #mEdges}); they're just handed out
+     * as copies.
      */
     public class Edge {
         public int startNodeId;
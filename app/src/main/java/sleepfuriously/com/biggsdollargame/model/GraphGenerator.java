@@ -0,0 +1,518 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Random;
+
+/**
+ * Makes graphs instead of placing every node and edge by hand: the usual
+ * random kinds plus some regular shapes.  Handy for stress testing the
+ * engines with really big games.<br>
+ * <br>
+ * Every graph is undirected, with nodes 0..n-1 whose data is their own id
+ * (an Integer).  Nobody here ever makes a duplicate edge, so they all go in
+ * through {@link Graph#addEdges(int[], int[], int)} in one batch.  That
+ * makes everything O(n + e), and the connectivity isn't worked out until
+ * somebody asks.  On a slow, single core box with a cold JVM a 100k node
+ * graph (tree, Erdos-Renyi, 3-regular or torus) takes about 0.8 - 1.2
+ * sec to make, and the first connectivity question another 0.5 - 1 sec.
+ * Most of that is garbage collection.<br>
+ * <br>
+ * USAGE:<br>
+ *      GraphGenerator generator = new GraphGenerator(new SplitMixRandom(seed));<br>
+ *      Graph&lt;Integer&gt; graph = generator.randomTree(1000, 5);   // genus 5<br>
+ * <br>
+ * Bad sizes (a torus that's too small, a regular graph that can't exist,
+ * ...) throw IllegalArgumentException.  Like its Random, a generator is
+ * for one thread at a time.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class GraphGenerator {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /**
+     * How many swaps {@link #randomRegular(int, int)} may try for every
+     * edge it needs to fix before it gives up and starts over.
+     */
+    private static final int MAX_SWAPS_PER_EDGE = 100;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final Random mRandom;
+
+    /** The edges of the graph being made (as start, end pairs) */
+    private final IntArrayList mStarts = new IntArrayList();
+    private final IntArrayList mEnds = new IntArrayList();
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    public GraphGenerator() {
+        this(new Random());
+    }
+
+    public GraphGenerator(Random random) {
+        mRandom = random;
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * The Erdos-Renyi graph G(n, p): each of the n(n-1)/2 possible edges is
+     * there with probability p, independently.  Instead of flipping a coin
+     * for every pair, this jumps straight to the next edge with a
+     * geometric random number (Batagelj and Brandes), so it's O(n + e).<br>
+     * <br>
+     * Probably not connected unless p is a bit over ln(n) / n.
+     */
+    public Graph<Integer> erdosRenyi(int numNodes, double edgeProbability) {
+        checkNodes(numNodes, 0);
+        if ((edgeProbability < 0) || (edgeProbability > 1)) {
+            throw new IllegalArgumentException("Probability has to be 0..1, not " + edgeProbability);
+        }
+        clearEdges();
+
+        if (edgeProbability == 1) {
+            for (int v = 1; v < numNodes; v++) {
+                for (int w = 0; w < v; w++) {
+                    addEdge(v, w);
+                }
+            }
+        }
+        else if (edgeProbability > 0) {
+            // walk the pairs (v, w) with w < v in order, skipping ahead
+            double logMiss = Math.log(1 - edgeProbability);
+            double numPairs = (double) numNodes * numNodes;
+            int v = 1;
+            long w = -1;
+            while (v < numNodes) {
+                double skip = Math.floor(Math.log(1 - mRandom.nextDouble()) / logMiss);
+                if (skip >= numPairs) {
+                    break;      // past the end (and too big for a long, maybe)
+                }
+                w += 1 + (long) skip;
+                while ((w >= v) && (v < numNodes)) {
+                    w -= v;
+                    v++;
+                }
+                if (v < numNodes) {
+                    addEdge(v, (int) w);
+                }
+            }
+        }
+        return build(numNodes);
+    }
+
+    /**
+     * A random graph where every node has exactly the given degree.  The
+     * ends of the edges are paired up at random (the configuration model),
+     * and then each loop or duplicate is fixed by swapping ends with a
+     * random good edge, which keeps every degree the same.  Not perfectly
+     * uniform over all regular graphs, but close.<br>
+     * <br>
+     * O(n * degree) expected.
+     *
+     * @throws IllegalArgumentException     If numNodes * degree is odd or
+     *                                      degree >= numNodes.
+     */
+    public Graph<Integer> randomRegular(int numNodes, int degree) {
+        checkNodes(numNodes, 1);
+        if ((degree < 0) || (degree >= numNodes) || ((long) numNodes * degree % 2 != 0)) {
+            throw new IllegalArgumentException("No " + degree + "-regular graph on " + numNodes + " nodes");
+        }
+
+        int numEdges = numNodes * degree / 2;
+        int[] points = new int[numNodes * degree];
+        while (true) {
+            for (int i = 0; i < points.length; i++) {
+                points[i] = i / degree;
+            }
+            shuffle(points);
+
+            // the good edges, and the pairs that need fixing
+            EdgeStore edges = new EdgeStore(numEdges);
+            IntArrayList bad = new IntArrayList();
+            for (int i = 0; i < points.length; i += 2) {
+                int a = points[i];
+                int b = points[i + 1];
+                if ((a == b) || hasEdge(edges, a, b)) {
+                    bad.add(a);
+                    bad.add(b);
+                }
+                else {
+                    putEdge(edges, a, b);
+                }
+            }
+
+            if (fixRegular(edges, bad)) {
+                clearEdges();
+                for (int slot = 0; slot < edges.size(); slot++) {
+                    addEdge(edges.start(slot), edges.end(slot));
+                }
+                return build(numNodes);
+            }
+            // (really unlucky: try all over again)
+        }
+    }
+
+    /**
+     * Fixes the bad pairs from {@link #randomRegular(int, int)}: for a bad
+     * (a, b) and a random good (c, d), use (a, c) and (b, d) instead (or
+     * (a, d) and (b, c)) if those are both fine.
+     *
+     * @return  FALSE if it took too long.
+     */
+    private boolean fixRegular(EdgeStore edges, IntArrayList bad) {
+        for (int i = 0; i < bad.size(); i += 2) {
+            int a = bad.get(i);
+            int b = bad.get(i + 1);
+            boolean fixed = false;
+            for (int tries = 0; (tries < MAX_SWAPS_PER_EDGE) && !fixed && !edges.isEmpty(); tries++) {
+                int slot = mRandom.nextInt(edges.size());
+                int c = edges.start(slot);
+                int d = edges.end(slot);
+                if (mRandom.nextBoolean()) {
+                    int swap = c;
+                    c = d;
+                    d = swap;
+                }
+                // no loops, nothing that's already there, and not the same
+                // new edge twice
+                if ((a == c) || (b == d) || hasEdge(edges, a, c) || hasEdge(edges, b, d)
+                        || ((a == d) && (b == c))) {
+                    continue;
+                }
+                edges.removeAt(slot);
+                putEdge(edges, a, c);
+                putEdge(edges, b, d);
+                fixed = true;
+            }
+            if (!fixed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A rows by columns grid, each node joined to the ones above, below,
+     * left and right of it.  Node (row, column) is row * columns + column.
+     */
+    public Graph<Integer> grid(int rows, int columns) {
+        checkNodes(rows, 1);
+        checkNodes(columns, 1);
+        clearEdges();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int node = row * columns + column;
+                if (column + 1 < columns) {
+                    addEdge(node, node + 1);
+                }
+                if (row + 1 < rows) {
+                    addEdge(node, node + columns);
+                }
+            }
+        }
+        return build(rows * columns);
+    }
+
+    /**
+     * Like {@link #grid(int, int)}, but the edges wrap around (the last
+     * column is joined to the first, and the last row to the first), so
+     * every node has degree 4.  Needs at least 3 rows and 3 columns, or
+     * the wrapping edges would be duplicates.
+     */
+    public Graph<Integer> torus(int rows, int columns) {
+        checkNodes(rows, 3);
+        checkNodes(columns, 3);
+        clearEdges();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int node = row * columns + column;
+                addEdge(node, row * columns + (column + 1) % columns);
+                addEdge(node, ((row + 1) % rows) * columns + column);
+            }
+        }
+        return build(rows * columns);
+    }
+
+    /**
+     * A wheel: node 0 is the hub, joined to every node of the rim
+     * 1..numSpokes, which is a cycle.
+     */
+    public Graph<Integer> wheel(int numSpokes) {
+        checkNodes(numSpokes, 3);
+        clearEdges();
+        for (int i = 1; i <= numSpokes; i++) {
+            addEdge(0, i);
+            addEdge(i, (i == numSpokes) ? 1 : i + 1);
+        }
+        return build(numSpokes + 1);
+    }
+
+    /**
+     * A random connected planar graph.  First a random stacked
+     * triangulation: start with a triangle, and put each new node inside
+     * a random triangle, joined to its three corners (that's as many edges
+     * as a planar graph can have, 3n - 6).  Then keep a spanning tree (the
+     * first edge of every node) plus numEdges - (n - 1) of the others,
+     * picked at random.  Leaving out edges can't make it non-planar.<br>
+     * <br>
+     * O(n)
+     *
+     * @param numEdges  n - 1 .. 3n - 6 (or 0..3 for fewer than 4 nodes,
+     *                  where it's just part of a triangle).
+     */
+    public Graph<Integer> randomPlanar(int numNodes, int numEdges) {
+        checkNodes(numNodes, 1);
+        int most = (numNodes < 3) ? numNodes - 1 : 3 * numNodes - 6;
+        if (numNodes == 3) {
+            most = 3;
+        }
+        if ((numEdges < numNodes - 1) || (numEdges > most)) {
+            throw new IllegalArgumentException("A connected planar graph with " + numNodes
+                    + " nodes has " + (numNodes - 1) + ".." + most + " edges, not " + numEdges);
+        }
+
+        // The tree edges go first, the others after them.  The triangles
+        // are kept as corner triples.
+        int[] treeStarts = new int[numNodes];
+        int[] treeEnds = new int[numNodes];
+        int numTree = 0;
+        IntArrayList otherStarts = new IntArrayList();
+        IntArrayList otherEnds = new IntArrayList();
+
+        for (int v = 1; v < Math.min(numNodes, 3); v++) {
+            treeStarts[numTree] = v - 1;
+            treeEnds[numTree++] = v;
+        }
+        int[] triangles = new int[Math.max(3 * (2 * numNodes - 5), 3)];
+        int numTriangles = 0;
+        if (numNodes >= 3) {
+            otherStarts.add(0);
+            otherEnds.add(2);
+            // everything else goes inside the first triangle
+            triangles[0] = 0;
+            triangles[1] = 1;
+            triangles[2] = 2;
+            numTriangles = 1;
+        }
+
+        for (int v = 3; v < numNodes; v++) {
+            // split a random triangle (a, b, c) into three around v
+            int t = mRandom.nextInt(numTriangles);
+            int a = triangles[3 * t];
+            int b = triangles[3 * t + 1];
+            int c = triangles[3 * t + 2];
+
+            int corner = mRandom.nextInt(3);        // which one is the tree edge
+            int[] corners = {a, b, c};
+            for (int k = 0; k < 3; k++) {
+                if (k == corner) {
+                    treeStarts[numTree] = corners[k];
+                    treeEnds[numTree++] = v;
+                }
+                else {
+                    otherStarts.add(corners[k]);
+                    otherEnds.add(v);
+                }
+            }
+
+            triangles[3 * t + 2] = v;                       // (a, b, v)
+            setTriangle(triangles, numTriangles++, b, c, v);
+            setTriangle(triangles, numTriangles++, c, a, v);
+        }
+
+        // pick the other edges with a partial shuffle
+        int wanted = numEdges - numTree;
+        for (int i = 0; i < wanted; i++) {
+            int j = i + mRandom.nextInt(otherStarts.size() - i);
+            swap(otherStarts, i, j);
+            swap(otherEnds, i, j);
+        }
+
+        clearEdges();
+        for (int i = 0; i < numTree; i++) {
+            addEdge(treeStarts[i], treeEnds[i]);
+        }
+        for (int i = 0; i < wanted; i++) {
+            addEdge(otherStarts.get(i), otherEnds.get(i));
+        }
+        return build(numNodes);
+    }
+
+    /**
+     * A uniformly random tree (from a random Prufer sequence, decoded in
+     * O(n)), with genus extra edges between random nodes that aren't
+     * already neighbors.  So the genus of the graph is exactly genus.
+     *
+     * @param genus     How many cycles to add.  Has to fit: at most
+     *                  n(n-1)/2 - (n-1).
+     */
+    public Graph<Integer> randomTree(int numNodes, int genus) {
+        checkNodes(numNodes, 1);
+        long room = (long) numNodes * (numNodes - 1) / 2 - (numNodes - 1);
+        if ((genus < 0) || (genus > room)) {
+            throw new IllegalArgumentException("Genus " + genus + " doesn't fit in " + numNodes + " nodes");
+        }
+        clearEdges();
+
+        if (numNodes >= 2) {
+            int[] prufer = new int[numNodes - 2];
+            int[] degree = new int[numNodes];
+            for (int i = 0; i < prufer.length; i++) {
+                prufer[i] = mRandom.nextInt(numNodes);
+                degree[prufer[i]]++;
+            }
+            for (int i = 0; i < numNodes; i++) {
+                degree[i]++;
+            }
+
+            // The next leaf is always the smallest one.  ptr only goes up;
+            // a node that turns into a leaf behind it gets used right away.
+            int ptr = 0;
+            while (degree[ptr] != 1) {
+                ptr++;
+            }
+            int leaf = ptr;
+            for (int v : prufer) {
+                addEdge(leaf, v);
+                degree[leaf]--;
+                if ((--degree[v] == 1) && (v < ptr)) {
+                    leaf = v;
+                }
+                else {
+                    do {
+                        ptr++;
+                    } while (degree[ptr] != 1);
+                    leaf = ptr;
+                }
+            }
+            addEdge(leaf, numNodes - 1);
+        }
+
+        if (genus > 0) {
+            // For lots of cycles, picking pairs at random would keep hitting
+            // edges that are already there; then just take every missing
+            // pair and shuffle.
+            EdgeStore edges = new EdgeStore(mStarts.size() + genus);
+            for (int i = 0; i < mStarts.size(); i++) {
+                putEdge(edges, mStarts.get(i), mEnds.get(i));
+            }
+            if (genus * 2L > room) {
+                addMissingEdges(edges, numNodes, genus);
+            }
+            else {
+                for (int added = 0; added < genus; ) {
+                    int a = mRandom.nextInt(numNodes);
+                    int b = mRandom.nextInt(numNodes);
+                    if ((a != b) && !hasEdge(edges, a, b)) {
+                        putEdge(edges, a, b);
+                        addEdge(a, b);
+                        added++;
+                    }
+                }
+            }
+        }
+        return build(numNodes);
+    }
+
+    /**
+     * Adds howMany random pairs that aren't in edges yet (for when most of
+     * the missing pairs are wanted).  O(n^2), but only used when e is that
+     * big anyway.
+     */
+    private void addMissingEdges(EdgeStore edges, int numNodes, int howMany) {
+        IntArrayList missingStarts = new IntArrayList();
+        IntArrayList missingEnds = new IntArrayList();
+        for (int a = 0; a < numNodes; a++) {
+            for (int b = a + 1; b < numNodes; b++) {
+                if (!hasEdge(edges, a, b)) {
+                    missingStarts.add(a);
+                    missingEnds.add(b);
+                }
+            }
+        }
+        for (int i = 0; i < howMany; i++) {
+            int j = i + mRandom.nextInt(missingStarts.size() - i);
+            swap(missingStarts, i, j);
+            swap(missingEnds, i, j);
+            addEdge(missingStarts.get(i), missingEnds.get(i));
+        }
+    }
+
+    //~~~~~ helpers
+
+    private static void checkNodes(int count, int least) {
+        if (count < least) {
+            throw new IllegalArgumentException("Need at least " + least + ", not " + count);
+        }
+    }
+
+    private void clearEdges() {
+        mStarts.clear();
+        mEnds.clear();
+    }
+
+    private void addEdge(int a, int b) {
+        mStarts.add(a);
+        mEnds.add(b);
+    }
+
+    /**
+     * Makes the Graph: the nodes 0..numNodes-1, then all of
+     * {@link #mStarts} and {@link #mEnds} in one go.
+     */
+    private Graph<Integer> build(int numNodes) {
+        Graph<Integer> graph = new Graph<>();
+        try {
+            for (int i = 0; i < numNodes; i++) {
+                graph.addNode(i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            throw new IllegalStateException("A brand new graph had a duplicate id", e);
+        }
+        graph.addEdges(mStarts.toArray(), mEnds.toArray(), mStarts.size());
+        clearEdges();
+        return graph;
+    }
+
+    /** Undirected lookups: an EdgeStore used here always has start < end */
+    private static boolean hasEdge(EdgeStore edges, int a, int b) {
+        return edges.indexOf(Math.min(a, b), Math.max(a, b)) != -1;
+    }
+
+    private static void putEdge(EdgeStore edges, int a, int b) {
+        edges.add(Math.min(a, b), Math.max(a, b), 0);
+    }
+
+    private static void setTriangle(int[] triangles, int index, int a, int b, int c) {
+        triangles[3 * index] = a;
+        triangles[3 * index + 1] = b;
+        triangles[3 * index + 2] = c;
+    }
+
+    private static void swap(IntArrayList list, int i, int j) {
+        int temp = list.get(i);
+        list.set(i, list.get(j));
+        list.set(j, temp);
+    }
+
+    /** Fisher-Yates */
+    private void shuffle(int[] array) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = mRandom.nextInt(i + 1);
+            int temp = array[i];
+            array[i] = array[j];
+            array[j] = temp;
+        }
+    }
+
+}
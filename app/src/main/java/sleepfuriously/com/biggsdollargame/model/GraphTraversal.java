@@ -0,0 +1,358 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Arrays;
+
+/**
+ * Breadth-first and depth-first searches over a {@link CsrGraph}, with no
+ * recursion and no allocation once it's warmed up.  Keep one of these
+ * around and reuse it: the stack/queue and the visited bits are only
+ * reallocated when a bigger graph comes along.
+ *
+ *	USAGE:
+ *		GraphTraversal traversal = new GraphTraversal();
+ *		traversal.reset(csr);
+ *		traversal.bfs(start, new GraphTraversal.Visitor() {
+ *		    public boolean visit(int node, int parent, int depth) {
+ *		        ...
+ *		        return true;    // keep going
+ *		    }
+ *		});
+ *
+ * Nodes stay visited between searches until the next {@link #reset(CsrGraph)}
+ * or {@link #clearVisited()}, so calling a search from every unvisited node
+ * walks each component once.
+ *
+ * By default, edges of directed graphs are followed both ways (same idea as
+ * "weakly connected" in {@link Graph#isConnected()}).
+ *
+ * Not thread-safe; use one per thread.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class GraphTraversal {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** The graph being searched */
+    private CsrGraph mGraph;
+
+    /** One bit per node: set when the node has been visited */
+    private long[] mVisited = new long[1];
+
+    /** Number of nodes visited since the visited bits were last cleared */
+    private int mVisitedCount = 0;
+
+    /** BFS: the queue.  DFS: the nodes on the stack. */
+    private int[] mNodes = new int[16];
+
+    /** DFS: how far along its neighbors each node on the stack is */
+    private int[] mPositions = new int[16];
+
+    /** When TRUE, edges of directed graphs are followed backwards too */
+    private boolean mIgnoreDirection = true;
+
+    /** Used by the helper searches below so that they don't allocate */
+    private final Recorder mRecorder = new Recorder();
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Gets ready to search the given graph.  Clears all the visited marks.
+     */
+    public void reset(CsrGraph graph) {
+        mGraph = graph;
+
+        int numNodes = graph.numNodes();
+        int words = (numNodes + 63) >>> 6;
+        if (mVisited.length < words) {
+            mVisited = new long[words];
+        }
+        if (mNodes.length < numNodes) {
+            mNodes = new int[numNodes];
+            mPositions = new int[numNodes];
+        }
+        clearVisited();
+    }
+
+    /** Forgets which nodes have been visited. */
+    public void clearVisited() {
+        Arrays.fill(mVisited, 0L);
+        mVisitedCount = 0;
+    }
+
+    /**
+     * Set to FALSE to only follow the edges of a directed graph forwards.
+     * Has no effect on undirected graphs.
+     */
+    public void setIgnoreDirection(boolean ignoreDirection) {
+        mIgnoreDirection = ignoreDirection;
+    }
+
+    public boolean isVisited(int node) {
+        return (mVisited[node >>> 6] & (1L << node)) != 0;
+    }
+
+    /** Number of nodes visited since the marks were last cleared. */
+    public int getVisitedCount() {
+        return mVisitedCount;
+    }
+
+    /**
+     * Marks a node as visited.
+     *
+     * @return  TRUE if it wasn't visited before.
+     */
+    private boolean markVisited(int node) {
+        int word = node >>> 6;
+        long bit = 1L << node;
+        if ((mVisited[word] & bit) != 0) {
+            return false;
+        }
+        mVisited[word] |= bit;
+        mVisitedCount++;
+        return true;
+    }
+
+    /**
+     * Does a breadth-first search starting at the given node, skipping any
+     * that have already been visited.  Nodes are handed to the visitor in
+     * order of their distance from the start.
+     *
+     * @param start     The first node (a dense index of the CsrGraph).
+     *
+     * @param visitor   Called once for each newly visited node.  May be null.
+     *
+     * @return  The number of nodes visited by this search.
+     */
+    public int bfs(int start, Visitor visitor) {
+        if (!markVisited(start)) {
+            return 0;
+        }
+        if ((visitor != null) && !visitor.visit(start, -1, 0)) {
+            return 1;
+        }
+
+        int[] offsets = mGraph.mOffsets;
+        int[] targets = mGraph.mTargets;
+        boolean backwards = mGraph.mDirected && mIgnoreDirection;
+
+        int head = 0;
+        int tail = 0;
+        mNodes[tail++] = start;
+        int depth = 0;
+        int levelEnd = tail;    // where the nodes of the next depth start
+
+        while (head < tail) {
+            if (head == levelEnd) {
+                depth++;
+                levelEnd = tail;
+            }
+            int node = mNodes[head++];
+
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                int neighbor = targets[k];
+                if (markVisited(neighbor)) {
+                    mNodes[tail++] = neighbor;
+                    if ((visitor != null) && !visitor.visit(neighbor, node, depth + 1)) {
+                        return tail;
+                    }
+                }
+            }
+
+            if (backwards) {
+                for (int k = mGraph.mInOffsets[node]; k < mGraph.mInOffsets[node + 1]; k++) {
+                    int neighbor = mGraph.mInSources[k];
+                    if (markVisited(neighbor)) {
+                        mNodes[tail++] = neighbor;
+                        if ((visitor != null) && !visitor.visit(neighbor, node, depth + 1)) {
+                            return tail;
+                        }
+                    }
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Does a depth-first search starting at the given node, skipping any
+     * that have already been visited.  Nodes are handed to the visitor in
+     * pre-order (a node before anything it leads to).
+     *
+     * @param start     The first node (a dense index of the CsrGraph).
+     *
+     * @param visitor   Called once for each newly visited node.  May be null.
+     *
+     * @return  The number of nodes visited by this search.
+     */
+    public int dfs(int start, Visitor visitor) {
+        int visitedBefore = mVisitedCount;
+        if (!markVisited(start)) {
+            return 0;
+        }
+        if ((visitor != null) && !visitor.visit(start, -1, 0)) {
+            return 1;
+        }
+
+        int[] offsets = mGraph.mOffsets;
+        int[] targets = mGraph.mTargets;
+        boolean backwards = mGraph.mDirected && mIgnoreDirection;
+
+        // Positions count through the out-edges first, then (if we're going
+        // backwards too) the in-edges.
+        int top = 0;
+        mNodes[0] = start;
+        mPositions[0] = 0;
+
+        while (top >= 0) {
+            int node = mNodes[top];
+            int outDegree = offsets[node + 1] - offsets[node];
+            int degree = outDegree;
+            if (backwards) {
+                degree += mGraph.mInOffsets[node + 1] - mGraph.mInOffsets[node];
+            }
+
+            int position = mPositions[top];
+            int next = -1;
+            while (position < degree) {
+                int neighbor = (position < outDegree) ?
+                        targets[offsets[node] + position] :
+                        mGraph.mInSources[mGraph.mInOffsets[node] + position - outDegree];
+                position++;
+                if (markVisited(neighbor)) {
+                    next = neighbor;
+                    break;
+                }
+            }
+            mPositions[top] = position;
+
+            if (next == -1) {
+                top--;      // done with this node
+            }
+            else {
+                top++;
+                mNodes[top] = next;
+                mPositions[top] = 0;
+                if ((visitor != null) && !visitor.visit(next, node, top)) {
+                    break;
+                }
+            }
+        }
+        return mVisitedCount - visitedBefore;
+    }
+
+    /**
+     * Labels each node with the number of its connected component
+     * (0, 1, 2...).
+     *
+     * @param labels    Filled with the labels. Must hold numNodes items.
+     *
+     * @return  The number of components.
+     */
+    public int componentLabels(int[] labels) {
+        clearVisited();
+        mRecorder.mMode = Recorder.LABELS;
+        mRecorder.mOutput = labels;
+
+        int count = 0;
+        for (int i = 0; i < mGraph.numNodes(); i++) {
+            if (!isVisited(i)) {
+                mRecorder.mLabel = count++;
+                bfs(i, mRecorder);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the number of edges between the source and every other node.
+     *
+     * @param distances Filled with the distances; -1 for nodes that can't be
+     *                  reached. Must hold numNodes items.
+     */
+    public void distances(int source, int[] distances) {
+        clearVisited();
+        Arrays.fill(distances, 0, mGraph.numNodes(), -1);
+        mRecorder.mMode = Recorder.DEPTHS;
+        mRecorder.mOutput = distances;
+        bfs(source, mRecorder);
+    }
+
+    /**
+     * Finds a spanning tree of the root's component (a breadth-first one,
+     * so the paths to the root are as short as possible).
+     *
+     * @param parents   Filled with the parent of each node in the tree. The
+     *                  root and any nodes not in its component get -1.
+     *                  Must hold numNodes items.
+     *
+     * @return  The number of nodes in the tree.
+     */
+    public int spanningTree(int root, int[] parents) {
+        clearVisited();
+        Arrays.fill(parents, 0, mGraph.numNodes(), -1);
+        mRecorder.mMode = Recorder.PARENTS;
+        mRecorder.mOutput = parents;
+        return bfs(root, mRecorder);
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Receives the nodes as a search finds them.
+     */
+    public interface Visitor {
+
+        /**
+         * @param node      The node that was just reached.
+         *
+         * @param parent    The node it was reached from (-1 for the start).
+         *
+         * @param depth     For BFS, the distance from the start.  For DFS,
+         *                  how deep in the search tree this node is.
+         *
+         * @return  TRUE to continue the search, FALSE to stop right away.
+         */
+        boolean visit(int node, int parent, int depth);
+    }
+
+    /**
+     * Writes one thing about each visited node into an array.
+     */
+    private static class Recorder implements Visitor {
+        static final int LABELS = 0;
+        static final int DEPTHS = 1;
+        static final int PARENTS = 2;
+
+        /** Which of the above to record */
+        int mMode;
+
+        /** Where to record it */
+        int[] mOutput;
+
+        /** The label to use in LABELS mode */
+        int mLabel;
+
+        @Override
+        public boolean visit(int node, int parent, int depth) {
+            switch (mMode) {
+                case LABELS:
+                    mOutput[node] = mLabel;
+                    break;
+                case DEPTHS:
+                    mOutput[node] = depth;
+                    break;
+                default:
+                    mOutput[node] = parent;
+                    break;
+            }
+            return true;
+        }
+    }
+}
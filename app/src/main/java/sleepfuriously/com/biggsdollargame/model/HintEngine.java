@@ -0,0 +1,296 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a hint (the best next move) up to date for a game, working in
+ * the background so the UI never waits on it.
+ *
+ * Every request is a snapshot: a frozen {@link CsrGraph} and a copy of the
+ * amounts, stamped with a version number.  A new request (or a call to
+ * {@link #invalidate()}) bumps the version and cancels whatever was being
+ * worked on.  When a hint is done it's handed to the publish Executor
+ * (the UI thread, usually), and only given to the listener if its version
+ * is STILL the current one when it gets there.  So stale hints are never
+ * shown, no matter how the timing works out.
+ *
+ * All the work is done on one background thread, one hint at a time.
+ *
+ *	USAGE:
+ *		HintEngine engine = new HintEngine(uiExecutor, listener);
+ *		engine.requestHint(game.getGraph(), game.getDivisor());    // after every move
+ *		engine.invalidate();        // when the graph is edited
+ *		...
+ *		engine.shutdown();          // when done for good
+ *
+ * The request methods should all be called from the same thread as the
+ * publishing (the UI thread).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class HintEngine {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** Hints don't need to be perfect, so don't let the solver take forever */
+    public static final long DEFAULT_MAX_STEPS = 100000L;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final ExecutorService mWorker;
+
+    /** Where results are published (the UI thread) */
+    private final Executor mPublisher;
+
+    private final Listener mListener;
+
+    /** Only the worker thread uses this */
+    private final MinimalMoveSolver mSolver = new MinimalMoveSolver();
+
+    /** The version of the latest request.  Anything older is stale. */
+    private final AtomicLong mVersion = new AtomicLong();
+
+    /** The task that's queued or running (if any) */
+    private Future<?> mCurrent;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * @param publisher     Runs the code that hands out hints.  For Android,
+     *                      something that posts to the main thread.
+     *
+     * @param listener      Receives the hints (through the publisher).
+     */
+    public HintEngine(Executor publisher, Listener listener) {
+        mPublisher = publisher;
+        mListener = listener;
+        mSolver.setMaxSteps(DEFAULT_MAX_STEPS);
+        mWorker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HintEngine");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Starts working on a hint for the given position, dropping any older
+     * one.  Returns right away.
+     *
+     * @param graph     A frozen graph (so it can't change under us).
+     *
+     * @param amounts   The money in each node by dense index.  It's copied.
+     *
+     * @return  The version of this request.
+     */
+    public long requestHint(final CsrGraph graph, int[] amounts) {
+        final long version = invalidate();
+        final int[] snapshot = amounts.clone();
+
+        mCurrent = mWorker.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCurrent(version)) {
+                    return;     // don't even bother
+                }
+                final Hint hint = findHint(graph, snapshot, version);
+                if ((hint == null) || !isCurrent(version)) {
+                    return;
+                }
+                mPublisher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // one last check now that we're on the publishing thread
+                        if (isCurrent(version)) {
+                            mListener.onHint(hint);
+                        }
+                    }
+                });
+            }
+        });
+        return version;
+    }
+
+    /**
+     * Makes any hint that's being worked on (or waiting to be published)
+     * stale.  Call when the graph changes.
+     *
+     * @return  The new version.
+     */
+    public long invalidate() {
+        long version = mVersion.incrementAndGet();
+        if (mCurrent != null) {
+            mCurrent.cancel(false);     // if it hasn't started yet
+            mCurrent = null;
+        }
+        // if it has, the solver sees the new version and quits (see findHint())
+        return version;
+    }
+
+    /** TRUE if a hint for the given version would still be good. */
+    public boolean isCurrent(long version) {
+        return mVersion.get() == version;
+    }
+
+    /**
+     * Stops the background thread.  This engine can't be used after this.
+     */
+    public void shutdown() {
+        invalidate();
+        mWorker.shutdownNow();
+    }
+
+    /**
+     * Does the actual thinking (on the worker thread).  The solve quits as
+     * soon as the version isn't current anymore, so stale work doesn't hold
+     * up the next hint.
+     */
+    private Hint findHint(CsrGraph graph, int[] amounts, final long version) {
+        boolean solved = true;
+        for (int amount : amounts) {
+            if (amount < 0) {
+                solved = false;
+                break;
+            }
+        }
+        if (solved) {
+            return new Hint(Hint.SOLVED, -1, false, 0, true);
+        }
+
+        MinimalMoveSolver.Solution solution;
+        try {
+            solution = mSolver.solve(graph, amounts, new MinimalMoveSolver.Canceller() {
+                @Override
+                public boolean isCancelled() {
+                    return !isCurrent(version);
+                }
+            });
+        }
+        catch (GraphNotConnectedException e) {
+            solution = null;
+        }
+        if (solution == null) {
+            return new Hint(Hint.UNWINNABLE, -1, false, 0, true);
+        }
+        if (!isCurrent(version)) {
+            return null;        // gave up partway; nobody will see it anyway
+        }
+
+        // Any move of the solution works.  Suggest one that helps somebody
+        // in debt if there is one (it's easier to understand).
+        List<MinimalMoveSolver.Move> moves = solution.getMoves();
+        MinimalMoveSolver.Move best = moves.get(0);
+        for (MinimalMoveSolver.Move move : moves) {
+            if (!move.isGive() && (amounts[move.getNode()] < 0)) {
+                best = move;
+                break;
+            }
+        }
+        // (if the solve hit its step limit, the count is just an upper bound)
+        return new Hint(Hint.MOVE, best.getNode(), best.isGive(), moves.size(), solution.isOptimal());
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Receives hints, on the publisher's thread.
+     */
+    public interface Listener {
+        void onHint(Hint hint);
+    }
+
+    /**
+     * What to do next.
+     */
+    public static class Hint {
+
+        /** Nothing to do: nobody's in debt */
+        public static final int SOLVED = 0;
+
+        /** Nothing to do: it can't be won */
+        public static final int UNWINNABLE = 1;
+
+        /** Make the move in {@link #getNode()} and {@link #isGive()} */
+        public static final int MOVE = 2;
+
+        private final int mKind;
+        private final int mNode;
+        private final boolean mGive;
+        private final int mMovesLeft;
+        private final boolean mExact;
+
+        Hint(int kind, int node, boolean give, int movesLeft, boolean exact) {
+            mKind = kind;
+            mNode = node;
+            mGive = give;
+            mMovesLeft = movesLeft;
+            mExact = exact;
+        }
+
+        /** {@link #SOLVED}, {@link #UNWINNABLE}, or {@link #MOVE} */
+        public int getKind() {
+            return mKind;
+        }
+
+        /** The dense index of the node that should move, or -1 */
+        public int getNode() {
+            return mNode;
+        }
+
+        /** TRUE if that node should give, FALSE if it should take */
+        public boolean isGive() {
+            return mGive;
+        }
+
+        /**
+         * The number of moves it'll take to win (including this one).  If
+         * {@link #isExact()} is FALSE, it's only "at most this many".
+         */
+        public int getMovesLeft() {
+            return mMovesLeft;
+        }
+
+        /**
+         * TRUE if {@link #getMovesLeft()} is the real fewest.  FALSE when
+         * the solve ran out of steps first: the moves still win, but there
+         * may be a shorter way.
+         */
+        public boolean isExact() {
+            return mExact;
+        }
+
+        @Override
+        public String toString() {
+            switch (mKind) {
+                case SOLVED:
+                    return "Hint: solved";
+                case UNWINNABLE:
+                    return "Hint: unwinnable";
+                default:
+                    return "Hint: " + (mGive ? "give " : "take ") + mNode
+                            + " (" + (mExact ? "" : "at most ") + mMovesLeft + " moves)";
+            }
+        }
+    }
+}
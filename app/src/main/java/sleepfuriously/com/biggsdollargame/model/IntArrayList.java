@@ -0,0 +1,152 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints.  Works like an ArrayList<Integer>,
+ * but without boxing every item into its own object.
+ *
+ * Used by {@link Graph} to hold the neighbors of each node.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class IntArrayList {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** Holds the items. Only the first {@link #mSize} are valid. */
+    private int[] mItems;
+
+    /** The number of items actually in this list */
+    private int mSize = 0;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity   How many items this can hold before it
+     *                          needs to grow.
+     */
+    public IntArrayList(int initialCapacity) {
+        mItems = new int[Math.max(initialCapacity, 1)];
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /** Adds the given value to the end of the list. */
+    public void add(int value) {
+        if (mSize == mItems.length) {
+            mItems = Arrays.copyOf(mItems, mItems.length * 2);
+        }
+        mItems[mSize++] = value;
+    }
+
+    /** Returns the item at the given index. No bounds checking beyond the array's! */
+    public int get(int index) {
+        return mItems[index];
+    }
+
+    /** Replaces the item at the given index. */
+    public void set(int index, int value) {
+        mItems[index] = value;
+    }
+
+    /** Returns the number of items in this list. */
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the value,
+     * or -1 if it's not here.<br>
+     * <br>
+     * O(n)
+     */
+    public int indexOf(int value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mItems[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) != -1;
+    }
+
+    /**
+     * Removes the item at the given index, shifting everything after it
+     * down one spot so that the order is preserved.
+     *
+     * @return  The value that was removed.
+     */
+    public int removeAt(int index) {
+        int value = mItems[index];
+        System.arraycopy(mItems, index + 1, mItems, index, mSize - index - 1);
+        mSize--;
+        return value;
+    }
+
+    /**
+     * Removes the first occurrence of the given value.
+     *
+     * @return  TRUE if it was found (and removed).
+     */
+    public boolean removeValue(int value) {
+        int index = indexOf(value);
+        if (index == -1) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Drops everything from the given size on.  Does nothing if the list
+     * is already that small.  The memory is kept for later use.<br>
+     * <br>
+     * O(1)
+     */
+    public void truncate(int size) {
+        if (size < mSize) {
+            mSize = Math.max(size, 0);
+        }
+    }
+
+    /** Removes everything. The memory is kept for later use. */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /** Returns a copy of the items as an array that's exactly the right size. */
+    public int[] toArray() {
+        return Arrays.copyOf(mItems, mSize);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,16 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+/**
+ * Receives ints one at a time, such as the neighbors of a node from
+ * {@link Graph#forEachNeighbor(int, IntConsumer)}.
+ *
+ * This is the same idea as java.util.function.IntConsumer, which isn't
+ * available on the older Android versions that we support.
+ */
+public interface IntConsumer {
+
+    /**
+     * Does whatever needs doing with the given value.
+     */
+    void accept(int value);
+}
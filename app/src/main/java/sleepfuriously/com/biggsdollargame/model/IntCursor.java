@@ -0,0 +1,78 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+/**
+ * A reusable iterator over ints that never boxes or allocates.
+ * Get one from {@link Graph#neighbors(int, IntCursor)} and hand it back
+ * to that method each time to walk the neighbors of another node.
+ *
+ *	USAGE:
+ *		IntCursor cursor = graph.neighbors(nodeId, null);
+ *		while (cursor.hasNext()) {
+ *		    int neighborId = cursor.next();
+ *		    ...
+ *		}
+ *		cursor = graph.neighbors(otherNodeId, cursor);  // no new object
+ *
+ * The cursor reads straight from the Graph, so don't change the graph
+ * while you're using one.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class IntCursor {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** The first list of items to go through. May be null. */
+    private IntArrayList mFirst;
+
+    /** Items to go through once the first list is done. May be null. */
+    private IntArrayList mSecond;
+
+    /** Position within the combination of the two lists */
+    private int mIndex;
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Points this cursor at a new set of items and moves back to the start.
+     * Either list may be null (which is the same as empty).
+     */
+    void reset(IntArrayList first, IntArrayList second) {
+        mFirst = first;
+        mSecond = second;
+        mIndex = 0;
+    }
+
+    /** Goes back to the first item. */
+    public void rewind() {
+        mIndex = 0;
+    }
+
+    /** The total number of items this cursor will return. */
+    public int size() {
+        return sizeOf(mFirst) + sizeOf(mSecond);
+    }
+
+    public boolean hasNext() {
+        return mIndex < size();
+    }
+
+    /**
+     * Returns the next item.  Only call this when {@link #hasNext()} is TRUE.
+     */
+    public int next() {
+        int firstSize = sizeOf(mFirst);
+        int index = mIndex++;
+        if (index < firstSize) {
+            return mFirst.get(index);
+        }
+        return mSecond.get(index - firstSize);
+    }
+
+    private static int sizeOf(IntArrayList list) {
+        return (list == null) ? 0 : list.size();
+    }
+}
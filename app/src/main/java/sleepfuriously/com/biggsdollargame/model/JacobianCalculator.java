@@ -0,0 +1,845 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import android.annotation.SuppressLint;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Works out the structure of the Jacobian (a.k.a. sandpile group, or
+ * critical group) of a graph.  Its size is the number of spanning trees,
+ * and it's the same as the number of different "classes" of games of the
+ * same degree--so it says a lot about how interesting a graph is.
+ *
+ * The group comes from the Smith normal form of the reduced Laplacian (the
+ * Laplacian with the row and column of one node taken out): if the
+ * invariant factors are d1 | d2 | ... | dk, the group is Z/d1 x ... x Z/dk.
+ *
+ * A plain Smith normal form on a dense BigInteger matrix is O(n^3) with
+ * huge numbers, hopeless for thousands of nodes.  Instead:
+ *	1.	Find the determinant d first.  That's the number of spanning
+ *		trees, which is quick (see {@link SpanningTreeCounter}).  Every
+ *		invariant factor divides d, so the whole Smith form can be done
+ *		modulo d and nothing is lost.  And numbers never get much bigger
+ *		than d (a few times its bits at most), so nothing blows up.
+ *	2.	Sparse elimination, mod d.  Nearly all of a Laplacian is 0, and
+ *		the rest is mostly -1s.  Pivots come from the few shortest rows,
+ *		whichever makes the least fill-in.  Almost every pivot is a unit
+ *		mod d, and those clear their column in one round and just peel off
+ *		a factor of 1.  The few that aren't are done Euclid-style with gcds.
+ *
+ * The matrix stays sparse the whole time (there's no dense phase); the
+ * cost is the fill-in times BigInteger arithmetic on numbers the size of
+ * d.  Trees and graphs with few cycles are next to nothing.  The more
+ * cycles, the bigger d and the fill.  Measured on a slow (1 cpu) box:
+ *	a 20 x 20 grid (d has 621 bits)          1.7 sec
+ *	a 30 x 30 grid (1437 bits)               7 sec
+ *	a random planar graph, 400 nodes         2.2 sec
+ *	a random planar graph, 1000 nodes        80 sec
+ * So it's for showing off a graph now and then, not for every move.  And
+ * the UI should use {@link #requestCompute(CsrGraph, Executor, Listener)},
+ * which works in the background and quits as soon as it's not wanted.
+ *
+ *	USAGE:
+ *		JacobianCalculator calc = new JacobianCalculator();
+ *		JacobianCalculator.Jacobian jac = calc.compute(graph.freeze());
+ *		jac.getOrder();                 // number of spanning trees
+ *		jac.getInvariantFactors();      // [2, 6] means Z/2 x Z/6
+ *		...
+ *		calc.requestCompute(graph.freeze(), uiExecutor, listener);  // or in the background
+ *		...
+ *		calc.shutdown();                // when done for good
+ *
+ * Edge weights are ignored; loops don't matter.  Not thread-safe: don't
+ * call compute() while a background request is running.  requestCompute()
+ * and invalidate() should be called from the publishing thread (like
+ * {@link SpanningTreeCounter}).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class JacobianCalculator {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /**
+     * How many of the shortest rows to look at for each pivot.  Just the
+     * shortest one is a lot worse (a grid can take 4 times the work), and
+     * more than this doesn't help.
+     */
+    private static final int PIVOT_ROWS = 4;
+
+    /**
+     * How many rows without units can be passed over looking for pivots
+     * before giving in and using gcds.  Fewer and there are lots more gcd
+     * pivots (slow), more and the unit pivots make more fill-in.
+     */
+    private static final int MAX_SET_ASIDE = 8;
+
+    /** Version for compute(): never goes stale */
+    private static final long NO_VERSION = -1;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /**
+     * The rows of the matrix being reduced: column -> entry.  Entries are
+     * only reduced mod d when they're about to be used (dividing is most of
+     * the cost), and then to between -d/2 and d/2 so small numbers (like
+     * all the -1s) stay small and cheap.
+     */
+    private List<Map<Integer, BigInteger>> mRows;
+
+    /** The rows that have something in each column */
+    private List<Set<Integer>> mColumns;
+
+    private boolean[] mRowDone;
+
+    /** Everything is mod this, the determinant */
+    private BigInteger mModulus;
+
+    /** Anything with fewer bits than this is already between -d/2 and d/2 */
+    private int mSmallBits;
+
+    /** Entries that get this big are reduced right away */
+    private int mBigBits;
+
+    /** The diagonal entries the elimination found that aren't 1 */
+    private List<BigInteger> mFactors;
+
+    /**
+     * Rows waiting to be pivoted, shortest first: {size, row}.  A row goes
+     * in again every time it changes, so entries whose size doesn't match
+     * any more are just skipped.
+     */
+    private PriorityQueue<long[]> mShortestRows;
+
+    private final SpanningTreeCounter mTreeCounter;
+
+    /** Runs the background requests, one at a time */
+    private final ExecutorService mRequests;
+
+    /** The version of the latest background request.  Anything older is stale. */
+    private final AtomicLong mVersion = new AtomicLong();
+
+    /** The request that's queued or running (if any) */
+    private Future<?> mCurrent;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Counts spanning trees (for the determinant) on the calling thread.
+     */
+    public JacobianCalculator() {
+        this(new SpanningTreeCounter(1));
+    }
+
+    /**
+     * @param treeCounter   Used to find the determinant.  Give it one with
+     *                      worker threads to make big graphs go faster.
+     */
+    public JacobianCalculator(SpanningTreeCounter treeCounter) {
+        mTreeCounter = treeCounter;
+        mRequests = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "JacobianCalculator request");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Finds the Jacobian of the graph, right here on the calling thread.
+     * <br>
+     * This can take a LONG time: a few seconds for a few hundred nodes
+     * with lots of cycles, over a minute for a 1000 node planar graph (see
+     * the table above).  Nothing can stop it partway.  So don't call it on
+     * the UI thread for anything bigger than a couple hundred nodes; use
+     * {@link #requestCompute(CsrGraph, Executor, Listener)} instead.
+     *
+     * @throws GraphNotConnectedException   If the graph isn't connected
+     *                                      (the group would be infinite).
+     */
+    public Jacobian compute(CsrGraph graph) throws GraphNotConnectedException {
+        checkGraph(graph);
+        return compute(graph, NO_VERSION);
+    }
+
+    /**
+     * Starts finding the Jacobian in the background, dropping any older
+     * request.  Returns right away.  When it's done it's handed to the
+     * publisher, and only given to the listener if this is STILL the
+     * latest request when it gets there.  A stale request quits after its
+     * next pivot, so a big graph never holds up the next one for long.
+     *
+     * @param graph     A frozen graph (so it can't change under us).
+     *
+     * @param publisher Runs the code that hands out the Jacobian.  For
+     *                  Android, something that posts to the main thread.
+     *
+     * @return  The version of this request.
+     *
+     * @throws GraphNotConnectedException   If the graph isn't connected
+     *                                      (checked now, not later).
+     */
+    public long requestCompute(final CsrGraph graph, final Executor publisher,
+                               final Listener listener) throws GraphNotConnectedException {
+        checkGraph(graph);
+        final long version = invalidate();
+
+        mCurrent = mRequests.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCurrent(version)) {
+                    return;     // don't even bother
+                }
+                final Jacobian jacobian = compute(graph, version);
+                if ((jacobian == null) || !isCurrent(version)) {
+                    return;
+                }
+                publisher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // one last check now that we're on the publishing thread
+                        if (isCurrent(version)) {
+                            listener.onJacobian(graph, jacobian);
+                        }
+                    }
+                });
+            }
+        });
+        return version;
+    }
+
+    /**
+     * Makes any background request that's being worked on (or waiting to
+     * be published) stale.  One that's already going quits soon after.
+     *
+     * @return  The new version.
+     */
+    public long invalidate() {
+        long version = mVersion.incrementAndGet();
+        if (mCurrent != null) {
+            mCurrent.cancel(false);     // if it hasn't started yet
+            mCurrent = null;
+        }
+        return version;
+    }
+
+    /** TRUE if a Jacobian for the given version would still be good. */
+    public boolean isCurrent(long version) {
+        return mVersion.get() == version;
+    }
+
+    /**
+     * Stops the background thread.  This calculator can't be used after
+     * this (the tree counter is left alone: it may be shared).
+     */
+    public void shutdown() {
+        invalidate();
+        mRequests.shutdownNow();
+    }
+
+    private void checkGraph(CsrGraph graph) throws GraphNotConnectedException {
+        if (graph.isDirected()) {
+            throw new IllegalArgumentException("Only undirected graphs have a Jacobian");
+        }
+        if ((graph.numNodes() > 1) && !graph.isConnected()) {
+            throw new GraphNotConnectedException();
+        }
+    }
+
+    /**
+     * Does the actual work.
+     *
+     * @param version   The request this is for, or {@link #NO_VERSION}.
+     *
+     * @return  The Jacobian, or null if the version went stale partway.
+     */
+    private Jacobian compute(CsrGraph graph, long version) {
+        mModulus = mTreeCounter.count(graph);
+        if (mModulus.equals(BigInteger.ONE)) {
+            return new Jacobian(new BigInteger[0]);     // a tree: nothing to it
+        }
+        if (isStale(version)) {
+            return null;
+        }
+
+        mSmallBits = mModulus.bitLength() - 1;
+        mBigBits = 3 * mModulus.bitLength();
+        buildReducedLaplacian(graph);
+        boolean finished = eliminate(version);
+
+        BigInteger[] factors = null;
+        if (finished) {
+            // Rows that went all 0 (mod d) never got a pivot.  Each is a
+            // factor of d.  (There can only be one, as the product is d.)
+            for (boolean done : mRowDone) {
+                if (!done) {
+                    mFactors.add(mModulus);
+                }
+            }
+            factors = invariantFactors(mFactors);
+        }
+
+        mRows = null;
+        mColumns = null;
+        mShortestRows = null;
+        mFactors = null;
+        return finished ? new Jacobian(factors) : null;
+    }
+
+    /** TRUE if the background request with this version isn't wanted anymore */
+    private boolean isStale(long version) {
+        return (version != NO_VERSION) && !isCurrent(version);
+    }
+
+    /**
+     * Fills in {@link #mRows} and {@link #mColumns} with the Laplacian mod
+     * d, leaving out the last node.
+     */
+    @SuppressLint("UseSparseArrays")
+    private void buildReducedLaplacian(CsrGraph graph) {
+        int size = Math.max(0, graph.numNodes() - 1);
+        mRows = new ArrayList<>(size);
+        mColumns = new ArrayList<>(size);
+        mRowDone = new boolean[size];
+        mFactors = new ArrayList<>();
+        mShortestRows = new PriorityQueue<>(Math.max(1, size), new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < size; i++) {
+            mRows.add(new HashMap<Integer, BigInteger>());
+            mColumns.add(new HashSet<Integer>());
+        }
+        for (int i = 0; i < size; i++) {
+            for (int k = graph.offset(i); k < graph.offset(i + 1); k++) {
+                int j = graph.target(k);
+                if (j == i) {
+                    continue;   // loops don't count
+                }
+                add(i, i, BigInteger.ONE);
+                if (j < size) {
+                    add(i, j, BigInteger.ONE.negate());
+                }
+            }
+        }
+    }
+
+    /**
+     * Pivots until the matrix is used up.  The pivot is picked from the
+     * few shortest rows, whichever unit makes the least fill-in (row
+     * length - 1 times column length - 1, Markowitz's rule), +-1s first.
+     *
+     * A row without any units is set aside until it changes.  If too many
+     * of the shortest rows are like that, the shortest one is done with
+     * gcds (Euclid) after all: a unit further down would make a lot more
+     * fill-in.  And when no row has a unit left, it's gcds for the rest.
+     *
+     * @return  FALSE if the version went stale (checked every pivot).
+     */
+    private boolean eliminate(long version) {
+        for (int r = 0; r < mRows.size(); r++) {
+            queueRow(r);
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        List<Integer> pivotColumns = new ArrayList<>();
+        List<Integer> aside = new ArrayList<>();
+        while (true) {
+            if (isStale(version)) {
+                return false;
+            }
+
+            // a few of the shortest rows that have units
+            candidates.clear();
+            pivotColumns.clear();
+            aside.clear();
+            long[] next;
+            while ((candidates.size() < PIVOT_ROWS) && (aside.size() <= MAX_SET_ASIDE)
+                    && ((next = mShortestRows.poll()) != null)) {
+                int r = (int) next[1];
+                Map<Integer, BigInteger> row = mRows.get(r);
+                if (mRowDone[r] || (next[0] != row.size())) {
+                    continue;   // old news
+                }
+                if (reduceRow(r)) {
+                    queueRow(r);    // it was shorter than it looked
+                    continue;
+                }
+                if (row.isEmpty()) {
+                    continue;       // all 0 (mod d)
+                }
+                int column = bestPivot(r);
+                if (column != -1) {
+                    candidates.add(r);
+                    pivotColumns.add(column);
+                }
+                else {
+                    aside.add(r);
+                }
+            }
+
+            if (candidates.isEmpty()) {
+                int r;
+                if (aside.size() > MAX_SET_ASIDE) {
+                    r = aside.get(0);
+                    for (int k = 1; k < aside.size(); k++) {
+                        queueRow(aside.get(k));
+                    }
+                }
+                else {
+                    r = shortestRowLeft();
+                    if (r == -1) {
+                        return true;    // all done
+                    }
+                }
+                pivotEuclid(r, smallestColumn(mRows.get(r)));
+                continue;
+            }
+
+            int best = 0;
+            for (int k = 1; k < candidates.size(); k++) {
+                if (isBetterPivot(candidates.get(k), pivotColumns.get(k), candidates.get(best), pivotColumns.get(best))) {
+                    best = k;
+                }
+            }
+            for (int k = 0; k < candidates.size(); k++) {
+                if (k != best) {
+                    queueRow(candidates.get(k));
+                }
+            }
+            pivotOnUnit(candidates.get(best), pivotColumns.get(best));
+        }
+    }
+
+    /**
+     * The best pivot in a row: the +-1 in the shortest column, or if there
+     * aren't any the unit in the shortest column.
+     *
+     * @return  The column, or -1 if there aren't any units.
+     */
+    private int bestPivot(int r) {
+        int bestColumn = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, BigInteger> entry : mRows.get(r).entrySet()) {
+            int count = mColumns.get(entry.getKey()).size();
+            if ((count < bestCount) && entry.getValue().abs().equals(BigInteger.ONE)) {
+                bestCount = count;
+                bestColumn = entry.getKey();
+            }
+        }
+        if (bestColumn != -1) {
+            return bestColumn;
+        }
+
+        for (Map.Entry<Integer, BigInteger> entry : mRows.get(r).entrySet()) {
+            int count = mColumns.get(entry.getKey()).size();
+            if ((count < bestCount) && entry.getValue().gcd(mModulus).equals(BigInteger.ONE)) {
+                bestCount = count;
+                bestColumn = entry.getKey();
+            }
+        }
+        return bestColumn;
+    }
+
+    /** TRUE if pivoting at (r, c) beats (otherR, otherC): +-1s first, then less fill-in. */
+    private boolean isBetterPivot(int r, int c, int otherR, int otherC) {
+        boolean one = mRows.get(r).get(c).abs().equals(BigInteger.ONE);
+        boolean otherOne = mRows.get(otherR).get(otherC).abs().equals(BigInteger.ONE);
+        if (one != otherOne) {
+            return one;
+        }
+        long cost = (mRows.get(r).size() - 1) * (long) (mColumns.get(c).size() - 1);
+        long otherCost = (mRows.get(otherR).size() - 1) * (long) (mColumns.get(otherC).size() - 1);
+        return cost < otherCost;
+    }
+
+    /**
+     * The shortest row that isn't done (or all 0), for when none have
+     * units.  They're all reduced by then.
+     *
+     * @return  -1 if there aren't any.
+     */
+    private int shortestRowLeft() {
+        int shortest = -1;
+        for (int r = 0; r < mRows.size(); r++) {
+            int size = mRows.get(r).size();
+            if (!mRowDone[r] && (size > 0) && ((shortest == -1) || (size < mRows.get(shortest).size()))) {
+                shortest = r;
+            }
+        }
+        return shortest;
+    }
+
+    private void queueRow(int r) {
+        mShortestRows.add(new long[] { mRows.get(r).size(), r });
+    }
+
+    /**
+     * Clears out the column of the unit at (r, c) with one round of row
+     * operations and drops the row and column.  Clearing the row would
+     * only take column operations that don't touch anything else (the
+     * column is empty by then), so that's skipped.  The diagonal entry is
+     * a unit, so it's a factor of 1.
+     */
+    private void pivotOnUnit(int r, int c) {
+        Map<Integer, BigInteger> row = mRows.get(r);
+        BigInteger inverse = row.get(c).modInverse(mModulus);
+        for (int i : mColumns.get(c).toArray(new Integer[0])) {
+            if (i != r) {
+                subtractRow(i, r, c, reduce(reduce(mRows.get(i).get(c)).multiply(inverse)));
+            }
+        }
+        drop(r, c);
+    }
+
+    /**
+     * Like {@link #pivotOnUnit(int, int)}, but for a pivot that isn't a
+     * unit.  It's like Euclid's algorithm: two rows (or columns) are
+     * replaced by combinations that put their gcd at the pivot and 0 in
+     * the other one.  That can mess up the row after the column was clean
+     * (or the other way around), so it goes until both are clean.  The
+     * pivot only ever gets smaller, so that doesn't take long.
+     */
+    private void pivotEuclid(int r, int c) {
+        boolean clean = false;
+        while (!clean) {
+            for (int i : mColumns.get(c).toArray(new Integer[0])) {
+                if (i != r) {
+                    combineRows(r, i, c);
+                }
+            }
+            for (int j : mRows.get(r).keySet().toArray(new Integer[0])) {
+                if (j != c) {
+                    combineColumns(c, j, r);
+                }
+            }
+            clean = (mColumns.get(c).size() == 1);
+        }
+
+        BigInteger factor = mRows.get(r).get(c).gcd(mModulus);
+        if (!factor.equals(BigInteger.ONE)) {
+            mFactors.add(factor);
+        }
+        drop(r, c);
+    }
+
+    /** Drops row r and column c (everything else in them is 0 by now). */
+    private void drop(int r, int c) {
+        for (int j : mRows.get(r).keySet()) {
+            mColumns.get(j).remove(r);
+        }
+        mRows.get(r).clear();
+        mRowDone[r] = true;
+    }
+
+    /** The column of the smallest entry of the row (ignoring signs). */
+    private int smallestColumn(Map<Integer, BigInteger> row) {
+        int bestColumn = -1;
+        BigInteger bestValue = null;
+        for (Map.Entry<Integer, BigInteger> entry : row.entrySet()) {
+            BigInteger value = entry.getValue().abs();
+            if ((bestValue == null) || (value.compareTo(bestValue) < 0)) {
+                bestValue = value;
+                bestColumn = entry.getKey();
+            }
+        }
+        return bestColumn;
+    }
+
+    /**
+     * Row i -= times * row r, where that makes entry (i, c) 0 (mod d).
+     * It's set to 0 outright, the rest aren't reduced yet.
+     */
+    private void subtractRow(int i, int r, int c, BigInteger times) {
+        for (Map.Entry<Integer, BigInteger> entry : mRows.get(r).entrySet()) {
+            int j = entry.getKey();
+            if (j != c) {
+                add(i, j, times.multiply(entry.getValue()).negate());
+            }
+        }
+        mRows.get(i).remove(c);
+        mColumns.get(c).remove(i);
+        queueRow(i);
+    }
+
+    /**
+     * Reduces every entry of a row mod d (dropping the ones that are 0).
+     *
+     * @return  TRUE if that made it shorter.
+     */
+    private boolean reduceRow(int r) {
+        boolean shorter = false;
+        for (Map.Entry<Integer, BigInteger> entry : new ArrayList<>(mRows.get(r).entrySet())) {
+            BigInteger value = reduce(entry.getValue());
+            if (value != entry.getValue()) {
+                set(r, entry.getKey(), value);
+                shorter |= (value.signum() == 0);
+            }
+        }
+        return shorter;
+    }
+
+    /**
+     * Replaces rows p and i with two combinations of them so that entry
+     * (p, column) becomes the gcd of the two and (i, column) becomes 0.  The
+     * 2x2 transformation has determinant 1, so nothing is lost.
+     */
+    private void combineRows(int p, int i, int column) {
+        reduceRow(i);
+        if (!mRows.get(i).containsKey(column)) {
+            return;     // it was 0 (mod d) all along
+        }
+        BigInteger pivot = mRows.get(p).get(column);
+        BigInteger[] g = extendedGcd(pivot, mRows.get(i).get(column));
+        if (g[0].equals(pivot)) {
+            // the pivot divides it: just a row subtraction
+            subtractRow(i, p, column, mRows.get(i).get(column).divide(pivot));
+            return;
+        }
+
+        Map<Integer, BigInteger> top = new HashMap<>(mRows.get(p));
+        Map<Integer, BigInteger> bottom = new HashMap<>(mRows.get(i));
+        BigInteger x = g[1];
+        BigInteger y = g[2];
+        BigInteger u = top.get(column).divide(g[0]);
+        BigInteger v = bottom.get(column).divide(g[0]);
+
+        Set<Integer> columns = new HashSet<>(top.keySet());
+        columns.addAll(bottom.keySet());
+        for (int j : columns) {
+            BigInteger a = top.containsKey(j) ? top.get(j) : BigInteger.ZERO;
+            BigInteger b = bottom.containsKey(j) ? bottom.get(j) : BigInteger.ZERO;
+            set(p, j, x.multiply(a).add(y.multiply(b)));
+            set(i, j, u.multiply(b).subtract(v.multiply(a)));
+        }
+        queueRow(p);
+        queueRow(i);
+    }
+
+    /** Same as {@link #combineRows} but for columns p and j of row "row". */
+    private void combineColumns(int p, int j, int row) {
+        BigInteger pivot = mRows.get(row).get(p);
+        BigInteger[] g = extendedGcd(pivot, mRows.get(row).get(j));
+        if (g[0].equals(pivot)) {
+            // the pivot divides it: column j -= times * column p, which
+            // only touches the rows that have something in column p
+            BigInteger times = mRows.get(row).get(j).divide(pivot);
+            for (int i : mColumns.get(p).toArray(new Integer[0])) {
+                set(i, j, reduce(mRows.get(i).containsKey(j) ? mRows.get(i).get(j) : BigInteger.ZERO)
+                                .subtract(times.multiply(mRows.get(i).get(p))));
+                queueRow(i);
+            }
+            return;
+        }
+
+        BigInteger x = g[1];
+        BigInteger y = g[2];
+        BigInteger u = mRows.get(row).get(p).divide(g[0]);
+        BigInteger v = mRows.get(row).get(j).divide(g[0]);
+
+        Set<Integer> rows = new HashSet<>(mColumns.get(p));
+        rows.addAll(mColumns.get(j));
+        for (int i : rows) {
+            Map<Integer, BigInteger> r = mRows.get(i);
+            BigInteger left = r.containsKey(p) ? r.get(p) : BigInteger.ZERO;
+            BigInteger right = r.containsKey(j) ? r.get(j) : BigInteger.ZERO;
+            set(i, p, x.multiply(left).add(y.multiply(right)));
+            set(i, j, u.multiply(right).subtract(v.multiply(left)));
+            queueRow(i);
+        }
+    }
+
+    /**
+     * Adds to one entry of the matrix.  It's only reduced mod d if it's
+     * getting really big.
+     */
+    private void add(int row, int column, BigInteger amount) {
+        BigInteger old = mRows.get(row).get(column);
+        BigInteger value = (old == null) ? amount : old.add(amount);
+        if (value.bitLength() > mBigBits) {
+            value = reduce(value);
+        }
+        store(row, column, value);
+    }
+
+    /** Sets one entry of the matrix, reduced mod d. */
+    private void set(int row, int column, BigInteger value) {
+        store(row, column, reduce(value));
+    }
+
+    /** Puts a value in the matrix, keeping the column sets up to date. */
+    private void store(int row, int column, BigInteger value) {
+        if (value.signum() == 0) {
+            mRows.get(row).remove(column);
+            mColumns.get(column).remove(row);
+        }
+        else {
+            mRows.get(row).put(column, value);
+            mColumns.get(column).add(row);
+        }
+    }
+
+    /** Returns x mod d, between -d/2 and d/2. */
+    private BigInteger reduce(BigInteger x) {
+        if (x.bitLength() < mSmallBits) {
+            return x;   // nothing to do (the usual case, early on)
+        }
+        x = x.mod(mModulus);
+        return (x.shiftLeft(1).compareTo(mModulus) > 0) ? x.subtract(mModulus) : x;
+    }
+
+    /**
+     * Turns the diagonal of a diagonal matrix into its invariant factors
+     * (each dividing the next) by swapping in gcds and lcms.  O(k^2).
+     */
+    static BigInteger[] invariantFactors(List<BigInteger> diagonal) {
+        BigInteger[] factors = diagonal.toArray(new BigInteger[0]);
+        for (int i = 0; i < factors.length; i++) {
+            for (int j = i + 1; j < factors.length; j++) {
+                BigInteger gcd = factors[i].gcd(factors[j]);
+                BigInteger lcm = factors[i].divide(gcd).multiply(factors[j]);
+                factors[i] = gcd;
+                factors[j] = lcm;
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * @return  {gcd, x, y} with a x + b y = gcd.  a and b are not both 0.
+     *          When a divides b it's always {a, 1, 0}, so a pivot that
+     *          already divides doesn't get swapped around (which can go
+     *          back and forth forever).
+     */
+    private static BigInteger[] extendedGcd(BigInteger a, BigInteger b) {
+        if ((a.signum() != 0) && (b.mod(a.abs()).signum() == 0)) {
+            return new BigInteger[] { a, BigInteger.ONE, BigInteger.ZERO };
+        }
+        BigInteger oldR = a, r = b;
+        BigInteger oldS = BigInteger.ONE, s = BigInteger.ZERO;
+        BigInteger oldT = BigInteger.ZERO, t = BigInteger.ONE;
+        while (r.signum() != 0) {
+            BigInteger quotient = oldR.divide(r);
+            BigInteger temp = r;
+            r = oldR.subtract(quotient.multiply(r));
+            oldR = temp;
+            temp = s;
+            s = oldS.subtract(quotient.multiply(s));
+            oldS = temp;
+            temp = t;
+            t = oldT.subtract(quotient.multiply(t));
+            oldT = temp;
+        }
+        return new BigInteger[] { oldR, oldS, oldT };
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Receives background Jacobians, on the publisher's thread.
+     */
+    public interface Listener {
+        /**
+         * @param graph     The graph it's for (as it was requested).
+         * @param jacobian  Its Jacobian.
+         */
+        void onJacobian(CsrGraph graph, Jacobian jacobian);
+    }
+
+    /**
+     * The Jacobian of a graph: a product of cyclic groups.
+     */
+    public static class Jacobian {
+
+        /** The invariant factors bigger than 1, smallest first */
+        private final BigInteger[] mFactors;
+
+        private final BigInteger mOrder;
+
+        /**
+         * @param invariantFactors  Each dividing the next.  Any 1s are
+         *                          dropped.
+         */
+        Jacobian(BigInteger[] invariantFactors) {
+            List<BigInteger> factors = new ArrayList<>();
+            BigInteger order = BigInteger.ONE;
+            for (BigInteger factor : invariantFactors) {
+                order = order.multiply(factor);
+                if (!factor.equals(BigInteger.ONE)) {
+                    factors.add(factor);
+                }
+            }
+            mFactors = factors.toArray(new BigInteger[0]);
+            mOrder = order;
+        }
+
+        /**
+         * The size of the group, which is the number of spanning trees of
+         * the graph.
+         */
+        public BigInteger getOrder() {
+            return mOrder;
+        }
+
+        /**
+         * The sizes of the cyclic parts, each dividing the next.  The 1s
+         * (which don't add anything) are left out, so a tree gives an
+         * empty array.
+         */
+        public BigInteger[] getInvariantFactors() {
+            return mFactors.clone();
+        }
+
+        /** TRUE if the group is just one cyclic group (or nothing at all) */
+        public boolean isCyclic() {
+            return mFactors.length <= 1;
+        }
+
+        @Override
+        public String toString() {
+            if (mFactors.length == 0) {
+                return "0";
+            }
+            StringBuilder builder = new StringBuilder();
+            for (BigInteger factor : mFactors) {
+                if (builder.length() > 0) {
+                    builder.append(" x ");
+                }
+                builder.append("Z/").append(factor);
+            }
+            return builder.toString();
+        }
+    }
+}
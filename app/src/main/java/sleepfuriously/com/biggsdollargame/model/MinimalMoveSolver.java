@@ -0,0 +1,537 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the fewest give/take moves that win a Dollar Game.
+ *
+ * Since the order of moves doesn't matter, all that counts is how many
+ * times each node fires (a "script", negative for borrowing).  Giving and
+ * then taking at the same node cancels out, so the number of moves of a
+ * script s is the sum of |s|.  The game is won when D - L s has nobody in
+ * debt (L is the Laplacian of the graph), which for every node v is
+ *
+ *		deg(v) s(v) - (sum of s over v's neighbors)  <=  D(v)
+ *
+ * Only the differences between firing counts matter here: everybody
+ * firing once more changes nothing.  So any script can be shifted by a
+ * constant for free, and the best shift puts its median at 0.  That means
+ * some best script has a node that doesn't move at all, which prunes a
+ * lot of the search.
+ *
+ * The search is branch-and-bound over a box of possible firing counts for
+ * each node:
+ *	-	Bounds are tightened with the constraints above until nothing
+ *		changes.  A node can't fire more than its money plus what its
+ *		neighbors could give it allows, and its neighbors must give it at
+ *		least enough to cover its debt if it fires the least it can.
+ *	-	After tightening, the top of every box is always a winning script
+ *		(winning scripts are closed under max), so every step of the
+ *		search offers a new candidate for free.
+ *	-	The lower bound is how far each box is from 0.
+ *	-	The first candidates come from {@link DivisorReducer}'s scripts.
+ *
+ * That's plenty quick for the graphs in the game.  For huge games the
+ * search gives up after {@link #setMaxSteps(long)} steps and returns the
+ * best it found (see {@link Solution#isOptimal()}).
+ *
+ *	USAGE:
+ *		MinimalMoveSolver solver = new MinimalMoveSolver();
+ *		solver.solveInBackground(game.getGraph(), game.getDivisor(), callback);
+ *		...
+ *		// later, in the callback (on the solver's thread!)
+ *		for (MinimalMoveSolver.Move move : solution.getMoves()) ...
+ *
+ * Only for connected, undirected graphs.  Each solve keeps its own state,
+ * so one solver can run several at once (on different threads).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MinimalMoveSolver {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** Number of boxes to look at before giving up */
+    public static final long DEFAULT_MAX_STEPS = 1000000L;
+
+    /** Only start the reducer at every node for graphs this small */
+    private static final int MAX_NODES_FOR_ALL_STARTS = 64;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** Runs {@link #solveInBackground}, for all the solvers */
+    private static ExecutorService sBackground;
+
+    /** Each thread needs its own (they're not thread-safe) */
+    private final ThreadLocal<DivisorReducer> mReducers = new ThreadLocal<DivisorReducer>() {
+        @Override
+        protected DivisorReducer initialValue() {
+            return new DivisorReducer();
+        }
+    };
+
+    private volatile long mMaxSteps = DEFAULT_MAX_STEPS;
+
+    /**
+     * Bumped by {@link #cancel()}.  Each solve remembers what it was when
+     * the solve was asked for, and quits once it's different.
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Sets how many boxes the search may look at before settling for the
+     * best so far.
+     */
+    public void setMaxSteps(long maxSteps) {
+        mMaxSteps = maxSteps;
+    }
+
+    /**
+     * Makes every solve that's been asked for so far stop as soon as it
+     * can and return the best it's found.  That includes background solves
+     * that haven't even started yet.  Solves asked for after this aren't
+     * affected.  Safe to call from any thread.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Finds a script with the fewest moves that wins the game.
+     *
+     * @param divisor   The money in each node, by dense index of the graph.
+     *
+     * @return  The solution, or null if the game can't be won.
+     *
+     * @throws GraphNotConnectedException   If the graph isn't connected.
+     */
+    public Solution solve(CsrGraph graph, int[] divisor) throws GraphNotConnectedException {
+        return solve(graph, divisor, null);
+    }
+
+    /**
+     * Like {@link #solve(CsrGraph, int[])}, but the search also stops (with
+     * the best so far) as soon as the canceller says so.  This is the way
+     * to cancel a solve that's queued up on some other thread: the
+     * canceller is asked all along, starting before any work is done.
+     *
+     * @param canceller     May be null.
+     */
+    public Solution solve(CsrGraph graph, int[] divisor, @Nullable Canceller canceller)
+            throws GraphNotConnectedException {
+        return solve(graph, divisor, canceller, mGeneration.get());
+    }
+
+    /**
+     * Like {@link #solve(CsrGraph, int[])}, but on a background thread
+     * (shared by all the solvers).  The callback is called on that thread
+     * when done.
+     *
+     * @return  The queued task.
+     */
+    public Future<?> solveInBackground(final CsrGraph graph, final int[] divisor,
+                                       final Callback callback) {
+        final int[] divisorCopy = divisor.clone();
+        final long generation = mGeneration.get();     // a cancel() from now on counts
+
+        return background().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callback.onSolved(solve(graph, divisorCopy, null, generation));
+                }
+                catch (GraphNotConnectedException e) {
+                    callback.onSolved(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Does the work of the solve methods.
+     *
+     * @param generation    What {@link #mGeneration} was when the solve was
+     *                      asked for.
+     */
+    private Solution solve(CsrGraph graph, int[] divisor, @Nullable Canceller canceller,
+                           long generation) throws GraphNotConnectedException {
+        DivisorReducer reducer = mReducers.get();
+        if (!reducer.isWinnable(graph, divisor)) {
+            return null;
+        }
+
+        int numNodes = graph.numNodes();
+        if (numNodes <= 1) {
+            return new Solution(new long[numNodes], true);
+        }
+
+        Search search = new Search(graph, divisor, canceller, generation);
+
+        // the first candidates: reduce at a bunch of different nodes
+        int numStarts = (numNodes <= MAX_NODES_FOR_ALL_STARTS) ? numNodes : 1;
+        for (int q = 0; q < numStarts; q++) {
+            long[] reduced = reducer.reduce(graph, divisor, q);
+            if (reduced[q] >= 0) {
+                search.offer(Arrays.copyOf(reducer.getScript(), numNodes));
+            }
+        }
+
+        boolean optimal = search.run();
+        return new Solution(search.mBest, optimal);
+    }
+
+    /**
+     * The thread pool behind {@link #solveInBackground}.  Made when first
+     * needed; its threads go away on their own when idle.
+     */
+    private static synchronized ExecutorService background() {
+        if (sBackground == null) {
+            sBackground = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MinimalMoveSolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBackground;
+    }
+
+    /** Division that rounds down (towards negative infinity). */
+    private static long floorDiv(long a, long b) {
+        long quotient = a / b;
+        if ((a % b != 0) && ((a < 0) != (b < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Tells a solve when to give up.  Asked over and over from the
+     * solving thread, so it should be quick.
+     */
+    public interface Canceller {
+        boolean isCancelled();
+    }
+
+    /**
+     * Hears when a background solve is done.
+     */
+    public interface Callback {
+
+        /**
+         * @param solution  The answer, or null if the game can't be won.
+         *                  Called on the solver's thread!
+         */
+        void onSolved(Solution solution);
+    }
+
+    /**
+     * One give (or take) by one node.
+     */
+    public static class Move {
+        private final int mNode;
+        private final boolean mGive;
+
+        public Move(int node, boolean give) {
+            mNode = node;
+            mGive = give;
+        }
+
+        /** The dense index of the node that moves */
+        public int getNode() {
+            return mNode;
+        }
+
+        /** TRUE for a give, FALSE for a take */
+        public boolean isGive() {
+            return mGive;
+        }
+
+        @Override
+        public String toString() {
+            return (mGive ? "give " : "take ") + mNode;
+        }
+    }
+
+    /**
+     * What {@link #solve(CsrGraph, int[])} found.
+     */
+    public static class Solution {
+        private final long[] mScript;
+        private final long mNumMoves;
+        private final boolean mOptimal;
+
+        Solution(long[] script, boolean optimal) {
+            mScript = script;
+            mOptimal = optimal;
+            long numMoves = 0;
+            for (long fires : script) {
+                numMoves += Math.abs(fires);
+            }
+            mNumMoves = numMoves;
+        }
+
+        /** How many times each node gives (negative for takes) */
+        public long[] getScript() {
+            return mScript.clone();
+        }
+
+        public long getNumMoves() {
+            return mNumMoves;
+        }
+
+        /**
+         * FALSE if the search gave up (or was cancelled) before it could
+         * be sure there's nothing better.
+         */
+        public boolean isOptimal() {
+            return mOptimal;
+        }
+
+        /**
+         * The moves to make, one node at a time.  Any order works; this
+         * just does all of one node's moves before the next node's.
+         */
+        public List<Move> getMoves() {
+            List<Move> moves = new ArrayList<>();
+            for (int node = 0; node < mScript.length; node++) {
+                for (long i = 0; i < Math.abs(mScript[node]); i++) {
+                    moves.add(new Move(node, mScript[node] > 0));
+                }
+            }
+            return moves;
+        }
+
+        @Override
+        public String toString() {
+            return "Solution" + Arrays.toString(mScript) + (mOptimal ? "" : " (maybe not best)");
+        }
+    }
+
+    /**
+     * One solve: the problem and the best found so far.  Each solve gets
+     * its own, so any number of them can run on the same solver at once.
+     */
+    private class Search {
+
+        private final CsrGraph mGraph;
+        private final long[] mDivisor;
+        private final int[] mDegrees;
+
+        @Nullable
+        private final Canceller mCanceller;
+
+        /** {@link MinimalMoveSolver#mGeneration} when this was asked for */
+        private final long mStartGeneration;
+
+        /** Best script found so far and its number of moves */
+        long[] mBest = null;
+        long mBestCost = Long.MAX_VALUE;
+
+        Search(CsrGraph graph, int[] divisor, @Nullable Canceller canceller, long generation) {
+            mGraph = graph;
+            mCanceller = canceller;
+            mStartGeneration = generation;
+
+            int numNodes = graph.numNodes();
+            mDivisor = new long[numNodes];
+            mDegrees = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                mDivisor[i] = divisor[i];
+                for (int k = graph.offset(i); k < graph.offset(i + 1); k++) {
+                    if (graph.target(k) != i) {
+                        mDegrees[i]++;
+                    }
+                }
+            }
+        }
+
+        /** TRUE once anybody wants this solve to stop */
+        private boolean isCancelled() {
+            return (mGeneration.get() != mStartGeneration)
+                   || ((mCanceller != null) && mCanceller.isCancelled());
+        }
+
+        /**
+         * The branch-and-bound search.  A box is one long array: the lowest
+         * allowed firing count of each node followed by the highest.
+         *
+         * @return  TRUE if it finished (so {@link #mBest} really is the best).
+         */
+        boolean run() {
+            int numNodes = mDivisor.length;
+            if (mBestCost == 0) {
+                return true;
+            }
+
+            // anything better than what we have moves each node less than that
+            long[] start = new long[2 * numNodes];
+            Arrays.fill(start, 0, numNodes, -(mBestCost - 1));
+            Arrays.fill(start, numNodes, 2 * numNodes, mBestCost - 1);
+
+            List<long[]> stack = new ArrayList<>();
+            stack.add(start);
+            long steps = 0;
+
+            while (!stack.isEmpty()) {
+                if (isCancelled() || (++steps > mMaxSteps)) {
+                    return false;
+                }
+
+                long[] box = stack.remove(stack.size() - 1);
+                if (!tighten(box)) {
+                    continue;   // nothing wins in here
+                }
+
+                // the top of the box wins
+                offer(Arrays.copyOfRange(box, numNodes, 2 * numNodes));
+
+                long lowerBound = 0;
+                boolean hasZero = false;
+                int branchNode = -1;
+                long branchSize = -1;
+                for (int i = 0; i < numNodes; i++) {
+                    long lo = box[i];
+                    long hi = box[numNodes + i];
+                    if (lo > 0) {
+                        lowerBound += lo;
+                    }
+                    else if (hi < 0) {
+                        lowerBound -= hi;
+                    }
+                    else {
+                        hasZero = true;
+                    }
+
+                    // branch on the node that could move the most
+                    if (lo < hi) {
+                        long size = Math.max(Math.abs(lo), Math.abs(hi));
+                        if (size > branchSize) {
+                            branchSize = size;
+                            branchNode = i;
+                        }
+                    }
+                }
+
+                if (!hasZero || (lowerBound >= mBestCost) || (branchNode == -1)) {
+                    continue;
+                }
+
+                // Split into: the value closest to 0, everything below it, and
+                // everything above.  The closest goes on the stack last so it's
+                // tried first.
+                long lo = box[branchNode];
+                long hi = box[numNodes + branchNode];
+                long closest = Math.max(lo, Math.min(hi, 0));
+                if (closest < hi) {
+                    long[] above = box.clone();
+                    above[branchNode] = closest + 1;
+                    stack.add(above);
+                }
+                if (lo < closest) {
+                    long[] below = box.clone();
+                    below[numNodes + branchNode] = closest - 1;
+                    stack.add(below);
+                }
+                long[] fixed = box.clone();
+                fixed[branchNode] = closest;
+                fixed[numNodes + branchNode] = closest;
+                stack.add(fixed);
+            }
+            return true;
+        }
+
+        /**
+         * Shrinks the box using the winning condition until nothing changes.
+         *
+         * @return  FALSE if the box turns out to be empty.
+         */
+        private boolean tighten(long[] box) {
+            int numNodes = mDivisor.length;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int v = 0; v < numNodes; v++) {
+                    long sumHi = 0;
+                    for (int k = mGraph.offset(v); k < mGraph.offset(v + 1); k++) {
+                        int w = mGraph.target(k);
+                        if (w != v) {
+                            sumHi += box[numNodes + w];
+                        }
+                    }
+
+                    // v can't fire more than it (and all it could get) can afford
+                    long maxFires = floorDiv(mDivisor[v] + sumHi, mDegrees[v]);
+                    if (maxFires < box[numNodes + v]) {
+                        box[numNodes + v] = maxFires;
+                        if (maxFires < box[v]) {
+                            return false;
+                        }
+                        changed = true;
+                    }
+
+                    // v's neighbors must fire at least enough to cover v
+                    long needed = mDegrees[v] * box[v] - mDivisor[v] - sumHi;
+                    for (int k = mGraph.offset(v); k < mGraph.offset(v + 1); k++) {
+                        int w = mGraph.target(k);
+                        if (w == v) {
+                            continue;
+                        }
+                        long minFires = needed + box[numNodes + w];
+                        if (minFires > box[w]) {
+                            box[w] = minFires;
+                            if (minFires > box[numNodes + w]) {
+                                return false;
+                            }
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Takes a winning script, shifts it to use the fewest moves, and keeps
+         * it if it's the best yet.  The script may be changed.
+         */
+        void offer(long[] script) {
+            long[] sorted = script.clone();
+            Arrays.sort(sorted);
+            long median = sorted[sorted.length / 2];
+
+            long cost = 0;
+            for (int i = 0; i < script.length; i++) {
+                script[i] -= median;
+                cost += Math.abs(script[i]);
+            }
+            if (cost < mBestCost) {
+                mBestCost = cost;
+                mBest = script;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+/**
+ * Remembers the gives and takes of a {@link DollarGame} so they can be
+ * undone and redone.<br>
+ * <br>
+ * No snapshots here!  Every move is packed into a single int (the node's
+ * index in the game's {@link CsrGraph} and one bit for give/take), so the
+ * history is unlimited at 4 bytes a move.  Undoing a give is just a take
+ * from the same node (and the other way around), which is O(degree).<br>
+ * <br>
+ * USAGE:<br>
+ *      MoveJournal journal = new MoveJournal();<br>
+ *      game.fire(node);<br>
+ *      journal.record(node, true);<br>
+ *      ...<br>
+ *      if (journal.canUndo()) {<br>
+ *          journal.undo(game);<br>
+ *      }<br>
+ * <br>
+ * The journal doesn't listen to the game--the caller records the moves
+ * the user makes (that way undo and redo don't record themselves).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MoveJournal {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** All the moves, packed by {@link #pack(int, boolean)}. */
+    private final IntArrayList mMoves = new IntArrayList();
+
+    /**
+     * How many of the moves in {@link #mMoves} are currently applied.
+     * Everything at or past this is waiting to be redone.
+     */
+    private int mPosition = 0;
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Adds a move that was just made.  Anything that could have been redone
+     * is forgotten (same as every editor ever).
+     *
+     * @param node  The game's index of the node (not the graph id).
+     * @param give  True for a give (fire), false for a take (borrow).
+     */
+    public void record(int node, boolean give) {
+        mMoves.truncate(mPosition);
+        mMoves.add(pack(node, give));
+        mPosition++;
+    }
+
+    public boolean canUndo() {
+        return mPosition > 0;
+    }
+
+    public boolean canRedo() {
+        return mPosition < mMoves.size();
+    }
+
+    /**
+     * Takes back the last move by doing the opposite at the same node.
+     *
+     * @return  The index of the node that changed, or -1 if there was
+     *          nothing to undo.
+     */
+    public int undo(DollarGame game) {
+        if (!canUndo()) {
+            return -1;
+        }
+        int move = mMoves.get(--mPosition);
+        int node = nodeOf(move);
+        game.fire(node, isGiveMove(move) ? -1 : 1);
+        return node;
+    }
+
+    /**
+     * Does the last undone move again.
+     *
+     * @return  The index of the node that changed, or -1 if there was
+     *          nothing to redo.
+     */
+    public int redo(DollarGame game) {
+        if (!canRedo()) {
+            return -1;
+        }
+        int move = mMoves.get(mPosition++);
+        int node = nodeOf(move);
+        game.fire(node, isGiveMove(move) ? 1 : -1);
+        return node;
+    }
+
+    /** Forgets everything.  Use when starting a new game. */
+    public void clear() {
+        mMoves.clear();
+        mPosition = 0;
+    }
+
+    /** The number of moves that are applied right now (the undo depth). */
+    public int size() {
+        return mPosition;
+    }
+
+    /** The node of the i-th move (0 is the first). */
+    public int getNode(int i) {
+        return nodeOf(mMoves.get(i));
+    }
+
+    /** True if the i-th move was a give. */
+    public boolean isGive(int i) {
+        return isGiveMove(mMoves.get(i));
+    }
+
+    //~~~~~ packing
+
+    private static int pack(int node, boolean give) {
+        return (node << 1) | (give ? 1 : 0);
+    }
+
+    private static int nodeOf(int move) {
+        return move >>> 1;
+    }
+
+    private static boolean isGiveMove(int move) {
+        return (move & 1) != 0;
+    }
+}
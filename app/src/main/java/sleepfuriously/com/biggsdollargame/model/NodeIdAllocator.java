@@ -0,0 +1,216 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Keeps track of which node ids are in use so that the lowest free one
+ * can be found without probing 0, 1, 2...  every time.
+ *
+ * The used ids are kept in a bitset, with a second, smaller bitset on
+ * top of it that marks which 64-bit words are completely full.  So
+ * finding the next free id skips 4096 used ids at a time.  The lowest
+ * free id is remembered, so asking for it is O(1); freeing an id is O(1);
+ * and using up ids in order (the usual case) is O(1) amortized.
+ *
+ * Ids way past the end of the bitset (somebody called addNode() with
+ * a huge id) are kept in a plain HashSet until the bitset grows enough
+ * to reach them.  Negative ids are ignored--they can never be handed
+ * out anyway.
+ *
+ *	USAGE:
+ *		int id = allocator.allocate();   // lowest free id, now used
+ *		allocator.markUsed(42);          // somebody picked their own id
+ *		allocator.free(id);              // it's available again
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class NodeIdAllocator {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** All the bits of a word are set */
+    private static final long FULL = -1L;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** Bit i is set when id i is in use */
+    private long[] mUsed = new long[4];
+
+    /** Bit k is set when mUsed[k] is FULL */
+    private long[] mFull = new long[1];
+
+    /** Used ids that are too big for {@link #mUsed} (yet) */
+    private HashSet<Integer> mFar = new HashSet<>();
+
+    /**
+     * The lowest id that's not in use.  May be equal to the number of
+     * bits in {@link #mUsed}, in which case it needs to grow.
+     */
+    private int mLowestFree = 0;
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Returns the lowest id that's not in use.  Does NOT reserve it.<br>
+     * <br>
+     * O(1) amortized
+     */
+    public int lowestFree() {
+        while (mLowestFree >= capacity()) {
+            grow();
+            mLowestFree = nextFree(mLowestFree);
+        }
+        return mLowestFree;
+    }
+
+    /**
+     * Finds the lowest free id and marks it as used.
+     */
+    public int allocate() {
+        int id = lowestFree();
+        markUsed(id);
+        return id;
+    }
+
+    /**
+     * Marks the given id as used.  Nothing happens if it already was.
+     */
+    public void markUsed(int id) {
+        if (id < 0) {
+            return;
+        }
+        if (id >= capacity()) {
+            if (id < capacity() * 2) {
+                grow();
+            }
+            else {
+                mFar.add(id);
+                return;
+            }
+        }
+
+        int word = id >>> 6;
+        mUsed[word] |= 1L << id;
+        if (mUsed[word] == FULL) {
+            mFull[word >>> 6] |= 1L << word;
+        }
+        if (id == mLowestFree) {
+            mLowestFree = nextFree(id + 1);
+        }
+    }
+
+    /**
+     * Makes the given id available again.
+     */
+    public void free(int id) {
+        if (id < 0) {
+            return;
+        }
+        if (id >= capacity()) {
+            mFar.remove(id);
+            return;
+        }
+
+        int word = id >>> 6;
+        mUsed[word] &= ~(1L << id);
+        mFull[word >>> 6] &= ~(1L << word);
+        if (id < mLowestFree) {
+            mLowestFree = id;
+        }
+    }
+
+    public boolean isUsed(int id) {
+        if (id < 0) {
+            return false;
+        }
+        if (id >= capacity()) {
+            return mFar.contains(id);
+        }
+        return (mUsed[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /** Frees all the ids. */
+    public void clear() {
+        Arrays.fill(mUsed, 0L);
+        Arrays.fill(mFull, 0L);
+        mFar.clear();
+        mLowestFree = 0;
+    }
+
+    /** Number of ids that the bitset can hold */
+    private int capacity() {
+        return mUsed.length << 6;
+    }
+
+    /**
+     * Finds the first free id at or after the given one, only looking
+     * in the bitset.
+     *
+     * @return  The id, or {@link #capacity()} if the rest of the bitset
+     *          is full.
+     */
+    private int nextFree(int from) {
+        if (from >= capacity()) {
+            return capacity();
+        }
+
+        // first try the rest of the word that we start in
+        int word = from >>> 6;
+        long free = ~mUsed[word] & (FULL << from);
+        if (free != 0) {
+            return (word << 6) + Long.numberOfTrailingZeros(free);
+        }
+
+        // then find the next word that's not full, 64 words at a time
+        word++;
+        while (word < mUsed.length) {
+            int summary = word >>> 6;
+            long notFull = ~mFull[summary] & (FULL << word);
+            if (notFull != 0) {
+                word = (summary << 6) + Long.numberOfTrailingZeros(notFull);
+                if (word >= mUsed.length) {
+                    break;
+                }
+                return (word << 6) + Long.numberOfTrailingZeros(~mUsed[word]);
+            }
+            word = (summary + 1) << 6;
+        }
+        return capacity();
+    }
+
+    /**
+     * Doubles the size of the bitset and moves in any far ids that
+     * now fit.
+     */
+    private void grow() {
+        int oldCapacity = capacity();
+        mUsed = Arrays.copyOf(mUsed, mUsed.length * 2);
+        mFull = Arrays.copyOf(mFull, (mUsed.length + 63) >>> 6);
+
+        if (mFar.isEmpty()) {
+            return;
+        }
+        Iterator<Integer> iterator = mFar.iterator();
+        while (iterator.hasNext()) {
+            int id = iterator.next();
+            if (id < capacity()) {
+                iterator.remove();
+                int word = id >>> 6;
+                mUsed[word] |= 1L << id;
+                if (mUsed[word] == FULL) {
+                    mFull[word >>> 6] |= 1L << word;
+                }
+            }
+        }
+        if (mLowestFree >= oldCapacity) {
+            mLowestFree = nextFree(mLowestFree);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable version of a {@link Graph}.  The "with" and "without"
+ * methods return a NEW PersistentGraph and never touch this one.  The
+ * versions share almost all of their insides (see {@link PersistentIntMap}),
+ * so making a changed version is O(log n) instead of the O(n + e) of
+ * {@link Graph#clone()}.
+ *
+ * Good for undo, for solvers that try lots of branches, and for handing
+ * a graph to a background thread: old versions never change, so they
+ * can be read by any number of threads while the UI keeps editing.
+ * {@link Graph#snapshot()} hands these out for a live Graph.
+ *
+ * The rules are the same as Graph: ids are unique, edges are not
+ * duplicated (for undirected graphs, A-B and B-A are the same edge), and
+ * edges aren't checked to see if their nodes exist.
+ *
+ *	USAGE:
+ *		PersistentGraph<String> v1 = PersistentGraph.empty(false);
+ *		PersistentGraph<String> v2 = v1.withNode(0, "a").withNode(1, "b").withEdge(0, 1);
+ *		PersistentGraph<String> v3 = v2.withoutNode(1);
+ *		v2.numEdges();      // still 1
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PersistentGraph<T> {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final boolean mDirected;
+
+    /** The data of each node, by id */
+    private final PersistentIntMap<T> mNodes;
+
+    /**
+     * For each node id, the nodes at the END of the edges that START with
+     * it, mapped to the weight of that edge.
+     */
+    private final PersistentIntMap<PersistentIntMap<Integer>> mOut;
+
+    /**
+     * For each node id, the nodes at the START of the edges that END with
+     * it (and the weights).  Loops are only in {@link #mOut}.
+     */
+    private final PersistentIntMap<PersistentIntMap<Integer>> mIn;
+
+    private final int mNumEdges;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    private PersistentGraph(boolean directed, PersistentIntMap<T> nodes,
+                            PersistentIntMap<PersistentIntMap<Integer>> out,
+                            PersistentIntMap<PersistentIntMap<Integer>> in,
+                            int numEdges) {
+        mDirected = directed;
+        mNodes = nodes;
+        mOut = out;
+        mIn = in;
+        mNumEdges = numEdges;
+    }
+
+    /**
+     * Returns a graph with no nodes and no edges.
+     */
+    public static <T> PersistentGraph<T> empty(boolean directed) {
+        return new PersistentGraph<>(directed, PersistentIntMap.<T>empty(),
+                                     PersistentIntMap.<PersistentIntMap<Integer>>empty(),
+                                     PersistentIntMap.<PersistentIntMap<Integer>>empty(), 0);
+    }
+
+    /**
+     * Makes a PersistentGraph with the same nodes and edges as the given
+     * Graph.<br>
+     * <br>
+     * O((n + e) log n)
+     */
+    public static <T> PersistentGraph<T> from(Graph<T> graph) {
+        PersistentGraph<T> result = empty(graph.isDirected());
+        for (int id : graph.getAllNodeIds()) {
+            result = result.withNode(id, graph.getNodeData(id));
+        }
+        List<Graph<T>.Edge> edges = graph.getAllEdges();
+        for (int i = 0; i < edges.size(); i++) {
+            Graph<T>.Edge edge = edges.get(i);
+            result = result.withEdge(edge.startNodeId, edge.endNodeId, edge.weight);
+        }
+        return result;
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    public boolean isDirected() {
+        return mDirected;
+    }
+
+    public int numNodes() {
+        return mNodes.size();
+    }
+
+    public int numEdges() {
+        return mNumEdges;
+    }
+
+    public boolean containsNode(int id) {
+        return mNodes.containsKey(id);
+    }
+
+    /**
+     * @return  The data of the node, or null if there's no such node.
+     */
+    public T getNodeData(int id) {
+        return mNodes.get(id);
+    }
+
+    /** Returns all the node ids in ascending order. */
+    public int[] getAllNodeIds() {
+        return mNodes.keys();
+    }
+
+    /** Hands every node's id and data to the visitor, in no particular order. */
+    public void forEachNode(PersistentIntMap.Visitor<? super T> visitor) {
+        mNodes.forEach(visitor);
+    }
+
+    /**
+     * Returns a graph just like this one, but with the given node.  If there's
+     * already a node with this id, its data is replaced.<br>
+     * <br>
+     * O(log n)
+     */
+    public PersistentGraph<T> withNode(int id, T data) {
+        PersistentIntMap<T> nodes = mNodes.put(id, data);
+        if (nodes == mNodes) {
+            return this;
+        }
+        return new PersistentGraph<>(mDirected, nodes, mOut, mIn, mNumEdges);
+    }
+
+    /**
+     * Returns a graph without the given node or any of its edges.<br>
+     * <br>
+     * O(degree * log n)
+     */
+    public PersistentGraph<T> withoutNode(int id) {
+        PersistentGraph<T> result = this;
+
+        PersistentIntMap<Integer> outs = mOut.get(id);
+        if (outs != null) {
+            for (int end : outs.keys()) {
+                result = result.withoutEdgeExactly(id, end);
+            }
+        }
+        PersistentIntMap<Integer> ins = mIn.get(id);
+        if (ins != null) {
+            for (int start : ins.keys()) {
+                result = result.withoutEdgeExactly(start, id);
+            }
+        }
+
+        PersistentIntMap<T> nodes = result.mNodes.remove(id);
+        if (nodes == result.mNodes) {
+            return result;
+        }
+        return new PersistentGraph<>(mDirected, nodes, result.mOut, result.mIn, result.mNumEdges);
+    }
+
+    /**
+     * Tells if there's an edge between the two nodes.  For undirected graphs,
+     * the order doesn't matter.<br>
+     * <br>
+     * O(log n)
+     */
+    public boolean isAdjacent(int startNodeId, int endNodeId) {
+        return getEdgeWeight(startNodeId, endNodeId) != null;
+    }
+
+    /**
+     * @return  The weight of the edge between the nodes, or null if there's
+     *          no such edge.
+     */
+    public Integer getEdgeWeight(int startNodeId, int endNodeId) {
+        Integer weight = getExactWeight(startNodeId, endNodeId);
+        if ((weight == null) && !mDirected) {
+            weight = getExactWeight(endNodeId, startNodeId);
+        }
+        return weight;
+    }
+
+    private Integer getExactWeight(int startNodeId, int endNodeId) {
+        PersistentIntMap<Integer> outs = mOut.get(startNodeId);
+        return (outs == null) ? null : outs.get(endNodeId);
+    }
+
+    /**
+     * Returns a graph with an edge added between the two nodes.  Just like
+     * {@link Graph#addEdge(int, int, int)}, duplicates aren't allowed: if the
+     * edge is already there, this graph is returned unchanged.<br>
+     * <br>
+     * O(log n)
+     */
+    public PersistentGraph<T> withEdge(int startNodeId, int endNodeId, int weight) {
+        if (isAdjacent(startNodeId, endNodeId)) {
+            return this;
+        }
+
+        PersistentIntMap<PersistentIntMap<Integer>> out =
+                mOut.put(startNodeId, neighbors(mOut, startNodeId).put(endNodeId, weight));
+        PersistentIntMap<PersistentIntMap<Integer>> in = mIn;
+        if (startNodeId != endNodeId) {
+            in = mIn.put(endNodeId, neighbors(mIn, endNodeId).put(startNodeId, weight));
+        }
+        return new PersistentGraph<>(mDirected, mNodes, out, in, mNumEdges + 1);
+    }
+
+    /** Like {@link #withEdge(int, int, int)} with a weight of 0. */
+    public PersistentGraph<T> withEdge(int startNodeId, int endNodeId) {
+        return withEdge(startNodeId, endNodeId, 0);
+    }
+
+    /**
+     * Returns a graph without the given edge.  For undirected graphs either
+     * direction will do.<br>
+     * <br>
+     * O(log n)
+     */
+    public PersistentGraph<T> withoutEdge(int startNodeId, int endNodeId) {
+        PersistentGraph<T> result = withoutEdgeExactly(startNodeId, endNodeId);
+        if (!mDirected) {
+            result = result.withoutEdgeExactly(endNodeId, startNodeId);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a graph without the edge that goes from the start to the end.
+     * Direction matters here, even for undirected graphs.
+     */
+    PersistentGraph<T> withoutEdgeExactly(int startNodeId, int endNodeId) {
+        if (getExactWeight(startNodeId, endNodeId) == null) {
+            return this;
+        }
+
+        PersistentIntMap<PersistentIntMap<Integer>> out =
+                removeNeighbor(mOut, startNodeId, endNodeId);
+        PersistentIntMap<PersistentIntMap<Integer>> in = mIn;
+        if (startNodeId != endNodeId) {
+            in = removeNeighbor(mIn, endNodeId, startNodeId);
+        }
+        return new PersistentGraph<>(mDirected, mNodes, out, in, mNumEdges - 1);
+    }
+
+    /** Returns a graph with the same nodes, but no edges at all. */
+    public PersistentGraph<T> withoutAllEdges() {
+        return new PersistentGraph<>(mDirected, mNodes,
+                                     PersistentIntMap.<PersistentIntMap<Integer>>empty(),
+                                     PersistentIntMap.<PersistentIntMap<Integer>>empty(), 0);
+    }
+
+    /** Returns a graph with nothing in it (but still directed or not). */
+    public PersistentGraph<T> withoutAllNodes() {
+        return empty(mDirected);
+    }
+
+    /**
+     * Number of nodes adjacent to the given node.  For directed graphs this
+     * is only the edges that start with this node.
+     */
+    public int degree(int nodeId) {
+        PersistentIntMap<Integer> outs = mOut.get(nodeId);
+        int degree = (outs == null) ? 0 : outs.size();
+        if (!mDirected) {
+            PersistentIntMap<Integer> ins = mIn.get(nodeId);
+            degree += (ins == null) ? 0 : ins.size();
+        }
+        return degree;
+    }
+
+    /**
+     * Hands the id of every node adjacent to the given node to the consumer.
+     * Same rules as {@link Graph#forEachNeighbor(int, boolean, IntConsumer)}.
+     */
+    public void forEachNeighbor(int nodeId, boolean directed, final IntConsumer consumer) {
+        PersistentIntMap.Visitor<Integer> visitor = new PersistentIntMap.Visitor<Integer>() {
+            @Override
+            public void visit(int key, Integer value) {
+                consumer.accept(key);
+            }
+        };
+
+        PersistentIntMap<Integer> outs = mOut.get(nodeId);
+        if (outs != null) {
+            outs.forEach(visitor);
+        }
+        if (!directed) {
+            PersistentIntMap<Integer> ins = mIn.get(nodeId);
+            if (ins != null) {
+                ins.forEach(visitor);
+            }
+        }
+    }
+
+    public void forEachNeighbor(int nodeId, IntConsumer consumer) {
+        forEachNeighbor(nodeId, mDirected, consumer);
+    }
+
+    /**
+     * Makes a regular (mutable) Graph with the same nodes and edges.
+     * Returns null if that can't be done (shouldn't happen).
+     */
+    public Graph<T> toGraph() {
+        final Graph<T> graph = new Graph<>(mDirected);
+        try {
+            for (int id : mNodes.keys()) {
+                graph.addNode(id, mNodes.get(id));
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        mOut.forEach(new PersistentIntMap.Visitor<PersistentIntMap<Integer>>() {
+            @Override
+            public void visit(final int start, PersistentIntMap<Integer> ends) {
+                ends.forEach(new PersistentIntMap.Visitor<Integer>() {
+                    @Override
+                    public void visit(int end, Integer weight) {
+                        graph.addEdge(start, end, weight);
+                    }
+                });
+            }
+        });
+        return graph;
+    }
+
+    /**
+     * Makes a {@link CsrGraph} of this version, just like {@link Graph#freeze()}
+     * (but it isn't cached, so hang on to it).<br>
+     * <br>
+     * O(n log n + e log n)
+     */
+    public CsrGraph freeze() {
+        final int[] ids = mNodes.keys();
+        int numNodes = ids.length;
+
+        int[] offsets = new int[numNodes + 1];
+        for (int i = 0; i < numNodes; i++) {
+            offsets[i + 1] = offsets[i] + countNeighborsInGraph(ids, mOut.get(ids[i]))
+                    + (mDirected ? 0 : countNeighborsInGraph(ids, mIn.get(ids[i])));
+        }
+
+        final int[] targets = new int[offsets[numNodes]];
+        final int[] weights = new int[offsets[numNodes]];
+        final int[] position = new int[1];
+        PersistentIntMap.Visitor<Integer> rowFiller = new PersistentIntMap.Visitor<Integer>() {
+            @Override
+            public void visit(int neighbor, Integer weight) {
+                int target = Arrays.binarySearch(ids, neighbor);
+                if (target >= 0) {
+                    targets[position[0]] = target;
+                    weights[position[0]] = weight;
+                    position[0]++;
+                }
+            }
+        };
+        for (int i = 0; i < numNodes; i++) {
+            position[0] = offsets[i];
+            forEachIn(mOut.get(ids[i]), rowFiller);
+            if (!mDirected) {
+                forEachIn(mIn.get(ids[i]), rowFiller);
+            }
+        }
+
+        int[] inOffsets = null;
+        int[] inSources = null;
+        if (mDirected) {
+            inOffsets = new int[numNodes + 1];
+            for (int i = 0; i < numNodes; i++) {
+                inOffsets[i + 1] = inOffsets[i] + countNeighborsInGraph(ids, mIn.get(ids[i]));
+            }
+            final int[] sources = new int[inOffsets[numNodes]];
+            PersistentIntMap.Visitor<Integer> sourceFiller = new PersistentIntMap.Visitor<Integer>() {
+                @Override
+                public void visit(int neighbor, Integer weight) {
+                    int source = Arrays.binarySearch(ids, neighbor);
+                    if (source >= 0) {
+                        sources[position[0]++] = source;
+                    }
+                }
+            };
+            for (int i = 0; i < numNodes; i++) {
+                position[0] = inOffsets[i];
+                forEachIn(mIn.get(ids[i]), sourceFiller);
+            }
+            inSources = sources;
+        }
+
+        return new CsrGraph(mDirected, ids, offsets, targets, weights,
+                            inOffsets, inSources, mNumEdges);
+    }
+
+    /**
+     * Returns the neighbor map of the given node, or an empty one.
+     */
+    private static PersistentIntMap<Integer> neighbors(PersistentIntMap<PersistentIntMap<Integer>> map,
+                                                       int nodeId) {
+        PersistentIntMap<Integer> neighbors = map.get(nodeId);
+        return (neighbors == null) ? PersistentIntMap.<Integer>empty() : neighbors;
+    }
+
+    /**
+     * Takes a neighbor out of a node's neighbor map, dropping the map
+     * entirely if it's empty.
+     */
+    private static PersistentIntMap<PersistentIntMap<Integer>> removeNeighbor(
+            PersistentIntMap<PersistentIntMap<Integer>> map, int nodeId, int neighbor) {
+        PersistentIntMap<Integer> neighbors = neighbors(map, nodeId).remove(neighbor);
+        if (neighbors.isEmpty()) {
+            return map.remove(nodeId);
+        }
+        return map.put(nodeId, neighbors);
+    }
+
+    private static void forEachIn(PersistentIntMap<Integer> neighbors,
+                                  PersistentIntMap.Visitor<Integer> visitor) {
+        if (neighbors != null) {
+            neighbors.forEach(visitor);
+        }
+    }
+
+    /**
+     * Counts the neighbors that are actually nodes (edges aren't checked
+     * when they're added).
+     */
+    private static int countNeighborsInGraph(final int[] sortedIds, PersistentIntMap<Integer> neighbors) {
+        if (neighbors == null) {
+            return 0;
+        }
+        final int[] count = new int[1];
+        neighbors.forEach(new PersistentIntMap.Visitor<Integer>() {
+            @Override
+            public void visit(int neighbor, Integer weight) {
+                if (Arrays.binarySearch(sortedIds, neighbor) >= 0) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("PersistentGraph[").append(numNodes()).append(" nodes, ")
+                .append(mNumEdges).append(" edges]:");
+        for (int id : mNodes.keys()) {
+            builder.append(" (").append(id).append(": ").append(mNodes.get(id)).append(")");
+        }
+        return builder.toString();
+    }
+}
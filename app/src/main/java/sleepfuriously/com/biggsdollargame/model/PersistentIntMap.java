@@ -0,0 +1,300 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Arrays;
+
+/**
+ * An immutable map from ints to anything.  "Changing" it makes a new map
+ * and leaves the old one alone, but the two share everything except the
+ * handful of trie nodes along the path to the key that changed.  So a new
+ * version costs O(log n) time and memory, not a whole copy.
+ *
+ * It's a trie that uses 5 bits of the key at each level (so at most 7
+ * levels for 32-bit keys).  Each trie node only has room for the children
+ * that actually exist; a bitmap tells which ones those are.
+ *
+ *	USAGE:
+ *		PersistentIntMap<String> a = PersistentIntMap.empty();
+ *		PersistentIntMap<String> b = a.put(3, "three");
+ *		a.get(3);       // still null
+ *		b.get(3);       // "three"
+ *
+ * Since nothing ever changes, these can be read by any number of threads
+ * at once.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class PersistentIntMap<V> {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** Number of bits of the key used at each level of the trie */
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentIntMap EMPTY = new PersistentIntMap(new Node(0, new Object[0]), 0);
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final Node mRoot;
+
+    private final int mSize;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    private PersistentIntMap(Node root, int size) {
+        mRoot = root;
+        mSize = size;
+    }
+
+    /** Returns the map with nothing in it. */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the value for the given key, or null if it's not here
+     * (or if null was what was put there).<br>
+     * <br>
+     * O(log n)
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Leaf leaf = findLeaf(key);
+        return (leaf == null) ? null : (V) leaf.mValue;
+    }
+
+    public boolean containsKey(int key) {
+        return findLeaf(key) != null;
+    }
+
+    /**
+     * Returns a map just like this one, but with the given key set to the
+     * given value.  If it already was, this map is returned.<br>
+     * <br>
+     * O(log n)
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        Leaf leaf = findLeaf(key);
+        if ((leaf != null) && (leaf.mValue == value)) {
+            return this;
+        }
+        Node root = put(mRoot, 0, new Leaf(key, value));
+        return new PersistentIntMap<>(root, (leaf == null) ? mSize + 1 : mSize);
+    }
+
+    /**
+     * Returns a map just like this one, but without the given key.  If it
+     * wasn't here, this map is returned.<br>
+     * <br>
+     * O(log n)
+     */
+    public PersistentIntMap<V> remove(int key) {
+        if (findLeaf(key) == null) {
+            return this;
+        }
+        if (mSize == 1) {
+            return empty();
+        }
+        Node root = (Node) remove(mRoot, 0, key);
+        return new PersistentIntMap<>(root, mSize - 1);
+    }
+
+    /**
+     * Hands every key and value to the visitor.  The order has nothing
+     * to do with the order they were put in (nor is it sorted).
+     */
+    public void forEach(Visitor<? super V> visitor) {
+        forEach(mRoot, visitor);
+    }
+
+    /**
+     * Returns all the keys in ascending order.
+     */
+    public int[] keys() {
+        final int[] keys = new int[mSize];
+        forEach(new Visitor<V>() {
+            int mCount = 0;
+
+            @Override
+            public void visit(int key, V value) {
+                keys[mCount++] = key;
+            }
+        });
+        Arrays.sort(keys);
+        return keys;
+    }
+
+
+    /**
+     * Finds the leaf for the given key, or null if there isn't one.
+     */
+    private Leaf findLeaf(int key) {
+        Node node = mRoot;
+        int shift = 0;
+        while (true) {
+            int bit = 1 << ((key >>> shift) & MASK);
+            if ((node.mBitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.mChildren[Integer.bitCount(node.mBitmap & (bit - 1))];
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                return (leaf.mKey == key) ? leaf : null;
+            }
+            node = (Node) child;
+            shift += BITS;
+        }
+    }
+
+    /**
+     * Returns a copy of the node (and the path below it) with the given
+     * leaf in place.
+     */
+    private static Node put(Node node, int shift, Leaf leaf) {
+        int bit = 1 << ((leaf.mKey >>> shift) & MASK);
+        int index = Integer.bitCount(node.mBitmap & (bit - 1));
+
+        if ((node.mBitmap & bit) == 0) {
+            // nothing here yet, make room for it
+            Object[] children = new Object[node.mChildren.length + 1];
+            System.arraycopy(node.mChildren, 0, children, 0, index);
+            children[index] = leaf;
+            System.arraycopy(node.mChildren, index, children, index + 1,
+                             node.mChildren.length - index);
+            return new Node(node.mBitmap | bit, children);
+        }
+
+        Object child = node.mChildren[index];
+        Object newChild;
+        if (child instanceof Node) {
+            newChild = put((Node) child, shift + BITS, leaf);
+        }
+        else if (((Leaf) child).mKey == leaf.mKey) {
+            newChild = leaf;
+        }
+        else {
+            newChild = split((Leaf) child, leaf, shift + BITS);
+        }
+
+        Object[] children = node.mChildren.clone();
+        children[index] = newChild;
+        return new Node(node.mBitmap, children);
+    }
+
+    /**
+     * Makes a node that holds both leaves, going as deep as needed for
+     * their keys to differ.
+     */
+    private static Node split(Leaf a, Leaf b, int shift) {
+        int indexA = (a.mKey >>> shift) & MASK;
+        int indexB = (b.mKey >>> shift) & MASK;
+        if (indexA == indexB) {
+            return new Node(1 << indexA, new Object[] { split(a, b, shift + BITS) });
+        }
+        int bitmap = (1 << indexA) | (1 << indexB);
+        return new Node(bitmap, (indexA < indexB) ? new Object[] { a, b } : new Object[] { b, a });
+    }
+
+    /**
+     * Returns a copy of the node without the key, which MUST be in there.
+     * If that leaves just a single leaf, the leaf is returned instead so
+     * that the parent can hold it directly.
+     */
+    private static Object remove(Node node, int shift, int key) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        int index = Integer.bitCount(node.mBitmap & (bit - 1));
+        Object child = node.mChildren[index];
+
+        Object newChild = null;
+        if (child instanceof Node) {
+            newChild = remove((Node) child, shift + BITS, key);
+        }
+
+        Node result;
+        if (newChild == null) {
+            // the child goes away completely
+            Object[] children = new Object[node.mChildren.length - 1];
+            System.arraycopy(node.mChildren, 0, children, 0, index);
+            System.arraycopy(node.mChildren, index + 1, children, index,
+                             children.length - index);
+            result = new Node(node.mBitmap & ~bit, children);
+        }
+        else {
+            Object[] children = node.mChildren.clone();
+            children[index] = newChild;
+            result = new Node(node.mBitmap, children);
+        }
+
+        if ((shift > 0) && (result.mChildren.length == 1) && (result.mChildren[0] instanceof Leaf)) {
+            return result.mChildren[0];
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Node node, Visitor<? super V> visitor) {
+        for (Object child : node.mChildren) {
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                visitor.visit(leaf.mKey, (V) leaf.mValue);
+            }
+            else {
+                forEach((Node) child, visitor);
+            }
+        }
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Receives the entries of the map from {@link #forEach(Visitor)}.
+     */
+    public interface Visitor<V> {
+        void visit(int key, V value);
+    }
+
+    /** A level of the trie.  Children are Nodes or Leafs. */
+    private static final class Node {
+        final int mBitmap;
+        final Object[] mChildren;
+
+        Node(int bitmap, Object[] children) {
+            mBitmap = bitmap;
+            mChildren = children;
+        }
+    }
+
+    /** One entry of the map */
+    private static final class Leaf {
+        final int mKey;
+        final Object mValue;
+
+        Leaf(int key, Object value) {
+            mKey = key;
+            mValue = value;
+        }
+    }
+}
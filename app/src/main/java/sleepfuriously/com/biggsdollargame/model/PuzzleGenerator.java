@@ -0,0 +1,546 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes puzzles that are actually as hard as asked for.  The old way just
+ * picked the total money (genus + something) and hoped; this one makes a
+ * bunch of candidates with {@link SetsOfIntsUtil}, solves each one with a
+ * {@link MinimalMoveSolver}, and only keeps the ones whose fewest moves
+ * fall inside the requested {@link Band}.
+ *
+ * The candidates are checked in parallel by a pool of workers.  Each worker
+ * has its own solver and grabs the next candidate number when it's done
+ * with the last one.  Candidate number c always gets the same random
+ * stream (from the seed, the graph and c), and the answer is the in-band
+ * candidates with the LOWEST numbers.  So a seed and a graph always give
+ * the same puzzles, no matter how many threads there are or how the timing
+ * goes.  Once enough are found, nobody starts a candidate past the last
+ * one that's needed, and solves of candidates past it are cancelled.
+ *
+ * The time limit is checked inside the solves too, so generate() comes
+ * back right about on time.  If the time runs out first, the puzzles found
+ * so far are returned.  If that's none, the closest miss is returned
+ * instead (with {@link Puzzle#isInBand()} false) so there's always
+ * something to show: the first candidate is always tried, even if its
+ * solve gets cut short.  Timing out is the one thing that isn't
+ * reproducible.
+ *
+ *	USAGE:
+ *		PuzzleGenerator generator = new PuzzleGenerator();
+ *		List<PuzzleGenerator.Puzzle> puzzles = generator.generate(csr,
+ *		        PuzzleGenerator.Band.moves(4, 8), genus, -3, 3, seed, 1, 100);
+ *		int[] amounts = puzzles.get(0).getAmounts();    // by dense index of csr
+ *		...
+ *		generator.shutdown();     // when done for good
+ *
+ * Only for connected, undirected graphs.  generate() can be called from
+ * several threads at once (they share the workers).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class PuzzleGenerator {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /**
+     * How hard each candidate's solver may try.  A candidate whose solver
+     * gives up isn't kept: its move count is only a guess.
+     */
+    public static final long CANDIDATE_MAX_STEPS = 20000L;
+
+    /**
+     * How long {@link #generateInBackground} keeps trying.  Pressing the
+     * button should get a puzzle about this fast, in the band or not.
+     */
+    public static final long DEFAULT_TIME_LIMIT_MS = 100L;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** Null when everything is done on the calling thread */
+    private final ExecutorService mWorkers;
+
+    /** Runs {@link #generateInBackground}, one request after another */
+    private final ExecutorService mRequests;
+
+    private final int mNumThreads;
+
+    /**
+     * Bumped by {@link #cancel()}.  Each generate() remembers what it was
+     * when it was asked for, and stops once it's different.
+     */
+    private final AtomicLong mCancels = new AtomicLong();
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Uses a thread for every processor.
+     */
+    public PuzzleGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numThreads    How many worker threads to use.  1 or less does
+     *                      all the work on the thread that calls generate().
+     */
+    public PuzzleGenerator(int numThreads) {
+        mNumThreads = Math.max(numThreads, 1);
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PuzzleGenerator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        mRequests = Executors.newSingleThreadExecutor(factory);
+        mWorkers = (numThreads <= 1) ? null : Executors.newFixedThreadPool(numThreads, factory);
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Makes puzzles with amounts in floor..ceiling that add up to sum, and
+     * whose fewest moves are in the band.
+     *
+     * @param seed          Same seed (and everything else) = same puzzles.
+     *
+     * @param howMany       How many puzzles to find.
+     *
+     * @param timeLimitMs   Stop looking after this long.
+     *
+     * @return  Up to howMany puzzles, in order of their candidate number.
+     *          If none were found in time, the closest one instead.  Empty
+     *          if there's no way to make amounts like that at all (or the
+     *          graph isn't connected, or it was cancelled before anything
+     *          was tried).
+     */
+    public List<Puzzle> generate(CsrGraph graph, Band band, int sum, int floor, int ceiling,
+                                 long seed, int howMany, long timeLimitMs) {
+        return generate(graph, band, sum, floor, ceiling, seed, howMany,
+                        System.currentTimeMillis() + timeLimitMs, mCancels.get());
+    }
+
+    /**
+     * Like {@link #generate}, but on the generator's request
+     * thread (one request at a time) and with the
+     * {@link #DEFAULT_TIME_LIMIT_MS}, counted from right now.  The callback
+     * is called on that thread when done.
+     *
+     * @return  The queued task.
+     */
+    public Future<?> generateInBackground(final CsrGraph graph, final Band band, final int sum,
+                                          final int floor, final int ceiling, final long seed,
+                                          final Callback callback) {
+        // both of these count from now, not from when the thread gets to it
+        final long deadline = System.currentTimeMillis() + DEFAULT_TIME_LIMIT_MS;
+        final long cancels = mCancels.get();
+
+        return mRequests.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<Puzzle> puzzles = generate(graph, band, sum, floor, ceiling, seed, 1,
+                                                deadline, cancels);
+                callback.onGenerated(puzzles.isEmpty() ? null : puzzles.get(0));
+            }
+        });
+    }
+
+    /**
+     * Makes every generate() that's been asked for so far (running or
+     * still waiting for the request thread) stop as soon as it can and
+     * return what it has.  Safe to call from any thread.
+     */
+    public void cancel() {
+        mCancels.incrementAndGet();
+    }
+
+    /**
+     * Stops the threads.  This generator can't be used after this.
+     */
+    public void shutdown() {
+        cancel();
+        mRequests.shutdownNow();
+        if (mWorkers != null) {
+            mWorkers.shutdownNow();
+        }
+    }
+
+    /**
+     * Does the work of the generate methods.
+     *
+     * @param deadline  When to stop, in System.currentTimeMillis() time.
+     *
+     * @param cancels   What {@link #mCancels} was when this was asked for.
+     */
+    private List<Puzzle> generate(CsrGraph graph, Band band, int sum, int floor, int ceiling,
+                                  long seed, int howMany, long deadline, long cancels) {
+        if (graph.isDirected()) {
+            throw new IllegalArgumentException("Only undirected graphs make puzzles");
+        }
+        if ((howMany < 1) || (graph.numNodes() == 0) || !graph.isConnected()) {
+            return new ArrayList<>();
+        }
+
+        Generation generation = new Generation(graph, band, sum, floor, ceiling,
+                SplitMixRandom.forPuzzle(seed, graph).nextLong(), howMany, deadline,
+                mCancels, cancels);
+        runAll(generation);
+        return generation.getResult();
+    }
+
+    /**
+     * Runs a worker per thread (or just one, here) until the generation
+     * is done.
+     */
+    private void runAll(Generation generation) {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < mNumThreads; i++) {
+            workers.add(new Worker(generation));
+        }
+
+        try {
+            if (mWorkers == null) {
+                workers.get(0).call();
+                return;
+            }
+            for (Future<Void> future : mWorkers.invokeAll(workers)) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            generation.stop();
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("A puzzle worker failed", e.getCause());
+        }
+    }
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Hears when a background generate is done.
+     */
+    public interface Callback {
+
+        /**
+         * @param puzzle    The puzzle (maybe not in the band if the time ran
+         *                  out), or null if none could be made at all.
+         *                  Called on the generator's thread!
+         */
+        void onGenerated(Puzzle puzzle);
+    }
+
+    /**
+     * The range of fewest-moves that counts as the right difficulty.
+     */
+    public static class Band {
+        private final long mMinMoves;
+        private final long mMaxMoves;
+        private final boolean mUnwinnableOk;
+
+        private Band(long minMoves, long maxMoves, boolean unwinnableOk) {
+            mMinMoves = minMoves;
+            mMaxMoves = maxMoves;
+            mUnwinnableOk = unwinnableOk;
+        }
+
+        /** Winnable in at least min and at most max moves (inclusive) */
+        public static Band moves(long minMoves, long maxMoves) {
+            return new Band(minMoves, maxMoves, false);
+        }
+
+        /** Winnable in at least min moves */
+        public static Band atLeast(long minMoves) {
+            return new Band(minMoves, Long.MAX_VALUE, false);
+        }
+
+        /** Anything at all, even unwinnable ones */
+        public static Band anything() {
+            return new Band(0, Long.MAX_VALUE, true);
+        }
+
+        public boolean contains(Puzzle puzzle) {
+            if (!puzzle.isWinnable()) {
+                return mUnwinnableOk;
+            }
+            if (!puzzle.isOptimal()) {
+                // only an upper bound: good enough if there's no minimum
+                return (mMinMoves <= 0) && (puzzle.getNumMoves() <= mMaxMoves);
+            }
+            return (puzzle.getNumMoves() >= mMinMoves) && (puzzle.getNumMoves() <= mMaxMoves);
+        }
+
+        /** How far off the puzzle is.  0 for the ones in the band. */
+        long distance(Puzzle puzzle) {
+            if (contains(puzzle)) {
+                return 0;
+            }
+            if (!puzzle.isWinnable()) {
+                return Long.MAX_VALUE;
+            }
+            long moves = puzzle.getNumMoves();
+            return (moves < mMinMoves) ? mMinMoves - moves : Math.max(moves - mMaxMoves, 1);
+        }
+
+        @Override
+        public String toString() {
+            return "Band[" + mMinMoves + ".." + ((mMaxMoves == Long.MAX_VALUE) ? "" : mMaxMoves)
+                    + (mUnwinnableOk ? ", or unwinnable]" : "]");
+        }
+    }
+
+    /**
+     * One candidate and how it scored.
+     */
+    public static class Puzzle {
+        private final long mCandidate;
+        private final int[] mAmounts;
+        private final long mNumMoves;
+        private final boolean mOptimal;
+        private boolean mInBand;
+
+        Puzzle(long candidate, int[] amounts, MinimalMoveSolver.Solution solution) {
+            mCandidate = candidate;
+            mAmounts = amounts;
+            mNumMoves = (solution == null) ? -1 : solution.getNumMoves();
+            mOptimal = (solution == null) || solution.isOptimal();
+        }
+
+        /** The money for each node, by dense index of the graph */
+        public int[] getAmounts() {
+            return mAmounts.clone();
+        }
+
+        /** The fewest moves that win, or -1 if it can't be won */
+        public long getNumMoves() {
+            return mNumMoves;
+        }
+
+        public boolean isWinnable() {
+            return mNumMoves >= 0;
+        }
+
+        /** FALSE if the solver gave up, so {@link #getNumMoves()} is just an upper bound */
+        public boolean isOptimal() {
+            return mOptimal;
+        }
+
+        /** FALSE only for the closest miss, when nothing in the band turned up */
+        public boolean isInBand() {
+            return mInBand;
+        }
+
+        /** Which candidate this was (for replaying with the same seed) */
+        public long getCandidate() {
+            return mCandidate;
+        }
+
+        @Override
+        public String toString() {
+            return "Puzzle#" + mCandidate + "(" + (isWinnable() ? mNumMoves + " moves" : "unwinnable")
+                    + (mInBand ? "" : ", not in band") + ")";
+        }
+    }
+
+    /**
+     * Everything about one call to generate(), shared by its workers.
+     */
+    private static class Generation {
+        final CsrGraph mGraph;
+        final Band mBand;
+        final int mSum, mFloor, mCeiling;
+        final long mBaseSeed;
+        final int mHowMany;
+        final long mDeadline;
+
+        /** The generator's cancel count, and what it was when this was asked for */
+        final AtomicLong mCancels;
+        final long mStartCancels;
+
+        /** The next candidate number to hand out */
+        final AtomicLong mNext = new AtomicLong();
+
+        /**
+         * Candidates past this can't make the answer, so they aren't worth
+         * doing.  Everything counts until enough have been found.
+         */
+        volatile long mCutoff = Long.MAX_VALUE;
+
+        /** Set when there's no point going on (like an impossible sum) */
+        volatile boolean mStopped = false;
+
+        /** The ones in the band, in no particular order.  Lock on this Generation. */
+        final List<Puzzle> mAccepted = new ArrayList<>();
+        Puzzle mClosest;
+        long mClosestDistance = Long.MAX_VALUE;
+
+        Generation(CsrGraph graph, Band band, int sum, int floor, int ceiling,
+                   long baseSeed, int howMany, long deadline, AtomicLong cancels, long startCancels) {
+            mGraph = graph;
+            mBand = band;
+            mSum = sum;
+            mFloor = floor;
+            mCeiling = ceiling;
+            mBaseSeed = baseSeed;
+            mHowMany = howMany;
+            mDeadline = deadline;
+            mCancels = cancels;
+            mStartCancels = startCancels;
+        }
+
+        /** Stopped or cancelled: nothing more should be done at all */
+        boolean isStopped() {
+            return mStopped || (mCancels.get() != mStartCancels);
+        }
+
+        /** Is there any point in going on? */
+        boolean isDone() {
+            return isStopped() || (System.currentTimeMillis() > mDeadline);
+        }
+
+        void stop() {
+            mStopped = true;
+        }
+
+        /**
+         * A worker finished a candidate.  Keeps it if it's in the band (or
+         * is the closest so far), and moves the cutoff in once there are
+         * enough.
+         */
+        synchronized void offer(Puzzle puzzle) {
+            if (puzzle.mCandidate > mCutoff) {
+                return;     // too late to matter (probably cancelled anyway)
+            }
+
+            long distance = mBand.distance(puzzle);
+            if (distance != 0) {
+                if ((mClosest == null) || (distance < mClosestDistance)
+                        || ((distance == mClosestDistance) && (puzzle.mCandidate < mClosest.mCandidate))) {
+                    mClosest = puzzle;
+                    mClosestDistance = distance;
+                }
+                return;
+            }
+
+            puzzle.mInBand = true;
+            mAccepted.add(puzzle);
+            if (mAccepted.size() < mHowMany) {
+                return;
+            }
+
+            // The cutoff is the number of the last one that's needed
+            sortByCandidate(mAccepted);
+            while (mAccepted.size() > mHowMany) {
+                mAccepted.remove(mAccepted.size() - 1);
+            }
+            mCutoff = mAccepted.get(mHowMany - 1).mCandidate;
+            // (workers past the cutoff see it and quit their solves)
+        }
+
+        /** Called once the workers are all done */
+        synchronized List<Puzzle> getResult() {
+            List<Puzzle> result = new ArrayList<>(mAccepted);
+            sortByCandidate(result);
+            if (result.isEmpty() && (mClosest != null)) {
+                result.add(mClosest);
+            }
+            return result;
+        }
+
+        private static void sortByCandidate(List<Puzzle> puzzles) {
+            Collections.sort(puzzles, new Comparator<Puzzle>() {
+                @Override
+                public int compare(Puzzle a, Puzzle b) {
+                    return (a.mCandidate < b.mCandidate) ? -1 : ((a.mCandidate == b.mCandidate) ? 0 : 1);
+                }
+            });
+        }
+    }
+
+    /**
+     * Makes and solves candidates until its generation is done.
+     */
+    private static class Worker implements Callable<Void>, MinimalMoveSolver.Canceller {
+        final Generation mGeneration;
+        final MinimalMoveSolver mSolver = new MinimalMoveSolver();
+
+        /** The candidate being worked on (only ever goes up) */
+        volatile long mCurrent = -1;
+
+        Worker(Generation generation) {
+            mGeneration = generation;
+            mSolver.setMaxSteps(CANDIDATE_MAX_STEPS);
+        }
+
+        /**
+         * Checked all through each solve: out of time, cancelled, or past
+         * the cutoff.
+         */
+        @Override
+        public boolean isCancelled() {
+            return mGeneration.isDone() || (mCurrent > mGeneration.mCutoff);
+        }
+
+        @Override
+        public Void call() {
+            Generation generation = mGeneration;
+            CsrGraph graph = generation.mGraph;
+            int[] amounts = new int[graph.numNodes()];
+
+            while (!generation.isStopped()) {
+                long candidate = generation.mNext.getAndIncrement();
+                if ((candidate > generation.mCutoff)
+                        || ((candidate > 0) && generation.isDone())) {
+                    break;      // and every one after it too
+                }
+                mCurrent = candidate;
+
+                // every candidate gets its own stream, so it's the same
+                // puzzle whichever worker does it
+                SetsOfIntsUtil util = new SetsOfIntsUtil(
+                        new SplitMixRandom(SplitMixRandom.mix64(generation.mBaseSeed + candidate)));
+                if (!util.fillRandomSetOfIntsWithGivenSum(generation.mSum, amounts.length,
+                        generation.mFloor, generation.mCeiling, amounts, 0)) {
+                    generation.stop();      // impossible sum: no candidate will ever work
+                    break;
+                }
+
+                // Candidate 0 always gets solved, even after the deadline,
+                // so there's something to show.  Its solve may get cut
+                // short, but it still wins.
+                MinimalMoveSolver.Solution solution;
+                try {
+                    solution = mSolver.solve(graph, amounts, this);
+                }
+                catch (GraphNotConnectedException e) {
+                    break;      // checked before starting, so this can't happen
+                }
+                generation.offer(new Puzzle(candidate, amounts.clone(), solution));
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,393 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Figures out the (Baker-Norine) rank of a divisor: how many dollars a
+ * bully could take away--any way they like--and the game still be
+ * winnable.  Winnable games have rank 0 or more; unwinnable ones are -1.
+ * Great for picking puzzles: a high rank means a forgiving puzzle.
+ *
+ * Rank is at least k when, for every node v, D - v has rank at least k-1.
+ * Checking that directly means trying every way to remove k dollars,
+ * which blows up fast.  So:
+ *	-	Riemann-Roch:  r(D) - r(K - D) = deg(D) + 1 - g, where K is the
+ *		canonical divisor (deg(v) - 2 at each node).  We work on whichever
+ *		of D and K - D has the smaller degree.  It also gives the exact
+ *		answer when deg(D) > 2g - 2, and deg(D) - g is always a lower bound.
+ *	-	Clifford:  r(D) <= deg(D) / 2 when 0 <= deg(D) <= 2g - 2.
+ *	-	Equivalent divisors have the same rank, so the answers for every
+ *		divisor looked at are remembered by their q-reduced form (see
+ *		{@link DivisorReducer}).  Removing v then w is the same as w then
+ *		v, so this collapses a lot.
+ *	-	The first couple of levels of the search are split up and handed
+ *		to a ForkJoinPool.  As soon as any branch fails, they all stop.
+ *
+ *	USAGE:
+ *		RankEngine engine = new RankEngine();
+ *		int rank = engine.rank(graph.freeze(), amounts);
+ *
+ * ForkJoinPool showed up in Android 5.0 (API 21), so this isn't for
+ * older phones.  Thread-safe: each thread of the pool uses its own reducer.
+ */
+@RequiresApi(21)
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class RankEngine {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** The search is split into separate tasks down to this many levels */
+    private static final int SPLIT_DEPTH = 2;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final ForkJoinPool mPool;
+
+    /** Each thread needs its own (they're not thread-safe) */
+    private final ThreadLocal<DivisorReducer> mReducers = new ThreadLocal<DivisorReducer>() {
+        @Override
+        protected DivisorReducer initialValue() {
+            return new DivisorReducer();
+        }
+    };
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Uses a new pool with a thread for every processor.
+     */
+    public RankEngine() {
+        this(new ForkJoinPool());
+    }
+
+    public RankEngine(ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Finds the rank of the divisor.
+     *
+     * @param divisor   The money in each node, by dense index of the graph.
+     *
+     * @return  -1 if it isn't winnable at all, otherwise the most dollars
+     *          that can be taken away (in any way) with the game still
+     *          winnable.
+     *
+     * @throws GraphNotConnectedException   If the graph isn't connected.
+     */
+    public int rank(CsrGraph graph, int[] divisor) throws GraphNotConnectedException {
+        int genus = graph.getGenus();   // also checks that it's connected
+        long degree = degree(divisor);
+
+        // Riemann-Roch: work on whichever side is smaller
+        if (degree > genus - 1) {
+            int[] canonical = canonicalMinus(graph, divisor);
+            return (int) (degree + 1 - genus) + rankOfSmall(graph, canonical, genus);
+        }
+        return rankOfSmall(graph, divisor, genus);
+    }
+
+    /**
+     * Is the rank of the divisor at least k?  Sometimes much quicker than
+     * {@link #rank(CsrGraph, int[])}.
+     */
+    public boolean rankAtLeast(CsrGraph graph, int[] divisor, int k) throws GraphNotConnectedException {
+        return check(new Search(graph, graph.getGenus()), divisor, k);
+    }
+
+    /**
+     * Returns the canonical divisor minus the given one: deg(v) - 2 - D(v)
+     * at every node.
+     */
+    public static int[] canonicalMinus(CsrGraph graph, int[] divisor) {
+        int[] result = new int[divisor.length];
+        for (int i = 0; i < divisor.length; i++) {
+            result[i] = graph.degree(i) - 2 - divisor[i];
+        }
+        return result;
+    }
+
+
+    /**
+     * Finds the rank by checking k = 0, 1, 2... until one fails.  Best for
+     * divisors of small degree.
+     */
+    private int rankOfSmall(CsrGraph graph, int[] divisor, int genus) {
+        long degree = degree(divisor);
+        if (degree < 0) {
+            return -1;
+        }
+
+        // these bounds are what Riemann-Roch and Clifford allow
+        int lowest = (int) Math.max(-1, degree - genus);
+        int highest = (degree > 2L * genus - 2) ? (int) (degree - genus) : (int) (degree / 2);
+
+        Search search = new Search(graph, genus);
+        int rank = lowest;
+        while ((rank < highest) && check(search, divisor, rank + 1)) {
+            rank++;
+        }
+        return rank;
+    }
+
+    /**
+     * Runs one "is the rank at least k?" search on the pool.
+     */
+    private boolean check(Search search, int[] divisor, int k) {
+        search.mFailed.set(false);
+        return mPool.invoke(new AtLeastTask(search, divisor.clone(), k, 0));
+    }
+
+    private static long degree(int[] divisor) {
+        long degree = 0;
+        for (int amount : divisor) {
+            degree += amount;
+        }
+        return degree;
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Everything the tasks of one {@link #rank(CsrGraph, int[])} share.
+     */
+    private static class Search {
+        final CsrGraph mGraph;
+        final int mGenus;
+
+        /** What's known so far about each (reduced) divisor */
+        final ConcurrentHashMap<ReducedKey, Known> mMemo = new ConcurrentHashMap<>();
+
+        /** Set when any branch of the current check fails (so all can stop) */
+        final AtomicBoolean mFailed = new AtomicBoolean();
+
+        Search(CsrGraph graph, int genus) {
+            mGraph = graph;
+            mGenus = genus;
+        }
+    }
+
+    /**
+     * A q-reduced divisor, usable as a map key.
+     */
+    private static final class ReducedKey {
+        private final long[] mAmounts;
+        private final int mHash;
+
+        ReducedKey(long[] amounts) {
+            mAmounts = amounts;
+            mHash = Arrays.hashCode(amounts);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof ReducedKey) && Arrays.equals(mAmounts, ((ReducedKey) other).mAmounts);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    /**
+     * The bounds we know on the rank of one divisor.
+     */
+    private static final class Known {
+        /** The rank is at least this */
+        int mAtLeast = -1;
+
+        /** The rank is less than this */
+        int mBelow = Integer.MAX_VALUE;
+
+        synchronized void learn(int k, boolean atLeast) {
+            if (atLeast) {
+                mAtLeast = Math.max(mAtLeast, k);
+            }
+            else {
+                mBelow = Math.min(mBelow, k);
+            }
+        }
+
+        /** 1 if the rank is known to be at least k, 0 if known not, -1 if unknown */
+        synchronized int lookup(int k) {
+            if (k <= mAtLeast) {
+                return 1;
+            }
+            if (k >= mBelow) {
+                return 0;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Answers "is the rank of this divisor at least k?".  The first few
+     * levels fork a task for each node; below that it's a plain recursion.
+     */
+    private class AtLeastTask extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+
+        // answers of atLeast()
+        private static final int NO = 0;
+        private static final int YES = 1;
+        private static final int GAVE_UP = 2;
+
+        private final Search mSearch;
+        private final int[] mDivisor;
+        private final int mK;
+        private final int mDepth;
+
+        AtLeastTask(Search search, int[] divisor, int k, int depth) {
+            mSearch = search;
+            mDivisor = divisor;
+            mK = k;
+            mDepth = depth;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if ((mDepth >= SPLIT_DEPTH) || (mK < 2)) {
+                return atLeast(mDivisor, mK) == YES;
+            }
+
+            Boolean quick = quickAnswer(mDivisor, mK);
+            if (quick != null) {
+                if (!quick) {
+                    fail();
+                }
+                return quick;
+            }
+
+            List<AtLeastTask> tasks = new ArrayList<>();
+            for (int v = 0; v < mDivisor.length; v++) {
+                int[] smaller = mDivisor.clone();
+                smaller[v]--;
+                tasks.add(new AtLeastTask(mSearch, smaller, mK - 1, mDepth + 1));
+            }
+            invokeAll(tasks);
+
+            for (AtLeastTask task : tasks) {
+                if (!task.join()) {
+                    return false;
+                }
+            }
+            return !mSearch.mFailed.get();
+        }
+
+        /**
+         * The plain (one thread) version.  Changes the divisor while it
+         * works, but puts it back.
+         *
+         * @return  {@link #YES}, {@link #NO}, or {@link #GAVE_UP} (when
+         *          another branch already failed).
+         */
+        private int atLeast(int[] divisor, int k) {
+            if (mSearch.mFailed.get()) {
+                return GAVE_UP;     // somebody else already found the answer
+            }
+
+            Boolean quick = quickAnswer(divisor, k);
+            if (quick != null) {
+                return quick ? YES : fail();
+            }
+
+            // already been here?
+            DivisorReducer reducer = mReducers.get();
+            long[] reduced;
+            try {
+                reduced = Arrays.copyOf(reducer.reduce(mSearch.mGraph, divisor, 0), divisor.length);
+            }
+            catch (GraphNotConnectedException e) {
+                return fail();      // can't happen, rank() checked
+            }
+            if (reduced[0] < 0) {
+                return fail();      // not even winnable
+            }
+            if (k == 0) {
+                return YES;
+            }
+
+            ReducedKey key = new ReducedKey(reduced);
+            Known known = mSearch.mMemo.get(key);
+            if (known == null) {
+                known = new Known();
+                Known other = mSearch.mMemo.putIfAbsent(key, known);
+                if (other != null) {
+                    known = other;
+                }
+            }
+            int answer = known.lookup(k);
+            if (answer != -1) {
+                return (answer == 1) ? YES : fail();
+            }
+
+            // take a dollar from each node in turn
+            for (int v = 0; v < divisor.length; v++) {
+                divisor[v]--;
+                int result = atLeast(divisor, k - 1);
+                divisor[v]++;
+                if (result == NO) {
+                    known.learn(k, false);
+                    return NO;
+                }
+                if (result == GAVE_UP) {
+                    return GAVE_UP;     // don't know anything new
+                }
+            }
+            known.learn(k, true);
+            return YES;
+        }
+
+        /** Tells everybody else to stop. */
+        private int fail() {
+            mSearch.mFailed.set(true);
+            return NO;
+        }
+
+        /**
+         * Uses the degree bounds to answer without searching.
+         *
+         * @return  The answer, or null if there's no quick answer.
+         */
+        private Boolean quickAnswer(int[] divisor, int k) {
+            if (k < 0) {
+                return true;            // everything has rank >= -1
+            }
+            long degree = degree(divisor);
+            int genus = mSearch.mGenus;
+            if (degree < k) {
+                return false;           // can't take more than there is
+            }
+            if (degree - genus >= k) {
+                return true;            // Riemann-Roch
+            }
+            if ((degree <= 2L * genus - 2) && (2L * k > degree)) {
+                return false;           // Clifford
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The abelian sandpile: any node with at least as many dollars as its
+ * threshold (usually its degree) "topples"--fires, giving a dollar to each
+ * neighbor--until nobody can.  The order doesn't matter: the stable
+ * configuration at the end, and how many times each node toppled, always
+ * come out the same.  That's what makes the tricks here legal:
+ *	-	Only nodes that might be unstable are looked at (a worklist).
+ *	-	A node with c dollars and threshold t topples c / t times in one
+ *		go instead of one at a time.
+ *	-	In parallel mode the nodes are split into blocks (rows of a grid,
+ *		say).  Each thread topples its own block until it's stable, saving
+ *		up the dollars that go to other blocks; then the saved dollars are
+ *		delivered, and it all goes again until nothing moves.
+ *
+ * Some of the dollars have to be able to leave, or a configuration with
+ * lots of money will topple forever.  So there are two ways to lose money:
+ *	-	A threshold bigger than the degree.  The extra dollars of each
+ *		toppling just disappear (fall off the edge of the table).  The
+ *		classic grid sandpile has a threshold of 4 everywhere, so the
+ *		border nodes lose some.
+ *	-	A sink: a node that never topples, no matter how much it has.
+ *
+ *	USAGE:
+ *		SandpileStabilizer pile = new SandpileStabilizer(grid.freeze(), fours);
+ *		long topplings = pile.stabilize(amounts);      // amounts is changed
+ *		int[] art = pile.identity();
+ *
+ *		pile.setThreads(4);         // for big grids
+ *		...
+ *		pile.shutdown();
+ *
+ * Not thread-safe (it uses its own threads).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SandpileStabilizer {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** stabilize() returns this if it hit the limit before everything was stable */
+    public static final long GAVE_UP = -1L;
+
+    /** Below this many nodes the parallel mode isn't worth it */
+    private static final int MIN_NODES_PER_BLOCK = 1024;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    private final CsrGraph mGraph;
+
+    /** A node topples when it has at least this many dollars */
+    private final int[] mThresholds;
+
+    /** Nodes that never topple */
+    private final boolean[] mSinks;
+
+    /** Null unless there's more than one thread */
+    private ExecutorService mWorkers;
+
+    /** The blocks for parallel mode (null until needed) */
+    private Block[] mBlocks;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Every node's threshold is its degree, so no money is ever lost
+     * except to sinks (see {@link #setSink(int, boolean)}).
+     */
+    public SandpileStabilizer(CsrGraph graph) {
+        this(graph, degrees(graph));
+    }
+
+    /**
+     * @param thresholds    How many dollars each node (by dense index)
+     *                      needs to topple.  Must be at least its degree.
+     */
+    public SandpileStabilizer(CsrGraph graph, int[] thresholds) {
+        if (thresholds.length != graph.numNodes()) {
+            throw new IllegalArgumentException("Need a threshold for each node");
+        }
+        for (int i = 0; i < thresholds.length; i++) {
+            if ((thresholds[i] < graph.degree(i)) || (thresholds[i] <= 0)) {
+                throw new IllegalArgumentException("Threshold of node " + i + " is below its degree");
+            }
+        }
+        mGraph = graph;
+        mThresholds = thresholds.clone();
+        mSinks = new boolean[graph.numNodes()];
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /** Makes the given node a sink (it never topples), or not. */
+    public void setSink(int node, boolean sink) {
+        mSinks[node] = sink;
+    }
+
+    /**
+     * How many threads to use.  1 (the start) does everything on the
+     * calling thread.  More only helps with big graphs where most edges
+     * are between nodes with close indices (like grids).
+     */
+    public void setThreads(int numThreads) {
+        shutdown();
+        mBlocks = null;
+        if (numThreads > 1) {
+            final int numBlocks = Math.max(1, Math.min(numThreads, mGraph.numNodes() / MIN_NODES_PER_BLOCK));
+            if (numBlocks > 1) {
+                mWorkers = Executors.newFixedThreadPool(numBlocks, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "SandpileStabilizer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                mBlocks = makeBlocks(numBlocks);
+            }
+        }
+    }
+
+    /** Stops any threads.  Can still be used (on one thread) afterwards. */
+    public void shutdown() {
+        if (mWorkers != null) {
+            mWorkers.shutdownNow();
+            mWorkers = null;
+            mBlocks = null;
+        }
+    }
+
+    /**
+     * Topples until everything is stable.
+     *
+     * @param config    The dollars on each node.  Changed in place.
+     *                  Negative amounts are fine (they just never topple).
+     *
+     * @return  The total number of topplings.
+     */
+    public long stabilize(int[] config) {
+        return stabilize(config, Long.MAX_VALUE);
+    }
+
+    /**
+     * Same, but stops after about maxTopplings (a little more is possible
+     * because of the batching).  config is left as it was at that point,
+     * which is a fine place to start again from.
+     *
+     * @return  The number of topplings, or {@link #GAVE_UP}.
+     */
+    public long stabilize(int[] config, long maxTopplings) {
+        if (config.length != mGraph.numNodes()) {
+            throw new IllegalArgumentException("Need an amount for each node");
+        }
+        if (mBlocks != null) {
+            return stabilizeParallel(config, maxTopplings);
+        }
+
+        // worklist (a ring) of nodes that might be unstable
+        int[] work = new int[Math.max(1, config.length)];
+        boolean[] queued = new boolean[config.length];
+        int head = 0;
+        int tail = 0;
+        int count = 0;
+        for (int i = 0; i < config.length; i++) {
+            if (isUnstable(config, i)) {
+                work[tail++] = i;
+                queued[i] = true;
+                count++;
+            }
+        }
+        if (tail == work.length) {
+            tail = 0;
+        }
+
+        int[] offsets = mGraph.mOffsets;
+        int[] targets = mGraph.mTargets;
+        long topplings = 0;
+        while (count > 0) {
+            int node = work[head];
+            head = (head + 1 == work.length) ? 0 : head + 1;
+            count--;
+            queued[node] = false;
+
+            int times = config[node] / mThresholds[node];
+            config[node] -= times * mThresholds[node];
+            topplings += times;
+            for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                int neighbor = targets[k];
+                config[neighbor] += times;
+                if (!queued[neighbor] && isUnstable(config, neighbor)) {
+                    queued[neighbor] = true;
+                    work[tail] = neighbor;
+                    tail = (tail + 1 == work.length) ? 0 : tail + 1;
+                    count++;
+                }
+            }
+
+            if (topplings > maxTopplings) {
+                return GAVE_UP;
+            }
+        }
+        return topplings;
+    }
+
+    /**
+     * The identity of the sandpile group: the one stable configuration
+     * that adding to any recurrent configuration (and stabilizing) doesn't
+     * change.  On a square grid it makes a pretty fractal.  Found as
+     * stab(2m - stab(2m)), where m is one less than each threshold.
+     *
+     * There has to be a way for dollars to leave, and sinks are left at 0.
+     *
+     * @throws IllegalStateException  If some connected piece of the graph
+     *                                has no sink and no threshold above a
+     *                                degree: 2m would topple there forever.
+     */
+    public int[] identity() {
+        int stuck = findClosedComponent();
+        if (stuck != -1) {
+            throw new IllegalStateException("Node " + stuck + " can't lose any money (needs a sink or a threshold above its degree)");
+        }
+
+        int[] twiceMax = new int[mThresholds.length];
+        for (int i = 0; i < twiceMax.length; i++) {
+            twiceMax[i] = mSinks[i] ? 0 : 2 * (mThresholds[i] - 1);
+        }
+        int[] first = twiceMax.clone();
+        stabilize(first);
+
+        int[] identity = new int[twiceMax.length];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = mSinks[i] ? 0 : twiceMax[i] - first[i];
+        }
+        stabilize(identity);
+        for (int i = 0; i < identity.length; i++) {
+            if (mSinks[i]) {
+                identity[i] = 0;
+            }
+        }
+        return identity;
+    }
+
+    /**
+     * Looks for a connected piece of the graph that money can't leave: no
+     * sinks, and every threshold is exactly the degree.  O(n + e).
+     *
+     * @return  A node in such a piece, or -1 if there aren't any.
+     */
+    private int findClosedComponent() {
+        int numNodes = mGraph.numNodes();
+        int[] offsets = mGraph.mOffsets;
+        int[] targets = mGraph.mTargets;
+        boolean[] seen = new boolean[numNodes];
+        int[] stack = new int[numNodes];
+        for (int start = 0; start < numNodes; start++) {
+            if (seen[start]) {
+                continue;
+            }
+            boolean leaks = false;
+            int size = 0;
+            stack[size++] = start;
+            seen[start] = true;
+            while (size > 0) {
+                int node = stack[--size];
+                if (mSinks[node] || (mThresholds[node] > mGraph.degree(node))) {
+                    leaks = true;
+                }
+                for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                    int neighbor = targets[k];
+                    if (!seen[neighbor]) {
+                        seen[neighbor] = true;
+                        stack[size++] = neighbor;
+                    }
+                }
+            }
+            if (!leaks) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isUnstable(int[] config, int node) {
+        return !mSinks[node] && (config[node] >= mThresholds[node]);
+    }
+
+    private static int[] degrees(CsrGraph graph) {
+        int[] degrees = new int[graph.numNodes()];
+        for (int i = 0; i < degrees.length; i++) {
+            degrees[i] = Math.max(1, graph.degree(i));
+        }
+        return degrees;
+    }
+
+
+    //-----------------------
+    //	parallel mode
+    //-----------------------
+
+    /**
+     * Splits the nodes into blocks of neighboring indices, and works out
+     * where each block's outgoing dollars go.
+     */
+    private Block[] makeBlocks(int numBlocks) {
+        int numNodes = mGraph.numNodes();
+        int[] owner = new int[numNodes];
+        Block[] blocks = new Block[numBlocks];
+        for (int b = 0; b < numBlocks; b++) {
+            int start = (int) ((long) numNodes * b / numBlocks);
+            int end = (int) ((long) numNodes * (b + 1) / numBlocks);
+            blocks[b] = new Block(start, end);
+            Arrays.fill(owner, start, end, b);
+        }
+
+        // each edge that leaves a block gets a slot in its outbox
+        for (Block block : blocks) {
+            block.mSlots = new int[mGraph.mOffsets[block.mEnd] - mGraph.mOffsets[block.mStart]];
+            IntArrayList destinations = new IntArrayList();
+            int[] slotOf = new int[numNodes];
+            Arrays.fill(slotOf, -1);
+            for (int node = block.mStart; node < block.mEnd; node++) {
+                for (int k = mGraph.mOffsets[node]; k < mGraph.mOffsets[node + 1]; k++) {
+                    int neighbor = mGraph.mTargets[k];
+                    int slot = -1;
+                    if (owner[neighbor] != owner[node]) {
+                        if (slotOf[neighbor] == -1) {
+                            slotOf[neighbor] = destinations.size();
+                            destinations.add(neighbor);
+                        }
+                        slot = slotOf[neighbor];
+                    }
+                    block.mSlots[k - mGraph.mOffsets[block.mStart]] = slot;
+                }
+            }
+            block.mDestinations = destinations.toArray();
+            block.mOutbox = new int[block.mDestinations.length];
+        }
+
+        // and each block needs to know which outboxes have its dollars
+        for (Block block : blocks) {
+            List<int[]> incoming = new ArrayList<>();
+            for (int b = 0; b < numBlocks; b++) {
+                int[] destinations = blocks[b].mDestinations;
+                for (int slot = 0; slot < destinations.length; slot++) {
+                    if ((destinations[slot] >= block.mStart) && (destinations[slot] < block.mEnd)) {
+                        incoming.add(new int[] { b, slot });
+                    }
+                }
+            }
+            block.mIncoming = incoming.toArray(new int[0][]);
+        }
+        return blocks;
+    }
+
+    /**
+     * Rounds of: every block topples by itself, then the dollars that
+     * crossed between blocks are delivered.  Done when a round moves
+     * nothing.  Only the first round looks at every node; after that
+     * each block just works through its worklist.
+     */
+    private long stabilizeParallel(final int[] config, long maxTopplings) {
+        List<Callable<Long>> seed = new ArrayList<>();
+        List<Callable<Long>> topple = new ArrayList<>();
+        List<Callable<Long>> deliver = new ArrayList<>();
+        for (final Block block : mBlocks) {
+            seed.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    block.seed(config);
+                    return 0L;
+                }
+            });
+            topple.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return block.topple(config);
+                }
+            });
+            deliver.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return block.deliver(config);
+                }
+            });
+        }
+
+        runAll(seed);
+        long topplings = 0;
+        while (true) {
+            long round = 0;
+            for (long count : runAll(topple)) {
+                round += count;
+            }
+            topplings += round;
+            long delivered = 0;
+            for (long count : runAll(deliver)) {
+                delivered += count;
+            }
+
+            if ((round == 0) && (delivered == 0)) {
+                return topplings;
+            }
+            if (topplings > maxTopplings) {
+                return GAVE_UP;
+            }
+        }
+    }
+
+    private long[] runAll(List<Callable<Long>> jobs) {
+        long[] results = new long[jobs.size()];
+        try {
+            List<Future<Long>> futures = mWorkers.invokeAll(jobs);
+            for (int i = 0; i < results.length; i++) {
+                results[i] = futures.get(i).get();
+            }
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stabilizing", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Stabilizing failed", e.getCause());
+        }
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * The nodes from mStart up to (not including) mEnd, for parallel mode.
+     * Only the thread working on a block touches its nodes, except for
+     * delivery, which the receiving block does itself.
+     */
+    private class Block {
+        final int mStart;
+        final int mEnd;
+
+        /** For each edge out of the block's nodes: its outbox slot, or -1 if it stays inside */
+        int[] mSlots;
+
+        /** The node that each outbox slot goes to */
+        int[] mDestinations;
+
+        /** Dollars waiting to go to other blocks */
+        int[] mOutbox;
+
+        /** {block, slot} of every outbox slot that comes here */
+        int[][] mIncoming;
+
+        /**
+         * The worklist: a ring of the block's nodes that might be unstable.
+         * Kept between rounds, so a round only looks at the nodes that
+         * toppled or got dollars from another block.
+         */
+        private final int[] mWork;
+        private final boolean[] mQueued;
+        private int mHead;
+        private int mTail;
+        private int mCount;
+
+        Block(int start, int end) {
+            mStart = start;
+            mEnd = end;
+            mWork = new int[Math.max(1, end - start)];
+            mQueued = new boolean[end - start];
+        }
+
+        /**
+         * Starts the worklist over with every unstable node of the block.
+         * The only full scan, once per stabilize().
+         */
+        void seed(int[] config) {
+            Arrays.fill(mQueued, false);
+            mHead = 0;
+            mTail = 0;
+            mCount = 0;
+            for (int node = mStart; node < mEnd; node++) {
+                enqueue(config, node);
+            }
+        }
+
+        /** Puts the node on the worklist if it's unstable and not there already. */
+        private void enqueue(int[] config, int node) {
+            if (!mQueued[node - mStart] && isUnstable(config, node)) {
+                mQueued[node - mStart] = true;
+                mWork[mTail] = node;
+                mTail = (mTail + 1 == mWork.length) ? 0 : mTail + 1;
+                mCount++;
+            }
+        }
+
+        /**
+         * Topples the block until it's stable on its own.
+         *
+         * @return  How many topplings.
+         */
+        long topple(int[] config) {
+            int[] offsets = mGraph.mOffsets;
+            int[] targets = mGraph.mTargets;
+            int base = offsets[mStart];
+            long topplings = 0;
+            while (mCount > 0) {
+                int node = mWork[mHead];
+                mHead = (mHead + 1 == mWork.length) ? 0 : mHead + 1;
+                mCount--;
+                mQueued[node - mStart] = false;
+
+                int times = config[node] / mThresholds[node];
+                config[node] -= times * mThresholds[node];
+                topplings += times;
+                for (int k = offsets[node]; k < offsets[node + 1]; k++) {
+                    int slot = mSlots[k - base];
+                    if (slot != -1) {
+                        mOutbox[slot] += times;     // for later
+                        continue;
+                    }
+                    int neighbor = targets[k];
+                    config[neighbor] += times;
+                    enqueue(config, neighbor);
+                }
+            }
+            return topplings;
+        }
+
+        /**
+         * Collects the dollars other blocks saved up for this one, and
+         * puts the nodes they tip over on the worklist.
+         *
+         * @return  How many dollars came in.
+         */
+        long deliver(int[] config) {
+            long delivered = 0;
+            for (int[] from : mIncoming) {
+                Block other = mBlocks[from[0]];
+                int amount = other.mOutbox[from[1]];
+                if (amount != 0) {
+                    int node = other.mDestinations[from[1]];
+                    config[node] += amount;
+                    other.mOutbox[from[1]] = 0;
+                    enqueue(config, node);
+                    delivered += amount;
+                }
+            }
+            return delivered;
+        }
+    }
+}
@@ -2,10 +2,17 @@ package sleepfuriously.com.biggsdollargame.model
 
 import android.util.Log
 import android.util.Log.d
-import java.lang.Float.MIN_VALUE
-import kotlin.random.Random
-
-class SetsOfIntsUtil {
+import java.util.Random
+
+/**
+ * Makes random sets of ints with a given sum (for the node amounts).
+ *
+ * All the randomness comes from the given [random], so a seeded one (like a
+ * [SplitMixRandom] from [SplitMixRandom.forPuzzle]) makes the same sets every
+ * time.  An instance keeps some state between calls (the spare Gaussian), so
+ * give each thread its own--with its own split of the Random.
+ */
+class SetsOfIntsUtil @JvmOverloads constructor(private val random: Random = Random()) {
 
     //----------------------------------
     //  constants
@@ -31,6 +38,12 @@ class SetsOfIntsUtil {
     /** used for the Gaussian random function */
     private var haveNextNextGaussian: Boolean = false
 
+    /**
+     * Lengths of the halves that [fillRandomSetOfIntsWithGivenSum] still has
+     * to do.  32 is plenty: it only goes log2(numInts) + 1 deep.
+     */
+    private val segmentStack = IntArray(32)
+
 
     //----------------------------------
     //  methods
@@ -42,6 +55,8 @@ class SetsOfIntsUtil {
      * Returns a nullable array of those ints -- which will be null iff it's impossible to
      * find a set from the given pool.
      *
+     * Boxes everything, so for big graphs use [fillRandomSetOfIntsWithGivenSum] instead.
+     *
      * @param sum      The number that the items in the list will add up to.
      * @param numInts  The number of ints in the return list.
      * @param floor    The lowest possible value of any number in the list.
@@ -53,78 +68,106 @@ class SetsOfIntsUtil {
     fun findRandomSetOfIntsWithGivenSum(
         sum : Int, numInts: Int, floor: Int, ceiling: Int): Array<Int>? {
 
-        val resultArray = findRandomSetOfIntsWithGivenSumRecurse(sum, numInts, floor, ceiling, "")
-
-//        debugOn()
+        if (numInts < 1) {
+            debugPrint("ERROR numInts < 1")
+            return null
+        }
 
-        debugPrint("### RESULT: ### array size = " + resultArray.size.toString())
-        for (i in resultArray.indices) {
-            debugPrint( i.toString() + ": " + resultArray.get(i).toString() )
+        val buffer = IntArray(numInts)
+        if (!fillRandomSetOfIntsWithGivenSum(sum, numInts, floor, ceiling, buffer, 0)) {
+            return null
         }
-        debugPrint("RESULT sum = " + resultArray.sum())
+        val resultArray = buffer.toTypedArray()
 
-        // Return a nullable array -- either the array returned from the recursive routing,
-        // or null if that routine returns an empty list, meaning it was given an impossible task.
-        var resultArrayNullable : Array<Int>? = null
-        if(resultArray.isNotEmpty()) {
-            resultArrayNullable = resultArray
+//        debugOn()
+
+        if (debug) {
+            debugPrint("### RESULT: ### array size = " + resultArray.size.toString())
+            for (i in resultArray.indices) {
+                debugPrint( i.toString() + ": " + resultArray.get(i).toString() )
+            }
+            debugPrint("RESULT sum = " + resultArray.sum())
         }
-        return resultArrayNullable
+        return resultArray
     }
 
     /**
-     * Same as the public non-recursive non-recursive function -- except that this
-     * returns an empty list rather than null if no set of ints can satisfy the conditions.
+     * Same as [findRandomSetOfIntsWithGivenSum], but puts the ints in the given
+     * buffer instead of making a new array--and doesn't allocate anything at all.
+     * This is the one to use for really big graphs.
+     *
+     * Same distribution too: the set is split in halves (the first half gets the
+     * extra one when it's odd), the sum of the first half is picked with
+     * [weightedRandom] from whatever range still works for both halves, and so
+     * on down to single ints.  But instead of recursing and gluing arrays
+     * together, this goes depth-first with a little stack of the lengths of the
+     * halves that are still waiting.  A waiting half keeps its sum in the buffer
+     * at its first spot (which is exactly where its own first half will go).
+     * The stack never gets deeper than log2(numInts) + 1.
+     *
+     * Note that the lists are NOT all equally likely: the Gaussian makes each
+     * half's sum hug the middle of its range, so the ints come out bunched
+     * together more than chance would.  [UniformSumSampler] is the fair one.
+     *
+     * O(numInts)
+     *
+     * @param buffer   Where the ints go: buffer[offset] .. buffer[offset + numInts - 1].
+     *                 Nothing else is touched.
+     *
+     * @param offset   Index of the first int in the buffer.
+     *
+     * @return  True if it worked.  False means no such set exists (or numInts < 1);
+     *          the buffer won't have been changed.
      */
-    private fun findRandomSetOfIntsWithGivenSumRecurse(
-        sum : Int, numInts: Int, floor: Int, ceiling: Int, indent : String): Array<Int> {
-
-        debugPrint("M=" + sum.toString() + " N=" + numInts.toString() +
-                " R=" + floor.toString() + " S=" + ceiling.toString(), indent )
-        lateinit var resultArray : Array<Int>
+    fun fillRandomSetOfIntsWithGivenSum(
+        sum: Int, numInts: Int, floor: Int, ceiling: Int, buffer: IntArray, offset: Int): Boolean {
 
-        if (numInts < 1) {
-            debugPrint("ERROR numInts < 1", indent)
-            resultArray = arrayOf()   // we'll return empty array
-        } else if ( floor > ceiling ) {
-            debugPrint("floor > ceiling", indent)
-            resultArray = arrayOf()   // we'll return empty array
-        } else if (sum < numInts * floor || sum > numInts * ceiling) {
+        if ((numInts < 1) || (floor > ceiling)) {
+            debugPrint("numInts < 1 or floor > ceiling")
+            return false
+        }
+        if ((sum.toLong() < numInts.toLong() * floor) || (sum.toLong() > numInts.toLong() * ceiling)) {
             // If we're here, there's no possible set of of numInts ints in floor..ceiling that add up to sum.
-            debugPrint("No possible set of ints satisfy the conditions.", indent)
-            resultArray = arrayOf()   // we'll return empty array
-        } else if (numInts == 1) {
-            debugPrint("base case -- sum = $sum", indent)
-            resultArray = Array(1) { i -> sum }   // we'll return empty array
-        } else {
-            // Split numInts into two N's .. the first being 1 higher iff numInts is odd
-            val secondNumInts = numInts / 2
-            val firstNumInts = numInts - secondNumInts  // always >= secondNumInts
-
-            debugPrint("N1=$firstNumInts N2=$secondNumInts", indent )
-            val secondFloor = floor * secondNumInts
-            val secondCeiling = ceiling * secondNumInts
-            val firstFloor = maxOf(floor * firstNumInts, sum - secondCeiling)
-            val firstCeiling = minOf(ceiling * firstNumInts, sum - secondFloor)
-            val firstRange = firstFloor..firstCeiling
-            val secondRange = secondFloor..secondCeiling
-            debugPrint("firstRange $firstRange", indent)
-            debugPrint("secondRange $secondRange", indent)
-
-            val firstSum = weightedRandom(firstRange)
-            val secondSum = sum - firstSum
-            debugPrint("Loop iter M1=$firstSum M2=$secondSum", indent)
-
-            val firstArray = findRandomSetOfIntsWithGivenSumRecurse(
-                firstSum, firstNumInts, floor, ceiling, "$indent  ")
-
-            val secondArray = findRandomSetOfIntsWithGivenSumRecurse(
-                secondSum, secondNumInts, floor, ceiling, "$indent  ")
-
-            resultArray = firstArray + secondArray
+            debugPrint("No possible set of ints satisfy the conditions.")
+            return false
         }
-        return resultArray
-    }  // end recursive function
+
+        // Once the whole thing is possible, every split is too (the ranges
+        // below make sure of it), so no more checking.
+        var depth = 0
+        segmentStack[depth++] = numInts
+        buffer[offset] = sum
+        var pos = offset
+
+        while (depth > 0) {
+            var len = segmentStack[--depth]
+            var segmentSum = buffer[pos]
+
+            while (len > 1) {
+                val secondNumInts = len / 2
+                val firstNumInts = len - secondNumInts  // always >= secondNumInts
+
+                val secondFloor = floor * secondNumInts
+                val secondCeiling = ceiling * secondNumInts
+                val firstFloor = maxOf(floor * firstNumInts, segmentSum - secondCeiling)
+                val firstCeiling = minOf(ceiling * firstNumInts, segmentSum - secondFloor)
+
+                val firstSum = weightedRandom(firstFloor, firstCeiling)
+
+                // the second half waits its turn
+                buffer[pos + firstNumInts] = segmentSum - firstSum
+                segmentStack[depth++] = secondNumInts
+
+                segmentSum = firstSum
+                len = firstNumInts
+            }
+
+            // base case: a single int
+            buffer[pos++] = segmentSum
+        }
+
+        return true
+    }
 
 
     /**
@@ -132,9 +175,10 @@ class SetsOfIntsUtil {
      * This number is weighted towards the center based on a normal
      * curve (it'll be pretty steep).
      *
-     * @param range     The possible numbers that could be summed to.
+     * @param first     The smallest number that could be returned.
+     * @param last      The biggest.  Must be >= first.
      */
-    private fun weightedRandom(range: IntRange): Int {
+    private fun weightedRandom(first: Int, last: Int): Int {
 
         // The function on n will be a steep normal curve
 
@@ -144,13 +188,14 @@ class SetsOfIntsUtil {
 
         var r = gaussianRandom / (RANDOM_BASELINE * 2f)     // r is now in range [-0.5 .. 0.5]
         r += 0.5f       // now r should be [0 .. 1]
-        if (r == 1f) {
-            r -= MIN_VALUE  // r [0 .. 1)
-        }
 
-        // convert the random to an integer within the given range.
-        val intRandNum = (r * (range.count()).toFloat()).toInt() + range.first
-        debugPrint("weightedRandom( $range ) ==> $intRandNum")
+        // Convert the random to an integer within the given range.  r can
+        // be exactly 1 (and a float times a big range can round up), so
+        // the top gets clamped instead of trusting r < 1.
+        val intRandNum = minOf((r.toDouble() * (last - first + 1).toDouble()).toInt() + first, last)
+        if (debug) {
+            debugPrint("weightedRandom( $first..$last ) ==> $intRandNum")
+        }
         return intRandNum
     }
 
@@ -177,8 +222,8 @@ class SetsOfIntsUtil {
             var s: Float
 
             do {
-                v1 = 2f * Random.nextFloat() - 1f   // between -1.0 and 1.0
-                v2 = 2f * Random.nextFloat() - 1f   // between -1.0 and 1.0
+                v1 = 2f * random.nextFloat() - 1f   // between -1.0 and 1.0
+                v2 = 2f * random.nextFloat() - 1f   // between -1.0 and 1.0
                 s = v1 * v1 + v2 * v2
             } while (s >= 1f || s == 0f)
 
@@ -244,18 +289,4 @@ class SetsOfIntsUtil {
         }
     }
 
-    /**
-     * If the class member var "debug" is true, prints text to Log.d, preceded by the class
-     * member constant TAG, a space char, and indentChars. If debug is false, this fun does nothing.
-     * @param text         The string to be printed.
-     * @param indentChars  This string is printed in front of the main text.
-     *                     The parameter indentChars is intended to be used as space characters to
-     *                     indent the debug prints more and more as we dive into recursive functions.
-     */
-    private fun debugPrint (text : String, indentChars : String) {
-        if (debug) {
-            Log.d(TAG, " $indentChars$text")
-        }
-    }
-
 } // end of class
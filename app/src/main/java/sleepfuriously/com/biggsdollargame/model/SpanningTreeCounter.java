@@ -0,0 +1,947 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the spanning trees of a graph.  That's also the number of
+ * different classes of dollar games at any one degree (the size of the
+ * Jacobian, see {@link JacobianCalculator}), so it says how many really
+ * different puzzles a graph has.
+ *
+ * By the matrix-tree theorem the count is the determinant of the reduced
+ * Laplacian (the Laplacian without one node's row and column).  Those
+ * numbers get HUGE (hundreds of digits), so:
+ *	-	The determinant is found modulo a bunch of primes just under 2^50,
+ *		where everything fits in longs, and the answers are put back
+ *		together with the Chinese remainder theorem.
+ *	-	How many primes?  Enough to cover the log of the determinant, found
+ *		with a quick floating point Cholesky, plus a safety margin.  One
+ *		more prime then double-checks the answer.  If the check ever fails
+ *		(it shouldn't) it goes on to the product of the degrees, which is a
+ *		sure upper bound (Hadamard) but takes 20-30% more primes.
+ *	-	Each prime is an independent job, so they're split up among
+ *		worker threads.
+ *	-	The elimination is sparse and done in a minimum degree order
+ *		(fewest neighbors first), which keeps the fill-in down.  The
+ *		order and the fill-in pattern are worked out once and shared by
+ *		every prime.  The pivots are on the diagonal (the matrix is
+ *		symmetric), so no fractions and no searching.
+ *	-	Minimum degree always ends with a clique (everything left is
+ *		connected to everything else).  That part is done as a plain dense
+ *		matrix, which is a lot faster than chasing spots around.
+ *
+ * A pivot can be 0 mod p even though it isn't really (p divides it).
+ * That's very unlikely, but if it happens that prime is just skipped.
+ *
+ * How long does it take?  Each prime costs about the sum of the squares
+ * of the fill-in row lengths (plus a third of the cube of the clique),
+ * and there's about one prime per 49 bits of the answer.  Measured with
+ * one thread on a slow single core box:
+ *	-	What the game makes (planar graphs, trees with a few extra edges):
+ *		the fill stays small.  1000 nodes is under 0.1 sec.
+ *	-	Grids: a 20 x 20 is 0.03 sec, a 45 x 45 about 0.8 sec.  They grow
+ *		like n^2 log n.
+ *	-	Random 3-regular graphs: 1000 nodes about 1.2 sec, 2000 about 15
+ *		sec.  These are expanders, and no order keeps their fill down: the
+ *		last fifth or so of the nodes become one big clique whatever
+ *		happens.  That's n^3 work per prime, and there are about n primes,
+ *		so n^4 overall (and n^2 memory for the clique).  Dense random
+ *		graphs are the same story.
+ * That's why the UI should use {@link #requestCount(CsrGraph, Executor, Listener)},
+ * which works in the background and never holds anything up.
+ *
+ *	USAGE:
+ *		SpanningTreeCounter counter = new SpanningTreeCounter();
+ *		BigInteger trees = counter.count(graph.freeze());
+ *		...
+ *		counter.requestCount(graph.freeze(), uiExecutor, listener);     // or in the background
+ *		...
+ *		counter.shutdown();     // when done for good
+ *
+ * Edge weights are ignored; loops don't matter.  count() can be called
+ * from several threads at once.  requestCount() and invalidate() should
+ * be called from the publishing thread (like {@link HintEngine}).
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SpanningTreeCounter {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /**
+     * The primes are the ones just below this.  Any bigger and
+     * {@link #multiply(long, long, long, double)} stops working.
+     */
+    private static final long PRIME_LIMIT = 1L << 50;
+
+    /** Each prime is worth at least this many bits of the answer */
+    private static final int BITS_PER_PRIME = 49;
+
+    /**
+     * Extra bits on top of the floating point estimate.  The estimate is
+     * good to a tiny fraction of a bit, this is just being paranoid (and
+     * costs about one prime).
+     */
+    private static final int SAFETY_BITS = 48;
+
+    /** What a job returns when the request it's working for went stale */
+    private static final long STALE = -2;
+
+    /** Version for count(): never goes stale */
+    private static final long NO_VERSION = -1;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** The primes found so far, biggest first.  Shared by everyone. */
+    private static final List<Long> sPrimes = new ArrayList<>();
+
+    /** Null when everything is done on the calling thread */
+    private final ExecutorService mWorkers;
+
+    /** Runs the background requests, one at a time */
+    private final ExecutorService mRequests;
+
+    /** The version of the latest background request.  Anything older is stale. */
+    private final AtomicLong mVersion = new AtomicLong();
+
+    /** The request that's queued or running (if any) */
+    private Future<?> mCurrent;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /**
+     * Uses a thread for every processor.
+     */
+    public SpanningTreeCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numThreads    How many worker threads to use.  1 or less does
+     *                      all the work on the thread that calls count().
+     */
+    public SpanningTreeCounter(int numThreads) {
+        mRequests = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SpanningTreeCounter request");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+
+        if (numThreads <= 1) {
+            mWorkers = null;
+            return;
+        }
+        mWorkers = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SpanningTreeCounter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Finds the number of spanning trees of the graph.
+     *
+     * @return  The count.  0 if the graph isn't connected, and 1 for a
+     *          graph with one node (or none).
+     */
+    public BigInteger count(CsrGraph graph) {
+        return count(graph, NO_VERSION);
+    }
+
+    /**
+     * Starts counting the spanning trees in the background, dropping any
+     * older request.  Returns right away.  When the count is done it's
+     * handed to the publisher, and only given to the listener if this is
+     * STILL the latest request when it gets there.
+     *
+     * @param graph     A frozen graph (so it can't change under us).
+     *
+     * @param publisher Runs the code that hands out the count.  For Android,
+     *                  something that posts to the main thread.
+     *
+     * @return  The version of this request.
+     */
+    public long requestCount(final CsrGraph graph, final Executor publisher, final Listener listener) {
+        final long version = invalidate();
+
+        mCurrent = mRequests.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCurrent(version)) {
+                    return;     // don't even bother
+                }
+                final BigInteger count = count(graph, version);
+                if ((count == null) || !isCurrent(version)) {
+                    return;
+                }
+                publisher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // one last check now that we're on the publishing thread
+                        if (isCurrent(version)) {
+                            listener.onCount(graph, count);
+                        }
+                    }
+                });
+            }
+        });
+        return version;
+    }
+
+    /**
+     * Makes any background count that's being worked on (or waiting to be
+     * published) stale.  A count that's already going quits soon after.
+     *
+     * @return  The new version.
+     */
+    public long invalidate() {
+        long version = mVersion.incrementAndGet();
+        if (mCurrent != null) {
+            mCurrent.cancel(false);     // if it hasn't started yet
+            mCurrent = null;
+        }
+        return version;
+    }
+
+    /** TRUE if a count for the given version would still be good. */
+    public boolean isCurrent(long version) {
+        return mVersion.get() == version;
+    }
+
+    /**
+     * Stops the worker threads.  This counter can't be used after this.
+     */
+    public void shutdown() {
+        invalidate();
+        mRequests.shutdownNow();
+        if (mWorkers != null) {
+            mWorkers.shutdownNow();
+        }
+    }
+
+    /**
+     * Does the counting.
+     *
+     * @param version   The request this is for, or {@link #NO_VERSION}.
+     *
+     * @return  The count, or null if the version went stale partway.
+     */
+    private BigInteger count(CsrGraph graph, long version) {
+        if (graph.isDirected()) {
+            throw new IllegalArgumentException("Only undirected graphs have spanning trees");
+        }
+        if (graph.numNodes() <= 1) {
+            return BigInteger.ONE;
+        }
+        if (!graph.isConnected()) {
+            return BigInteger.ZERO;
+        }
+
+        Elimination elimination = new Elimination(graph);
+        if (isStale(version)) {
+            return null;
+        }
+        int sureBits = elimination.getBound().bitLength();
+        int estimate = elimination.estimateBits(SAFETY_BITS);
+
+        Remainders remainders = new Remainders();
+        if ((estimate > 0) && (estimate < sureBits)) {
+            if (!findRemainders(elimination, remainders, estimate, version)) {
+                return null;
+            }
+            // double check with one more prime
+            long residue = -1;
+            long prime = 0;
+            while (residue < 0) {
+                prime = prime(remainders.mNextPrime++);
+                residue = elimination.determinantMod(prime, this, version);
+                if (residue == STALE) {
+                    return null;
+                }
+            }
+            if (remainders.mCount.mod(BigInteger.valueOf(prime)).longValue() == residue) {
+                return remainders.mCount;
+            }
+            remainders.add(prime, residue);
+        }
+
+        // the count is below the bound, and so less than the modulus
+        if (!findRemainders(elimination, remainders, sureBits, version)) {
+            return null;
+        }
+        return remainders.mCount;
+    }
+
+    /**
+     * Keeps adding primes until the modulus has more than the given number
+     * of bits.
+     *
+     * @return  FALSE if the version went stale.
+     */
+    private boolean findRemainders(final Elimination elimination, Remainders remainders,
+                                   int bits, final long version) {
+        while (remainders.mModulus.bitLength() <= bits) {
+            // start as many primes as it should take (more if some are unlucky)
+            int needed = (bits - remainders.mModulus.bitLength()) / BITS_PER_PRIME + 1;
+            long[] primes = new long[needed];
+            List<Callable<Long>> jobs = new ArrayList<>();
+            for (int i = 0; i < needed; i++) {
+                final long prime = prime(remainders.mNextPrime++);
+                primes[i] = prime;
+                jobs.add(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return elimination.determinantMod(prime, SpanningTreeCounter.this, version);
+                    }
+                });
+            }
+
+            long[] residues = runAll(jobs);
+            for (int i = 0; i < needed; i++) {
+                if (residues[i] == STALE) {
+                    return false;
+                }
+                if (residues[i] >= 0) {     // otherwise an unlucky prime
+                    remainders.add(primes[i], residues[i]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /** TRUE if the background request with this version isn't wanted anymore */
+    private boolean isStale(long version) {
+        return (version != NO_VERSION) && !isCurrent(version);
+    }
+
+    /**
+     * Does the jobs, on the workers if there are any.
+     */
+    private long[] runAll(List<Callable<Long>> jobs) {
+        long[] results = new long[jobs.size()];
+        try {
+            if (mWorkers == null) {
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = jobs.get(i).call();
+                }
+                return results;
+            }
+
+            List<Future<Long>> futures = mWorkers.invokeAll(jobs);
+            for (int i = 0; i < results.length; i++) {
+                results[i] = futures.get(i).get();
+            }
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting spanning trees", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Counting spanning trees failed", e.getCause());
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Counting spanning trees failed", e);
+        }
+    }
+
+    /**
+     * Returns the index-th prime below {@link #PRIME_LIMIT} (counting
+     * down, starting at 0 for the biggest).
+     */
+    private static long prime(int index) {
+        synchronized (sPrimes) {
+            while (sPrimes.size() <= index) {
+                long candidate = sPrimes.isEmpty() ? PRIME_LIMIT - 1 : sPrimes.get(sPrimes.size() - 1) - 2;
+                while (!BigInteger.valueOf(candidate).isProbablePrime(40)) {
+                    candidate -= 2;
+                }
+                sPrimes.add(candidate);
+            }
+            return sPrimes.get(index);
+        }
+    }
+
+    /**
+     * Returns a b mod p, for a and b from 0 to p - 1 and p below
+     * {@link #PRIME_LIMIT}, without dividing (which is slow).  The
+     * quotient is estimated with doubles--it can only be off by one--and
+     * the long arithmetic that finds the remainder can overflow all it
+     * likes since the remainder is small.
+     *
+     * @param inverseP  1.0 / p
+     */
+    private static long multiply(long a, long b, long p, double inverseP) {
+        long quotient = (long) ((double) a * b * inverseP);
+        long remainder = a * b - quotient * p;
+        if (remainder < 0) {
+            remainder += p;
+        }
+        else if (remainder >= p) {
+            remainder -= p;
+        }
+        return remainder;
+    }
+
+    /**
+     * Returns a + f x mod p, for a, f and x from 0 to p - 1.  Same idea as
+     * {@link #multiply(long, long, long, double)}, but with f / p worked
+     * out ahead of time (it's used for a whole row) and the add folded in.
+     *
+     * @param factorOverP   f / p
+     */
+    private static long multiplyAdd(long a, long f, long x, long p, double factorOverP) {
+        long quotient = (long) (factorOverP * x);
+        long result = a + f * x - quotient * p;     // somewhere from -p to 3p
+        if (result < 0) {
+            result += p;
+        }
+        else if (result >= p) {
+            result -= p;
+            if (result >= p) {
+                result -= p;
+            }
+        }
+        return result;
+    }
+
+    /** Returns a + b mod p, for a and b from 0 to p - 1. */
+    private static long add(long a, long b, long p) {
+        long sum = a + b;
+        return (sum >= p) ? sum - p : sum;
+    }
+
+    /** Returns x such that a x = 1 (mod p), for 0 < a < p and p prime. */
+    private static long inverse(long a, long p) {
+        double inverseP = 1.0 / p;
+        long result = 1;
+        long power = a;
+        for (long exponent = p - 2; exponent > 0; exponent >>= 1) {
+            if ((exponent & 1) == 1) {
+                result = multiply(result, power, p, inverseP);
+            }
+            power = multiply(power, power, p, inverseP);
+        }
+        return result;
+    }
+
+
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  classes
+    //~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Receives background counts, on the publisher's thread.
+     */
+    public interface Listener {
+        /**
+         * @param graph     The graph that was counted (as it was requested).
+         * @param count     Its number of spanning trees.
+         */
+        void onCount(CsrGraph graph, BigInteger count);
+    }
+
+    /**
+     * The Chinese remainder bookkeeping: a count that's right modulo the
+     * product of all the primes used so far.
+     */
+    private static class Remainders {
+
+        private BigInteger mCount = BigInteger.ZERO;
+
+        private BigInteger mModulus = BigInteger.ONE;
+
+        /** Index of the next prime to use (see {@link #prime(int)}) */
+        private int mNextPrime;
+
+        /**
+         * The new count is the old one plus a multiple of the old modulus
+         * that makes it right mod p.
+         */
+        void add(long p, long residue) {
+            BigInteger prime = BigInteger.valueOf(p);
+            BigInteger difference = BigInteger.valueOf(residue).subtract(mCount.mod(prime));
+            BigInteger multiple = difference.multiply(mModulus.modInverse(prime)).mod(prime);
+            mCount = mCount.add(mModulus.multiply(multiple));
+            mModulus = mModulus.multiply(prime);
+        }
+    }
+
+    /**
+     * The reduced Laplacian of one graph, rearranged into a minimum degree
+     * order, with room for all the fill-in.  Everything about it is worked
+     * out once; after that it's only read, so any number of threads can use
+     * it at once.
+     *
+     * Rows are numbered by when they're eliminated.  Only the part of each
+     * row to the right of the diagonal is kept (the matrix is symmetric).
+     * The rows from {@link #mDenseStart} on are all full (the final
+     * clique), so they're kept together as one dense square instead.
+     */
+    private static class Elimination {
+
+        /** How many rows (one less than the nodes) */
+        private final int mSize;
+
+        /** The first row of the dense part */
+        private final int mDenseStart;
+
+        /** The diagonal (loop-free degrees) of the sparse rows */
+        private final long[] mDiagonal;
+
+        /** For each sparse row, the (sorted) columns to the right of the diagonal that can be non-zero */
+        private final int[][] mPattern;
+
+        /** The starting values at those columns (0 for fill-in) */
+        private final long[][] mValues;
+
+        /**
+         * Where each update of a sparse row lands: row k changes row i =
+         * mPattern[k][a] at columns mPattern[k][b] for every b > a, and
+         * those are at these spots of row i (all the (a, b) pairs, in order).
+         * Updates of dense rows don't need this, they go straight to the
+         * dense square.
+         */
+        private final int[][] mSpots;
+
+        /**
+         * The starting values of the dense part, row by row.  Only the
+         * diagonal and to the right of it are used.
+         */
+        private final long[] mDense;
+
+        private final BigInteger mBound;
+
+        Elimination(CsrGraph graph) {
+            int size = graph.numNodes() - 1;    // the last node is left out
+            mSize = size;
+
+            // the entries of the reduced Laplacian (off the diagonal), as
+            // sorted columns and how many edges go there
+            long[] diagonal = new long[size];
+            int[][] columns = new int[size][];
+            int[][] multiplicity = new int[size][];
+            for (int i = 0; i < size; i++) {
+                int[] targets = new int[graph.offset(i + 1) - graph.offset(i)];
+                int count = 0;
+                for (int k = graph.offset(i); k < graph.offset(i + 1); k++) {
+                    int j = graph.target(k);
+                    if (j == i) {
+                        continue;   // loops don't count
+                    }
+                    diagonal[i]++;
+                    if (j < size) {
+                        targets[count++] = j;
+                    }
+                }
+                Arrays.sort(targets, 0, count);
+
+                int distinct = 0;
+                int[] times = new int[count];
+                for (int k = 0; k < count; k++) {
+                    if ((distinct > 0) && (targets[distinct - 1] == targets[k])) {
+                        times[distinct - 1]++;
+                    }
+                    else {
+                        targets[distinct] = targets[k];
+                        times[distinct++] = 1;
+                    }
+                }
+                columns[i] = Arrays.copyOf(targets, distinct);
+                multiplicity[i] = Arrays.copyOf(times, distinct);
+            }
+
+            BigInteger bound = BigInteger.ONE;
+            for (long degree : diagonal) {
+                bound = bound.multiply(BigInteger.valueOf(degree));
+            }
+            mBound = bound;
+
+            int[][] pattern = new int[size][];
+            int[] order = minimumDegreeOrder(columns.clone(), pattern);
+            int[] position = new int[size];
+            for (int k = 0; k < size; k++) {
+                position[order[k]] = k;
+            }
+
+            // Once a row is full, everything after is too: that node had the
+            // fewest neighbors and was connected to everybody that's left.
+            int denseStart = 0;
+            while ((denseStart < size) && (pattern[denseStart].length < size - 1 - denseStart)) {
+                denseStart++;
+            }
+            mDenseStart = denseStart;
+            int denseSize = size - denseStart;
+
+            mDiagonal = new long[denseStart];
+            mPattern = Arrays.copyOf(pattern, denseStart);
+            mValues = new long[denseStart][];
+            mSpots = new int[denseStart][];
+            mDense = new long[denseSize * denseSize];
+            for (int k = 0; k < size; k++) {
+                int node = order[k];
+                if (k >= denseStart) {
+                    int row = (k - denseStart) * denseSize - denseStart;
+                    mDense[row + k] = diagonal[node];
+                    for (int c = 0; c < columns[node].length; c++) {
+                        int column = position[columns[node][c]];
+                        if (column > k) {
+                            mDense[row + column] = -multiplicity[node][c];
+                        }
+                    }
+                    continue;
+                }
+
+                mSpots[k] = spots(k);
+                mDiagonal[k] = diagonal[node];
+                mValues[k] = new long[mPattern[k].length];
+                for (int c = 0; c < columns[node].length; c++) {
+                    int column = position[columns[node][c]];
+                    if (column > k) {
+                        mValues[k][Arrays.binarySearch(mPattern[k], column)] = -multiplicity[node][c];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Works out {@link #mSpots} for one sparse row.  Every column of the
+         * row after i is in row i's pattern too (that's the fill-in).  Only
+         * the sparse rows i are done.
+         */
+        private int[] spots(int k) {
+            int[] columns = mPattern[k];
+            int sparse = 0;
+            while ((sparse < columns.length) && (columns[sparse] < mDenseStart)) {
+                sparse++;
+            }
+
+            int total = 0;
+            for (int a = 0; a < sparse; a++) {
+                total += columns.length - a - 1;
+            }
+            int[] spots = new int[total];
+            int next = 0;
+            for (int a = 0; a < sparse; a++) {
+                int[] otherColumns = mPattern[columns[a]];
+                int spot = 0;
+                for (int b = a + 1; b < columns.length; b++) {
+                    while (otherColumns[spot] != columns[b]) {
+                        spot++;
+                    }
+                    spots[next++] = spot;
+                }
+            }
+            return spots;
+        }
+
+        /** Nothing can have a bigger determinant than this */
+        BigInteger getBound() {
+            return mBound;
+        }
+
+        /**
+         * Picks the order to eliminate in: always the node with the fewest
+         * neighbors left.  Eliminating a node connects all its neighbors to
+         * each other (that's the fill-in).
+         *
+         * The neighbor lists are kept as sorted arrays and merged, which
+         * beats sets of Integers by a mile.
+         *
+         * @param adjacent  The sorted neighbors of each node.  Used up.
+         *
+         * @param pattern   Filled in with the columns of each row, by
+         *                  position, including the fill-in.
+         *
+         * @return  The nodes, in the order to eliminate them.
+         */
+        private static int[] minimumDegreeOrder(int[][] adjacent, int[][] pattern) {
+            int size = adjacent.length;
+
+            // degree in the top half, node in the bottom (ties go to the lower node)
+            PriorityQueue<Long> fewest = new PriorityQueue<>(Math.max(1, size));
+            for (int i = 0; i < size; i++) {
+                fewest.add(((long) adjacent[i].length << 32) | i);
+            }
+
+            int[][] neighbors = new int[size][];
+            int[] order = new int[size];
+            int[] position = new int[size];
+            Arrays.fill(position, -1);
+            int done = 0;
+            while (done < size) {
+                long next = fewest.poll();
+                int node = (int) next;
+                if ((position[node] != -1) || ((next >>> 32) != adjacent[node].length)) {
+                    continue;   // old news
+                }
+                position[node] = done;
+                order[done++] = node;
+
+                int[] around = adjacent[node];
+                neighbors[node] = around;
+                for (int a : around) {
+                    adjacent[a] = merge(adjacent[a], around, node, a);
+                    fewest.add(((long) adjacent[a].length << 32) | a);
+                }
+                adjacent[node] = null;
+            }
+
+            for (int k = 0; k < size; k++) {
+                int[] around = neighbors[order[k]];
+                pattern[k] = new int[around.length];
+                for (int i = 0; i < around.length; i++) {
+                    pattern[k][i] = position[around[i]];
+                }
+                Arrays.sort(pattern[k]);
+            }
+            return order;
+        }
+
+        /**
+         * Returns the sorted union of two sorted arrays, leaving out two
+         * values.
+         */
+        private static int[] merge(int[] first, int[] second, int skip1, int skip2) {
+            int[] result = new int[first.length + second.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while ((i < first.length) || (j < second.length)) {
+                int value;
+                if (j == second.length) {
+                    value = first[i++];
+                }
+                else if (i == first.length) {
+                    value = second[j++];
+                }
+                else if (first[i] < second[j]) {
+                    value = first[i++];
+                }
+                else if (first[i] > second[j]) {
+                    value = second[j++];
+                }
+                else {
+                    value = first[i++];
+                    j++;
+                }
+                if ((value != skip1) && (value != skip2)) {
+                    result[count++] = value;
+                }
+            }
+            return (count == result.length) ? result : Arrays.copyOf(result, count);
+        }
+
+        /**
+         * Estimates how many bits the determinant has, with a floating point
+         * Cholesky (same order, same pattern).  The matrix is positive
+         * definite so the pivots are all positive and nicely behaved.
+         *
+         * @param extraBits     Added on for safety.
+         *
+         * @return  The estimate, or -1 if the arithmetic went funny (it
+         *          shouldn't).
+         */
+        int estimateBits(int extraBits) {
+            double[] diagonal = new double[mDenseStart];
+            double[][] values = new double[mDenseStart][];
+            for (int k = 0; k < mDenseStart; k++) {
+                diagonal[k] = mDiagonal[k];
+                values[k] = new double[mValues[k].length];
+                for (int i = 0; i < values[k].length; i++) {
+                    values[k][i] = mValues[k][i];
+                }
+            }
+            int denseSize = mSize - mDenseStart;
+            double[] dense = new double[mDense.length];
+            for (int i = 0; i < dense.length; i++) {
+                dense[i] = mDense[i];
+            }
+
+            double logDeterminant = 0;
+            for (int k = 0; k < mDenseStart; k++) {
+                double pivot = diagonal[k];
+                if (!(pivot > 0)) {
+                    return -1;
+                }
+                logDeterminant += Math.log(pivot);
+
+                int[] columns = mPattern[k];
+                int[] spots = mSpots[k];
+                double[] row = values[k];
+                int next = 0;
+                for (int a = 0; a < columns.length; a++) {
+                    int i = columns[a];
+                    double minusFactor = -row[a] / pivot;
+                    if (i < mDenseStart) {
+                        diagonal[i] += minusFactor * row[a];
+                        double[] other = values[i];
+                        for (int b = a + 1; b < columns.length; b++) {
+                            other[spots[next++]] += minusFactor * row[b];
+                        }
+                    }
+                    else {
+                        int start = (i - mDenseStart) * denseSize - mDenseStart;
+                        dense[start + i] += minusFactor * row[a];
+                        for (int b = a + 1; b < columns.length; b++) {
+                            dense[start + columns[b]] += minusFactor * row[b];
+                        }
+                    }
+                }
+                values[k] = null;
+            }
+
+            for (int r = 0; r < denseSize; r++) {
+                int pivotRow = r * denseSize;
+                double pivot = dense[pivotRow + r];
+                if (!(pivot > 0)) {
+                    return -1;
+                }
+                logDeterminant += Math.log(pivot);
+                for (int a = r + 1; a < denseSize; a++) {
+                    double minusFactor = -dense[pivotRow + a] / pivot;
+                    int start = a * denseSize;
+                    for (int b = a; b < denseSize; b++) {
+                        dense[start + b] += minusFactor * dense[pivotRow + b];
+                    }
+                }
+            }
+
+            double bits = Math.ceil(logDeterminant / Math.log(2));
+            if (Double.isNaN(bits) || (bits > Integer.MAX_VALUE / 2)) {
+                return -1;
+            }
+            return (int) bits + extraBits;
+        }
+
+        /**
+         * Finds the determinant mod p.
+         *
+         * @param counter   Checked now and then to see if the version
+         *                  went stale.
+         *
+         * @return  The determinant (between 0 and p - 1), -1 if a pivot
+         *          came out 0 (so p is no good), or {@link #STALE}.
+         */
+        long determinantMod(long p, SpanningTreeCounter counter, long version) {
+            double inverseP = 1.0 / p;
+            long[] diagonal = new long[mDenseStart];
+            long[][] values = new long[mDenseStart][];
+            for (int k = 0; k < mDenseStart; k++) {
+                diagonal[k] = mDiagonal[k] % p;
+                values[k] = new long[mValues[k].length];
+                for (int i = 0; i < values[k].length; i++) {
+                    values[k][i] = (mValues[k][i] % p + p) % p;
+                }
+            }
+            int denseSize = mSize - mDenseStart;
+            long[] dense = new long[mDense.length];
+            for (int i = 0; i < dense.length; i++) {
+                dense[i] = (mDense[i] % p + p) % p;
+            }
+
+            long determinant = 1;
+            for (int k = 0; k < mDenseStart; k++) {
+                if (((k & 255) == 0) && counter.isStale(version)) {
+                    return STALE;
+                }
+                long pivot = diagonal[k];
+                if (pivot == 0) {
+                    return -1;
+                }
+                determinant = multiply(determinant, pivot, p, inverseP);
+                long inverse = inverse(pivot, p);
+
+                // row i -= (a[k][i] / a[k][k]) row k, for each i in row k
+                int[] columns = mPattern[k];
+                int[] spots = mSpots[k];
+                long[] row = values[k];
+                int next = 0;
+                for (int a = 0; a < columns.length; a++) {
+                    int i = columns[a];
+                    boolean sparse = (i < mDenseStart);
+                    if (row[a] == 0) {
+                        if (sparse) {
+                            next += columns.length - a - 1;
+                        }
+                        continue;
+                    }
+                    long minusFactor = p - multiply(row[a], inverse, p, inverseP);
+                    double factorOverP = minusFactor * inverseP;
+                    if (sparse) {
+                        diagonal[i] = multiplyAdd(diagonal[i], minusFactor, row[a], p, factorOverP);
+                        long[] other = values[i];
+                        for (int b = a + 1; b < columns.length; b++) {
+                            int spot = spots[next++];
+                            other[spot] = multiplyAdd(other[spot], minusFactor, row[b], p, factorOverP);
+                        }
+                    }
+                    else {
+                        int start = (i - mDenseStart) * denseSize - mDenseStart;
+                        dense[start + i] = multiplyAdd(dense[start + i], minusFactor, row[a], p, factorOverP);
+                        for (int b = a + 1; b < columns.length; b++) {
+                            int spot = start + columns[b];
+                            dense[spot] = multiplyAdd(dense[spot], minusFactor, row[b], p, factorOverP);
+                        }
+                    }
+                }
+                values[k] = null;   // done with it
+            }
+
+            // the clique at the end: plain dense elimination
+            for (int r = 0; r < denseSize; r++) {
+                if (((r & 15) == 0) && counter.isStale(version)) {
+                    return STALE;
+                }
+                int pivotRow = r * denseSize;
+                long pivot = dense[pivotRow + r];
+                if (pivot == 0) {
+                    return -1;
+                }
+                determinant = multiply(determinant, pivot, p, inverseP);
+                long inverse = inverse(pivot, p);
+                for (int a = r + 1; a < denseSize; a++) {
+                    long x = dense[pivotRow + a];
+                    if (x == 0) {
+                        continue;
+                    }
+                    long minusFactor = p - multiply(x, inverse, p, inverseP);
+                    double factorOverP = minusFactor * inverseP;
+                    int start = a * denseSize;
+                    for (int b = a; b < denseSize; b++) {
+                        dense[start + b] = multiplyAdd(dense[start + b], minusFactor, dense[pivotRow + b], p, factorOverP);
+                    }
+                }
+            }
+            return determinant;
+        }
+    }
+}
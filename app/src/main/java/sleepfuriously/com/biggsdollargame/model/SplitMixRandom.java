@@ -0,0 +1,188 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Random;
+
+/**
+ * A seedable, splittable random number generator.  It's the same SplitMix64
+ * algorithm as java.util.SplittableRandom, but SplittableRandom needs API 24
+ * and we go back to 16.  It's also a {@link Random}, so it drops into
+ * anything that already takes one ({@link SetsOfIntsUtil},
+ * {@link UniformSumSampler}, ...).<br>
+ * <br>
+ * Same seed, same numbers as SplittableRandom for {@link #nextInt()},
+ * {@link #nextInt(int)}, {@link #nextLong()}, {@link #nextDouble()},
+ * {@link #nextFloat()}, {@link #nextBoolean()}, and {@link #split()}.
+ * NOT for nextGaussian() and nextBytes(): those are Random's own ways
+ * of using the numbers (still reproducible, just not SplittableRandom's).<br>
+ * <br>
+ * What it's for: making puzzles that can be made again.  A seed and a
+ * graph always give the same generator (see {@link #forPuzzle(long, CsrGraph)}),
+ * so a bad puzzle from a batch run can be replayed exactly.  And each
+ * worker thread gets its own independent stream from {@link #split()},
+ * so nobody shares (or fights over) state.<br>
+ * <br>
+ * USAGE:<br>
+ *      SplitMixRandom master = new SplitMixRandom(seed);<br>
+ *      for (each worker) {<br>
+ *          SplitMixRandom mine = master.split();    // on the thread that makes the workers<br>
+ *          ...<br>
+ *      }<br>
+ * <br>
+ * NOT thread-safe (unlike Random, which locks on every number).  One per
+ * thread: that's the whole point of splitting.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SplitMixRandom extends Random {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    private static final long serialVersionUID = 1L;
+
+    /** The odd number closest to 2^64 / golden ratio.  The default gamma. */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /** Turns the top 53 bits of a long into a double in [0, 1) */
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    // NOTE: no initializers!  Random's constructor calls setSeed() before
+    // these would get set, and an initializer would wipe that out.
+
+    /** Goes up by {@link #mGamma} for every number */
+    private long mSeed;
+
+    /** The step.  Always odd.  Different splits get different gammas. */
+    private long mGamma;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    /** Unpredictable seed (for when reproducing doesn't matter) */
+    public SplitMixRandom() {
+        this(mix64(System.nanoTime()) ^ mix64(System.identityHashCode(new Object())));
+    }
+
+    public SplitMixRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitMixRandom(long seed, long gamma) {
+        super(0L);
+        mSeed = seed;
+        mGamma = gamma;
+    }
+
+    /**
+     * The generator for a puzzle on the given graph.  The same seed and the
+     * same graph (see {@link CsrGraph#fingerprint()}) always give the same
+     * numbers, and different graphs with the same seed don't.
+     */
+    public static SplitMixRandom forPuzzle(long seed, CsrGraph graph) {
+        return new SplitMixRandom(mix64(seed) ^ graph.fingerprint());
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Makes a new generator that's independent of this one (statistically,
+     * anyway).  This one moves ahead too, so splitting again gives a
+     * different one.  O(1)
+     */
+    public SplitMixRandom split() {
+        return new SplitMixRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /** Starts over, as if it was just made with new SplitMixRandom(seed). */
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);        // forgets any saved Gaussian
+        mSeed = seed;
+        mGamma = GOLDEN_GAMMA;
+    }
+
+    /** Everything in Random that isn't overridden here comes through this. */
+    @Override
+    protected int next(int bits) {
+        return mix32(nextSeed()) >>> (32 - bits);
+    }
+
+    @Override
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    /**
+     * Same as SplittableRandom's (NOT Random's, which throws away different
+     * numbers when it has to try again).
+     */
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            r &= m;     // power of 2: just the low bits
+        }
+        else {
+            // toss the top sliver that would make the small numbers more likely
+            for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    @Override
+    public double nextDouble() {
+        return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return mix32(nextSeed()) < 0;
+    }
+
+    private long nextSeed() {
+        return mSeed += mGamma;
+    }
+
+    //~~~~~ mixing (Stafford's variant 13 and friends, same as SplittableRandom)
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    /**
+     * Makes a gamma for a split: odd, and with enough bit flips in it that
+     * the stream doesn't look like counting.
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int flips = Long.bitCount(z ^ (z >>> 1));
+        return (flips < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+
+}
@@ -0,0 +1,327 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Picks a random list of ints that add up to a given sum, with every int
+ * between floor and ceiling.  Unlike {@link SetsOfIntsUtil} (which leans
+ * towards the middle with a squashed Gaussian), every possible list is
+ * as likely as every other one--uniform up to floating-point rounding in
+ * the count tables.<br>
+ * <br>
+ * How: shift everything down by floor so the ints are in 0..width.  Then
+ * count[k][t] is the number of lists of k ints that add up to t, and
+ *      count[k][t] = count[k-1][t] + count[k-1][t-1] + ... + count[k-1][t-width].<br>
+ * To pick the first of k ints when t is left to go, choose v with
+ * probability count[k-1][t-v] / count[k][t], and keep going with k-1 and
+ * t-v.  With exact counts that's uniform over all the lists.<br>
+ * <br>
+ * The counts get astronomical (up to (width+1)^n), so the tables hold their
+ * natural logs instead.  So each probability is off by a tiny rounding
+ * error: no game will ever notice, but it isn't exactly uniform.  A table only depends on n and the width, and it's
+ * built once and kept in an LRU cache shared by all the samplers.  After
+ * that every draw is O(n * width) with no recomputing.<br>
+ * <br>
+ * The catch is the table size: about n * n * width / 2 doubles.  That's
+ * nothing for game-sized graphs (a 200 node graph with amounts -3..3 is
+ * under 1 MB), but it grows fast.  So n can't be over {@link #MAX_NUM_INTS},
+ * one table can't be over {@link #MAX_CACHED_CELLS} doubles (check with
+ * {@link #canSample(int, int, int)}), and the cache forgets the least
+ * recently used tables to stay under that too.  For bigger lists use
+ * {@link SetsOfIntsUtil#fillRandomSetOfIntsWithGivenSum} instead.<br>
+ * <br>
+ * USAGE:<br>
+ *      UniformSumSampler sampler = new UniformSumSampler(random);<br>
+ *      int[] amounts = new int[numNodes];<br>
+ *      if (!sampler.fill(targetSum, numNodes, floor, ceiling, amounts, 0)) {<br>
+ *          // can't be done<br>
+ *      }<br>
+ * <br>
+ * The tables are thread-safe, but a sampler is only as thread-safe as its
+ * Random.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class UniformSumSampler {
+
+    //-----------------------
+    //	constants
+    //-----------------------
+
+    /** The most ints in one list.  More than this throws. */
+    public static final int MAX_NUM_INTS = 1000;
+
+    /**
+     * The most doubles that all the cached tables can hold together (32 MB
+     * worth).  One table this big would fill the cache by itself: with
+     * amounts -3..3 that's a 1000 int list.
+     */
+    public static final long MAX_CACHED_CELLS = 4000000L;
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /**
+     * The tables, keyed by {@link #key(int, int)}.  Least recently used
+     * first (that's what the access order does).  Each one is a task so
+     * that whoever asks first builds it OUTSIDE the lock, and everybody
+     * else asking for the same one just waits for that.
+     */
+    private static final LinkedHashMap<Long, FutureTask<CountTable>> sTables =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The number of doubles in all of {@link #sTables}.  Guarded by sTables. */
+    private static long sCachedCells = 0;
+
+    private final Random mRandom;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    public UniformSumSampler() {
+        this(new Random());
+    }
+
+    public UniformSumSampler(Random random) {
+        mRandom = random;
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Fills part of the buffer with a uniformly random list of ints that add
+     * up to sum, each in floor..ceiling.
+     *
+     * O(numInts * (ceiling - floor)), plus building the table the first time
+     * this numInts and width are used.
+     *
+     * @param buffer    Where the ints go: buffer[offset] .. buffer[offset + numInts - 1].
+     *
+     * @return  False if there's no such list (or numInts < 1).  The buffer
+     *          isn't touched then.
+     *
+     * @throws IllegalArgumentException     If the table would be too big
+     *                                      (see {@link #canSample(int, int, int)}).
+     */
+    public boolean fill(int sum, int numInts, int floor, int ceiling, int[] buffer, int offset) {
+        if ((numInts < 1) || (floor > ceiling)) {
+            return false;
+        }
+        int width = ceiling - floor;
+        long shifted = (long) sum - (long) numInts * floor;
+        if ((shifted < 0) || (shifted > (long) numInts * width)) {
+            return false;
+        }
+
+        double[][] logCounts = getTable(numInts, width).mLogCounts;
+        int left = (int) shifted;
+
+        for (int k = numInts; k > 1; k--) {
+            // pick v so that the other k-1 can still make left - v
+            double[] rest = logCounts[k - 1];
+            double all = logCounts[k][left];
+            int lowest = Math.max(0, left - (k - 1) * width);
+            int highest = Math.min(width, left);
+
+            double r = mRandom.nextDouble();
+            int v = lowest;
+            while (v < highest) {
+                r -= Math.exp(rest[left - v] - all);
+                if (r < 0) {
+                    break;
+                }
+                v++;
+            }
+            // (if rounding leaves a crumb of r at the end, highest gets it)
+
+            buffer[offset++] = v + floor;
+            left -= v;
+        }
+        buffer[offset] = left + floor;
+        return true;
+    }
+
+    /**
+     * Convenience version of {@link #fill(int, int, int, int, int[], int)}.
+     *
+     * @return  A new array, or null if it can't be done.
+     */
+    public int[] sample(int sum, int numInts, int floor, int ceiling) {
+        if (numInts < 1) {
+            return null;
+        }
+        int[] result = new int[numInts];
+        return fill(sum, numInts, floor, ceiling, result, 0) ? result : null;
+    }
+
+    /**
+     * TRUE if lists this long with ints this far apart are small enough
+     * to sample (or count) here.
+     */
+    public static boolean canSample(int numInts, int floor, int ceiling) {
+        return (numInts <= MAX_NUM_INTS) && (floor <= ceiling)
+               && (numCells(Math.max(numInts, 0), (long) ceiling - floor) <= MAX_CACHED_CELLS);
+    }
+
+    /**
+     * The natural log of how many lists of numInts ints in floor..ceiling
+     * add up to sum.  Negative infinity if there aren't any.
+     *
+     * @throws IllegalArgumentException     If the table would be too big
+     *                                      (see {@link #canSample(int, int, int)}).
+     */
+    public static double logCount(int sum, int numInts, int floor, int ceiling) {
+        if ((numInts < 0) || (floor > ceiling)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int width = ceiling - floor;
+        long shifted = (long) sum - (long) numInts * floor;
+        if ((shifted < 0) || (shifted > (long) numInts * width)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return getTable(numInts, width).mLogCounts[numInts][(int) shifted];
+    }
+
+    /**
+     * Finds the table in the cache or builds it.  The building happens
+     * outside the lock, so other callers only wait if they want the very
+     * same table.
+     */
+    private static CountTable getTable(final int numInts, final int width) {
+        if (!canSample(numInts, 0, width)) {
+            throw new IllegalArgumentException("A table for " + numInts + " ints of width "
+                                               + width + " is too big");
+        }
+
+        Long key = key(numInts, width);
+        FutureTask<CountTable> task;
+        boolean mine = false;
+        synchronized (sTables) {
+            task = sTables.get(key);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<CountTable>() {
+                    @Override
+                    public CountTable call() {
+                        return new CountTable(numInts, width);
+                    }
+                });
+                sTables.put(key, task);
+                sCachedCells += numCells(numInts, width);
+                trimCache(key);
+                mine = true;
+            }
+        }
+
+        if (mine) {
+            task.run();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;     // keep waiting, but remember it
+                }
+                catch (ExecutionException e) {
+                    // don't leave a broken table in the cache
+                    synchronized (sTables) {
+                        if (sTables.get(key) == task) {
+                            sTables.remove(key);
+                            sCachedCells -= numCells(numInts, width);
+                        }
+                    }
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException("Couldn't build a count table", cause);
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Forgets the least recently used tables until the cache is under
+     * {@link #MAX_CACHED_CELLS}.  Never forgets the given one.  Call while
+     * holding the lock on {@link #sTables}.
+     */
+    private static void trimCache(Long keep) {
+        Iterator<Long> keys = sTables.keySet().iterator();
+        while ((sCachedCells > MAX_CACHED_CELLS) && keys.hasNext()) {
+            long key = keys.next();
+            if (key != keep) {
+                sCachedCells -= numCells((int) (key >>> 32), (int) key);
+                keys.remove();
+            }
+        }
+    }
+
+    /** The number of doubles in a table: k * width + 1 for each k = 0..n */
+    private static long numCells(int numInts, long width) {
+        return width * numInts * (numInts + 1) / 2 + numInts + 1;
+    }
+
+    private static long key(int numInts, int width) {
+        return ((long) numInts << 32) | width;
+    }
+
+    //~~~~~ classes
+
+    /**
+     * The log counts for one n and width.  Never changes once it's built.
+     */
+    private static class CountTable {
+
+        /**
+         * mLogCounts[k][t] = ln(the number of lists of k ints in 0..width
+         * that add up to t), for k = 0..n and t = 0..k*width.
+         */
+        final double[][] mLogCounts;
+
+        /** O(n * n * width * width) */
+        CountTable(int numInts, int width) {
+            mLogCounts = new double[numInts + 1][];
+            mLogCounts[0] = new double[] {0.0};       // one way to make 0 from nothing
+
+            for (int k = 1; k <= numInts; k++) {
+                double[] previous = mLogCounts[k - 1];
+                double[] row = new double[k * width + 1];
+                int previousTop = previous.length - 1;
+
+                for (int t = 0; t < row.length; t++) {
+                    int lowest = Math.max(0, t - width);
+                    int highest = Math.min(t, previousTop);
+
+                    // log of the sum of the exps, without overflowing
+                    double biggest = Double.NEGATIVE_INFINITY;
+                    for (int j = lowest; j <= highest; j++) {
+                        biggest = Math.max(biggest, previous[j]);
+                    }
+                    double total = 0;
+                    for (int j = lowest; j <= highest; j++) {
+                        total += Math.exp(previous[j] - biggest);
+                    }
+                    row[t] = biggest + Math.log(total);
+                }
+                mLogCounts[k] = row;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import java.util.Arrays;
+
+/**
+ * A classic union-find (aka disjoint-set) structure.  Keeps track of
+ * which elements are in the same group, merging groups as you go.
+ * Uses path compression and union by rank, so every operation is
+ * effectively O(1).
+ *
+ * Elements are just the ints 0, 1, 2...  in the order that they were
+ * added with {@link #add()}.  Groups can only be merged, never split;
+ * if you need to split, {@link #clear()} it and start over.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class UnionFind {
+
+    //-----------------------
+    //	data
+    //-----------------------
+
+    /** The parent of each element. A root is its own parent. */
+    private int[] mParent;
+
+    /** Upper bound on the height of the tree under each root */
+    private int[] mRank;
+
+    /** The number of elements in the group of each root */
+    private int[] mSetSize;
+
+    /** Number of elements that have been added */
+    private int mSize = 0;
+
+    /** Number of separate groups */
+    private int mNumSets = 0;
+
+    //-----------------------
+    //	constructors
+    //-----------------------
+
+    public UnionFind() {
+        this(16);
+    }
+
+    /**
+     * @param initialCapacity   Number of elements to make room for.
+     */
+    public UnionFind(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        mParent = new int[initialCapacity];
+        mRank = new int[initialCapacity];
+        mSetSize = new int[initialCapacity];
+    }
+
+    //-----------------------
+    //	methods
+    //-----------------------
+
+    /**
+     * Adds a new element in a group all by itself.
+     *
+     * @return  The new element.
+     */
+    public int add() {
+        if (mSize == mParent.length) {
+            int newCapacity = mParent.length * 2;
+            mParent = Arrays.copyOf(mParent, newCapacity);
+            mRank = Arrays.copyOf(mRank, newCapacity);
+            mSetSize = Arrays.copyOf(mSetSize, newCapacity);
+        }
+        int element = mSize++;
+        mParent[element] = element;
+        mRank[element] = 0;
+        mSetSize[element] = 1;
+        mNumSets++;
+        return element;
+    }
+
+    /**
+     * Finds the representative (root) of the group that holds the given
+     * element.  Two elements are in the same group iff they have the same
+     * root.
+     */
+    public int find(int element) {
+        int root = element;
+        while (mParent[root] != root) {
+            root = mParent[root];
+        }
+
+        // compress the path so next time is quicker
+        while (mParent[element] != root) {
+            int next = mParent[element];
+            mParent[element] = root;
+            element = next;
+        }
+        return root;
+    }
+
+    /**
+     * Merges the groups of the two elements.
+     *
+     * @return  TRUE if they were in different groups (and now aren't).
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+
+        // hang the shorter tree under the taller one
+        if (mRank[rootA] < mRank[rootB]) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        mParent[rootB] = rootA;
+        mSetSize[rootA] += mSetSize[rootB];
+        if (mRank[rootA] == mRank[rootB]) {
+            mRank[rootA]++;
+        }
+        mNumSets--;
+        return true;
+    }
+
+    /** Tells if the two elements are in the same group. */
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /** The number of elements in the same group as the given element. */
+    public int setSize(int element) {
+        return mSetSize[find(element)];
+    }
+
+    /** Number of separate groups. */
+    public int numSets() {
+        return mNumSets;
+    }
+
+    /** Number of elements that have been added. */
+    public int size() {
+        return mSize;
+    }
+
+    /** Removes all the elements. The memory is kept for reuse. */
+    public void clear() {
+        mSize = 0;
+        mNumSets = 0;
+    }
+}
@@ -43,15 +43,28 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.core.view.animation.PathInterpolatorCompat;
 
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import sleepfuriously.com.biggsdollargame.R;
+import sleepfuriously.com.biggsdollargame.model.CsrGraph;
+import sleepfuriously.com.biggsdollargame.model.DivisorReducer;
+import sleepfuriously.com.biggsdollargame.model.DollarGame;
 import sleepfuriously.com.biggsdollargame.model.Graph;
 import sleepfuriously.com.biggsdollargame.model.GraphNodeDuplicateIdException;
 import sleepfuriously.com.biggsdollargame.model.GraphNotConnectedException;
+import sleepfuriously.com.biggsdollargame.model.HintEngine;
+import sleepfuriously.com.biggsdollargame.model.IntCursor;
+import sleepfuriously.com.biggsdollargame.model.MinimalMoveSolver;
+import sleepfuriously.com.biggsdollargame.model.MoveJournal;
+import sleepfuriously.com.biggsdollargame.model.PuzzleGenerator;
 import sleepfuriously.com.biggsdollargame.model.SetsOfIntsUtil;
+import sleepfuriously.com.biggsdollargame.model.SpanningTreeCounter;
+import sleepfuriously.com.biggsdollargame.model.SplitMixRandom;
 import sleepfuriously.com.biggsdollargame.view.SubButtonsBtn.ButtonEventListener;
 import sleepfuriously.com.biggsdollargame.view.buttons.MovableNodeButton;
 import sleepfuriously.com.biggsdollargame.view.dialogs.NodeEditDialog;
@@ -84,7 +97,7 @@ public class MainActivity extends AppCompatActivity {
     private PlayAreaFrameLayout mPlayArea;
 
     /** holds all the buttons and their connections */
-    private Graph mGraph = new Graph<MovableNodeButton>(false);
+    private Graph mGraph = new Graph<MovableNodeButton>(false, Graph.DataLookup.IDENTITY);
 
 
     /**
@@ -111,6 +124,9 @@ public class MainActivity extends AppCompatActivity {
     /** TextViews that display the current count of the nodes */
     private TextView mCountLabelTv, mCountTv;
 
+    /** TextViews for the number of spanning trees (also only meaningful when connected) */
+    private TextView mTreesLabelTv, mTreesTv;
+
     /** allows the user to quickly randomize all the nodes at once */
     private Button mRandomizeAllButt;
 
@@ -143,6 +159,101 @@ public class MainActivity extends AppCompatActivity {
     /** only TRUE during the give/take animation. UI events need to wait until this is FALSE */
     private boolean mAnimatingGiveTake = false;
 
+    /** Reused whenever we walk the neighbors of a node so that nothing new is allocated */
+    private IntCursor mNeighborCursor;
+
+    /**
+     * The rules and the money while in Solve mode.  The buttons just
+     * display what's in here (see {@link #mGameListener}).  Null while
+     * in Build mode.
+     */
+    private DollarGame mGame;
+
+    /** Figures out if {@link #mGame} can still be won */
+    private final DivisorReducer mReducer = new DivisorReducer();
+
+    /**
+     * Can {@link #mGame} still be won?  Giving and taking never changes
+     * this (the reduced divisor stays the same), so it's only figured out
+     * again when the amounts are set.
+     */
+    private boolean mWinnable = true;
+
+    /** Finds the fewest moves for the "show solution" menu item */
+    private final MinimalMoveSolver mSolver = new MinimalMoveSolver();
+
+    /** TRUE while {@link #mSolver} is working (it can only do one at a time) */
+    private boolean mSolving = false;
+
+    /** The moves of a solution that are still to be played (usually empty) */
+    private final List<MinimalMoveSolver.Move> mSolutionMoves = new ArrayList<>();
+
+    /** Every give and take of {@link #mGame}, for undo and redo */
+    private final MoveJournal mJournal = new MoveJournal();
+
+    /** Keeps {@link #mHintTv} showing a good next move while solving */
+    private HintEngine mHintEngine;
+
+    /** The button the current hint is about (highlighted), or null */
+    private MovableNodeButton mHintButton;
+
+    /** Makes the puzzles for the randomize button */
+    private final PuzzleGenerator mPuzzleGenerator = new PuzzleGenerator();
+
+    /**
+     * Goes up with every press of the randomize button, so a puzzle that
+     * shows up after a newer press is ignored.
+     */
+    private int mRandomizeVersion = 0;
+
+    /**
+     * For the number of spanning trees in {@link #mTreesTv}.  Big graphs
+     * can take a while, so the counting is done in the background.
+     */
+    private final SpanningTreeCounter mTreeCounter = new SpanningTreeCounter();
+
+    /** Puts a finished spanning tree count in {@link #mTreesTv} (on the UI thread) */
+    private final SpanningTreeCounter.Listener mTreeListener = new SpanningTreeCounter.Listener() {
+        @Override
+        public void onCount(CsrGraph graph, BigInteger count) {
+            mTreesTv.setText(shortNumber(count));
+        }
+    };
+
+    /** Runs things on the UI thread, for the background workers to publish with */
+    private final Executor mUiExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runOnUiThread(runnable);
+        }
+    };
+
+    /** Keeps the buttons showing what's in {@link #mGame} */
+    private final DollarGame.Listener mGameListener = new DollarGame.Listener() {
+        @Override
+        public void onFire(DollarGame game, int node, int times) {
+            CsrGraph csr = game.getGraph();
+            updateButtonAmount(game, node);
+            for (int k = csr.offset(node); k < csr.offset(node + 1); k++) {
+                updateButtonAmount(game, csr.target(k));
+            }
+            setSolvedUI();
+            setCountUI();
+            requestHint();
+        }
+
+        @Override
+        public void onReset(DollarGame game) {
+            for (int i = 0; i < game.numNodes(); i++) {
+                updateButtonAmount(game, i);
+            }
+            updateWinnable();
+            setSolvedUI();
+            setCountUI();
+            requestHint();
+        }
+    };
+
     //------------------------
     //  methods
     //------------------------
@@ -166,6 +277,10 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
+        mSolver.cancel();
+        mHintEngine.shutdown();
+        mTreeCounter.shutdown();
+        mPuzzleGenerator.shutdown();
         super.onDestroy();
     }
 
@@ -230,6 +345,18 @@ public class MainActivity extends AppCompatActivity {
                 showSimpleDialog(R.string.genus_dialog_title, R.string.genus_dialog_msg);
             }
         });
+
+        View.OnClickListener treesListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showSimpleDialog(R.string.trees_dialog_title, R.string.trees_dialog_msg);
+            }
+        };
+        mTreesLabelTv = findViewById(R.id.trees_label_tv);
+        mTreesLabelTv.setOnClickListener(treesListener);
+        mTreesTv = findViewById(R.id.trees_tv);
+        mTreesTv.setText(R.string.not_applicable);
+        mTreesTv.setOnClickListener(treesListener);
     }
 
     /**
@@ -295,9 +422,15 @@ public class MainActivity extends AppCompatActivity {
                 }
                 else {
                     // in solve mode
-                    toastStr = isSolved() ?
-                            getString(R.string.solved_toast) :
-                            getString(R.string.not_solved_toast);
+                    if (isSolved()) {
+                        toastStr = getString(R.string.solved_toast);
+                    }
+                    else if (!isWinnable()) {
+                        toastStr = getString(R.string.unwinnable_toast);
+                    }
+                    else {
+                        toastStr = getString(R.string.not_solved_toast);
+                    }
                 }
 
                 Toast.makeText(MainActivity.this, toastStr, Toast.LENGTH_LONG).show();
@@ -329,6 +462,19 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Starts up {@link #mHintEngine}.  Its hints are published on the UI
+     * thread.
+     */
+    private void setupHintEngine() {
+        mHintEngine = new HintEngine(mUiExecutor, new HintEngine.Listener() {
+            @Override
+            public void onHint(HintEngine.Hint hint) {
+                showHint(hint);
+            }
+        });
+    }
+
     /**
      * Initializes all the main widgets for the game.
      * Works by side-effects (method data).
@@ -341,6 +487,7 @@ public class MainActivity extends AppCompatActivity {
         mBuildTv = findViewById(R.id.build_tv);
         mSolveTv = findViewById(R.id.solve_tv);
         mHintTv = findViewById(R.id.bottom_hint_tv);
+        setupHintEngine();
 
         setupPlayArea();
         setupConnectedWidgets();
@@ -545,6 +692,18 @@ public class MainActivity extends AppCompatActivity {
                 finish();
                 break;
 
+            case R.id.solve_solution:
+                doShowSolution();
+                break;
+
+            case R.id.solve_undo:
+                doUndo();
+                break;
+
+            case R.id.solve_redo:
+                doRedo();
+                break;
+
             default:
                 Toast.makeText(this, "unknown menu selection", Toast.LENGTH_LONG).show();
                 break;
@@ -682,10 +841,12 @@ public class MainActivity extends AppCompatActivity {
 
         // now do the ui
         if (mBuildMode) {
+            stopGame();
             setAllButtonsBuild();
             buildModeUI();
         }
         else {
+            startGame();
             setAllButtonsSolve();
             solveModeUI();
         }
@@ -718,12 +879,7 @@ public class MainActivity extends AppCompatActivity {
         mSolveTv.setTextColor(getResources().getColor(R.color.textcolor_on));
 
         // convert this widget to display the solvable state.
-        if (isSolved()) {
-            mConnectedIV.setImageResource(R.drawable.ic_solved);
-        }
-        else {
-            mConnectedIV.setImageResource(R.drawable.ic_unsolved);
-        }
+        setSolvedUI();
 
         mHintTv.setText(R.string.solve_hint);
 
@@ -778,27 +934,50 @@ public class MainActivity extends AppCompatActivity {
      * preconditions
      *      - genus widgets are initialized
      *      - mGraph contains all the correct info about the graph
+     *
+     * The number of spanning trees is counted in the background and shows
+     * up when it's done (any older count that's still going is dropped).
      */
     private void setGenusUI() {
         try {
             int genus = mGraph.getGenus();
             mGenusTv.setText(String.valueOf(genus));
+            mTreesTv.setText(R.string.trees_counting);
+            mTreeCounter.requestCount(mGraph.freeze(), mUiExecutor, mTreeListener);
         }
         catch (GraphNotConnectedException e) {
             // This is not really an error, just a convenient way to see that the
             // graph is not connected.
+            mTreeCounter.invalidate();
             mGenusTv.setText(R.string.not_applicable);
+            mTreesTv.setText(R.string.not_applicable);
         }
     }
 
     private void hideGenusUI() {
         mGenusTv.setVisibility(View.GONE);
         mGenusLabelTv.setVisibility(View.GONE);
+        mTreesTv.setVisibility(View.GONE);
+        mTreesLabelTv.setVisibility(View.GONE);
     }
 
     private void showGenusUI() {
         mGenusTv.setVisibility(View.VISIBLE);
         mGenusLabelTv.setVisibility(View.VISIBLE);
+        mTreesTv.setVisibility(View.VISIBLE);
+        mTreesLabelTv.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Numbers of spanning trees get big fast.  Anything over 6 digits is
+     * shown like 1.2e15.
+     */
+    private static String shortNumber(BigInteger number) {
+        String digits = number.toString();
+        if (digits.length() <= 6) {
+            return digits;
+        }
+        return digits.charAt(0) + "." + digits.charAt(1) + "e" + (digits.length() - 1);
     }
 
 
@@ -808,19 +987,25 @@ public class MainActivity extends AppCompatActivity {
      * or not the graph is connected.
      *
      * If there are no nodes, then the count doesn't make sense and "not applicable"
-     * will display.
+     * will display.  While solving, whatever is still owed shows up too.
      */
     private void setCountUI() {
         if (mGraph.numNodes() == 0) {
             mCountTv.setText(R.string.not_applicable);
         }
+        else if ((mGame != null) && (mGame.totalDebt() > 0)) {
+            // show how much is still owed too (the game keeps track of it)
+            mCountTv.setText(getString(R.string.count_with_debt, mGame.degree(), mGame.totalDebt()));
+        }
+        else if (mGame != null) {
+            mCountTv.setText(String.valueOf(mGame.degree()));
+        }
         else {
             int count = 0;
-            for (int i = 0; i < mGraph.numNodes(); i++) {
-                MovableNodeButton node = (MovableNodeButton) mGraph.getNodeData(i);
-                if (node != null) {
-                    count += node.getAmount();
-                }
+            @SuppressWarnings("unchecked")
+            List<MovableNodeButton> nodes = mGraph.getAllNodeData();
+            for (MovableNodeButton node : nodes) {
+                count += node.getAmount();
             }
             mCountTv.setText(String.valueOf(count));
         }
@@ -951,6 +1136,7 @@ public class MainActivity extends AppCompatActivity {
         try {
             //noinspection unchecked
             mGraph.addNode(buttonId, button);
+            mHintEngine.invalidate();
         }
         catch (GraphNodeDuplicateIdException e) {
             e.printStackTrace();
@@ -998,12 +1184,12 @@ public class MainActivity extends AppCompatActivity {
 
         float xAdjust = 0, yAdjust = 0;
 
-        //noinspection unchecked
-        List<Integer> adjacentList = mGraph.getAllAdjacentTo(mainButtId);
+        mNeighborCursor = mGraph.neighbors(mainButtId, mNeighborCursor);
 
         // create the little moving dots that will traverse the edges
-        final List<ImageView> dots = new ArrayList<>();
-        for (int adjacentId: adjacentList) {
+        final List<ImageView> dots = new ArrayList<>(mNeighborCursor.size());
+        while (mNeighborCursor.hasNext()) {
+            int adjacentId = mNeighborCursor.next();
             ImageView newDot = new ImageView(this);
             newDot.setLayoutParams(new LinearLayout.LayoutParams(
                    LinearLayout.LayoutParams.WRAP_CONTENT,
@@ -1097,43 +1283,117 @@ public class MainActivity extends AppCompatActivity {
                                       MovableNodeButton mainButton) {
 
         for (ImageView v : animViews) {
-            // update the dollar amount connected to this view
-            MovableNodeButton button = (MovableNodeButton) v.getTag();
-            if (mGiving) {
-                button.incrementAmount();
-            }
-            else {
-                button.decrementAmount();
-            }
-
             // remove this view from the play area
             mPlayArea.removeView(v);
         }
 
-        // update the main button
-        int currAmount = mainButton.getAmount();
-        int changeAmount = animViews.size();
+        // The game does the logic.  The listener will update the buttons
+        // and the solved state.
+        int node = mGame.getGraph().indexOf(mainButton.getId());
         if (mGiving) {
-            mainButton.setAmount(currAmount - changeAmount);
+            mGame.fire(node);
         }
         else {
-            mainButton.setAmount(currAmount + changeAmount);
+            mGame.borrow(node);
         }
+        mJournal.record(node, mGiving);
 
-        // re-check solved state
-        if (isSolved()) {
-            mConnectedIV.setImageResource(R.drawable.ic_solved);
+        mAnimatingGiveTake = false; // no longer animating
+
+        if (!mSolutionMoves.isEmpty()) {
+            playNextSolutionMove();
         }
-        else {
-            mConnectedIV.setImageResource(R.drawable.ic_unsolved);
+    }
+
+    /**
+     * Takes back the last give or take.  No animation--the listener just
+     * changes the buttons.  Does nothing while something's moving.
+     */
+    private void doUndo() {
+        if ((mGame == null) || mAnimatingGiveTake || !mSolutionMoves.isEmpty()) {
+            return;
+        }
+        if (mJournal.undo(mGame) == -1) {
+            Toast.makeText(this, R.string.nothing_to_undo_toast, Toast.LENGTH_SHORT).show();
         }
+    }
 
-        mAnimatingGiveTake = false; // no longer animating
+    /**
+     * Does the last undone give or take again.
+     */
+    private void doRedo() {
+        if ((mGame == null) || mAnimatingGiveTake || !mSolutionMoves.isEmpty()) {
+            return;
+        }
+        if (mJournal.redo(mGame) == -1) {
+            Toast.makeText(this, R.string.nothing_to_redo_toast, Toast.LENGTH_SHORT).show();
+        }
+    }
 
+    /**
+     * Figures out the fewest moves that win (in the background) and then
+     * plays them, one give/take animation at a time.
+     */
+    private void doShowSolution() {
+        if ((mGame == null) || mSolving || mAnimatingGiveTake || !mSolutionMoves.isEmpty()) {
+            return;
+        }
+        mSolving = true;
+
+        Toast.makeText(this, R.string.finding_solution_toast, Toast.LENGTH_SHORT).show();
+
+        final DollarGame game = mGame;
+        final int[] amounts = game.getDivisor();
+        mSolver.solveInBackground(game.getGraph(), amounts, new MinimalMoveSolver.Callback() {
+            @Override
+            public void onSolved(final MinimalMoveSolver.Solution solution) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mSolving = false;
+
+                        // Too late if the game changed while we were thinking
+                        if ((mGame != game) || !Arrays.equals(amounts, game.getDivisor())
+                                || mAnimatingGiveTake) {
+                            return;
+                        }
+
+                        if (solution == null) {
+                            Toast.makeText(MainActivity.this, R.string.unwinnable_toast, Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        if (!solution.isOptimal()) {
+                            Toast.makeText(MainActivity.this, R.string.solution_not_best_toast, Toast.LENGTH_LONG).show();
+                        }
+
+                        mSolutionMoves.addAll(solution.getMoves());
+                        playNextSolutionMove();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts the animation of the next move in {@link #mSolutionMoves}.
+     * {@link #giveTakeAnimFinished(List, MovableNodeButton)} calls this
+     * again until they're all done.
+     */
+    private void playNextSolutionMove() {
+        if (mSolutionMoves.isEmpty() || (mGame == null)) {
+            mSolutionMoves.clear();
+            return;
+        }
+
+        MinimalMoveSolver.Move move = mSolutionMoves.remove(0);
+        int id = mGame.getGraph().getNodeId(move.getNode());
+        mGiving = move.isGive();
+        mTaking = !move.isGive();
+        startGiveTake(id, (MovableNodeButton) mGraph.getNodeData(id));
     }
 
     /**
-     * Checks the current state of mGraph and determines if we're in a solved
+     * Checks the current state of the game and determines if we're in a solved
      * state or not.  If any node has less than 0 dollars, then the puzzle
      * is not solved.
      *
@@ -1142,8 +1402,13 @@ public class MainActivity extends AppCompatActivity {
      */
     private boolean isSolved() {
 
-        for (int i = 0; i < mGraph.numNodes(); i++) {
-            MovableNodeButton node = (MovableNodeButton) mGraph.getNodeData(i);
+        if (mGame != null) {
+            return mGame.isWinning();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<MovableNodeButton> nodes = mGraph.getAllNodeData();
+        for (MovableNodeButton node : nodes) {
             if (node.getAmount() < 0) {
                 return false;
             }
@@ -1151,6 +1416,151 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * Returns TRUE if the current game can still be won (or if there's
+     * no game going, as there's no way to tell).
+     */
+    private boolean isWinnable() {
+        return (mGame == null) || mWinnable;
+    }
+
+    /**
+     * Figures out {@link #mWinnable} for the current amounts of {@link #mGame}.
+     */
+    private void updateWinnable() {
+        if (mGame == null) {
+            mWinnable = true;
+            return;
+        }
+        try {
+            mWinnable = mReducer.isWinnable(mGame);
+        }
+        catch (GraphNotConnectedException e) {
+            Log.e(TAG, "updateWinnable() called on a graph that's not connected!");
+            mWinnable = false;
+        }
+    }
+
+    /**
+     * Sets the solved/unsolved/unwinnable image.  Only makes sense in
+     * Solve mode.
+     */
+    private void setSolvedUI() {
+        if (isSolved()) {
+            mConnectedIV.setImageResource(R.drawable.ic_solved);
+        }
+        else if (!isWinnable()) {
+            mConnectedIV.setImageResource(R.drawable.ic_unwinnable);
+        }
+        else {
+            mConnectedIV.setImageResource(R.drawable.ic_unsolved);
+        }
+    }
+
+    /**
+     * Starts up {@link #mGame} with the money that's in the buttons right
+     * now.  Call when going into Solve mode.
+     */
+    private void startGame() {
+        CsrGraph csr = mGraph.freeze();
+        int[] amounts = new int[csr.numNodes()];
+        for (int i = 0; i < amounts.length; i++) {
+            MovableNodeButton button = (MovableNodeButton) mGraph.getNodeData(csr.getNodeId(i));
+            amounts[i] = button.getAmount();
+        }
+
+        stopGame();
+        mGame = new DollarGame(csr, amounts);
+        mGame.addListener(mGameListener);
+        updateWinnable();
+        requestHint();
+    }
+
+    /**
+     * Asks {@link #mHintEngine} for a hint for the current position.  It'll
+     * show up later (see {@link #showHint(HintEngine.Hint)}).
+     */
+    private void requestHint() {
+        clearHintHighlight();   // it's about the old position
+        if (mGame != null) {
+            mHintEngine.requestHint(mGame.getGraph(), mGame.getDivisor());
+        }
+    }
+
+    /**
+     * Puts a hint from {@link #mHintEngine} in the hint text, and
+     * highlights the node it's about (lots of nodes can have the same
+     * amount, so the text can't say which one).  Only hints for the
+     * current position get here.
+     */
+    private void showHint(HintEngine.Hint hint) {
+        if (mBuildMode || (mGame == null)) {
+            return;
+        }
+        clearHintHighlight();
+
+        switch (hint.getKind()) {
+            case HintEngine.Hint.SOLVED:
+                mHintTv.setText(R.string.hint_solved);
+                break;
+
+            case HintEngine.Hint.UNWINNABLE:
+                mHintTv.setText(R.string.hint_unwinnable);
+                break;
+
+            default:
+                String movesLeft = getString(hint.isExact() ? R.string.hint_moves_exact
+                                                            : R.string.hint_moves_at_most,
+                                             hint.getMovesLeft());
+                mHintTv.setText(getString(hint.isGive() ? R.string.hint_give : R.string.hint_take,
+                                          movesLeft));
+
+                int id = mGame.getGraph().getNodeId(hint.getNode());
+                mHintButton = (MovableNodeButton) mGraph.getNodeData(id);
+                mHintButton.setBackgroundColorResource(R.color.button_bg_color_solve_hint);
+                mHintButton.invalidate();
+                break;
+        }
+    }
+
+    /**
+     * Puts the button {@link #showHint(HintEngine.Hint)} highlighted back
+     * to its usual color.
+     */
+    private void clearHintHighlight() {
+        if (mHintButton != null) {
+            mHintButton.setBackgroundColorResource(getButtonStateColor(mHintButton));
+            mHintButton.invalidate();
+            mHintButton = null;
+        }
+    }
+
+    /**
+     * Done with {@link #mGame} (the buttons keep the last amounts).
+     */
+    private void stopGame() {
+        mSolver.cancel();
+        mHintEngine.invalidate();
+        clearHintHighlight();
+        mSolutionMoves.clear();
+        mJournal.clear();
+        if (mGame != null) {
+            mGame.removeListener(mGameListener);
+            mGame = null;
+        }
+    }
+
+    /**
+     * Makes the button for the given node of the game show its amount.
+     */
+    private void updateButtonAmount(DollarGame game, int node) {
+        int id = game.getGraph().getNodeId(node);
+        MovableNodeButton button = (MovableNodeButton) mGraph.getNodeData(id);
+        if (button.getAmount() != game.getAmount(node)) {
+            button.setAmount(game.getAmount(node));
+        }
+    }
+
 
     /**
      * Throws up a dialog that allows the user to edit the money amount within a node.
@@ -1173,8 +1583,14 @@ public class MainActivity extends AppCompatActivity {
                 }
 
                 // set the button to the dollar amount.
-                button.setAmount(dollarAmount);
-                setCountUI();
+                if (mGame != null) {
+                    // the listener updates the button
+                    mGame.setAmount(mGame.getGraph().indexOf(button.getId()), dollarAmount);
+                }
+                else {
+                    button.setAmount(dollarAmount);
+                    setCountUI();
+                }
             }
         });
         dialog.show(this, button.getAmount());
@@ -1189,6 +1605,10 @@ public class MainActivity extends AppCompatActivity {
         mPlayArea.removeView(nodeToDelete);
 
         mGraph.removeNode(nodeId);
+        mHintEngine.invalidate();
+        if (mGame != null) {
+            startGame();    // the old game still has that node
+        }
 
         resetAllButtonStateColors();
 
@@ -1229,12 +1649,11 @@ public class MainActivity extends AppCompatActivity {
     private void rebuildPlayAreaLines() {
         mPlayArea.removeAllLines();
 
-        List<Graph.Edge> edges = mGraph.getAllEdges();
-        for (Graph.Edge edge : edges) {
-            MovableNodeButton startbutton = (MovableNodeButton) mGraph.getNodeData(edge.startNodeId);
+        for (int i = 0; i < mGraph.numEdges(); i++) {
+            MovableNodeButton startbutton = (MovableNodeButton) mGraph.getNodeData(mGraph.getEdgeStart(i));
             PointF startp = startbutton.getCenter();
 
-            MovableNodeButton endButton = (MovableNodeButton) mGraph.getNodeData(edge.endNodeId);
+            MovableNodeButton endButton = (MovableNodeButton) mGraph.getNodeData(mGraph.getEdgeEnd(i));
             PointF endp = endButton.getCenter();
 
             mPlayArea.addLine(startp, endp);
@@ -1293,6 +1712,7 @@ public class MainActivity extends AppCompatActivity {
 
         // remove from graph and play area
         mGraph.removeEdge(startButtonId, endButtonId);
+        mHintEngine.invalidate();
         mPlayArea.removeLine(start, end);
         mPlayArea.invalidate();
 
@@ -1344,6 +1764,7 @@ public class MainActivity extends AppCompatActivity {
 
         // add this new line to the graph and the play area
         mGraph.addEdge(startButtonId, endButtonId);
+        mHintEngine.invalidate();
         mPlayArea.addLine(start, end);
         mPlayArea.invalidate();
 
@@ -1381,8 +1802,7 @@ public class MainActivity extends AppCompatActivity {
     private int getButtonStateColor(MovableNodeButton button) {
 
         // if the node is connected to any other node, then use the connected color
-        List connectedNodes = mGraph.getAllAdjacentTo(button.getId());
-        if (connectedNodes.size() > 0) {
+        if (mGraph.degree(button.getId()) > 0) {
             return R.color.button_bg_color_build_connected;
         }
         else {
@@ -1449,23 +1869,42 @@ public class MainActivity extends AppCompatActivity {
             Log.v(TAG, "Randomizing nodes before graph is connected. No big deal.");
         }
 
+        // A connected graph gets a puzzle that's really as hard as the
+        // difficulty says.  That takes a solver, so it's done in the
+        // background: the button comes right back, and the puzzle shows
+        // up within PuzzleGenerator.DEFAULT_TIME_LIMIT_MS (the closest one
+        // found if there wasn't time for a perfect one).
+        final CsrGraph csr = mGraph.freeze();
+        if (!csr.isDirected() && csr.isConnected()) {
+            final long seed = new SplitMixRandom().nextLong();
+            Log.d(TAG, "randomizing with seed " + seed);    // so a weird one can be made again
+
+            final int version = ++mRandomizeVersion;
+            mPuzzleGenerator.cancel();      // nobody wants the last one now
+            mPuzzleGenerator.generateInBackground(csr, getDifficultyBand(), targetSum, floor, ceiling, seed,
+                    new PuzzleGenerator.Callback() {
+                        @Override
+                        public void onGenerated(final PuzzleGenerator.Puzzle puzzle) {
+                            runOnUiThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    finishRandomize(version, csr, puzzle);
+                                }
+                            });
+                        }
+                    });
+            return;
+        }
+
+        // Otherwise it's just the right amount of money, spread around
         // THIS IS IT!!!
+        int[] randomNums = new int[numNodes];
         SetsOfIntsUtil util = new SetsOfIntsUtil();
-        Integer[] randomNums = util.findRandomSetOfIntsWithGivenSum(targetSum, numNodes, floor, ceiling);
-        if ((randomNums == null) || (randomNums.length == 0)) {
-            Log.e(TAG, "Unable to create combinations, aborting!  " +
-                    (randomNums == null ? "(randomNums = null)" : "randomNums.length = 0)"));
+        if (!util.fillRandomSetOfIntsWithGivenSum(targetSum, numNodes, floor, ceiling, randomNums, 0)) {
+            Log.e(TAG, "Unable to create combinations, aborting!  (numNodes = " + numNodes + ")");
             Toast.makeText(MainActivity.this, R.string.unable_to_generate_random_node_numbers, Toast.LENGTH_LONG).show();
             return;
         }
-        if (randomNums.length != numNodes) {
-            Log.e(TAG, "wrong number of random numbers! (expected " + numNodes + ", but got " + randomNums.length + ").  We'll probably crash real soon.");
-            int errSum = 0;
-            for (int item : randomNums) {
-                errSum += item;
-            }
-            Log.e(TAG, "  their sum is: " + errSum);
-        }
 
         // todo: remove the statistical analysis
 //        displayDistribution(randomNums, floor, ceiling);
@@ -1485,6 +1924,50 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /**
+     * Puts a puzzle from {@link #mPuzzleGenerator} into the buttons, unless
+     * things have changed since it was asked for.
+     *
+     * @param version   The {@link #mRandomizeVersion} when it was asked for.
+     *
+     * @param csr       The graph it was made for.
+     *
+     * @param puzzle    The puzzle (by dense index of csr).  Null if none
+     *                  could be made.
+     */
+    private void finishRandomize(int version, CsrGraph csr, PuzzleGenerator.Puzzle puzzle) {
+        if ((version != mRandomizeVersion) || !mBuildMode) {
+            return;
+        }
+        if (puzzle == null) {
+            Toast.makeText(this, R.string.unable_to_generate_random_node_numbers, Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (mGraph.freeze().fingerprint() != csr.fingerprint()) {
+            return;     // the graph was edited while we were working
+        }
+
+        int[] amounts = puzzle.getAmounts();
+        for (int i = 0; i < amounts.length; i++) {
+            MovableNodeButton node = (MovableNodeButton) mGraph.getNodeData(csr.getNodeId(i));
+            node.setAmount(amounts[i]);
+        }
+
+        if (!puzzle.isInBand()) {
+            if (puzzle.isWinnable()) {
+                Toast.makeText(this, getString(R.string.puzzle_not_in_band_toast, puzzle.getNumMoves()),
+                               Toast.LENGTH_LONG).show();
+            }
+            else {
+                Toast.makeText(this, R.string.puzzle_not_in_band_unwinnable_toast, Toast.LENGTH_LONG).show();
+            }
+        }
+
+        setGenusUI();
+        setCountUI();
+    }
+
+
     /**
      * Displays a distribution graph of the numbers in the given array.
      *
@@ -1558,6 +2041,38 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /**
+     * Checks the shared prefs to find how many moves (at the fewest) a
+     * puzzle should take at the current difficulty.
+     */
+    private PuzzleGenerator.Band getDifficultyBand() {
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String diffVal = prefs.getString(getString(R.string.pref_gameplay_difficulty_key), null);
+        if (diffVal == null) {
+            Log.e(TAG, "could not find difficulty key in getDifficultyBand()!");
+            return PuzzleGenerator.Band.anything();
+        }
+
+        switch (diffVal) {
+            case "1":     // very easy
+                return PuzzleGenerator.Band.moves(1, 3);
+
+            case "2":     // easy
+                return PuzzleGenerator.Band.moves(4, 8);
+
+            case "3":     // challenging
+                return PuzzleGenerator.Band.atLeast(9);
+
+            case "4":     // not always possible
+                return PuzzleGenerator.Band.anything();
+
+            default:
+                Log.e(TAG, "unable to figure out diffVal in getDifficultyBand()!");
+                return PuzzleGenerator.Band.anything();
+        }
+    }
+
     /**
      * Checks the shared prefs to find the current difficulty setting.
      *
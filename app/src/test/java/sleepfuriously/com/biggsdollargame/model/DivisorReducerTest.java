@@ -0,0 +1,129 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the {@link DivisorReducer} class.
+ */
+public class DivisorReducerTest {
+
+    @Test
+    public void smallExamples() throws GraphNotConnectedException {
+        DivisorReducer reducer = new DivisorReducer();
+
+        // a triangle (genus 1)
+        CsrGraph triangle = makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+        Assert.assertTrue(reducer.isWinnable(triangle, new int[] {2, -1, 0}));
+        Assert.assertFalse(reducer.isWinnable(triangle, new int[] {1, -1, 0}));
+        Assert.assertFalse(reducer.isWinnable(triangle, new int[] {-1, 0, 0}));
+
+        // a square with a diagonal (genus 2): degree 1 can go either way
+        CsrGraph square = makeGraph(4, new int[][] {{0, 1}, {1, 2}, {2, 3}, {3, 0}, {0, 2}}).freeze();
+        Assert.assertTrue(reducer.isWinnable(square, new int[] {2, -2, 1, 0}));
+        Assert.assertFalse(reducer.isWinnable(square, new int[] {-1, 0, 2, 0}));
+        Assert.assertFalse(reducer.isWinnable(square, new int[] {0, 1, -1, 1}));
+
+        // a path is a tree (genus 0), so anything with degree >= 0 works
+        CsrGraph path = makeGraph(5, new int[][] {{0, 1}, {1, 2}, {2, 3}, {3, 4}}).freeze();
+        Assert.assertTrue(reducer.isWinnable(path, new int[] {-50, 0, 0, 0, 50}));
+    }
+
+    @Test
+    public void reducedIsUniqueAndEquivalent() throws GraphNotConnectedException {
+        Random random = new Random(23);
+        DivisorReducer reducer = new DivisorReducer();
+
+        for (int round = 0; round < 200; round++) {
+            int numNodes = 2 + random.nextInt(12);
+            Graph<Integer> graph = randomConnectedGraph(random, numNodes, random.nextInt(15));
+            CsrGraph csr = graph.freeze();
+            int q = random.nextInt(numNodes);
+
+            int[] divisor = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                divisor[i] = random.nextInt(21) - 10;
+            }
+            long[] reduced = Arrays.copyOf(reducer.reduce(csr, divisor, q), numNodes);
+            long[] script = Arrays.copyOf(reducer.getScript(), numNodes);
+
+            // every node but q is out of debt
+            for (int i = 0; i < numNodes; i++) {
+                if (i != q) {
+                    Assert.assertTrue(reduced[i] >= 0);
+                }
+            }
+
+            // firing the script really gets from the divisor to the reduced one
+            DollarGame game = new DollarGame(csr, divisor);
+            for (int i = 0; i < numNodes; i++) {
+                game.fire(i, (int) script[i]);
+            }
+            for (int i = 0; i < numNodes; i++) {
+                Assert.assertEquals(reduced[i], game.getAmount(i));
+            }
+
+            // an equivalent divisor reduces to the same thing
+            DollarGame shuffled = new DollarGame(csr, divisor);
+            for (int i = 0; i < 20; i++) {
+                shuffled.fire(random.nextInt(numNodes), random.nextInt(5) - 2);
+            }
+            long[] reduced2 = reducer.reduce(csr, shuffled.getDivisor(), q);
+            for (int i = 0; i < numNodes; i++) {
+                Assert.assertEquals(reduced[i], reduced2[i]);
+            }
+
+            // and the answer doesn't depend on the choice of q
+            boolean winnable = reduced[q] >= 0;
+            int otherQ = random.nextInt(numNodes);
+            Assert.assertEquals(winnable, reducer.reduce(csr, divisor, otherQ)[otherQ] >= 0);
+            Assert.assertEquals(winnable, reducer.isWinnable(csr, divisor));
+        }
+    }
+
+    @Test
+    public void notConnected() {
+        CsrGraph csr = makeGraph(4, new int[][] {{0, 1}, {2, 3}}).freeze();
+        try {
+            new DivisorReducer().isWinnable(csr, new int[] {0, 0, 0, 0});
+            Assert.fail();
+        }
+        catch (GraphNotConnectedException e) {
+            // expected
+        }
+    }
+
+    static Graph<Integer> randomConnectedGraph(Random random, int numNodes, int extraEdges) {
+        Graph<Integer> graph = makeGraph(numNodes, new int[0][]);
+        for (int i = 1; i < numNodes; i++) {
+            graph.addEdge(random.nextInt(i), i);   // a random tree...
+        }
+        for (int i = 0; i < extraEdges; i++) {
+            int a = random.nextInt(numNodes);
+            int b = random.nextInt(numNodes);
+            if (a != b) {
+                graph.addEdge(a, b);                // ...plus some cycles
+            }
+        }
+        return graph;
+    }
+
+    static Graph<Integer> makeGraph(int numNodes, int[][] edges) {
+        Graph<Integer> graph = new Graph<>();
+        try {
+            for (int i = 0; i < numNodes; i++) {
+                graph.addNode(i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        for (int[] edge : edges) {
+            graph.addEdge(edge[0], edge[1]);
+        }
+        return graph;
+    }
+}
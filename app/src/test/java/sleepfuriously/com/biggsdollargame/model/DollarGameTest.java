@@ -0,0 +1,178 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Tests the {@link DollarGame} class.
+ */
+public class DollarGameTest {
+
+    @Test
+    public void fireAndBorrow() {
+        // a triangle with a tail: 0-1, 1-2, 2-0, 2-3
+        Graph<Integer> graph = makeGraph(4, new int[][] {{0, 1}, {1, 2}, {2, 0}, {2, 3}});
+        DollarGame game = new DollarGame(graph.freeze(), new int[] {2, -1, 0, -1});
+
+        Assert.assertEquals(0, game.degree());
+        Assert.assertEquals(2, game.numInDebt());
+        Assert.assertFalse(game.isWinning());
+
+        game.fire(0);
+        Assert.assertArrayEquals(new int[] {0, 0, 1, -1}, game.getDivisor());
+        Assert.assertFalse(game.isWinning());
+
+        game.fire(2);
+        Assert.assertArrayEquals(new int[] {1, 1, -2, 0}, game.getDivisor());
+
+        game.borrow(2);
+        game.fire(2);
+        game.fire(2, -1);
+        Assert.assertArrayEquals(new int[] {0, 0, 1, -1}, game.getDivisor());
+
+        game.setAmount(3, 0);
+        Assert.assertTrue(game.isWinning());
+        Assert.assertEquals(1, game.degree());
+    }
+
+    @Test
+    public void setFireMatchesSingleFires() {
+        Random random = new Random(17);
+        Graph<Integer> graph = new Graph<>();
+        try {
+            for (int i = 0; i < 30; i++) {
+                graph.addNode(i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        for (int i = 0; i < 80; i++) {
+            graph.addEdge(random.nextInt(30), random.nextInt(30));
+        }
+        CsrGraph csr = graph.freeze();
+
+        int[] start = new int[30];
+        for (int i = 0; i < start.length; i++) {
+            start[i] = random.nextInt(7) - 3;
+        }
+        DollarGame together = new DollarGame(csr, start);
+        DollarGame oneByOne = new DollarGame(together);
+
+        BitSet set = new BitSet();
+        for (int i = 0; i < 30; i++) {
+            if (random.nextBoolean()) {
+                set.set(i);
+                oneByOne.fire(i);
+            }
+        }
+        together.setFire(set);
+
+        Assert.assertArrayEquals(oneByOne.getDivisor(), together.getDivisor());
+        Assert.assertEquals(oneByOne.numInDebt(), together.numInDebt());
+        Assert.assertEquals(oneByOne.degree(), together.degree());
+
+        int inDebt = 0;
+        for (int amount : together.getDivisor()) {
+            if (amount < 0) {
+                inDebt++;
+            }
+        }
+        Assert.assertEquals(inDebt, together.numInDebt());
+    }
+
+    @Test
+    public void debtTracking() {
+        Random random = new Random(5);
+        Graph<Integer> graph = new Graph<>();
+        try {
+            // ids that aren't 0..n-1, like after some deleting
+            for (int i = 0; i < 20; i++) {
+                graph.addNode(100 + 3 * i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        for (int i = 0; i < 50; i++) {
+            graph.addEdge(100 + 3 * random.nextInt(20), 100 + 3 * random.nextInt(20));
+        }
+        CsrGraph csr = graph.freeze();
+
+        int[] start = new int[20];
+        for (int i = 0; i < start.length; i++) {
+            start[i] = random.nextInt(9) - 4;
+        }
+        DollarGame game = new DollarGame(csr, start);
+
+        for (int move = 0; move < 500; move++) {
+            game.fire(random.nextInt(20), random.nextInt(5) - 2);
+
+            long debt = 0;
+            BitSet inDebt = new BitSet();
+            for (int i = 0; i < 20; i++) {
+                if (game.getAmount(i) < 0) {
+                    debt -= game.getAmount(i);
+                    inDebt.set(i);
+                }
+            }
+            Assert.assertEquals(debt, game.totalDebt());
+            Assert.assertEquals(inDebt, game.getInDebt());
+            Assert.assertEquals(inDebt.cardinality(), game.getInDebtIds().length);
+            for (int id : game.getInDebtIds()) {
+                Assert.assertTrue(game.getAmount(csr.indexOf(id)) < 0);
+            }
+        }
+
+        DollarGame copy = new DollarGame(game);
+        Assert.assertEquals(game.totalDebt(), copy.totalDebt());
+        Assert.assertEquals(game.getInDebt(), copy.getInDebt());
+    }
+
+    @Test
+    public void listener() {
+        Graph<Integer> graph = makeGraph(3, new int[][] {{0, 1}, {1, 2}});
+        DollarGame game = new DollarGame(graph.freeze());
+        final int[] calls = new int[2];
+        game.addListener(new DollarGame.Listener() {
+            @Override
+            public void onFire(DollarGame game, int node, int times) {
+                calls[0] += times;
+            }
+
+            @Override
+            public void onReset(DollarGame game) {
+                calls[1]++;
+            }
+        });
+
+        game.fire(1);
+        game.borrow(0);
+        game.fire(2, 3);
+        game.setDivisor(new int[] {1, 1, 1});
+        Assert.assertEquals(3, calls[0]);
+        Assert.assertEquals(1, calls[1]);
+    }
+
+    /**
+     * Makes an undirected graph with nodes 0..n-1 and the given edges.
+     */
+    private static Graph<Integer> makeGraph(int numNodes, int[][] edges) {
+        Graph<Integer> graph = new Graph<>();
+        try {
+            for (int i = 0; i < numNodes; i++) {
+                graph.addNode(i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        for (int[] edge : edges) {
+            graph.addEdge(edge[0], edge[1]);
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,186 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests the {@link DynamicConnectivity} class.
+ */
+public class DynamicConnectivityTest {
+
+    @Test
+    public void simplePath() {
+        DynamicConnectivity dc = new DynamicConnectivity();
+        for (int i = 0; i < 4; i++) {
+            dc.addVertex(i);
+        }
+        Assert.assertEquals(4, dc.numComponents());
+
+        dc.addEdge(0, 1);
+        dc.addEdge(1, 2);
+        dc.addEdge(2, 3);
+        Assert.assertEquals(1, dc.numComponents());
+        Assert.assertEquals(4, dc.componentSize(2));
+        Assert.assertTrue(dc.isConnected(0, 3));
+
+        // close the loop, then break it in two places
+        dc.addEdge(3, 0);
+        dc.removeEdge(1, 2);
+        Assert.assertEquals(1, dc.numComponents());
+        Assert.assertTrue(dc.isConnected(1, 2));
+
+        dc.removeEdge(0, 3);
+        Assert.assertEquals(2, dc.numComponents());
+        Assert.assertFalse(dc.isConnected(1, 2));
+        Assert.assertEquals(2, dc.componentSize(0));
+        Assert.assertEquals(2, dc.componentSize(3));
+
+        Assert.assertFalse(dc.removeEdge(0, 3));    // already gone
+    }
+
+    @Test
+    public void loopsAndDuplicates() {
+        DynamicConnectivity dc = new DynamicConnectivity();
+        dc.addVertex(5);
+        dc.addVertex(9);
+
+        Assert.assertFalse(dc.addEdge(5, 5));       // loops are ignored
+        Assert.assertFalse(dc.addEdge(5, 6));       // no such vertex
+
+        dc.addEdge(5, 9);
+        dc.addEdge(9, 5);
+        dc.removeEdge(5, 9);
+        Assert.assertTrue(dc.isConnected(5, 9));    // still one copy left
+        dc.removeEdge(5, 9);
+        Assert.assertFalse(dc.isConnected(5, 9));
+
+        Assert.assertTrue(dc.removeVertex(9));
+        Assert.assertEquals(1, dc.numComponents());
+    }
+
+    /**
+     * Does lots of random adds and removes, checking the answers against
+     * a union-find that's rebuilt from scratch each time.
+     */
+    @Test
+    public void randomEdits() {
+        Random rand = new Random(42);
+
+        for (int round = 0; round < 50; round++) {
+            int numVertices = 2 + rand.nextInt(30);
+            DynamicConnectivity dc = new DynamicConnectivity();
+            for (int i = 0; i < numVertices; i++) {
+                dc.addVertex(i);
+            }
+
+            List<int[]> edges = new ArrayList<>();
+            for (int step = 0; step < 200; step++) {
+                if (edges.isEmpty() || (rand.nextInt(3) > 0)) {
+                    int u = rand.nextInt(numVertices);
+                    int v = rand.nextInt(numVertices);
+                    if (u != v) {
+                        Assert.assertTrue(dc.addEdge(u, v));
+                        edges.add(new int[] {u, v});
+                    }
+                }
+                else {
+                    int[] edge = edges.remove(rand.nextInt(edges.size()));
+                    Assert.assertTrue(dc.removeEdge(edge[1], edge[0]));
+                }
+
+                UnionFind expected = new UnionFind();
+                for (int i = 0; i < numVertices; i++) {
+                    expected.add();
+                }
+                for (int[] edge : edges) {
+                    expected.union(edge[0], edge[1]);
+                }
+
+                Assert.assertEquals(expected.numSets(), dc.numComponents());
+                int u = rand.nextInt(numVertices);
+                int v = rand.nextInt(numVertices);
+                Assert.assertEquals(expected.connected(u, v), dc.isConnected(u, v));
+                Assert.assertEquals(expected.setSize(u), dc.componentSize(u));
+            }
+        }
+    }
+
+    /**
+     * Like {@link #randomEdits()}, but now and then a batch goes in through
+     * addEdges() (which leaves the forests to be rebuilt), and the edits
+     * after that happen before or after the rebuild.  Only some steps
+     * ask questions, so there are plenty of edits while it's waiting.
+     */
+    @Test
+    public void bulkAndEdits() {
+        Random rand = new Random(7);
+
+        for (int round = 0; round < 40; round++) {
+            int numVertices = 2 + rand.nextInt(40);
+            DynamicConnectivity dc = new DynamicConnectivity();
+            for (int i = 0; i < numVertices; i++) {
+                dc.addVertex(i);
+            }
+
+            List<int[]> edges = new ArrayList<>();
+            for (int step = 0; step < 150; step++) {
+                int choice = rand.nextInt(10);
+                if (choice == 0) {
+                    int count = rand.nextInt(2 * numVertices);
+                    int[] ones = new int[count];
+                    int[] twos = new int[count];
+                    int expectedAdded = 0;
+                    for (int i = 0; i < count; i++) {
+                        ones[i] = rand.nextInt(numVertices);
+                        twos[i] = rand.nextInt(numVertices);
+                        if (ones[i] != twos[i]) {
+                            edges.add(new int[] {ones[i], twos[i]});
+                            expectedAdded++;
+                        }
+                    }
+                    Assert.assertEquals(expectedAdded, dc.addEdges(ones, twos, count));
+                    if (expectedAdded > 0) {
+                        Assert.assertFalse(dc.isUpToDate());
+                    }
+                }
+                else if (edges.isEmpty() || (choice < 6)) {
+                    int u = rand.nextInt(numVertices);
+                    int v = rand.nextInt(numVertices);
+                    if (u != v) {
+                        Assert.assertTrue(dc.addEdge(u, v));
+                        edges.add(new int[] {u, v});
+                    }
+                }
+                else {
+                    int[] edge = edges.remove(rand.nextInt(edges.size()));
+                    Assert.assertTrue(dc.removeEdge(edge[0], edge[1]));
+                }
+                Assert.assertEquals(edges.size(), dc.numEdges());
+                if (rand.nextInt(3) != 0) {
+                    continue;
+                }
+
+                UnionFind expected = new UnionFind();
+                for (int i = 0; i < numVertices; i++) {
+                    expected.add();
+                }
+                for (int[] edge : edges) {
+                    expected.union(edge[0], edge[1]);
+                }
+
+                Assert.assertEquals(expected.numSets(), dc.numComponents());
+                Assert.assertTrue(dc.isUpToDate());
+                for (int check = 0; check < 3; check++) {
+                    int u = rand.nextInt(numVertices);
+                    int v = rand.nextInt(numVertices);
+                    Assert.assertEquals(expected.connected(u, v), dc.isConnected(u, v));
+                    Assert.assertEquals(expected.setSize(u), dc.componentSize(u));
+                }
+            }
+        }
+    }
+}
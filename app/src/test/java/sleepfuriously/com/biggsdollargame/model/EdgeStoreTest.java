@@ -0,0 +1,85 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the {@link EdgeStore} class.
+ */
+public class EdgeStoreTest {
+
+    @Test
+    public void swapRemove() {
+        EdgeStore store = new EdgeStore();
+        store.add(1, 2, 10);
+        store.add(2, 3, 20);
+        store.add(3, 4, 30);
+
+        store.removeAt(0);
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(-1, store.indexOf(1, 2));
+
+        // the last edge moved into the hole
+        Assert.assertEquals(0, store.indexOf(3, 4));
+        Assert.assertEquals(30, store.weight(0));
+        Assert.assertEquals(1, store.indexOf(2, 3));
+
+        // direction matters
+        Assert.assertEquals(-1, store.indexOf(4, 3));
+    }
+
+    @Test
+    public void randomEdits() {
+        Random random = new Random(5);
+        EdgeStore store = new EdgeStore(1);
+        Map<Long, Integer> reference = new HashMap<>();     // key -> weight
+        List<Long> keys = new ArrayList<>();
+
+        for (int i = 0; i < 50000; i++) {
+            int start = random.nextInt(60) - 5;
+            int end = random.nextInt(60) - 5;
+            long key = EdgeStore.key(start, end);
+
+            if (random.nextInt(3) > 0) {
+                if (!reference.containsKey(key)) {
+                    store.add(start, end, i);
+                    reference.put(key, i);
+                    keys.add(key);
+                }
+            }
+            else if (!keys.isEmpty()) {
+                long victim = keys.remove(random.nextInt(keys.size()));
+                int slot = store.indexOf((int) (victim >> 32), (int) victim);
+                Assert.assertNotEquals(-1, slot);
+                store.removeAt(slot);
+                reference.remove(victim);
+            }
+
+            Assert.assertEquals(reference.size(), store.size());
+            int slot = store.indexOf(start, end);
+            if (reference.containsKey(key)) {
+                Assert.assertEquals(start, store.start(slot));
+                Assert.assertEquals(end, store.end(slot));
+                Assert.assertEquals((int) reference.get(key), store.weight(slot));
+            }
+            else {
+                Assert.assertEquals(-1, slot);
+            }
+        }
+
+        // every slot is found by its own key
+        for (int slot = 0; slot < store.size(); slot++) {
+            Assert.assertEquals(slot, store.indexOf(store.start(slot), store.end(slot)));
+        }
+
+        store.clear();
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(-1, store.indexOf(1, 1));
+    }
+}
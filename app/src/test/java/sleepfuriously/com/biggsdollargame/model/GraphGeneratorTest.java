@@ -0,0 +1,130 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests the {@link GraphGenerator} class.
+ */
+public class GraphGeneratorTest {
+
+    @Test
+    public void gridAndTorus() throws GraphNotConnectedException {
+        GraphGenerator generator = new GraphGenerator(new Random(1));
+
+        Graph<Integer> grid = generator.grid(4, 7);
+        Assert.assertEquals(28, grid.numNodes());
+        Assert.assertEquals((3 * 7) + (4 * 6), grid.numEdges());
+        checkSimple(grid);
+        Assert.assertTrue(grid.isConnected());
+        Assert.assertEquals(2, grid.degree(0));
+
+        Graph<Integer> torus = generator.torus(4, 7);
+        Assert.assertEquals(2 * 28, torus.numEdges());
+        checkSimple(torus);
+        for (int id = 0; id < 28; id++) {
+            Assert.assertEquals(4, torus.degree(id));
+        }
+        Assert.assertEquals(29, torus.getGenus());
+
+        Graph<Integer> wheel = generator.wheel(6);
+        Assert.assertEquals(7, wheel.numNodes());
+        Assert.assertEquals(12, wheel.numEdges());
+        Assert.assertEquals(6, wheel.degree(0));
+        checkSimple(wheel);
+    }
+
+    @Test
+    public void randomShapes() throws GraphNotConnectedException {
+        GraphGenerator generator = new GraphGenerator(new Random(5));
+
+        for (int round = 0; round < 20; round++) {
+            Graph<Integer> regular = generator.randomRegular(30, 2 + (round % 5));
+            checkSimple(regular);
+            int degree = regular.degree(0);
+            for (int id = 0; id < 30; id++) {
+                Assert.assertEquals(degree, regular.degree(id));
+            }
+
+            int numEdges = 29 + round * 55 / 19;    // a tree up to a full triangulation (84)
+            Graph<Integer> planar = generator.randomPlanar(30, numEdges);
+            Assert.assertEquals(numEdges, planar.numEdges());
+            Assert.assertTrue(planar.isConnected());
+            checkSimple(planar);
+
+            Graph<Integer> tree = generator.randomTree(30, round * 10);
+            Assert.assertEquals(round * 10, tree.getGenus());
+            checkSimple(tree);
+
+            Graph<Integer> random = generator.erdosRenyi(30, 0.2);
+            Assert.assertEquals(30, random.numNodes());
+            checkSimple(random);
+        }
+
+        // a complete graph is the only way to fill it up
+        Assert.assertEquals(45, generator.erdosRenyi(10, 1.0).numEdges());
+        Assert.assertEquals(0, generator.erdosRenyi(10, 0.0).numEdges());
+        Assert.assertEquals(45, generator.randomTree(10, 36).numEdges());
+    }
+
+    @Test
+    public void badSizes() {
+        GraphGenerator generator = new GraphGenerator();
+        try {
+            generator.randomRegular(5, 3);      // odd degree sum
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+            // good
+        }
+        try {
+            generator.randomPlanar(10, 25);     // more than 3n - 6
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+            // good
+        }
+        try {
+            generator.randomTree(10, 37);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+            // good
+        }
+    }
+
+    /** 100k nodes in one batch, with the connectivity worked out afterwards */
+    @Test
+    public void big() throws GraphNotConnectedException {
+        GraphGenerator generator = new GraphGenerator(new Random(3));
+        Graph<Integer> tree = generator.randomTree(100000, 1000);
+        Assert.assertEquals(100000, tree.numNodes());
+        Assert.assertEquals(1000, tree.getGenus());
+
+        Graph<Integer> torus = generator.torus(316, 316);
+        Assert.assertEquals(2 * 316 * 316, torus.numEdges());
+        Assert.assertTrue(torus.isConnected());
+
+        // the bulk path has to leave a graph that still edits normally
+        Assert.assertTrue(torus.removeEdge(0, 1));
+        Assert.assertTrue(torus.removeEdge(0, 316));
+        Assert.assertTrue(torus.isConnected());
+        Assert.assertFalse(torus.isAdjacent(1, 0));
+    }
+
+    /** No loops and no edge shows up twice, in either direction. */
+    private static void checkSimple(Graph<Integer> graph) {
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < graph.numEdges(); i++) {
+            int start = graph.getEdgeStart(i);
+            int end = graph.getEdgeEnd(i);
+            Assert.assertNotEquals(start, end);
+            long key = ((long) Math.min(start, end) << 32) | Math.max(start, end);
+            Assert.assertTrue(seen.add(key));
+        }
+    }
+}
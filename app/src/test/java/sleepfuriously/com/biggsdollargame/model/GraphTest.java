@@ -3,6 +3,7 @@ package sleepfuriously.com.biggsdollargame.model;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
@@ -37,6 +38,55 @@ public class GraphTest {
         Assert.assertTrue("Found ids that were not unique!", unique);
     }
 
+    @Test
+    public void getUniqueNodeIdReusesLowest() {
+        Graph<Integer> graph = new Graph<>();
+        addSomeNodes(graph, 10);
+        Assert.assertEquals(10, graph.getUniqueNodeId());
+
+        graph.removeNode(7);
+        graph.removeNode(3);
+        Assert.assertEquals(3, graph.getUniqueNodeId());
+        try {
+            Assert.assertEquals(3, graph.addNode(33));
+            Assert.assertEquals(7, graph.addNode(77));
+
+            // an id picked by hand is skipped, even a big one
+            graph.addNode(10, 10);
+            graph.addNode(100000, 100000);
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        Assert.assertEquals(11, graph.getUniqueNodeId());
+
+        // compare against probing from 0 with lots of random changes
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(300);
+            if (random.nextBoolean()) {
+                graph.removeNode(id);
+            }
+            else if (graph.getNodeData(id) == null) {
+                try {
+                    graph.addNode(id, id);
+                }
+                catch (GraphNodeDuplicateIdException e) {
+                    Assert.fail();
+                }
+            }
+
+            int expected = 0;
+            while (graph.getNodeData(expected) != null) {
+                expected++;
+            }
+            Assert.assertEquals(expected, graph.getUniqueNodeId());
+        }
+
+        graph.removeAllNodes();
+        Assert.assertEquals(0, graph.getUniqueNodeId());
+    }
+
 
     @Test
     public void addNode() {
@@ -211,6 +261,43 @@ public class GraphTest {
 
     }
 
+    @Test
+    public void neighborIteration() {
+        Graph<Integer> graph = new Graph<>();
+        int[] nodeIds = addSomeNodes(graph, 5);
+
+        graph.addEdge(nodeIds[0], nodeIds[1]);
+        graph.addEdge(nodeIds[2], nodeIds[0]);
+        graph.addEdge(nodeIds[0], nodeIds[3]);
+
+        Assert.assertEquals(3, graph.degree(nodeIds[0]));
+        Assert.assertEquals(1, graph.degree(nodeIds[2]));
+        Assert.assertEquals(0, graph.degree(nodeIds[4]));
+
+        // forEachNeighbor() and the cursor should agree with getAllAdjacentTo()
+        final List<Integer> visited = new ArrayList<>();
+        graph.forEachNeighbor(nodeIds[0], new IntConsumer() {
+            @Override
+            public void accept(int value) {
+                visited.add(value);
+            }
+        });
+        Assert.assertEquals(graph.getAllAdjacentTo(nodeIds[0]), visited);
+
+        IntCursor cursor = graph.neighbors(nodeIds[0], null);
+        Assert.assertEquals(3, cursor.size());
+        for (int expected : visited) {
+            Assert.assertTrue(cursor.hasNext());
+            Assert.assertEquals(expected, cursor.next());
+        }
+        Assert.assertFalse(cursor.hasNext());
+
+        // reusing the cursor shouldn't make a new one
+        IntCursor sameCursor = graph.neighbors(nodeIds[4], cursor);
+        Assert.assertSame(cursor, sameCursor);
+        Assert.assertFalse(sameCursor.hasNext());
+    }
+
     @Test
     public void getAllNodeIds() {
         Graph<Integer> graph = new Graph<>();
@@ -316,6 +403,46 @@ public class GraphTest {
         Assert.assertEquals(4, id);
     }
 
+    @Test
+    public void getNodeIdLookups() {
+        // equal data in more than one node
+        Graph<String> graph = new Graph<>();
+        try {
+            graph.addNode(5, "five");
+            graph.addNode(2, new String("five"));
+            graph.addNode(8, "eight");
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        Assert.assertEquals(2, (int) graph.getNodeId("five"));
+        graph.removeNode(2);
+        Assert.assertEquals(5, (int) graph.getNodeId("five"));
+        graph.removeNode(5);
+        Assert.assertNull(graph.getNodeId("five"));
+        Assert.assertEquals(8, (int) graph.getNodeId("eight"));
+
+        Graph<String> clone = graph.clone();
+        Assert.assertNotNull(clone);
+        Assert.assertEquals(8, (int) clone.getNodeId("eight"));
+
+        graph.removeAllNodes();
+        Assert.assertNull(graph.getNodeId("eight"));
+
+        // only the very same object counts
+        Graph<String> identityGraph = new Graph<>(false, Graph.DataLookup.IDENTITY);
+        String data = new String("data");
+        try {
+            identityGraph.addNode(0, data);
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        Assert.assertEquals(0, (int) identityGraph.getNodeId(data));
+        Assert.assertNull(identityGraph.getNodeId(new String("data")));
+        Assert.assertEquals(Graph.DataLookup.IDENTITY, identityGraph.clone().getDataLookup());
+    }
+
 
     @Test
     public void isAdjacent() {
@@ -408,6 +535,91 @@ public class GraphTest {
         // Remove another edge
         graph.removeEdge(ids[1], ids[0]);
         Assert.assertFalse(graph.isConnected());
+
+        // the snapshot agrees, with or without the Graph's answer
+        CsrGraph csr = graph.freeze();
+        Assert.assertFalse(csr.isConnected());
+        graph.addEdge(ids[1], ids[2]);
+        Assert.assertTrue(graph.freeze().isConnected());
+        CsrGraph plain = new CsrGraph(false, csr.mIds, csr.mOffsets, csr.mTargets,
+                                      csr.mWeights, null, null, csr.numEdges());
+        Assert.assertFalse(plain.isConnected());
+        Assert.assertFalse(plain.isConnected());
+    }
+
+    @Test
+    public void numComponents() {
+        Graph<Integer> graph = new Graph<>();
+        Assert.assertEquals(0, graph.numComponents());
+
+        int[] ids = addSomeNodes(graph, 6);
+        Assert.assertEquals(6, graph.numComponents());
+
+        graph.addEdge(ids[0], ids[1]);
+        graph.addEdge(ids[1], ids[2]);
+        graph.addEdge(ids[3], ids[4]);
+        Assert.assertEquals(3, graph.numComponents());      // {0,1,2} {3,4} {5}
+
+        graph.addEdge(ids[2], ids[0]);                      // a loop doesn't join anything
+        Assert.assertEquals(3, graph.numComponents());
+
+        graph.addEdge(ids[5], ids[4]);
+        graph.addEdge(ids[4], ids[2]);
+        Assert.assertEquals(1, graph.numComponents());
+        Assert.assertTrue(graph.isConnected());
+        Assert.assertEquals(6, graph.componentSize(ids[3]));
+
+        // removals: the loop keeps {0,1,2} together, but 4-2 is a bridge
+        graph.removeEdge(ids[0], ids[1]);
+        Assert.assertEquals(1, graph.numComponents());
+        graph.removeEdge(ids[2], ids[4]);
+        Assert.assertEquals(2, graph.numComponents());
+        Assert.assertFalse(graph.isConnected());
+        Assert.assertFalse(graph.isConnected(ids[0], ids[5]));
+        Assert.assertEquals(3, graph.componentSize(ids[5]));
+
+        // and adding after a removal still works
+        graph.addEdge(ids[3], ids[0]);
+        Assert.assertTrue(graph.isConnected());
+
+        graph.removeNode(ids[3]);
+        Assert.assertEquals(2, graph.numComponents());
+    }
+
+    @Test
+    public void freeze() {
+        Graph<Integer> graph = new Graph<>();
+        int[] ids = addSomeNodes(graph, 4);
+
+        graph.addEdge(ids[0], ids[1], 5);
+        graph.addEdge(ids[2], ids[1], 6);
+        graph.addEdge(ids[3], ids[2], 7);
+
+        CsrGraph csr = graph.freeze();
+        Assert.assertSame(csr, graph.freeze());     // no change, no rebuild
+        Assert.assertEquals(4, csr.numNodes());
+        Assert.assertEquals(3, csr.numEdges());
+        Assert.assertTrue(csr.isConnected());
+
+        // node 1 is in the middle
+        int middle = csr.indexOf(ids[1]);
+        Assert.assertEquals(ids[1], csr.getNodeId(middle));
+        Assert.assertEquals(2, csr.degree(middle));
+        int weightSum = 0;
+        for (int k = csr.offset(middle); k < csr.offset(middle + 1); k++) {
+            Assert.assertTrue(graph.isAdjacent(ids[1], csr.getNodeId(csr.target(k))));
+            weightSum += csr.weight(k);
+        }
+        Assert.assertEquals(11, weightSum);
+        Assert.assertEquals(-1, csr.indexOf(100));
+
+        // any change means a new snapshot, and the old one stays as it was
+        graph.removeEdge(ids[1], ids[2]);
+        CsrGraph csr2 = graph.freeze();
+        Assert.assertNotSame(csr, csr2);
+        Assert.assertFalse(csr2.isConnected());
+        Assert.assertTrue(csr.isConnected());
+        Assert.assertEquals(1, csr2.degree(csr2.indexOf(ids[1])));
     }
 
     @Test
@@ -555,6 +767,40 @@ public class GraphTest {
         Assert.assertEquals(3, graph.numEdges());
     }
 
+    @Test
+    public void adjacencyAfterRemovals() {
+        Graph<Integer> graph = new Graph<>();
+        int[] nodeIds = addSomeNodes(graph, 5);
+
+        // a star around node 0, plus one extra edge
+        graph.addEdge(nodeIds[0], nodeIds[1]);
+        graph.addEdge(nodeIds[2], nodeIds[0]);
+        graph.addEdge(nodeIds[0], nodeIds[3]);
+        graph.addEdge(nodeIds[4], nodeIds[0]);
+        graph.addEdge(nodeIds[1], nodeIds[2]);
+
+        graph.removeEdge(nodeIds[0], nodeIds[2]);   // opposite direction from how it was added
+        Assert.assertFalse(graph.isAdjacent(nodeIds[2], nodeIds[0]));
+        Assert.assertEquals(-1, graph.getEdgeIndex(nodeIds[0], nodeIds[2]));
+        Assert.assertEquals(3, graph.getAllAdjacentTo(nodeIds[0]).size());
+        Assert.assertEquals(1, graph.getAllAdjacentTo(nodeIds[2]).size());
+
+        graph.removeNode(nodeIds[0]);
+        Assert.assertEquals(1, graph.numEdges());
+        Assert.assertFalse(graph.isAdjacent(nodeIds[1], nodeIds[0]));
+        Assert.assertEquals(0, graph.getAllAdjacentTo(nodeIds[3]).size());
+        Assert.assertEquals(0, graph.getAllAdjacentTo(nodeIds[4]).size());
+        Assert.assertTrue(graph.isAdjacent(nodeIds[2], nodeIds[1]));
+
+        // the edge list and the adjacency agree
+        Graph.Edge edge = graph.getAllEdges().get(0);
+        Assert.assertEquals(0, graph.getEdgeIndex(edge.startNodeId, edge.endNodeId));
+
+        // an edge can be put back after it was removed
+        Assert.assertEquals(2, graph.addEdge(nodeIds[3], nodeIds[4]));
+        Assert.assertTrue(graph.isAdjacent(nodeIds[4], nodeIds[3]));
+    }
+
     @Test
     public void getAllEdges() {
         Graph<Integer> graph = new Graph<>();
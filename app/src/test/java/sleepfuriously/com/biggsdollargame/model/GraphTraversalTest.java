@@ -0,0 +1,105 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the {@link GraphTraversal} class.
+ */
+public class GraphTraversalTest {
+
+    @Test
+    public void longPathDoesNotOverflow() {
+        // The old recursive search ran out of stack on graphs like this.
+        Graph<Integer> graph = new Graph<>();
+        int length = 200000;
+        try {
+            for (int i = 0; i < length; i++) {
+                graph.addNode(i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        for (int i = 1; i < length; i++) {
+            graph.addEdge(i - 1, i);
+        }
+
+        CsrGraph csr = graph.freeze();
+        Assert.assertTrue(csr.isConnected());
+
+        GraphTraversal traversal = new GraphTraversal();
+        traversal.reset(csr);
+        Assert.assertEquals(length, traversal.dfs(csr.indexOf(length / 2), null));
+
+        int[] distances = new int[length];
+        traversal.distances(csr.indexOf(0), distances);
+        Assert.assertEquals(length - 1, distances[csr.indexOf(length - 1)]);
+    }
+
+    @Test
+    public void orderAndComponents() {
+        Graph<Integer> graph = new Graph<>();
+        try {
+            for (int i = 0; i < 7; i++) {
+                graph.addNode(i, i);
+            }
+        }
+        catch (GraphNodeDuplicateIdException e) {
+            Assert.fail();
+        }
+        // 0 - 1 - 2 - 3 with 0 - 4, and 5 - 6 on the side
+        graph.addEdge(0, 1);
+        graph.addEdge(1, 2);
+        graph.addEdge(2, 3);
+        graph.addEdge(0, 4);
+        graph.addEdge(5, 6);
+
+        CsrGraph csr = graph.freeze();
+        GraphTraversal traversal = new GraphTraversal();
+        traversal.reset(csr);
+
+        // breadth-first: 1 and 4 before 2, 2 before 3
+        final List<Integer> order = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        traversal.bfs(csr.indexOf(0), new GraphTraversal.Visitor() {
+            @Override
+            public boolean visit(int node, int parent, int depth) {
+                order.add(node);
+                depths.add(depth);
+                return true;
+            }
+        });
+        Assert.assertEquals(5, order.size());
+        Assert.assertEquals(0, (int) order.get(0));
+        Assert.assertTrue(order.indexOf(4) < order.indexOf(2));
+        Assert.assertEquals(3, (int) depths.get(order.indexOf(3)));
+
+        // nodes stay visited, so the other component is all that's left
+        Assert.assertEquals(0, traversal.bfs(csr.indexOf(3), null));
+        Assert.assertEquals(2, traversal.dfs(csr.indexOf(6), null));
+
+        int[] labels = new int[csr.numNodes()];
+        Assert.assertEquals(2, traversal.componentLabels(labels));
+        Assert.assertEquals(labels[csr.indexOf(3)], labels[csr.indexOf(4)]);
+        Assert.assertNotEquals(labels[csr.indexOf(3)], labels[csr.indexOf(5)]);
+
+        int[] parents = new int[csr.numNodes()];
+        Assert.assertEquals(5, traversal.spanningTree(csr.indexOf(0), parents));
+        Assert.assertEquals(csr.indexOf(2), parents[csr.indexOf(3)]);
+        Assert.assertEquals(-1, parents[csr.indexOf(6)]);
+
+        // stopping early
+        traversal.clearVisited();
+        int visited = traversal.dfs(csr.indexOf(0), new GraphTraversal.Visitor() {
+            @Override
+            public boolean visit(int node, int parent, int depth) {
+                return depth < 2;
+            }
+        });
+        Assert.assertEquals(3, visited);
+    }
+}
@@ -0,0 +1,147 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+public class HintEngineTest {
+
+    /** Holds on to the published work until the test runs it. */
+    private static class QueuePublisher implements Executor {
+        final List<Runnable> mQueue = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable runnable) {
+            mQueue.add(runnable);
+            notifyAll();
+        }
+
+        /** Waits for something to be published and runs all of it. */
+        synchronized void runWhenReady() throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+            while (mQueue.isEmpty() && (System.currentTimeMillis() < end)) {
+                wait(100);
+            }
+            Assert.assertFalse(mQueue.isEmpty());
+            for (Runnable runnable : mQueue) {
+                runnable.run();
+            }
+            mQueue.clear();
+        }
+    }
+
+    @Test
+    public void hints() throws InterruptedException {
+        final List<HintEngine.Hint> hints = new ArrayList<>();
+        QueuePublisher publisher = new QueuePublisher();
+        HintEngine engine = new HintEngine(publisher, new HintEngine.Listener() {
+            @Override
+            public void onHint(HintEngine.Hint hint) {
+                hints.add(hint);
+            }
+        });
+
+        // a triangle where node 1 should take
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+        engine.requestHint(triangle, new int[] {2, -1, 1});
+        publisher.runWhenReady();
+        Assert.assertEquals(1, hints.size());
+        Assert.assertEquals(HintEngine.Hint.MOVE, hints.get(0).getKind());
+        Assert.assertEquals(1, hints.get(0).getNode());
+        Assert.assertFalse(hints.get(0).isGive());
+        Assert.assertEquals(1, hints.get(0).getMovesLeft());
+        Assert.assertTrue(hints.get(0).isExact());
+
+        engine.requestHint(triangle, new int[] {1, -1, 0});
+        publisher.runWhenReady();
+        Assert.assertEquals(HintEngine.Hint.UNWINNABLE, hints.get(1).getKind());
+
+        engine.requestHint(triangle, new int[] {0, 0, 0});
+        publisher.runWhenReady();
+        Assert.assertEquals(HintEngine.Hint.SOLVED, hints.get(2).getKind());
+
+        engine.shutdown();
+    }
+
+    @Test
+    public void staleHintsAreDropped() throws InterruptedException {
+        final List<HintEngine.Hint> hints = new ArrayList<>();
+        QueuePublisher publisher = new QueuePublisher();
+        HintEngine engine = new HintEngine(publisher, new HintEngine.Listener() {
+            @Override
+            public void onHint(HintEngine.Hint hint) {
+                hints.add(hint);
+            }
+        });
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+
+        // the first hint is done, but the player moved before it was shown
+        long first = engine.requestHint(triangle, new int[] {2, -1, 1});
+        synchronized (publisher) {
+            while (publisher.mQueue.isEmpty()) {
+                publisher.wait(100);
+            }
+        }
+        long second = engine.requestHint(triangle, new int[] {0, 0, 0});
+        Assert.assertFalse(engine.isCurrent(first));
+        Assert.assertTrue(engine.isCurrent(second));
+
+        publisher.runWhenReady();
+        if (hints.isEmpty()) {
+            publisher.runWhenReady();           // the second wasn't done yet
+        }
+        Assert.assertEquals(1, hints.size());   // and the first never showed
+        Assert.assertEquals(HintEngine.Hint.SOLVED, hints.get(0).getKind());
+
+        // the graph was edited: nothing should show up
+        engine.requestHint(triangle, new int[] {2, -1, 1});
+        engine.invalidate();
+        Thread.sleep(200);
+        synchronized (publisher) {
+            for (Runnable runnable : publisher.mQueue) {
+                runnable.run();
+            }
+        }
+        Assert.assertEquals(1, hints.size());
+
+        engine.shutdown();
+    }
+
+    @Test
+    public void staleSolvesQuit() throws InterruptedException {
+        final List<HintEngine.Hint> hints = new ArrayList<>();
+        QueuePublisher publisher = new QueuePublisher();
+        HintEngine engine = new HintEngine(publisher, new HintEngine.Listener() {
+            @Override
+            public void onHint(HintEngine.Hint hint) {
+                hints.add(hint);
+            }
+        });
+
+        // big enough that the solver uses up all its steps (seconds)
+        Random random = new Random(11);
+        CsrGraph big = DivisorReducerTest.randomConnectedGraph(random, 200, 200).freeze();
+        int[] amounts = new int[200];
+        for (int i = 0; i < 200; i++) {
+            amounts[i] = random.nextInt(9) - 2;
+        }
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+
+        engine.requestHint(big, amounts);
+        Thread.sleep(100);      // so it's well into the search
+
+        // the stale search has to get out of the way right away
+        long start = System.currentTimeMillis();
+        engine.requestHint(triangle, new int[] {2, -1, 1});
+        publisher.runWhenReady();
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(1, hints.size());
+        Assert.assertEquals(1, hints.get(0).getNode());
+
+        engine.shutdown();
+    }
+}
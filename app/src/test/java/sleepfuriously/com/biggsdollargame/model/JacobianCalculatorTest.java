@@ -0,0 +1,289 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+public class JacobianCalculatorTest {
+
+    @Test
+    public void knownGroups() throws GraphNotConnectedException {
+        JacobianCalculator calculator = new JacobianCalculator();
+
+        // trees have just one spanning tree
+        Graph<Integer> path = DivisorReducerTest.makeGraph(5, new int[][] {{0, 1}, {1, 2}, {2, 3}, {1, 4}});
+        JacobianCalculator.Jacobian jac = calculator.compute(path.freeze());
+        Assert.assertEquals(BigInteger.ONE, jac.getOrder());
+        Assert.assertEquals(0, jac.getInvariantFactors().length);
+
+        // a cycle of n nodes is Z/n
+        Graph<Integer> cycle = DivisorReducerTest.makeGraph(7, new int[][]
+                {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 6}, {6, 0}});
+        jac = calculator.compute(cycle.freeze());
+        Assert.assertEquals(BigInteger.valueOf(7), jac.getOrder());
+        Assert.assertTrue(jac.isCyclic());
+        Assert.assertEquals("Z/7", jac.toString());
+
+        // the complete graph K5 is (Z/5)^3
+        Graph<Integer> complete = DivisorReducerTest.makeGraph(5, new int[0][]);
+        for (int i = 0; i < 5; i++) {
+            for (int j = i + 1; j < 5; j++) {
+                complete.addEdge(i, j);
+            }
+        }
+        jac = calculator.compute(complete.freeze());
+        Assert.assertEquals(BigInteger.valueOf(125), jac.getOrder());
+        Assert.assertEquals("Z/5 x Z/5 x Z/5", jac.toString());
+    }
+
+    @Test
+    public void matchesDenseSmith() throws GraphNotConnectedException {
+        Random random = new Random(17);
+        JacobianCalculator calculator = new JacobianCalculator();
+
+        for (int round = 0; round < 100; round++) {
+            int numNodes = 2 + random.nextInt(9);
+            CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, numNodes, random.nextInt(20)).freeze();
+            JacobianCalculator.Jacobian jac = calculator.compute(csr);
+
+            BigInteger[][] laplacian = reducedLaplacian(csr);
+            Assert.assertEquals(determinant(laplacian).abs(), jac.getOrder());
+
+            BigInteger[] expected = denseSmith(laplacian);
+            BigInteger[] factors = jac.getInvariantFactors();
+            int ones = expected.length - factors.length;
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertEquals(expected[i], (i < ones) ? BigInteger.ONE : factors[i - ones]);
+            }
+        }
+    }
+
+    @Test
+    public void bigGrid() throws GraphNotConnectedException {
+        JacobianCalculator.Jacobian jac = new JacobianCalculator().compute(grid(12).freeze());
+
+        BigInteger product = BigInteger.ONE;
+        BigInteger[] factors = jac.getInvariantFactors();
+        for (int i = 0; i < factors.length; i++) {
+            product = product.multiply(factors[i]);
+            if (i > 0) {
+                Assert.assertEquals(BigInteger.ZERO, factors[i].mod(factors[i - 1]));
+            }
+        }
+        Assert.assertEquals(jac.getOrder(), product);
+        Assert.assertTrue(jac.getOrder().bitLength() > 200);
+    }
+
+    @Test
+    public void backgroundJacobians() throws GraphNotConnectedException, InterruptedException {
+        final List<JacobianCalculator.Jacobian> jacobians = new ArrayList<>();
+        Executor publisher = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();     // right on the working thread
+            }
+        };
+        JacobianCalculator.Listener listener = new JacobianCalculator.Listener() {
+            @Override
+            public void onJacobian(CsrGraph graph, JacobianCalculator.Jacobian jacobian) {
+                synchronized (jacobians) {
+                    jacobians.add(jacobian);
+                    jacobians.notifyAll();
+                }
+            }
+        };
+        JacobianCalculator calc = new JacobianCalculator();
+        try {
+            // takes seconds, but gets replaced right away
+            CsrGraph big = grid(30).freeze();
+            CsrGraph cycle = DivisorReducerTest.makeGraph(6, new int[][]
+                    {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 0}}).freeze();
+
+            long first = calc.requestCompute(big, publisher, listener);
+            Thread.sleep(300);      // so it's well into it
+            long start = System.currentTimeMillis();
+            long second = calc.requestCompute(cycle, publisher, listener);
+            Assert.assertFalse(calc.isCurrent(first));
+            Assert.assertTrue(calc.isCurrent(second));
+            synchronized (jacobians) {
+                while (jacobians.isEmpty() && (System.currentTimeMillis() - start < 5000)) {
+                    jacobians.wait(100);
+                }
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 2000);   // the big one quit
+            Assert.assertEquals(1, jacobians.size());
+            Assert.assertEquals(BigInteger.valueOf(6), jacobians.get(0).getOrder());
+
+            // the graph was edited: nothing should show up
+            calc.requestCompute(big, publisher, listener);
+            calc.invalidate();
+            Thread.sleep(300);
+            synchronized (jacobians) {
+                Assert.assertEquals(1, jacobians.size());
+            }
+
+            // and it still works on the calling thread afterwards
+            Assert.assertEquals(BigInteger.valueOf(6), calc.compute(cycle).getOrder());
+        }
+        finally {
+            calc.shutdown();
+        }
+    }
+
+    private static Graph<Integer> grid(int side) {
+        Graph<Integer> grid = DivisorReducerTest.makeGraph(side * side, new int[0][]);
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                int node = row * side + column;
+                if (column + 1 < side) {
+                    grid.addEdge(node, node + 1);
+                }
+                if (row + 1 < side) {
+                    grid.addEdge(node, node + side);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /** The Laplacian without the last node's row and column */
+    static BigInteger[][] reducedLaplacian(CsrGraph csr) {
+        int size = csr.numNodes() - 1;
+        long[][] matrix = new long[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int k = csr.offset(i); k < csr.offset(i + 1); k++) {
+                int j = csr.target(k);
+                matrix[i][i]++;
+                if (j < size) {
+                    matrix[i][j]--;
+                }
+            }
+        }
+        BigInteger[][] result = new BigInteger[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                result[i][j] = BigInteger.valueOf(matrix[i][j]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The exact determinant, by Bareiss' fraction-free elimination (every
+     * division is exact, and the numbers stay the size of minors).  Slow,
+     * but nothing like the code being checked.
+     */
+    static BigInteger determinant(BigInteger[][] matrix) {
+        int size = matrix.length;
+        BigInteger[][] a = new BigInteger[size][];
+        for (int i = 0; i < size; i++) {
+            a[i] = matrix[i].clone();
+        }
+
+        int sign = 1;
+        BigInteger previous = BigInteger.ONE;
+        for (int k = 0; k < size - 1; k++) {
+            if (a[k][k].signum() == 0) {
+                int swap = k + 1;
+                while ((swap < size) && (a[swap][k].signum() == 0)) {
+                    swap++;
+                }
+                if (swap == size) {
+                    return BigInteger.ZERO;
+                }
+                BigInteger[] row = a[k];
+                a[k] = a[swap];
+                a[swap] = row;
+                sign = -sign;
+            }
+            for (int i = k + 1; i < size; i++) {
+                for (int j = k + 1; j < size; j++) {
+                    a[i][j] = a[i][j].multiply(a[k][k])
+                                     .subtract(a[i][k].multiply(a[k][j]))
+                                     .divide(previous);
+                }
+            }
+            previous = a[k][k];
+        }
+        BigInteger det = a[size - 1][size - 1];
+        return (sign < 0) ? det.negate() : det;
+    }
+
+    /**
+     * The textbook Smith normal form: move the smallest entry to the corner,
+     * knock everything in its row and column down with division, repeat.
+     */
+    private static BigInteger[] denseSmith(BigInteger[][] matrix) {
+        int size = matrix.length;
+        BigInteger[][] a = new BigInteger[size][];
+        for (int i = 0; i < size; i++) {
+            a[i] = matrix[i].clone();
+        }
+        BigInteger[] diagonal = new BigInteger[size];
+        for (int t = 0; t < size; t++) {
+            while (true) {
+                int bestRow = -1, bestColumn = -1;
+                for (int i = t; i < size; i++) {
+                    for (int j = t; j < size; j++) {
+                        if ((a[i][j].signum() != 0) && ((bestRow == -1)
+                                || (a[i][j].abs().compareTo(a[bestRow][bestColumn].abs()) < 0))) {
+                            bestRow = i;
+                            bestColumn = j;
+                        }
+                    }
+                }
+                BigInteger[] swapRow = a[t];
+                a[t] = a[bestRow];
+                a[bestRow] = swapRow;
+                for (BigInteger[] row : a) {
+                    BigInteger swap = row[t];
+                    row[t] = row[bestColumn];
+                    row[bestColumn] = swap;
+                }
+
+                boolean done = true;
+                for (int i = t + 1; i < size; i++) {
+                    BigInteger q = a[i][t].divide(a[t][t]);
+                    for (int j = t; j < size; j++) {
+                        a[i][j] = a[i][j].subtract(q.multiply(a[t][j]));
+                    }
+                    done &= (a[i][t].signum() == 0);
+                }
+                for (int j = t + 1; j < size; j++) {
+                    BigInteger q = a[t][j].divide(a[t][t]);
+                    for (int i = t; i < size; i++) {
+                        a[i][j] = a[i][j].subtract(q.multiply(a[i][t]));
+                    }
+                    done &= (a[t][j].signum() == 0);
+                }
+                if (!done) {
+                    continue;
+                }
+
+                // the corner must divide everything else
+                int bad = -1;
+                for (int i = t + 1; (i < size) && (bad == -1); i++) {
+                    for (int j = t + 1; j < size; j++) {
+                        if (a[i][j].mod(a[t][t].abs()).signum() != 0) {
+                            bad = i;
+                            break;
+                        }
+                    }
+                }
+                if (bad == -1) {
+                    break;
+                }
+                for (int j = t; j < size; j++) {
+                    a[t][j] = a[t][j].add(a[bad][j]);
+                }
+            }
+            diagonal[t] = a[t][t].abs();
+        }
+        return diagonal;
+    }
+}
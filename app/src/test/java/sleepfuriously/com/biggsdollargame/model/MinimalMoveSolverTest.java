@@ -0,0 +1,219 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class MinimalMoveSolverTest {
+
+    @Test
+    public void smallExamples() throws GraphNotConnectedException {
+        MinimalMoveSolver solver = new MinimalMoveSolver();
+
+        // a triangle: node 1 takes once
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+        MinimalMoveSolver.Solution solution = solver.solve(triangle, new int[] {2, -1, 1});
+        Assert.assertEquals(1, solution.getNumMoves());
+        Assert.assertTrue(solution.isOptimal());
+        Assert.assertEquals(1, solution.getMoves().get(0).getNode());
+        Assert.assertFalse(solution.getMoves().get(0).isGive());
+
+        // already won
+        Assert.assertEquals(0, solver.solve(triangle, new int[] {0, 0, 1}).getNumMoves());
+
+        // can't be won
+        Assert.assertNull(solver.solve(triangle, new int[] {1, -1, 0}));
+
+        // a path: the debt has to be passed all the way down
+        CsrGraph path = DivisorReducerTest.makeGraph(4, new int[][] {{0, 1}, {1, 2}, {2, 3}}).freeze();
+        solution = solver.solve(path, new int[] {-1, 0, 0, 1});
+        Assert.assertEquals(4, solution.getNumMoves());
+        Assert.assertTrue(wins(path, new int[] {-1, 0, 0, 1}, solution));
+    }
+
+    @Test
+    public void matchesBruteForce() throws GraphNotConnectedException {
+        Random random = new Random(7);
+        MinimalMoveSolver solver = new MinimalMoveSolver();
+
+        for (int round = 0; round < 100; round++) {
+            int numNodes = 2 + random.nextInt(4);
+            CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, numNodes, random.nextInt(4)).freeze();
+            int[] divisor = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                divisor[i] = random.nextInt(7) - 3;
+            }
+
+            MinimalMoveSolver.Solution solution = solver.solve(csr, divisor);
+            long best = bruteForce(csr, divisor, 6);
+            if (solution == null) {
+                Assert.assertEquals(-1, best);
+                continue;
+            }
+            Assert.assertTrue(solution.isOptimal());
+            Assert.assertTrue(wins(csr, divisor, solution));
+            if (best != -1) {
+                Assert.assertEquals(best, solution.getNumMoves());
+            }
+            else {
+                Assert.assertTrue(solution.getNumMoves() > 6);
+            }
+        }
+    }
+
+    @Test
+    public void givesUp() throws GraphNotConnectedException {
+        Random random = new Random(11);
+        CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, 30, 30).freeze();
+        int[] divisor = new int[30];
+        for (int i = 0; i < 30; i++) {
+            divisor[i] = random.nextInt(9) - 3;
+        }
+
+        MinimalMoveSolver solver = new MinimalMoveSolver();
+        solver.setMaxSteps(3);
+        MinimalMoveSolver.Solution solution = solver.solve(csr, divisor);
+        Assert.assertTrue(wins(csr, divisor, solution));    // still a good answer
+    }
+
+    @Test
+    public void cancelling() throws Exception {
+        Random random = new Random(11);
+        final CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, 30, 30).freeze();
+        final int[] divisor = new int[30];
+        for (int i = 0; i < 30; i++) {
+            divisor[i] = random.nextInt(9) - 3;
+        }
+        MinimalMoveSolver solver = new MinimalMoveSolver();
+
+        // cancelled before it starts: still a good answer, but not the best
+        MinimalMoveSolver.Solution solution = solver.solve(csr, divisor, new MinimalMoveSolver.Canceller() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        });
+        Assert.assertFalse(solution.isOptimal());
+        Assert.assertTrue(wins(csr, divisor, solution));
+
+        // A cancel() right after asking counts, even if the background
+        // thread hasn't gotten to it yet.
+        final MinimalMoveSolver.Solution[] answer = new MinimalMoveSolver.Solution[1];
+        Future<?> future = solver.solveInBackground(csr, divisor, new MinimalMoveSolver.Callback() {
+            @Override
+            public void onSolved(MinimalMoveSolver.Solution solution) {
+                answer[0] = solution;
+            }
+        });
+        solver.cancel();
+        future.get(60, TimeUnit.SECONDS);
+        Assert.assertFalse(answer[0].isOptimal());
+
+        // and a solve asked for after the cancel isn't bothered by it
+        solver.setMaxSteps(1000);
+        solution = solver.solve(csr, divisor);
+        Assert.assertTrue(wins(csr, divisor, solution));
+    }
+
+    @Test
+    public void severalAtOnce() throws Exception {
+        final MinimalMoveSolver solver = new MinimalMoveSolver();
+        final Random random = new Random(3);
+        final CsrGraph[] graphs = new CsrGraph[40];
+        final int[][] divisors = new int[40][];
+        long[] expected = new long[40];
+        for (int round = 0; round < graphs.length; round++) {
+            int numNodes = 3 + random.nextInt(5);
+            graphs[round] = DivisorReducerTest.randomConnectedGraph(random, numNodes, random.nextInt(5)).freeze();
+            divisors[round] = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                divisors[round][i] = random.nextInt(7) - 2;
+            }
+            MinimalMoveSolver.Solution solution = solver.solve(graphs[round], divisors[round]);
+            expected[round] = (solution == null) ? -1 : solution.getNumMoves();
+        }
+
+        // the same solver on four threads at once gets the same answers
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int round = 0; round < graphs.length; round++) {
+                final int which = round;
+                results.add(pool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        MinimalMoveSolver.Solution solution = solver.solve(graphs[which], divisors[which]);
+                        return (solution == null) ? -1 : solution.getNumMoves();
+                    }
+                }));
+            }
+            for (int round = 0; round < graphs.length; round++) {
+                Assert.assertEquals(expected[round], (long) results.get(round).get());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Plays the moves of the solution and checks that the game is won. */
+    private static boolean wins(CsrGraph csr, int[] divisor, MinimalMoveSolver.Solution solution) {
+        DollarGame game = new DollarGame(csr, divisor);
+        List<MinimalMoveSolver.Move> moves = solution.getMoves();
+        Assert.assertEquals(solution.getNumMoves(), moves.size());
+        for (MinimalMoveSolver.Move move : moves) {
+            if (move.isGive()) {
+                game.fire(move.getNode());
+            }
+            else {
+                game.borrow(move.getNode());
+            }
+        }
+        return game.isWinning();
+    }
+
+    /**
+     * Tries every script with each node moving at most maxMoves times.
+     *
+     * @return  The fewest moves that win, or -1 if none of them do.
+     */
+    private static long bruteForce(CsrGraph csr, int[] divisor, int maxMoves) {
+        int numNodes = csr.numNodes();
+        int[] script = new int[numNodes];
+        java.util.Arrays.fill(script, -maxMoves);
+        long best = -1;
+        while (true) {
+            long cost = 0;
+            for (int fires : script) {
+                cost += Math.abs(fires);
+            }
+            if ((cost <= maxMoves) && ((best == -1) || (cost < best))) {
+                DollarGame game = new DollarGame(csr, divisor);
+                for (int i = 0; i < numNodes; i++) {
+                    game.fire(i, script[i]);
+                }
+                if (game.isWinning()) {
+                    best = cost;
+                }
+            }
+
+            // next script
+            int i = 0;
+            while ((i < numNodes) && (script[i] == maxMoves)) {
+                script[i++] = -maxMoves;
+            }
+            if (i == numNodes) {
+                return best;
+            }
+            script[i]++;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MoveJournalTest {
+
+    @Test
+    public void undoRedo() {
+        CsrGraph csr = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}}).freeze();
+        DollarGame game = new DollarGame(csr, new int[] {2, 0, -1});
+        MoveJournal journal = new MoveJournal();
+        Assert.assertFalse(journal.canUndo());
+        Assert.assertFalse(journal.canRedo());
+
+        game.fire(0);
+        journal.record(0, true);
+        game.borrow(2);
+        journal.record(2, false);
+        Assert.assertArrayEquals(new int[] {1, 0, 0}, game.getDivisor());
+
+        Assert.assertEquals(2, journal.undo(game));
+        Assert.assertArrayEquals(new int[] {1, 1, -1}, game.getDivisor());
+        Assert.assertEquals(0, journal.undo(game));
+        Assert.assertArrayEquals(new int[] {2, 0, -1}, game.getDivisor());
+        Assert.assertEquals(-1, journal.undo(game));
+
+        Assert.assertEquals(0, journal.redo(game));
+        Assert.assertArrayEquals(new int[] {1, 1, -1}, game.getDivisor());
+        Assert.assertTrue(journal.canRedo());
+
+        // a new move drops the redo
+        game.fire(1);
+        journal.record(1, true);
+        Assert.assertFalse(journal.canRedo());
+        Assert.assertEquals(-1, journal.redo(game));
+        Assert.assertEquals(2, journal.size());
+        Assert.assertTrue(journal.isGive(1));
+        Assert.assertEquals(1, journal.getNode(1));
+    }
+
+    @Test
+    public void longHistory() {
+        Random random = new Random(11);
+        CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, 50, 60).freeze();
+        int[] start = new int[50];
+        for (int i = 0; i < start.length; i++) {
+            start[i] = random.nextInt(7) - 3;
+        }
+        DollarGame game = new DollarGame(csr, start);
+        MoveJournal journal = new MoveJournal();
+
+        List<int[]> history = new ArrayList<>();
+        history.add(game.getDivisor());
+        for (int move = 0; move < 5000; move++) {
+            int node = random.nextInt(50);
+            boolean give = random.nextBoolean();
+            game.fire(node, give ? 1 : -1);
+            journal.record(node, give);
+            history.add(game.getDivisor());
+        }
+
+        for (int move = history.size() - 2; move >= 0; move--) {
+            journal.undo(game);
+            Assert.assertArrayEquals(history.get(move), game.getDivisor());
+        }
+        while (journal.canRedo()) {
+            journal.redo(game);
+        }
+        Assert.assertArrayEquals(history.get(history.size() - 1), game.getDivisor());
+
+        journal.clear();
+        Assert.assertFalse(journal.canUndo());
+        Assert.assertFalse(journal.canRedo());
+    }
+}
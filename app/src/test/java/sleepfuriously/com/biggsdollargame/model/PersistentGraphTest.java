@@ -0,0 +1,168 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests {@link PersistentGraph} and {@link PersistentIntMap}.
+ */
+public class PersistentGraphTest {
+
+    @Test
+    public void intMap() {
+        Random random = new Random(3);
+        Map<Integer, Integer> reference = new HashMap<>();
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+
+        for (int i = 0; i < 20000; i++) {
+            // a mix of small keys and keys spread over the whole int range
+            int key = random.nextBoolean() ? random.nextInt(500) : random.nextInt();
+            PersistentIntMap<Integer> before = map;
+            int sizeBefore = before.size();
+            Integer valueBefore = before.get(key);
+
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                reference.remove(key);
+            }
+            else {
+                map = map.put(key, i);
+                reference.put(key, i);
+            }
+
+            // the old version didn't change
+            Assert.assertEquals(sizeBefore, before.size());
+            Assert.assertEquals(valueBefore, before.get(key));
+
+            Assert.assertEquals(reference.size(), map.size());
+            Assert.assertEquals(reference.get(key), map.get(key));
+        }
+
+        int[] keys = map.keys();
+        Assert.assertEquals(reference.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals(reference.get(keys[i]), map.get(keys[i]));
+            if (i > 0) {
+                Assert.assertTrue(keys[i - 1] < keys[i]);
+            }
+        }
+    }
+
+    @Test
+    public void versions() {
+        PersistentGraph<String> v1 = PersistentGraph.empty(false);
+        PersistentGraph<String> v2 = v1.withNode(0, "a").withNode(1, "b").withNode(2, "c")
+                .withEdge(0, 1).withEdge(1, 2, 5);
+        PersistentGraph<String> v3 = v2.withoutNode(1);
+        PersistentGraph<String> v4 = v2.withEdge(2, 1);     // duplicate
+
+        Assert.assertEquals(0, v1.numNodes());
+        Assert.assertEquals(3, v2.numNodes());
+        Assert.assertEquals(2, v2.numEdges());
+        Assert.assertTrue(v2.isAdjacent(2, 1));
+        Assert.assertEquals(5, (int) v2.getEdgeWeight(2, 1));
+        Assert.assertEquals(2, v2.degree(1));
+
+        Assert.assertEquals(2, v3.numNodes());
+        Assert.assertEquals(0, v3.numEdges());
+        Assert.assertNull(v3.getNodeData(1));
+        Assert.assertEquals("b", v2.getNodeData(1));
+        Assert.assertSame(v2, v4);
+
+        Graph<String> graph = v2.toGraph();
+        Assert.assertEquals(3, graph.numNodes());
+        Assert.assertTrue(graph.isAdjacent(1, 2));
+        Assert.assertTrue(v2.freeze().isConnected());
+    }
+
+    @Test
+    public void snapshotFollowsGraph() {
+        Random random = new Random(11);
+        for (int directed = 0; directed < 2; directed++) {
+            Graph<Integer> graph = new Graph<>(directed == 1);
+            PersistentGraph<Integer> old = graph.snapshot();
+
+            for (int i = 0; i < 3000; i++) {
+                int a = random.nextInt(40);
+                int b = random.nextInt(40);
+                switch (random.nextInt(5)) {
+                    case 0:
+                        if (graph.getNodeData(a) == null) {
+                            try {
+                                graph.addNode(a, i);
+                            }
+                            catch (GraphNodeDuplicateIdException e) {
+                                Assert.fail();
+                            }
+                        }
+                        break;
+                    case 1:
+                        graph.removeNode(a);
+                        break;
+                    case 2:
+                        graph.removeEdge(a, b);
+                        break;
+                    default:
+                        graph.addEdge(a, b, i);
+                        break;
+                }
+                if (i == 1500) {
+                    graph.removeAllEdges();
+                }
+
+                PersistentGraph<Integer> snapshot = graph.snapshot();
+                assertSame(graph, snapshot);
+                if (i % 100 == 0) {
+                    assertSame(graph.freeze(), snapshot.freeze());
+                }
+            }
+
+            // the first version is still empty
+            Assert.assertEquals(0, old.numNodes());
+            Assert.assertEquals(0, old.numEdges());
+        }
+    }
+
+    /**
+     * Checks that the Graph and the PersistentGraph have the same nodes and edges.
+     */
+    private void assertSame(Graph<Integer> graph, PersistentGraph<Integer> snapshot) {
+        Assert.assertEquals(graph.numNodes(), snapshot.numNodes());
+        Assert.assertEquals(graph.numEdges(), snapshot.numEdges());
+        for (int id : graph.getAllNodeIds()) {
+            Assert.assertEquals(graph.getNodeData(id), snapshot.getNodeData(id));
+            Assert.assertEquals(graph.degree(id), snapshot.degree(id));
+        }
+        for (Graph<Integer>.Edge edge : graph.getAllEdges()) {
+            Assert.assertEquals(edge.weight,
+                                (int) snapshot.getEdgeWeight(edge.startNodeId, edge.endNodeId));
+        }
+    }
+
+    /**
+     * Checks that the two CSR snapshots have the same rows (in any order).
+     */
+    private void assertSame(CsrGraph expected, CsrGraph actual) {
+        Assert.assertEquals(expected.numNodes(), actual.numNodes());
+        Assert.assertEquals(expected.numEdges(), actual.numEdges());
+        for (int i = 0; i < expected.numNodes(); i++) {
+            Assert.assertEquals(expected.getNodeId(i), actual.getNodeId(i));
+            Assert.assertArrayEquals(row(expected, i), row(actual, i));
+            Assert.assertEquals(expected.inDegree(i), actual.inDegree(i));
+        }
+    }
+
+    private long[] row(CsrGraph csr, int index) {
+        long[] row = new long[csr.degree(index)];
+        for (int k = csr.offset(index); k < csr.offset(index + 1); k++) {
+            row[k - csr.offset(index)] = ((long) csr.target(k) << 32) | csr.weight(k);
+        }
+        Arrays.sort(row);
+        return row;
+    }
+}
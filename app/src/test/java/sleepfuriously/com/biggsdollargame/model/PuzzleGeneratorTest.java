@@ -0,0 +1,153 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+public class PuzzleGeneratorTest {
+
+    @Test
+    public void inBand() throws GraphNotConnectedException {
+        CsrGraph csr = DivisorReducerTest.randomConnectedGraph(new Random(8), 12, 6).freeze();
+        int genus = csr.getGenus();
+        PuzzleGenerator generator = new PuzzleGenerator(1);
+        PuzzleGenerator.Band band = PuzzleGenerator.Band.moves(4, 8);
+
+        List<PuzzleGenerator.Puzzle> puzzles = generator.generate(csr, band, genus, -3, 3, 5, 3, 60000);
+        Assert.assertEquals(3, puzzles.size());
+
+        MinimalMoveSolver solver = new MinimalMoveSolver();
+        long previous = -1;
+        for (PuzzleGenerator.Puzzle puzzle : puzzles) {
+            Assert.assertTrue(puzzle.isInBand());
+            Assert.assertTrue(puzzle.getCandidate() > previous);
+            previous = puzzle.getCandidate();
+
+            int[] amounts = puzzle.getAmounts();
+            int sum = 0;
+            for (int amount : amounts) {
+                Assert.assertTrue((amount >= -3) && (amount <= 3));
+                sum += amount;
+            }
+            Assert.assertEquals(genus, sum);
+
+            long moves = solver.solve(csr, amounts).getNumMoves();
+            Assert.assertEquals(moves, puzzle.getNumMoves());
+            Assert.assertTrue((moves >= 4) && (moves <= 8));
+        }
+    }
+
+    @Test
+    public void threadsAgree() {
+        CsrGraph csr = DivisorReducerTest.randomConnectedGraph(new Random(2), 16, 10).freeze();
+        PuzzleGenerator.Band band = PuzzleGenerator.Band.atLeast(6);
+
+        PuzzleGenerator single = new PuzzleGenerator(1);
+        PuzzleGenerator several = new PuzzleGenerator(4);
+        try {
+            List<PuzzleGenerator.Puzzle> one = single.generate(csr, band, 9, -3, 3, 77, 4, 60000);
+            List<PuzzleGenerator.Puzzle> four = several.generate(csr, band, 9, -3, 3, 77, 4, 60000);
+            Assert.assertEquals(4, one.size());
+            Assert.assertEquals(one.size(), four.size());
+            for (int i = 0; i < one.size(); i++) {
+                Assert.assertEquals(one.get(i).getCandidate(), four.get(i).getCandidate());
+                Assert.assertArrayEquals(one.get(i).getAmounts(), four.get(i).getAmounts());
+                Assert.assertEquals(one.get(i).getNumMoves(), four.get(i).getNumMoves());
+            }
+
+            // a different seed, different puzzles
+            List<PuzzleGenerator.Puzzle> other = several.generate(csr, band, 9, -3, 3, 78, 4, 60000);
+            Assert.assertFalse(java.util.Arrays.equals(one.get(0).getAmounts(), other.get(0).getAmounts()));
+        }
+        finally {
+            several.shutdown();
+        }
+    }
+
+    @Test
+    public void closestAndImpossible() {
+        // a triangle can't take 1000 moves with amounts this small
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+        PuzzleGenerator generator = new PuzzleGenerator(1);
+
+        List<PuzzleGenerator.Puzzle> puzzles = generator.generate(triangle,
+                PuzzleGenerator.Band.atLeast(1000), 1, -3, 3, 1, 1, 200);
+        Assert.assertEquals(1, puzzles.size());
+        Assert.assertFalse(puzzles.get(0).isInBand());
+        Assert.assertTrue(puzzles.get(0).isWinnable());
+
+        // no amounts in -3..3 add up to 10
+        Assert.assertTrue(generator.generate(triangle, PuzzleGenerator.Band.anything(),
+                                             10, -3, 3, 1, 1, 200).isEmpty());
+
+        // anything goes, even unwinnable
+        puzzles = generator.generate(triangle, PuzzleGenerator.Band.anything(), -1, -3, 3, 1, 2, 1000);
+        Assert.assertEquals(2, puzzles.size());
+        Assert.assertFalse(puzzles.get(0).isWinnable());
+        Assert.assertTrue(puzzles.get(0).isInBand());
+    }
+
+    @Test
+    public void onTime() throws Exception {
+        // big enough that one solve alone takes far longer than the limit
+        Random random = new Random(4);
+        CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, 200, 200).freeze();
+        int genus = csr.getGenus();
+
+        PuzzleGenerator generator = new PuzzleGenerator(2);
+        try {
+            long start = System.currentTimeMillis();
+            List<PuzzleGenerator.Puzzle> puzzles = generator.generate(csr,
+                    PuzzleGenerator.Band.atLeast(100000), genus + 20, -3, 3, 1, 1, 100);
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+            Assert.assertEquals(1, puzzles.size());
+            Assert.assertFalse(puzzles.get(0).isInBand());
+
+            // the background one counts its time from when it was asked for,
+            // and a cancel() before it starts still counts
+            final List<PuzzleGenerator.Puzzle> answers = new ArrayList<>();
+            PuzzleGenerator.Callback callback = new PuzzleGenerator.Callback() {
+                @Override
+                public void onGenerated(PuzzleGenerator.Puzzle puzzle) {
+                    answers.add(puzzle);    // (they run one after the other)
+                }
+            };
+            // (this one holds up the request thread, so the first is still
+            // waiting when it's cancelled)
+            final CountDownLatch hold = new CountDownLatch(1);
+            generator.generateInBackground(csr, PuzzleGenerator.Band.anything(), genus + 20, -3, 3, 1,
+                                           new PuzzleGenerator.Callback() {
+                @Override
+                public void onGenerated(PuzzleGenerator.Puzzle puzzle) {
+                    try {
+                        hold.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            start = System.currentTimeMillis();
+            Future<?> first = generator.generateInBackground(csr, PuzzleGenerator.Band.atLeast(100000),
+                                                             genus + 20, -3, 3, 1, callback);
+            generator.cancel();
+            Future<?> second = generator.generateInBackground(csr, PuzzleGenerator.Band.anything(),
+                                                              genus + 20, -3, 3, 1, callback);
+            hold.countDown();
+            first.get();
+            second.get();
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+            Assert.assertEquals(2, answers.size());
+            Assert.assertNull(answers.get(0));          // cancelled before anything was tried
+            Assert.assertTrue(answers.get(1).isInBand());
+        }
+        finally {
+            generator.shutdown();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RankEngineTest {
+
+    @Test
+    public void smallExamples() throws GraphNotConnectedException {
+        RankEngine engine = new RankEngine();
+
+        // on a tree every divisor of degree d >= 0 has rank d
+        CsrGraph path = DivisorReducerTest.makeGraph(4, new int[][] {{0, 1}, {1, 2}, {2, 3}}).freeze();
+        Assert.assertEquals(3, engine.rank(path, new int[] {-2, 0, 5, 0}));
+        Assert.assertEquals(-1, engine.rank(path, new int[] {-2, 0, 1, 0}));
+
+        // a triangle (genus 1)
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+        Assert.assertEquals(0, engine.rank(triangle, new int[] {1, 0, 0}));
+        Assert.assertEquals(-1, engine.rank(triangle, new int[] {1, -1, 0}));
+        Assert.assertEquals(1, engine.rank(triangle, new int[] {1, 1, 0}));
+        Assert.assertEquals(0, engine.rank(triangle, new int[] {0, 0, 0}));   // the canonical divisor
+
+        Assert.assertTrue(engine.rankAtLeast(triangle, new int[] {3, 0, 0}, 2));
+        Assert.assertFalse(engine.rankAtLeast(triangle, new int[] {3, 0, 0}, 3));
+    }
+
+    @Test
+    public void matchesBruteForce() throws GraphNotConnectedException {
+        Random random = new Random(3);
+        RankEngine engine = new RankEngine();
+        DivisorReducer reducer = new DivisorReducer();
+
+        for (int round = 0; round < 150; round++) {
+            int numNodes = 2 + random.nextInt(4);
+            CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, numNodes, random.nextInt(5)).freeze();
+            int[] divisor = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                divisor[i] = random.nextInt(6) - 2;
+            }
+
+            int rank = engine.rank(csr, divisor);
+            Assert.assertEquals(bruteForceRank(reducer, csr, divisor), rank);
+
+            // Riemann-Roch
+            int genus = csr.getGenus();
+            int degree = 0;
+            for (int amount : divisor) {
+                degree += amount;
+            }
+            int otherRank = engine.rank(csr, RankEngine.canonicalMinus(csr, divisor));
+            Assert.assertEquals(degree + 1 - genus, rank - otherRank);
+        }
+    }
+
+    /** Tries taking away every possible k dollars, for k = 0, 1, 2... */
+    private static int bruteForceRank(DivisorReducer reducer, CsrGraph csr, int[] divisor)
+            throws GraphNotConnectedException {
+        int k = 0;
+        while (allWinnable(reducer, csr, divisor, k, 0)) {
+            k++;
+        }
+        return k - 1;
+    }
+
+    private static boolean allWinnable(DivisorReducer reducer, CsrGraph csr, int[] divisor,
+                                       int k, int firstNode) throws GraphNotConnectedException {
+        if (k == 0) {
+            return reducer.isWinnable(csr, divisor);
+        }
+        for (int v = firstNode; v < divisor.length; v++) {
+            divisor[v]--;
+            boolean ok = allWinnable(reducer, csr, divisor, k - 1, v);
+            divisor[v]++;
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class SandpileStabilizerTest {
+
+    @Test
+    public void smallPile() {
+        // a path 0 - 1 - 2 with node 2 as the sink
+        CsrGraph path = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}}).freeze();
+        SandpileStabilizer pile = new SandpileStabilizer(path);
+        pile.setSink(2, true);
+
+        int[] config = {3, 0, 0};
+        long topplings = pile.stabilize(config);
+
+        // {3, 0, 0} -> 0 topples 3 times -> {0, 3, 0} -> 1 topples -> {1, 1, 1}
+        // -> 0 -> {0, 2, 1} -> 1 -> {1, 0, 2} -> 0 -> {0, 1, 2}
+        Assert.assertArrayEquals(new int[] {0, 1, 2}, config);
+        Assert.assertEquals(7, topplings);
+    }
+
+    @Test
+    public void noWayOut() {
+        // a triangle with too much money (and no sink) never settles down
+        CsrGraph triangle = DivisorReducerTest.makeGraph(3, new int[][] {{0, 1}, {1, 2}, {2, 0}}).freeze();
+        SandpileStabilizer pile = new SandpileStabilizer(triangle);
+        int[] config = {5, 1, 1};
+        Assert.assertEquals(SandpileStabilizer.GAVE_UP, pile.stabilize(config, 1000));
+
+        // but with little enough money it does
+        config = new int[] {2, 0, 0};
+        Assert.assertEquals(1, pile.stabilize(config));
+        Assert.assertArrayEquals(new int[] {0, 1, 1}, config);
+
+        // and there's no identity to find
+        try {
+            pile.identity();
+            Assert.fail("Found an identity with no way out");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+
+        // a sink fixes that
+        pile.setSink(0, true);
+        Assert.assertArrayEquals(new int[] {0, 1, 1}, pile.identity());
+    }
+
+    @Test
+    public void parallelMatches() {
+        int side = 80;
+        SandpileStabilizer pile = new SandpileStabilizer(grid(side), fours(side));
+        Random random = new Random(3);
+        int[] first = new int[side * side];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = random.nextInt(12);
+        }
+        int[] second = first.clone();
+
+        long sequential = pile.stabilize(first);
+        pile.setThreads(4);
+        try {
+            Assert.assertEquals(sequential, pile.stabilize(second));
+            Assert.assertArrayEquals(first, second);
+
+            // again, starting from where it gave up (the worklists start over)
+            for (int i = 0; i < first.length; i += 7) {
+                first[i] += 20;
+                second[i] += 20;
+            }
+            new SandpileStabilizer(grid(side), fours(side)).stabilize(first);
+            Assert.assertEquals(SandpileStabilizer.GAVE_UP, pile.stabilize(second, 10));
+            Assert.assertTrue(pile.stabilize(second) > 0);
+        }
+        finally {
+            pile.shutdown();
+        }
+        Assert.assertArrayEquals(first, second);
+        for (int amount : first) {
+            Assert.assertTrue((amount >= 0) && (amount < 4));
+        }
+    }
+
+    @Test
+    public void identity() {
+        int side = 40;
+        SandpileStabilizer pile = new SandpileStabilizer(grid(side), fours(side));
+        int[] identity = pile.identity();
+
+        // adding it to itself changes nothing
+        int[] doubled = new int[identity.length];
+        for (int i = 0; i < identity.length; i++) {
+            doubled[i] = 2 * identity[i];
+        }
+        pile.stabilize(doubled);
+        Assert.assertArrayEquals(identity, doubled);
+
+        // and it's symmetric, like the pictures
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                Assert.assertEquals(identity[row * side + column], identity[column * side + row]);
+                Assert.assertEquals(identity[row * side + column], identity[row * side + (side - 1 - column)]);
+            }
+        }
+    }
+
+    private static CsrGraph grid(int side) {
+        Graph<Integer> grid = DivisorReducerTest.makeGraph(side * side, new int[0][]);
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                int node = row * side + column;
+                if (column + 1 < side) {
+                    grid.addEdge(node, node + 1);
+                }
+                if (row + 1 < side) {
+                    grid.addEdge(node, node + side);
+                }
+            }
+        }
+        return grid.freeze();
+    }
+
+    private static int[] fours(int side) {
+        int[] thresholds = new int[side * side];
+        Arrays.fill(thresholds, 4);
+        return thresholds;
+    }
+}
@@ -34,4 +34,52 @@ class SetsOfIntsUtilTest {
         assertEquals(sum, testSum)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun fillRandomSetOfIntsWithGivenSum() {
+
+        val floor = -3
+        val ceiling = 3
+        val test = SetsOfIntsUtil()
+
+        for (numToSum in intArrayOf(1, 2, 3, 7, 64, 1000, 100000)) {
+            val sum = numToSum / 3 + 1
+            val buffer = IntArray(numToSum + 2) { 99 }
+            assertTrue(test.fillRandomSetOfIntsWithGivenSum(sum, numToSum, floor, ceiling, buffer, 1))
+
+            // only its part of the buffer gets touched
+            assertEquals(99, buffer[0])
+            assertEquals(99, buffer[numToSum + 1])
+
+            var testSum = 0
+            for (i in 1..numToSum) {
+                assertTrue((buffer[i] >= floor) && (buffer[i] <= ceiling))
+                testSum += buffer[i]
+            }
+            assertEquals(sum, testSum)
+        }
+
+        // can't be done
+        val buffer = IntArray(5)
+        assertFalse(test.fillRandomSetOfIntsWithGivenSum(16, 5, floor, ceiling, buffer, 0))
+        assertFalse(test.fillRandomSetOfIntsWithGivenSum(0, 0, floor, ceiling, buffer, 0))
+        assertNull(test.findRandomSetOfIntsWithGivenSum(-16, 5, floor, ceiling))
+
+        // all the way to the edge is fine, though
+        assertTrue(test.fillRandomSetOfIntsWithGivenSum(15, 5, floor, ceiling, buffer, 0))
+        assertArrayEquals(intArrayOf(3, 3, 3, 3, 3), buffer)
+    }
+
+    @Test
+    fun sameSeedSameSet() {
+
+        val first = IntArray(300)
+        val second = IntArray(300)
+        assertTrue(SetsOfIntsUtil(SplitMixRandom(12)).fillRandomSetOfIntsWithGivenSum(5, 300, -3, 3, first, 0))
+        assertTrue(SetsOfIntsUtil(SplitMixRandom(12)).fillRandomSetOfIntsWithGivenSum(5, 300, -3, 3, second, 0))
+        assertArrayEquals(first, second)
+
+        assertTrue(SetsOfIntsUtil(SplitMixRandom(13)).fillRandomSetOfIntsWithGivenSum(5, 300, -3, 3, second, 0))
+        assertFalse(first.contentEquals(second))
+    }
+
+}
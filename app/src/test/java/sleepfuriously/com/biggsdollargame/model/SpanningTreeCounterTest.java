@@ -0,0 +1,138 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+public class SpanningTreeCounterTest {
+
+    @Test
+    public void knownCounts() {
+        SpanningTreeCounter counter = new SpanningTreeCounter(1);
+
+        Graph<Integer> path = DivisorReducerTest.makeGraph(5, new int[][] {{0, 1}, {1, 2}, {2, 3}, {1, 4}});
+        Assert.assertEquals(BigInteger.ONE, counter.count(path.freeze()));
+
+        Graph<Integer> cycle = DivisorReducerTest.makeGraph(6, new int[][]
+                {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 0}});
+        Assert.assertEquals(BigInteger.valueOf(6), counter.count(cycle.freeze()));
+
+        // Cayley: K_n has n^(n-2)
+        int n = 12;
+        Graph<Integer> complete = DivisorReducerTest.makeGraph(n, new int[0][]);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                complete.addEdge(i, j);
+            }
+        }
+        Assert.assertEquals(BigInteger.valueOf(n).pow(n - 2), counter.count(complete.freeze()));
+
+        Assert.assertEquals(BigInteger.valueOf(192), counter.count(grid(3).freeze()));
+
+        Graph<Integer> apart = DivisorReducerTest.makeGraph(4, new int[][] {{0, 1}, {2, 3}});
+        Assert.assertEquals(BigInteger.ZERO, counter.count(apart.freeze()));
+
+        Assert.assertEquals(BigInteger.ONE, counter.count(DivisorReducerTest.makeGraph(1, new int[0][]).freeze()));
+    }
+
+    @Test
+    public void matchesBareiss() {
+        Random random = new Random(29);
+        SpanningTreeCounter counter = new SpanningTreeCounter(1);
+        for (int round = 0; round < 100; round++) {
+            int numNodes = 2 + random.nextInt(20);
+            CsrGraph csr = DivisorReducerTest.randomConnectedGraph(random, numNodes, random.nextInt(40)).freeze();
+            Assert.assertEquals(JacobianCalculatorTest.determinant(JacobianCalculatorTest.reducedLaplacian(csr)),
+                                counter.count(csr));
+        }
+    }
+
+    @Test
+    public void threadsAgree() {
+        SpanningTreeCounter single = new SpanningTreeCounter(1);
+        SpanningTreeCounter several = new SpanningTreeCounter(4);
+        try {
+            CsrGraph csr = grid(20).freeze();
+            BigInteger count = several.count(csr);
+            Assert.assertEquals(single.count(csr), count);
+            Assert.assertTrue(count.bitLength() > 600);     // lots of primes
+        }
+        finally {
+            several.shutdown();
+        }
+    }
+
+    @Test
+    public void backgroundCounts() throws InterruptedException {
+        final List<BigInteger> counts = new ArrayList<>();
+        Executor publisher = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();     // right on the counting thread
+            }
+        };
+        SpanningTreeCounter.Listener listener = new SpanningTreeCounter.Listener() {
+            @Override
+            public void onCount(CsrGraph graph, BigInteger count) {
+                synchronized (counts) {
+                    counts.add(count);
+                    counts.notifyAll();
+                }
+            }
+        };
+        SpanningTreeCounter counter = new SpanningTreeCounter(1);
+        try {
+            // takes seconds, but gets replaced right away
+            CsrGraph big = new GraphGenerator(new Random(3)).randomRegular(1500, 3).freeze();
+            CsrGraph cycle = DivisorReducerTest.makeGraph(6, new int[][]
+                    {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 5}, {5, 0}}).freeze();
+
+            long first = counter.requestCount(big, publisher, listener);
+            Thread.sleep(100);      // so it's well into it
+            long start = System.currentTimeMillis();
+            long second = counter.requestCount(cycle, publisher, listener);
+            Assert.assertFalse(counter.isCurrent(first));
+            Assert.assertTrue(counter.isCurrent(second));
+            synchronized (counts) {
+                while (counts.isEmpty() && (System.currentTimeMillis() - start < 5000)) {
+                    counts.wait(100);
+                }
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 2000);   // the big one quit
+            Assert.assertEquals(1, counts.size());
+            Assert.assertEquals(BigInteger.valueOf(6), counts.get(0));
+
+            // the graph was edited: nothing should show up
+            counter.requestCount(big, publisher, listener);
+            counter.invalidate();
+            Thread.sleep(200);
+            synchronized (counts) {
+                Assert.assertEquals(1, counts.size());
+            }
+        }
+        finally {
+            counter.shutdown();
+        }
+    }
+
+    private static Graph<Integer> grid(int side) {
+        Graph<Integer> grid = DivisorReducerTest.makeGraph(side * side, new int[0][]);
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                int node = row * side + column;
+                if (column + 1 < side) {
+                    grid.addEdge(node, node + 1);
+                }
+                if (row + 1 < side) {
+                    grid.addEdge(node, node + side);
+                }
+            }
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,85 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+public class SplitMixRandomTest {
+
+    @Test
+    public void sameAsSplittableRandom() {
+        // (the JVM that runs the tests has it, even if old Androids don't)
+        SplittableRandom theirs = new SplittableRandom(42);
+        SplitMixRandom ours = new SplitMixRandom(42);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(theirs.nextLong(), ours.nextLong());
+            Assert.assertEquals(theirs.nextInt(), ours.nextInt());
+            Assert.assertEquals(theirs.nextDouble(), ours.nextDouble(), 0);
+            Assert.assertEquals(theirs.nextBoolean(), ours.nextBoolean());
+            Assert.assertEquals(theirs.nextFloat(), ours.nextFloat(), 0);
+            Assert.assertEquals(theirs.nextInt(6), ours.nextInt(6));
+            Assert.assertEquals(theirs.nextInt(64), ours.nextInt(64));
+            Assert.assertEquals(theirs.nextInt(1 << 30 | 1), ours.nextInt(1 << 30 | 1));   // lots of retries
+        }
+
+        SplittableRandom theirSplit = theirs.split();
+        SplitMixRandom ourSplit = ours.split();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(theirSplit.nextLong(), ourSplit.nextLong());
+            Assert.assertEquals(theirs.nextLong(), ours.nextLong());
+        }
+    }
+
+    @Test
+    public void reproducible() {
+        SplitMixRandom first = new SplitMixRandom(7);
+        first.nextGaussian();       // leaves a spare one saved
+        first.setSeed(7);
+        SplitMixRandom second = new SplitMixRandom(7);
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(second.nextGaussian(), first.nextGaussian(), 0);
+            Assert.assertEquals(second.nextInt(10), first.nextInt(10));
+        }
+
+        // splits are different from each other and from the parent
+        SplitMixRandom parent = new SplitMixRandom(7);
+        long[] firsts = {parent.split().nextLong(), parent.split().nextLong(), parent.nextLong()};
+        Assert.assertNotEquals(firsts[0], firsts[1]);
+        Assert.assertNotEquals(firsts[1], firsts[2]);
+        Assert.assertNotEquals(firsts[0], firsts[2]);
+
+        // and roughly fair
+        Random random = new SplitMixRandom(3);
+        int[] counts = new int[6];
+        for (int i = 0; i < 60000; i++) {
+            counts[random.nextInt(6)]++;
+        }
+        for (int count : counts) {
+            Assert.assertTrue(Arrays.toString(counts), Math.abs(count - 10000) < 500);
+        }
+    }
+
+    @Test
+    public void forPuzzle() {
+        // the same graph built in a different order
+        Graph<Integer> one = DivisorReducerTest.makeGraph(5, new int[][] {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 0}});
+        Graph<Integer> two = DivisorReducerTest.makeGraph(5, new int[][] {{4, 0}, {2, 3}, {1, 0}, {3, 4}, {2, 1}});
+        Graph<Integer> other = DivisorReducerTest.makeGraph(5, new int[][] {{0, 1}, {1, 2}, {2, 3}, {3, 4}, {4, 1}});
+
+        Assert.assertEquals(one.freeze().fingerprint(), two.freeze().fingerprint());
+        Assert.assertNotEquals(one.freeze().fingerprint(), other.freeze().fingerprint());
+
+        UniformSumSampler sampler = new UniformSumSampler(SplitMixRandom.forPuzzle(99, one.freeze()));
+        int[] puzzle = sampler.sample(3, 5, -3, 3);
+        Assert.assertArrayEquals(puzzle,
+                new UniformSumSampler(SplitMixRandom.forPuzzle(99, two.freeze())).sample(3, 5, -3, 3));
+
+        Assert.assertNotEquals(SplitMixRandom.forPuzzle(99, one.freeze()).nextLong(),
+                               SplitMixRandom.forPuzzle(100, one.freeze()).nextLong());
+        Assert.assertNotEquals(SplitMixRandom.forPuzzle(99, one.freeze()).nextLong(),
+                               SplitMixRandom.forPuzzle(99, other.freeze()).nextLong());
+    }
+}
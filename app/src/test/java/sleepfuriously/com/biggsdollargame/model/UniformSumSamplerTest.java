@@ -0,0 +1,145 @@
+package sleepfuriously.com.biggsdollargame.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class UniformSumSamplerTest {
+
+    @Test
+    public void counts() {
+        // lists of 4 ints in -1..2 that add up to 1, the slow way
+        int count = 0;
+        for (int i = 0; i < 256; i++) {
+            int sum = 0;
+            for (int j = 0; j < 4; j++) {
+                sum += ((i >> (2 * j)) & 3) - 1;
+            }
+            if (sum == 1) {
+                count++;
+            }
+        }
+        Assert.assertEquals(count, Math.exp(UniformSumSampler.logCount(1, 4, -1, 2)), 1e-9);
+
+        Assert.assertEquals(1.0, Math.exp(UniformSumSampler.logCount(8, 4, -1, 2)), 1e-9);
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, UniformSumSampler.logCount(9, 4, -1, 2), 0);
+
+        // 7 choices each and nothing left out: 7^300 lists in total would be
+        // too big for a double, but the log is fine
+        Assert.assertTrue(UniformSumSampler.logCount(0, 300, -3, 3) > 500);
+    }
+
+    @Test
+    public void uniform() {
+        UniformSumSampler sampler = new UniformSumSampler(new Random(7));
+        int draws = 60000;
+        Map<String, Integer> seen = new HashMap<>();
+        int[] buffer = new int[4];
+        for (int i = 0; i < draws; i++) {
+            Assert.assertTrue(sampler.fill(1, 4, -1, 2, buffer, 0));
+            String key = Arrays.toString(buffer);
+            Integer old = seen.get(key);
+            seen.put(key, (old == null) ? 1 : old + 1);
+        }
+
+        int lists = (int) Math.round(Math.exp(UniformSumSampler.logCount(1, 4, -1, 2)));
+        Assert.assertEquals(lists, seen.size());
+
+        // chi-squared, with a lot of room to spare
+        double expected = (double) draws / lists;
+        double chi = 0;
+        for (int times : seen.values()) {
+            chi += (times - expected) * (times - expected) / expected;
+        }
+        int freedom = lists - 1;
+        Assert.assertTrue("chi-squared " + chi, chi < freedom + 6 * Math.sqrt(2 * freedom));
+    }
+
+    @Test
+    public void bigAndImpossible() {
+        UniformSumSampler sampler = new UniformSumSampler(new Random(3));
+        int[] buffer = new int[502];
+        Arrays.fill(buffer, 99);
+        for (int round = 0; round < 20; round++) {
+            Assert.assertTrue(sampler.fill(round * 70 - 700, 500, -3, 3, buffer, 1));
+            int sum = 0;
+            for (int i = 1; i <= 500; i++) {
+                Assert.assertTrue((buffer[i] >= -3) && (buffer[i] <= 3));
+                sum += buffer[i];
+            }
+            Assert.assertEquals(round * 70 - 700, sum);
+        }
+        Assert.assertEquals(99, buffer[0]);
+        Assert.assertEquals(99, buffer[501]);
+
+        // the very edge has just one list
+        Assert.assertArrayEquals(new int[] {3, 3, 3}, sampler.sample(9, 3, -3, 3));
+
+        Assert.assertNull(sampler.sample(10, 3, -3, 3));
+        Assert.assertNull(sampler.sample(0, 0, -3, 3));
+        Assert.assertFalse(sampler.fill(0, 2, 1, 0, buffer, 0));
+    }
+
+    @Test
+    public void tooBig() {
+        Assert.assertTrue(UniformSumSampler.canSample(UniformSumSampler.MAX_NUM_INTS, -3, 3));
+        Assert.assertFalse(UniformSumSampler.canSample(UniformSumSampler.MAX_NUM_INTS + 1, 0, 1));
+        Assert.assertFalse(UniformSumSampler.canSample(100, -1000, 1000));
+        Assert.assertFalse(UniformSumSampler.canSample(3, 1, 0));
+
+        UniformSumSampler sampler = new UniformSumSampler();
+        try {
+            sampler.sample(0, 100000, -3, 3);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+            // good: that would have been 30 billion doubles
+        }
+        try {
+            UniformSumSampler.logCount(0, 100, -1000, 1000);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+            // good
+        }
+    }
+
+    @Test
+    public void manyThreadsOneTable() throws Exception {
+        // they all want the same new table at the same time
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int seed = i;
+                results.add(pool.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        return new UniformSumSampler(new Random(seed)).sample(17, 333, -2, 4);
+                    }
+                }));
+            }
+            for (Future<int[]> result : results) {
+                int sum = 0;
+                for (int amount : result.get()) {
+                    Assert.assertTrue((amount >= -2) && (amount <= 4));
+                    sum += amount;
+                }
+                Assert.assertEquals(17, sum);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}